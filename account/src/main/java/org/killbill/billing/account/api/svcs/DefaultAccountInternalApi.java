@@ -32,6 +32,7 @@ import org.killbill.billing.account.api.DefaultAccountEmail;
 import org.killbill.billing.account.dao.AccountDao;
 import org.killbill.billing.account.dao.AccountEmailModelDao;
 import org.killbill.billing.account.dao.AccountModelDao;
+import org.killbill.billing.callcontext.AccountContextSnapshot;
 import org.killbill.billing.callcontext.InternalCallContext;
 import org.killbill.billing.callcontext.InternalTenantContext;
 import org.killbill.billing.util.entity.DefaultPagination;
@@ -53,6 +54,11 @@ public class DefaultAccountInternalApi implements AccountInternalApi {
 
     @Override
     public Account getAccountById(final UUID accountId, final InternalTenantContext context) throws AccountApiException {
+        final AccountContextSnapshot snapshot = context.getAccountContextSnapshot();
+        if (snapshot != null && snapshot.isForAccount(accountId)) {
+            return snapshot.getAccount();
+        }
+
         final AccountModelDao account = accountDao.getById(accountId, context);
         if (account == null) {
             throw new AccountApiException(ErrorCode.ACCOUNT_DOES_NOT_EXIST_FOR_ID, accountId);
@@ -115,6 +121,11 @@ public class DefaultAccountInternalApi implements AccountInternalApi {
 
     @Override
     public UUID getByRecordId(final Long recordId, final InternalTenantContext context) throws AccountApiException {
+        final AccountContextSnapshot snapshot = context.getAccountContextSnapshot();
+        if (snapshot != null && context.getAccountRecordId() != null && context.getAccountRecordId().equals(recordId)) {
+            return snapshot.getAccount().getId();
+        }
+
         final AccountModelDao accountModelDao = getAccountModelDaoByRecordId(recordId, context);
         return accountModelDao.getId();
     }
@@ -26,6 +26,7 @@ import org.slf4j.LoggerFactory;
 
 import org.killbill.billing.BillingExceptionBase;
 import org.killbill.billing.ErrorCode;
+import org.killbill.billing.ObjectType;
 import org.killbill.billing.account.api.Account;
 import org.killbill.billing.account.api.AccountApiException;
 import org.killbill.billing.account.api.user.DefaultAccountChangeEvent;
@@ -40,7 +41,11 @@ import org.killbill.billing.entity.EntityPersistenceException;
 import org.killbill.billing.events.AccountChangeInternalEvent;
 import org.killbill.billing.events.AccountCreationInternalEvent;
 import org.killbill.billing.util.audit.ChangeType;
+import org.killbill.billing.util.cache.AccountCacheLoader;
+import org.killbill.billing.util.cache.Cachable.CacheType;
+import org.killbill.billing.util.cache.CacheController;
 import org.killbill.billing.util.cache.CacheControllerDispatcher;
+import org.killbill.billing.util.cache.CacheLoaderArgument;
 import org.killbill.billing.util.callcontext.InternalCallContextFactory;
 import org.killbill.billing.util.dao.NonEntityDao;
 import org.killbill.billing.util.entity.Pagination;
@@ -59,6 +64,8 @@ public class DefaultAccountDao extends EntityDaoBase<AccountModelDao, Account, A
 
     private final PersistentBus eventBus;
     private final InternalCallContextFactory internalCallContextFactory;
+    private final CacheControllerDispatcher cacheControllerDispatcher;
+    private final NonEntityDao nonEntityDao;
 
     @Inject
     public DefaultAccountDao(final IDBI dbi, final PersistentBus eventBus, final Clock clock, final CacheControllerDispatcher cacheControllerDispatcher,
@@ -66,6 +73,8 @@ public class DefaultAccountDao extends EntityDaoBase<AccountModelDao, Account, A
         super(new EntitySqlDaoTransactionalJdbiWrapper(dbi, clock, cacheControllerDispatcher, nonEntityDao), AccountSqlDao.class);
         this.eventBus = eventBus;
         this.internalCallContextFactory = internalCallContextFactory;
+        this.cacheControllerDispatcher = cacheControllerDispatcher;
+        this.nonEntityDao = nonEntityDao;
     }
 
     @Override
@@ -96,6 +105,43 @@ public class DefaultAccountDao extends EntityDaoBase<AccountModelDao, Account, A
         }
     }
 
+    // Note: the returned object may be shared with other callers (cached snapshot) and must not be modified
+    @Override
+    public AccountModelDao getById(final UUID accountId, final InternalTenantContext context) {
+        final CacheController<Object, Object> cache = cacheControllerDispatcher.getCacheController(CacheType.ACCOUNT);
+        if (cache == null) {
+            return super.getById(accountId, context);
+        }
+
+        final CacheLoaderArgument cacheLoaderArgument = new CacheLoaderArgument(ObjectType.ACCOUNT,
+                                                                                new Object[]{new AccountCacheLoader.LoaderCallback() {
+                                                                                    @Override
+                                                                                    public Object loadAccount(final UUID accountId, final InternalTenantContext context) {
+                                                                                        return DefaultAccountDao.super.getById(accountId, context);
+                                                                                    }
+                                                                                }},
+                                                                                context);
+        final AccountModelDao account = (AccountModelDao) cache.get(accountId, cacheLoaderArgument);
+        // The cache isn't tenant specific: an entry loaded by another tenant must not be visible
+        if (account == null ||
+            (account.getTenantRecordId() != null && !account.getTenantRecordId().equals(context.getTenantRecordId()))) {
+            return null;
+        }
+        return account;
+    }
+
+    @Override
+    public AccountModelDao getByRecordId(final Long recordId, final InternalTenantContext context) {
+        final CacheController<Object, Object> cache = cacheControllerDispatcher.getCacheController(CacheType.ACCOUNT);
+        if (cache == null) {
+            return super.getByRecordId(recordId, context);
+        }
+
+        // The record id -> id mapping never changes, so it can go through the object id cache
+        final UUID accountId = nonEntityDao.retrieveIdFromObject(recordId, ObjectType.ACCOUNT, cacheControllerDispatcher.getCacheController(CacheType.OBJECT_ID));
+        return accountId == null ? null : getById(accountId, context);
+    }
+
     @Override
     public AccountModelDao getAccountByKey(final String key, final InternalTenantContext context) {
         return transactionalSqlDao.execute(new EntitySqlDaoTransactionWrapper<AccountModelDao>() {
@@ -170,6 +216,7 @@ public class DefaultAccountDao extends EntityDaoBase<AccountModelDao, Account, A
                 return null;
             }
         });
+        invalidateAccountCache(specifiedAccount.getId());
     }
 
     @Override
@@ -208,6 +255,16 @@ public class DefaultAccountDao extends EntityDaoBase<AccountModelDao, Account, A
                 return null;
             }
         });
+        invalidateAccountCache(accountId);
+    }
+
+    // Called once the transaction has been committed: the cache controller drops values loaded concurrently from the previous
+    // version, but other nodes keep serving theirs until the TTL (see ehcache.xml) expires
+    private void invalidateAccountCache(final UUID accountId) {
+        final CacheController<Object, Object> cache = cacheControllerDispatcher.getCacheController(CacheType.ACCOUNT);
+        if (cache != null) {
+            cache.remove(accountId);
+        }
     }
 
     @Override
@@ -40,6 +40,8 @@ import org.killbill.billing.util.api.TagDefinitionApiException;
 import org.killbill.billing.util.audit.AuditLog;
 import org.killbill.billing.util.audit.ChangeType;
 import org.killbill.billing.util.audit.DefaultAccountAuditLogs;
+import org.killbill.billing.util.cache.Cachable.CacheType;
+import org.killbill.billing.util.cache.CacheController;
 import org.killbill.billing.util.customfield.CustomField;
 import org.killbill.billing.util.customfield.StringCustomField;
 import org.killbill.billing.util.customfield.dao.CustomFieldModelDao;
@@ -206,6 +208,37 @@ public class TestAccountDao extends AccountTestSuiteWithEmbeddedDB {
         checkAccountsEqual(retrievedAccount, updatedAccount);
     }
 
+    @Test(groups = "slow", description = "Test Account DAO: cached accounts")
+    public void testAccountCache() throws Exception {
+        final AccountModelDao account = createTestAccount(0);
+        accountDao.create(account, internalCallContext);
+        final Long recordId = nonEntityDao.retrieveRecordIdFromObject(account.getId(), ObjectType.ACCOUNT, null);
+
+        final CacheController<Object, Object> accountCache = controllerDispatcher.getCacheController(CacheType.ACCOUNT);
+        final long initialHitCount = accountCache.getHitCount();
+        checkAccountsEqual(accountDao.getById(account.getId(), internalCallContext), account);
+        checkAccountsEqual(accountDao.getByRecordId(recordId, internalCallContext), account);
+        Assert.assertEquals(accountCache.size(), 1);
+        Assert.assertEquals(accountCache.getHitCount(), initialHitCount + 1);
+
+        // The cached entry isn't visible from another tenant
+        final InternalTenantContext otherTenantContext = new InternalTenantContext(internalCallContext.getTenantRecordId() + 1, null);
+        Assert.assertNull(accountDao.getById(account.getId(), otherTenantContext));
+        Assert.assertNull(accountDao.getByRecordId(recordId, otherTenantContext));
+
+        // Updates invalidate the entry
+        final MutableAccountData otherAccount = new DefaultAccount(account).toMutableAccountData();
+        otherAccount.setBillCycleDayLocal(15);
+        final AccountModelDao updatedAccount = new AccountModelDao(account.getId(), otherAccount);
+        accountDao.update(updatedAccount, internalCallContext);
+        Assert.assertEquals(accountCache.size(), 0);
+        checkAccountsEqual(accountDao.getById(account.getId(), internalCallContext), updatedAccount);
+
+        final UUID newPaymentMethodId = UUID.randomUUID();
+        accountDao.updatePaymentMethod(account.getId(), newPaymentMethodId, internalCallContext);
+        Assert.assertEquals(accountDao.getById(account.getId(), internalCallContext).getPaymentMethodId(), newPaymentMethodId);
+    }
+
     @Test(groups = "slow", description = "Test Account DAO: payment method update")
     public void testUpdatePaymentMethod() throws Exception {
         final AccountModelDao account = createTestAccount();
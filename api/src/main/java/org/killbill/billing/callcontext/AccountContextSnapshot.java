@@ -0,0 +1,107 @@
+/*
+ * Copyright 2014 The Billing Project, LLC
+ *
+ * The Billing Project licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package org.killbill.billing.callcontext;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+
+import javax.annotation.Nullable;
+
+import org.killbill.billing.ObjectType;
+import org.killbill.billing.account.api.Account;
+import org.killbill.billing.entitlement.api.BlockingState;
+import org.killbill.billing.subscription.api.user.SubscriptionBaseBundle;
+import org.killbill.billing.util.tag.Tag;
+
+/**
+ * Internal use only
+ * <p/>
+ * Read-only view of an account, loaded once at the beginning of an account-wide operation (e.g. invoice run)
+ * and attached to its context, so that the internal APIs don't each go back to the database.
+ * <p/>
+ * Each part is optional: null means it wasn't loaded and the database should be used. Writes made during
+ * the operation are not reflected, so only parts which are not modified by the operation should be loaded.
+ */
+public class AccountContextSnapshot {
+
+    private final Account account;
+    private final List<Tag> tags;
+    private final List<SubscriptionBaseBundle> bundles;
+    private final List<BlockingState> blockingStates;
+
+    public AccountContextSnapshot(final Account account,
+                                  @Nullable final List<Tag> tags,
+                                  @Nullable final List<SubscriptionBaseBundle> bundles,
+                                  @Nullable final List<BlockingState> blockingStates) {
+        this.account = account;
+        this.tags = tags == null ? null : Collections.unmodifiableList(new ArrayList<Tag>(tags));
+        this.bundles = bundles == null ? null : Collections.unmodifiableList(new ArrayList<SubscriptionBaseBundle>(bundles));
+        this.blockingStates = blockingStates == null ? null : Collections.unmodifiableList(new ArrayList<BlockingState>(blockingStates));
+    }
+
+    public Account getAccount() {
+        return account;
+    }
+
+    public boolean isForAccount(final UUID accountId) {
+        return account.getId().equals(accountId);
+    }
+
+    // Non deleted tags of all objects of the account
+    @Nullable
+    public List<Tag> getTags() {
+        return tags;
+    }
+
+    @Nullable
+    public List<Tag> getTags(final UUID objectId, final ObjectType objectType) {
+        if (tags == null) {
+            return null;
+        }
+
+        final List<Tag> tagsForObject = new ArrayList<Tag>();
+        for (final Tag tag : tags) {
+            if (tag.getObjectId().equals(objectId) && tag.getObjectType() == objectType) {
+                tagsForObject.add(tag);
+            }
+        }
+        return tagsForObject;
+    }
+
+    @Nullable
+    public List<SubscriptionBaseBundle> getBundles() {
+        return bundles;
+    }
+
+    @Nullable
+    public List<BlockingState> getBlockingStates() {
+        return blockingStates;
+    }
+
+    @Override
+    public String toString() {
+        final StringBuilder sb = new StringBuilder();
+        sb.append("AccountContextSnapshot");
+        sb.append("{accountId=").append(account.getId());
+        sb.append(", tags=").append(tags == null ? null : tags.size());
+        sb.append(", bundles=").append(bundles == null ? null : bundles.size());
+        sb.append(", blockingStates=").append(blockingStates == null ? null : blockingStates.size());
+        sb.append('}');
+        return sb.toString();
+    }
+}
@@ -45,7 +45,13 @@ public class InternalCallContext extends InternalTenantContext {
     public InternalCallContext(final Long tenantRecordId, @Nullable final Long accountRecordId, final UUID userToken, final String userName,
                                final CallOrigin callOrigin, final UserType userType, final String reasonCode, final String comment,
                                final DateTime createdDate, final DateTime updatedDate) {
-        super(tenantRecordId, accountRecordId);
+        this(tenantRecordId, accountRecordId, null, userToken, userName, callOrigin, userType, reasonCode, comment, createdDate, updatedDate);
+    }
+
+    private InternalCallContext(final Long tenantRecordId, @Nullable final Long accountRecordId, @Nullable final AccountContextSnapshot accountContextSnapshot,
+                                final UUID userToken, final String userName, final CallOrigin callOrigin, final UserType userType,
+                                final String reasonCode, final String comment, final DateTime createdDate, final DateTime updatedDate) {
+        super(tenantRecordId, accountRecordId, accountContextSnapshot);
         this.userToken = userToken;
         this.createdBy = userName;
         this.updatedBy = userName;
@@ -69,6 +75,13 @@ public class InternalCallContext extends InternalTenantContext {
              context.getUpdatedDate());
     }
 
+    // Same context, with a read-only snapshot of its account attached
+    public InternalCallContext(final InternalCallContext context, final AccountContextSnapshot accountContextSnapshot) {
+        this(context.getTenantRecordId(), context.getAccountRecordId(), accountContextSnapshot, context.getUserToken(), context.getCreatedBy(),
+             context.getCallOrigin(), context.getContextUserType(), context.getReasonCode(), context.getComments(), context.getCreatedDate(),
+             context.getUpdatedDate());
+    }
+
     // TODO should not be needed if all services are using internal API
     // Unfortunately not true as some APIs ae hidden in object -- e.g OverdueStateApplicator is doing subscription.cancelEntitlementWithDateOverrideBillingPolicy
     public CallContext toCallContext(final UUID tenantId) {
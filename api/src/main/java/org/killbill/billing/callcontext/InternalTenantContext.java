@@ -29,10 +29,16 @@ public class InternalTenantContext {
 
     protected final Long tenantRecordId;
     protected final Long accountRecordId;
+    protected final AccountContextSnapshot accountContextSnapshot;
 
     public InternalTenantContext(final Long tenantRecordId, @Nullable final Long accountRecordId) {
+        this(tenantRecordId, accountRecordId, null);
+    }
+
+    public InternalTenantContext(final Long tenantRecordId, @Nullable final Long accountRecordId, @Nullable final AccountContextSnapshot accountContextSnapshot) {
         this.tenantRecordId = tenantRecordId;
         this.accountRecordId = accountRecordId;
+        this.accountContextSnapshot = accountContextSnapshot;
     }
 
     public InternalTenantContext(final long defaultTenantRecordId) {
@@ -51,6 +57,12 @@ public class InternalTenantContext {
         return tenantRecordId;
     }
 
+    // Not part of equals/hashCode: the snapshot is only a read cache for the account of the context
+    @Nullable
+    public AccountContextSnapshot getAccountContextSnapshot() {
+        return accountContextSnapshot;
+    }
+
     @Override
     public String toString() {
         final StringBuilder sb = new StringBuilder();
@@ -18,6 +18,9 @@
 
 package org.killbill.billing.catalog.api;
 
+import java.util.List;
+
+import org.killbill.billing.callcontext.InternalTenantContext;
 import org.killbill.billing.platform.api.KillbillService;
 
 /**
@@ -29,4 +32,22 @@ public interface CatalogService extends KillbillService {
 
     public abstract StaticCatalog getCurrentCatalog();
 
+    /**
+     * @param context the tenant context
+     * @return the catalog uploaded for that tenant, or the default one if the tenant doesn't have any
+     */
+    public abstract Catalog getFullCatalog(InternalTenantContext context);
+
+    /**
+     * @param context the tenant context
+     * @return the current version of the catalog for that tenant, or of the default one if the tenant doesn't have any
+     */
+    public abstract StaticCatalog getCurrentCatalog(InternalTenantContext context);
+
+    /**
+     * @param catalogXMLs all the catalog versions of a tenant, including the one being uploaded
+     * @throws ServiceException if they cannot be parsed or don't make a valid catalog together
+     */
+    public abstract void validateTenantCatalogs(List<String> catalogXMLs) throws ServiceException;
+
 }
@@ -18,6 +18,7 @@ package org.killbill.billing.invoice.api;
 
 import java.math.BigDecimal;
 import java.util.Collection;
+import java.util.List;
 import java.util.Map;
 import java.util.UUID;
 
@@ -44,6 +45,23 @@ public interface InvoiceInternalApi {
 
     public void notifyOfPayment(InvoicePayment invoicePayment, InternalCallContext context) throws InvoiceApiException;
 
+    /**
+     * Allocate a single payment across the unpaid invoices of the account, oldest first.
+     *
+     * @param accountId         the account id
+     * @param upToDate          only invoices with a target date up to that date are paid
+     * @param amount            the amount paid
+     * @param currency          the currency of the invoices
+     * @param processedCurrency the currency of the payment
+     * @param paymentId         the payment id
+     * @param paymentDate       the payment date
+     * @param context           the call callcontext
+     * @return the invoice payments, one per invoice paid
+     * @throws InvoiceApiException
+     */
+    public List<InvoicePayment> notifyOfPaymentForUnpaidInvoices(UUID accountId, LocalDate upToDate, BigDecimal amount, Currency currency, Currency processedCurrency,
+                                                                 UUID paymentId, DateTime paymentDate, InternalCallContext context) throws InvoiceApiException;
+
     public InvoicePayment getInvoicePaymentForAttempt(UUID paymentId, InternalTenantContext context) throws InvoiceApiException;
 
     public InvoicePayment getInvoicePaymentForRefund(UUID paymentId, InternalTenantContext context) throws InvoiceApiException;
@@ -0,0 +1,65 @@
+/*
+ * Copyright 2014 The Billing Project, LLC
+ *
+ * The Billing Project licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package org.killbill.billing.subscription.api;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+import org.killbill.billing.subscription.api.user.SubscriptionBaseBundle;
+
+/**
+ * Internal use only
+ * <p/>
+ * Bundles and subscriptions of an account, loaded together (see SubscriptionBaseInternalApi#getAccountSubscriptions).
+ */
+public class AccountSubscriptions {
+
+    private final List<SubscriptionBaseBundle> bundles;
+    private final Map<UUID, List<SubscriptionBase>> subscriptionsPerBundle;
+
+    public AccountSubscriptions(final List<SubscriptionBaseBundle> bundles, final Map<UUID, List<SubscriptionBase>> subscriptionsPerBundle) {
+        this.bundles = Collections.unmodifiableList(new ArrayList<SubscriptionBaseBundle>(bundles));
+        this.subscriptionsPerBundle = Collections.unmodifiableMap(new LinkedHashMap<UUID, List<SubscriptionBase>>(subscriptionsPerBundle));
+    }
+
+    public List<SubscriptionBaseBundle> getBundles() {
+        return bundles;
+    }
+
+    // Map bundle id -> subscriptions (bundles without subscriptions are not present)
+    public Map<UUID, List<SubscriptionBase>> getSubscriptions() {
+        return subscriptionsPerBundle;
+    }
+
+    public List<SubscriptionBase> getSubscriptionsForBundle(final UUID bundleId) {
+        final List<SubscriptionBase> subscriptions = subscriptionsPerBundle.get(bundleId);
+        return subscriptions == null ? Collections.<SubscriptionBase>emptyList() : subscriptions;
+    }
+
+    @Override
+    public String toString() {
+        final StringBuilder sb = new StringBuilder();
+        sb.append("AccountSubscriptions");
+        sb.append("{bundles=").append(bundles.size());
+        sb.append(", subscriptionsPerBundle=").append(subscriptionsPerBundle.size());
+        sb.append('}');
+        return sb.toString();
+    }
+}
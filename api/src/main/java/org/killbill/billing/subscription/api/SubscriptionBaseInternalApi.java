@@ -58,6 +58,9 @@ public interface SubscriptionBaseInternalApi {
 
     public Map<UUID, List<SubscriptionBase>> getSubscriptionsForAccount(final InternalTenantContext context);
 
+    // Bundles and subscriptions of the account (from context) at once
+    public AccountSubscriptions getAccountSubscriptions(final InternalTenantContext context);
+
     public SubscriptionBase getBaseSubscription(final UUID bundleId, final InternalTenantContext context) throws SubscriptionBaseApiException;
 
     public SubscriptionBase getSubscriptionFromId(final UUID id, final InternalTenantContext context) throws SubscriptionBaseApiException;
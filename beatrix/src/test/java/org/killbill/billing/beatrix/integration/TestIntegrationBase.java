@@ -445,6 +445,25 @@ public class TestIntegrationBase extends BeatrixTestSuiteWithEmbeddedDB {
         }, events);
     }
 
+    protected Payment createPaymentForUnpaidInvoicesAndCheckForCompletion(final Account account, final BigDecimal amount, final NextEvent... events) {
+        return doCallAndCheckForCompletion(new Function<Void, Payment>() {
+            @Override
+            public Payment apply(@Nullable final Void input) {
+                try {
+                    final List<PluginProperty> properties = new ArrayList<PluginProperty>();
+                    final PluginProperty prop1 = new PluginProperty(InvoicePaymentControlPluginApi.PROP_IPCD_ALL_UNPAID_INVOICES, "true", false);
+                    properties.add(prop1);
+
+                    return paymentApi.createPurchaseWithPaymentControl(account, account.getPaymentMethodId(), null, amount, account.getCurrency(), UUID.randomUUID().toString(),
+                                                                       UUID.randomUUID().toString(), properties, PAYMENT_OPTIONS, callContext);
+                } catch (final PaymentApiException e) {
+                    fail(e.toString());
+                    return null;
+                }
+            }
+        }, events);
+    }
+
     protected Payment createExternalPaymentAndCheckForCompletion(final Account account, final Invoice invoice, final NextEvent... events) {
         return doCallAndCheckForCompletion(new Function<Void, Payment>() {
             @Override
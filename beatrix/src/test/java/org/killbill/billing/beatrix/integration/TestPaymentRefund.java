@@ -19,6 +19,7 @@
 package org.killbill.billing.beatrix.integration;
 
 import java.math.BigDecimal;
+import java.util.Collection;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Map;
@@ -29,6 +30,7 @@ import javax.annotation.Nullable;
 
 import org.joda.time.DateTime;
 import org.joda.time.LocalDate;
+import org.killbill.billing.ObjectType;
 import org.killbill.billing.account.api.Account;
 import org.killbill.billing.api.TestApiListener.NextEvent;
 import org.killbill.billing.beatrix.util.InvoiceChecker.ExpectedInvoiceItemCheck;
@@ -50,6 +52,7 @@ import com.google.common.base.Function;
 import com.google.common.base.Predicate;
 import com.google.common.collect.Collections2;
 
+import static org.testng.Assert.assertEquals;
 import static org.testng.Assert.assertNotNull;
 
 public class TestPaymentRefund extends TestIntegrationBase {
@@ -102,6 +105,39 @@ public class TestPaymentRefund extends TestIntegrationBase {
                                              );
     }
 
+    @Test(groups = "slow")
+    public void testFullRefundOfPaymentForUnpaidInvoices() throws Exception {
+        final Account otherAccount = createAccountWithNonOsgiPaymentMethod(getAccountData(2));
+        add_AUTO_PAY_OFF_Tag(otherAccount.getId(), ObjectType.ACCOUNT);
+
+        // Leave two invoices unpaid
+        final DefaultEntitlement bpEntitlement = createBaseEntitlementAndCheckForCompletion(otherAccount.getId(), "otherExternalKey", "Shotgun", ProductCategory.BASE, BillingPeriod.MONTHLY, NextEvent.CREATE, NextEvent.INVOICE);
+        assertNotNull(bpEntitlement);
+        addDaysAndCheckForCompletion(30, NextEvent.PHASE, NextEvent.INVOICE);
+        addMonthsAndCheckForCompletion(1, NextEvent.INVOICE);
+
+        final Collection<Invoice> unpaidInvoices = invoiceUserApi.getUnpaidInvoicesByAccountId(otherAccount.getId(), clock.getUTCToday(), callContext);
+        assertEquals(unpaidInvoices.size(), 2);
+        BigDecimal unpaidBalance = BigDecimal.ZERO;
+        for (final Invoice unpaidInvoice : unpaidInvoices) {
+            unpaidBalance = unpaidBalance.add(unpaidInvoice.getBalance());
+        }
+
+        // Pay both invoices with a single payment
+        final Payment paymentForUnpaidInvoices = createPaymentForUnpaidInvoicesAndCheckForCompletion(otherAccount, unpaidBalance, NextEvent.PAYMENT);
+        assertEquals(paymentForUnpaidInvoices.getPurchasedAmount().compareTo(unpaidBalance), 0);
+        assertEquals(invoicePaymentApi.getInvoicePayments(paymentForUnpaidInvoices.getId(), callContext).size(), 2);
+        assertEquals(invoiceUserApi.getAccountBalance(otherAccount.getId(), callContext).compareTo(BigDecimal.ZERO), 0);
+
+        // The full refund is spread across both invoices
+        refundPaymentAndCheckForCompletion(otherAccount, paymentForUnpaidInvoices, NextEvent.PAYMENT, NextEvent.INVOICE_ADJUSTMENT, NextEvent.INVOICE_ADJUSTMENT);
+        assertEquals(invoicePaymentApi.getInvoicePayments(paymentForUnpaidInvoices.getId(), callContext).size(), 4);
+        assertEquals(invoiceUserApi.getAccountBalance(otherAccount.getId(), callContext).compareTo(unpaidBalance), 0);
+        for (final Invoice unpaidInvoice : unpaidInvoices) {
+            assertEquals(invoiceUserApi.getInvoice(unpaidInvoice.getId(), callContext).getBalance().compareTo(unpaidInvoice.getBalance()), 0);
+        }
+    }
+
     private void setupRefundTest() throws Exception {
 
         final int billingDay = 31;
@@ -0,0 +1,149 @@
+/*
+ * Copyright 2014 The Billing Project, LLC
+ *
+ * The Billing Project licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.killbill.billing.benchmarks;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
+import org.joda.time.LocalDate;
+import org.killbill.billing.account.api.Account;
+import org.killbill.billing.callcontext.InternalCallContext;
+import org.killbill.billing.catalog.DefaultPrice;
+import org.killbill.billing.catalog.MockInternationalPrice;
+import org.killbill.billing.catalog.MockPlanPhase;
+import org.killbill.billing.catalog.api.BillingMode;
+import org.killbill.billing.catalog.api.BillingPeriod;
+import org.killbill.billing.catalog.api.Currency;
+import org.killbill.billing.catalog.api.PlanPhase;
+import org.killbill.billing.entitlement.api.BlockingState;
+import org.killbill.billing.entitlement.api.BlockingStateType;
+import org.killbill.billing.events.EffectiveSubscriptionInternalEvent;
+import org.killbill.billing.invoice.MockBillingEventSet;
+import org.killbill.billing.junction.BillingEvent;
+import org.killbill.billing.junction.DefaultBlockingState;
+import org.killbill.billing.junction.plumbing.billing.DefaultBillingEvent;
+import org.killbill.billing.mock.MockAccountBuilder;
+import org.killbill.billing.mock.MockSubscription;
+import org.killbill.billing.subscription.api.SubscriptionBase;
+import org.killbill.billing.subscription.api.SubscriptionBaseTransitionType;
+import org.killbill.billing.util.callcontext.CallOrigin;
+import org.killbill.billing.util.callcontext.InternalCallContextFactory;
+import org.killbill.billing.util.callcontext.UserType;
+
+import com.google.common.collect.ImmutableList;
+
+/**
+ * In-memory account used by the benchmarks: monthly subscriptions grouped in bundles, all started the same day.
+ */
+public class SyntheticAccount {
+
+    public static final Currency CURRENCY = Currency.USD;
+    public static final BigDecimal MONTHLY_RATE = new BigDecimal("29.95");
+
+    private static final int NB_SUBSCRIPTIONS_PER_BUNDLE = 5;
+    private static final String BLOCKING_SERVICE = "overdue-service";
+
+    private final Account account;
+    private final LocalDate startDate;
+    private final PlanPhase phase;
+    private final List<SubscriptionBase> subscriptions;
+    private final InternalCallContext internalCallContext;
+
+    public SyntheticAccount(final int nbSubscriptions, final LocalDate startDate) {
+        this.startDate = startDate;
+        this.account = new MockAccountBuilder().currency(CURRENCY)
+                                               .timeZone(DateTimeZone.UTC)
+                                               .billingCycleDayLocal(startDate.getDayOfMonth())
+                                               .build();
+        this.phase = new MockPlanPhase(new MockInternationalPrice(new DefaultPrice(MONTHLY_RATE, CURRENCY)), null, BillingPeriod.MONTHLY);
+        this.subscriptions = new ArrayList<SubscriptionBase>(nbSubscriptions);
+
+        UUID bundleId = null;
+        for (int i = 0; i < nbSubscriptions; i++) {
+            if (i % NB_SUBSCRIPTIONS_PER_BUNDLE == 0) {
+                bundleId = UUID.randomUUID();
+            }
+            subscriptions.add(new MockSubscription(UUID.randomUUID(), bundleId, phase.getPlan(), getStartDateTime(), ImmutableList.<EffectiveSubscriptionInternalEvent>of()));
+        }
+
+        this.internalCallContext = new InternalCallContext(InternalCallContextFactory.INTERNAL_TENANT_RECORD_ID, 1L, UUID.randomUUID(), "benchmark",
+                                                           CallOrigin.INTERNAL, UserType.SYSTEM, null, null, getStartDateTime(), getStartDateTime());
+    }
+
+    /**
+     * @return one CREATE billing event per subscription, on the start date
+     */
+    public MockBillingEventSet createBillingEvents() {
+        final MockBillingEventSet billingEvents = new MockBillingEventSet();
+        long totalOrdering = 0;
+        for (final SubscriptionBase subscription : subscriptions) {
+            billingEvents.add(createBillingEvent(subscription, getStartDateTime(), totalOrdering++));
+        }
+        return billingEvents;
+    }
+
+    public BillingEvent createBillingEvent(final SubscriptionBase subscription, final DateTime effectiveDate, final long totalOrdering) {
+        return new DefaultBillingEvent(account, subscription, effectiveDate, phase.getPlan(), phase,
+                                       null, MONTHLY_RATE, CURRENCY, BillingPeriod.MONTHLY, startDate.getDayOfMonth(),
+                                       BillingMode.IN_ADVANCE, "CREATE", totalOrdering, SubscriptionBaseTransitionType.CREATE, DateTimeZone.UTC);
+    }
+
+    /**
+     * @param nbBlockingStates number of blocking states, alternating between blocked and unblocked billing
+     * @param endDate          date of the last blocking state
+     * @return account blocking states evenly spread between the start date and the end date, in ascending order
+     */
+    public List<BlockingState> createBlockingStates(final int nbBlockingStates, final LocalDate endDate) {
+        final List<BlockingState> blockingStates = new ArrayList<BlockingState>(nbBlockingStates);
+        final long startMillis = getStartDateTime().getMillis();
+        final long intervalMillis = (endDate.toDateTimeAtStartOfDay(DateTimeZone.UTC).getMillis() - startMillis) / Math.max(nbBlockingStates, 1);
+        for (int i = 0; i < nbBlockingStates; i++) {
+            final boolean blocked = i % 2 == 0;
+            blockingStates.add(new DefaultBlockingState(account.getId(), BlockingStateType.ACCOUNT, blocked ? "BLOCKED" : "CLEAR", BLOCKING_SERVICE,
+                                                        blocked, blocked, blocked, new DateTime(startMillis + (i + 1) * intervalMillis, DateTimeZone.UTC)));
+        }
+        return blockingStates;
+    }
+
+    public Account getAccount() {
+        return account;
+    }
+
+    public LocalDate getStartDate() {
+        return startDate;
+    }
+
+    public DateTime getStartDateTime() {
+        return startDate.toDateTimeAtStartOfDay(DateTimeZone.UTC);
+    }
+
+    public PlanPhase getPhase() {
+        return phase;
+    }
+
+    public List<SubscriptionBase> getSubscriptions() {
+        return subscriptions;
+    }
+
+    public InternalCallContext getInternalCallContext() {
+        return internalCallContext;
+    }
+}
@@ -0,0 +1,163 @@
+/*
+ * Copyright 2014 The Billing Project, LLC
+ *
+ * The Billing Project licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.killbill.billing.catalog;
+
+import java.net.URI;
+import java.util.concurrent.TimeUnit;
+
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
+import org.killbill.billing.ErrorCode;
+import org.killbill.billing.catalog.api.BillingPeriod;
+import org.killbill.billing.catalog.api.CatalogApiException;
+import org.killbill.billing.catalog.api.Plan;
+import org.killbill.billing.catalog.api.PlanPhase;
+import org.killbill.billing.catalog.api.Product;
+import org.killbill.clock.DefaultClock;
+import org.killbill.xmlloader.XMLLoader;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.google.common.io.Resources;
+
+/**
+ * Plan, product and phase lookups in a versioned catalog (one version per month), compared with the linear scans
+ * (versions, then plans, products and price lists) the catalog used to do.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+public class VersionedCatalogBenchmark {
+
+    // Last plan of the catalog, in a child price list
+    private static final String PLAN_NAME = "assault-rifle-annual-rescue";
+    private static final String PHASE_NAME = "assault-rifle-annual-rescue-discount";
+    private static final String PRODUCT_NAME = "Assault-Rifle";
+    private static final String PRICE_LIST_NAME = "rescue";
+
+    @Param({"1", "12", "120"})
+    private int nbVersions;
+
+    private VersionedCatalog catalog;
+    private StandaloneCatalog[] versions;
+    private DateTime requestedDate;
+
+    @Setup
+    public void setUp() throws Exception {
+        final DateTime firstEffectiveDate = new DateTime(2010, 1, 1, 0, 0, DateTimeZone.UTC);
+        final URI uri = Resources.getResource("WeaponsHire.xml").toURI();
+
+        catalog = new VersionedCatalog(new DefaultClock());
+        versions = new StandaloneCatalog[nbVersions];
+        for (int i = 0; i < nbVersions; i++) {
+            final StandaloneCatalog version = XMLLoader.getObjectFromUri(uri, StandaloneCatalog.class);
+            version.setEffectiveDate(firstEffectiveDate.plusMonths(i).toDate());
+            catalog.add(version);
+            versions[i] = version;
+        }
+
+        // Middle of the catalog history
+        requestedDate = firstEffectiveDate.plusMonths(nbVersions / 2).plusDays(1);
+    }
+
+    @Benchmark
+    public Plan findPlanByName() throws CatalogApiException {
+        return catalog.findPlan(PLAN_NAME, requestedDate);
+    }
+
+    @Benchmark
+    public Plan findPlanByNameLinear() throws CatalogApiException {
+        return linearFindPlan(linearVersionForDate(requestedDate), PLAN_NAME);
+    }
+
+    @Benchmark
+    public Plan findPlanByProduct() throws CatalogApiException {
+        return catalog.findPlan(PRODUCT_NAME, BillingPeriod.ANNUAL, PRICE_LIST_NAME, requestedDate);
+    }
+
+    @Benchmark
+    public Plan findPlanByProductLinear() throws CatalogApiException {
+        final StandaloneCatalog version = linearVersionForDate(requestedDate);
+        return version.getPriceLists().getPlanFrom(PRICE_LIST_NAME, linearFindProduct(version, PRODUCT_NAME), BillingPeriod.ANNUAL);
+    }
+
+    @Benchmark
+    public Product findProduct() throws CatalogApiException {
+        return catalog.findProduct(PRODUCT_NAME, requestedDate);
+    }
+
+    @Benchmark
+    public Product findProductLinear() throws CatalogApiException {
+        return linearFindProduct(linearVersionForDate(requestedDate), PRODUCT_NAME);
+    }
+
+    @Benchmark
+    public PlanPhase findPhase() throws CatalogApiException {
+        return catalog.findPhase(PHASE_NAME, requestedDate, requestedDate);
+    }
+
+    @Benchmark
+    public PlanPhase findPhaseLinear() throws CatalogApiException {
+        final StandaloneCatalog version = linearVersionForDate(requestedDate);
+        final Plan plan = linearFindPlan(version, DefaultPlanPhase.planName(PHASE_NAME));
+        for (final PlanPhase phase : plan.getAllPhases()) {
+            if (phase.getName().equals(PHASE_NAME)) {
+                return phase;
+            }
+        }
+        throw new CatalogApiException(ErrorCode.CAT_NO_SUCH_PHASE, PHASE_NAME);
+    }
+
+    private StandaloneCatalog linearVersionForDate(final DateTime date) throws CatalogApiException {
+        for (int i = versions.length - 1; i >= 0; i--) {
+            if (versions[i].getEffectiveDate().getTime() < date.getMillis()) {
+                return versions[i];
+            }
+        }
+        throw new CatalogApiException(ErrorCode.CAT_NO_CATALOG_FOR_GIVEN_DATE, date.toString());
+    }
+
+    private static Plan linearFindPlan(final StandaloneCatalog version, final String name) throws CatalogApiException {
+        for (final DefaultPlan plan : version.getCurrentPlans()) {
+            if (plan.getName().equals(name)) {
+                return plan;
+            }
+        }
+        throw new CatalogApiException(ErrorCode.CAT_NO_SUCH_PLAN, name);
+    }
+
+    private static Product linearFindProduct(final StandaloneCatalog version, final String name) throws CatalogApiException {
+        for (final DefaultProduct product : version.getCurrentProducts()) {
+            if (product.getName().equals(name)) {
+                return product;
+            }
+        }
+        throw new CatalogApiException(ErrorCode.CAT_NO_SUCH_PRODUCT, name);
+    }
+}
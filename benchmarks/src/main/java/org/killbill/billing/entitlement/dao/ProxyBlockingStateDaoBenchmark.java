@@ -0,0 +1,136 @@
+/*
+ * Copyright 2014 The Billing Project, LLC
+ *
+ * The Billing Project licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package org.killbill.billing.entitlement.dao;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.joda.time.DateTime;
+import org.joda.time.LocalDate;
+import org.killbill.billing.benchmarks.SyntheticAccount;
+import org.killbill.billing.dao.MockNonEntityDao;
+import org.killbill.billing.entitlement.EntitlementService;
+import org.killbill.billing.entitlement.EventsStream;
+import org.killbill.billing.entitlement.api.BlockingState;
+import org.killbill.billing.entitlement.api.BlockingStateType;
+import org.killbill.billing.entitlement.api.DefaultEntitlementApi;
+import org.killbill.billing.junction.DefaultBlockingState;
+import org.killbill.billing.subscription.api.SubscriptionBase;
+import org.killbill.billing.util.cache.CacheControllerDispatcher;
+import org.killbill.clock.DefaultClock;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.google.common.collect.ImmutableList;
+
+/**
+ * Add-on blocking states computation for an account with one base subscription and four add-ons per bundle: half of
+ * the base subscriptions are future cancelled, and half of their add-ons already have a (later) cancellation on disk.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+public class ProxyBlockingStateDaoBenchmark {
+
+    private static final int NB_SUBSCRIPTIONS_PER_BUNDLE = 5;
+
+    @Param({"500", "5000"})
+    private int nbSubscriptions;
+
+    private ProxyBlockingStateDao blockingStateDao;
+    private List<BlockingState> blockingStatesOnDisk;
+    private List<SubscriptionBase> baseSubscriptions;
+    private List<EventsStream> eventsStreams;
+
+    @Setup
+    public void setUp() {
+        final LocalDate targetDate = new LocalDate(2014, 6, 1);
+        final SyntheticAccount account = new SyntheticAccount(nbSubscriptions, targetDate.minusYears(1));
+        final DateTime cancellationDate = targetDate.plusMonths(1).toDateTimeAtStartOfDay();
+
+        blockingStatesOnDisk = new ArrayList<BlockingState>(account.createBlockingStates(10, targetDate));
+        baseSubscriptions = new ArrayList<SubscriptionBase>();
+        eventsStreams = new ArrayList<EventsStream>();
+
+        // SyntheticAccount groups subscriptions by bundle: the first one of each bundle is the base subscription
+        final List<SubscriptionBase> subscriptions = account.getSubscriptions();
+        for (int i = 0; i < subscriptions.size(); i += NB_SUBSCRIPTIONS_PER_BUNDLE) {
+            final SubscriptionBase baseSubscription = subscriptions.get(i);
+            final List<SubscriptionBase> addOns = subscriptions.subList(i + 1, Math.min(i + NB_SUBSCRIPTIONS_PER_BUNDLE, subscriptions.size()));
+            final boolean isCancelled = (i / NB_SUBSCRIPTIONS_PER_BUNDLE) % 2 == 0;
+
+            final List<BlockingState> addOnsBlockingStates = new ArrayList<BlockingState>();
+            if (isCancelled) {
+                for (int j = 0; j < addOns.size(); j++) {
+                    addOnsBlockingStates.add(createCancellationBlockingState(addOns.get(j), cancellationDate));
+                    if (j % 2 == 0) {
+                        blockingStatesOnDisk.add(createCancellationBlockingState(addOns.get(j), cancellationDate.plusMonths(1)));
+                    }
+                }
+            }
+
+            baseSubscriptions.add(baseSubscription);
+            eventsStreams.add(createEventsStream(baseSubscription, addOnsBlockingStates));
+            for (final SubscriptionBase addOn : addOns) {
+                eventsStreams.add(createEventsStream(addOn, ImmutableList.<BlockingState>of()));
+            }
+        }
+
+        blockingStateDao = new ProxyBlockingStateDao(null, null, null, new DefaultClock(), new CacheControllerDispatcher(), new MockNonEntityDao());
+    }
+
+    @Benchmark
+    public List<BlockingState> addBlockingStatesNotOnDisk() {
+        // The on-disk states are modified in place
+        return blockingStateDao.addBlockingStatesNotOnDisk(null, null, new ArrayList<BlockingState>(blockingStatesOnDisk), baseSubscriptions, eventsStreams);
+    }
+
+    private static BlockingState createCancellationBlockingState(final SubscriptionBase subscription, final DateTime effectiveDate) {
+        return new DefaultBlockingState(subscription.getId(), BlockingStateType.SUBSCRIPTION, DefaultEntitlementApi.ENT_STATE_CANCELLED,
+                                        EntitlementService.ENTITLEMENT_SERVICE_NAME, true, true, false, effectiveDate);
+    }
+
+    private static EventsStream createEventsStream(final SubscriptionBase subscription, final Collection<BlockingState> addOnsBlockingStates) {
+        return (EventsStream) Proxy.newProxyInstance(EventsStream.class.getClassLoader(), new Class[]{EventsStream.class}, new InvocationHandler() {
+            @Override
+            public Object invoke(final Object proxy, final Method method, final Object[] args) {
+                if ("getSubscriptionBase".equals(method.getName())) {
+                    return subscription;
+                } else if ("computeAddonsBlockingStatesForFutureSubscriptionBaseEvents".equals(method.getName())) {
+                    return addOnsBlockingStates;
+                }
+                throw new UnsupportedOperationException(method.getName());
+            }
+        });
+    }
+}
@@ -0,0 +1,98 @@
+/*
+ * Copyright 2014 The Billing Project, LLC
+ *
+ * The Billing Project licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.killbill.billing.invoice.generator;
+
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+
+import org.joda.time.LocalDate;
+import org.killbill.billing.benchmarks.SyntheticAccount;
+import org.killbill.billing.dao.MockNonEntityDao;
+import org.killbill.billing.invoice.api.Invoice;
+import org.killbill.billing.invoice.api.InvoiceApiException;
+import org.killbill.billing.junction.BillingEventSet;
+import org.killbill.billing.util.cache.CacheControllerDispatcher;
+import org.killbill.billing.util.config.InvoiceConfig;
+import org.killbill.clock.DefaultClock;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.skife.config.ConfigurationObjectFactory;
+import org.skife.config.SimplePropertyConfigSource;
+
+import com.google.common.collect.ImmutableList;
+
+/**
+ * Monthly invoice run for an account whose history has already been invoiced: the generator replays all billing
+ * events and existing items to find the items for the new period.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+public class DefaultInvoiceGeneratorBenchmark {
+
+    @Param({"1", "50", "500"})
+    private int nbSubscriptions;
+
+    @Param({"1", "5", "10"})
+    private int yearsOfHistory;
+
+    private InvoiceGenerator generator;
+    private SyntheticAccount account;
+    private BillingEventSet billingEvents;
+    private List<Invoice> existingInvoices;
+    private LocalDate targetDate;
+
+    @Setup
+    public void setUp() throws InvoiceApiException {
+        final InvoiceConfig invoiceConfig = new ConfigurationObjectFactory(new SimplePropertyConfigSource(new Properties())).build(InvoiceConfig.class);
+        generator = new DefaultInvoiceGenerator(new DefaultClock(), null, invoiceConfig, new MockNonEntityDao(), new CacheControllerDispatcher());
+
+        targetDate = new LocalDate(2014, 6, 1);
+        account = new SyntheticAccount(nbSubscriptions, targetDate.minusYears(yearsOfHistory));
+        billingEvents = account.createBillingEvents();
+
+        // Everything up to the previous period has already been invoiced
+        final Invoice history = generator.generateInvoice(account.getAccount().getId(), billingEvents, null, targetDate.minusMonths(1),
+                                                          SyntheticAccount.CURRENCY, account.getInternalCallContext());
+        existingInvoices = ImmutableList.<Invoice>of(history);
+    }
+
+    @Benchmark
+    public Invoice generateNextPeriod() throws InvoiceApiException {
+        return generator.generateInvoice(account.getAccount().getId(), billingEvents, existingInvoices, targetDate,
+                                         SyntheticAccount.CURRENCY, account.getInternalCallContext());
+    }
+
+    @Benchmark
+    public Invoice generateFullHistory() throws InvoiceApiException {
+        return generator.generateInvoice(account.getAccount().getId(), billingEvents, null, targetDate,
+                                         SyntheticAccount.CURRENCY, account.getInternalCallContext());
+    }
+}
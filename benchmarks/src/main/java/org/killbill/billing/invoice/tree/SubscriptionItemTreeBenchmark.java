@@ -0,0 +1,128 @@
+/*
+ * Copyright 2014 The Billing Project, LLC
+ *
+ * The Billing Project licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.killbill.billing.invoice.tree;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+import org.joda.time.LocalDate;
+import org.killbill.billing.benchmarks.SyntheticAccount;
+import org.killbill.billing.invoice.api.InvoiceItem;
+import org.killbill.billing.invoice.model.RecurringInvoiceItem;
+import org.killbill.billing.invoice.model.RepairAdjInvoiceItem;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Tree of a single monthly subscription: existing items cover the whole history, with a mid-period plan change
+ * (repaired) every year, and the proposed items add the next period.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+public class SubscriptionItemTreeBenchmark {
+
+    private static final BigDecimal UPGRADED_RATE = new BigDecimal("49.95");
+
+    @Param({"1", "5", "10"})
+    private int yearsOfHistory;
+
+    private UUID subscriptionId;
+    private List<InvoiceItem> existingItems;
+    private List<InvoiceItem> proposedItems;
+
+    @Setup
+    public void setUp() {
+        final UUID invoiceId = UUID.randomUUID();
+        final UUID accountId = UUID.randomUUID();
+        final UUID bundleId = UUID.randomUUID();
+        subscriptionId = UUID.randomUUID();
+
+        final LocalDate targetDate = new LocalDate(2014, 6, 1);
+        final LocalDate startDate = targetDate.minusYears(yearsOfHistory);
+        final int nbPeriods = yearsOfHistory * 12;
+
+        existingItems = new ArrayList<InvoiceItem>();
+        proposedItems = new ArrayList<InvoiceItem>();
+        for (int i = 0; i < nbPeriods; i++) {
+            final LocalDate periodStart = startDate.plusMonths(i);
+            final LocalDate periodEnd = startDate.plusMonths(i + 1);
+            if (i % 12 == 6) {
+                // Upgrade in the middle of the period: the original item was repaired and replaced by two prorated items
+                final LocalDate changeDate = periodStart.plusDays(15);
+                final RecurringInvoiceItem original = new RecurringInvoiceItem(invoiceId, accountId, bundleId, subscriptionId, "basic", "basic-evergreen",
+                                                                               periodStart, periodEnd, SyntheticAccount.MONTHLY_RATE, SyntheticAccount.MONTHLY_RATE, SyntheticAccount.CURRENCY);
+                existingItems.add(original);
+                existingItems.add(new RepairAdjInvoiceItem(invoiceId, accountId, changeDate, periodEnd, SyntheticAccount.MONTHLY_RATE.negate().divide(new BigDecimal("2")),
+                                                           SyntheticAccount.CURRENCY, original.getId()));
+                final RecurringInvoiceItem upgraded = new RecurringInvoiceItem(invoiceId, accountId, bundleId, subscriptionId, "premium", "premium-evergreen",
+                                                                               changeDate, periodEnd, UPGRADED_RATE.divide(new BigDecimal("2")), UPGRADED_RATE, SyntheticAccount.CURRENCY);
+                existingItems.add(upgraded);
+                proposedItems.add(new RecurringInvoiceItem(invoiceId, accountId, bundleId, subscriptionId, "basic", "basic-evergreen",
+                                                           periodStart, changeDate, SyntheticAccount.MONTHLY_RATE.divide(new BigDecimal("2")), SyntheticAccount.MONTHLY_RATE, SyntheticAccount.CURRENCY));
+                proposedItems.add(upgraded);
+            } else {
+                final RecurringInvoiceItem item = new RecurringInvoiceItem(invoiceId, accountId, bundleId, subscriptionId, "basic", "basic-evergreen",
+                                                                           periodStart, periodEnd, SyntheticAccount.MONTHLY_RATE, SyntheticAccount.MONTHLY_RATE, SyntheticAccount.CURRENCY);
+                existingItems.add(item);
+                proposedItems.add(item);
+            }
+        }
+        proposedItems.add(new RecurringInvoiceItem(invoiceId, accountId, bundleId, subscriptionId, "basic", "basic-evergreen",
+                                                   targetDate, targetDate.plusMonths(1), SyntheticAccount.MONTHLY_RATE, SyntheticAccount.MONTHLY_RATE, SyntheticAccount.CURRENCY));
+    }
+
+    @Benchmark
+    public List<InvoiceItem> build() {
+        final SubscriptionItemTree tree = new SubscriptionItemTree(subscriptionId);
+        for (final InvoiceItem item : existingItems) {
+            tree.addItem(item);
+        }
+        tree.build();
+        return tree.getView();
+    }
+
+    @Benchmark
+    public List<InvoiceItem> mergeProposedItems() {
+        final SubscriptionItemTree tree = new SubscriptionItemTree(subscriptionId);
+        for (final InvoiceItem item : existingItems) {
+            tree.addItem(item);
+        }
+        tree.build();
+        tree.flatten(true);
+        for (final InvoiceItem item : proposedItems) {
+            tree.mergeProposedItem(item);
+        }
+        tree.buildForMerge();
+        return tree.getView();
+    }
+}
@@ -0,0 +1,173 @@
+/*
+ * Copyright 2014 The Billing Project, LLC
+ *
+ * The Billing Project licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.killbill.billing.invoice.usage;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+import org.joda.time.LocalDate;
+import org.killbill.billing.benchmarks.SyntheticAccount;
+import org.killbill.billing.catalog.DefaultInternationalPrice;
+import org.killbill.billing.catalog.DefaultPrice;
+import org.killbill.billing.catalog.DefaultTier;
+import org.killbill.billing.catalog.DefaultTieredBlock;
+import org.killbill.billing.catalog.DefaultUnit;
+import org.killbill.billing.catalog.DefaultUsage;
+import org.killbill.billing.catalog.api.BillingMode;
+import org.killbill.billing.catalog.api.BillingPeriod;
+import org.killbill.billing.catalog.api.CatalogApiException;
+import org.killbill.billing.catalog.api.UsageType;
+import org.killbill.billing.invoice.api.InvoiceItem;
+import org.killbill.billing.invoice.model.UsageInvoiceItem;
+import org.killbill.billing.subscription.api.SubscriptionBase;
+import org.killbill.billing.usage.api.RolledUpUnit;
+import org.killbill.billing.usage.api.RolledUpUsage;
+import org.killbill.billing.usage.api.SubscriptionUsageRecord;
+import org.killbill.billing.usage.api.UsageUserApi;
+import org.killbill.billing.usage.api.user.DefaultRolledUpUnit;
+import org.killbill.billing.usage.api.user.DefaultRolledUpUsage;
+import org.killbill.billing.util.callcontext.CallContext;
+import org.killbill.billing.util.callcontext.TenantContext;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Consumable in arrear usage section with three tiers, billed monthly since the start of the subscription.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+public class ContiguousIntervalConsumableInArrearBenchmark {
+
+    private static final String USAGE_NAME = "minutes-usage";
+    private static final String UNIT_TYPE = "minutes";
+
+    @Param({"1", "5", "10"})
+    private int yearsOfHistory;
+
+    @Param({"100", "100000"})
+    private long nbUnits;
+
+    private ContiguousIntervalConsumableInArrear intervalConsumableInArrear;
+    private List<InvoiceItem> existingUsageItems;
+
+    @Setup
+    public void setUp() {
+        final LocalDate targetDate = new LocalDate(2014, 6, 1);
+        final SyntheticAccount account = new SyntheticAccount(1, targetDate.minusYears(yearsOfHistory));
+        final SubscriptionBase subscription = account.getSubscriptions().get(0);
+
+        final List<RolledUpUsage> rolledUpUsage = new ArrayList<RolledUpUsage>();
+        final UsageUserApi usageApi = new UsageUserApi() {
+            @Override
+            public void recordRolledUpUsage(final SubscriptionUsageRecord record, final CallContext context) {
+                throw new UnsupportedOperationException();
+            }
+
+            @Override
+            public RolledUpUsage getUsageForSubscription(final UUID subscriptionId, final String unitType, final LocalDate startDate, final LocalDate endDate, final TenantContext context) {
+                throw new UnsupportedOperationException();
+            }
+
+            @Override
+            public List<RolledUpUsage> getAllUsageForSubscription(final UUID subscriptionId, final List<LocalDate> transitionTimes, final TenantContext context) {
+                return rolledUpUsage;
+            }
+        };
+
+        intervalConsumableInArrear = new ContiguousIntervalConsumableInArrear(createUsage(), UUID.randomUUID(), usageApi, false, targetDate, null);
+        intervalConsumableInArrear.addBillingEvent(account.createBillingEvent(subscription, account.getStartDateTime(), 0L));
+        intervalConsumableInArrear.build(false);
+
+        // All periods but the last one have already been billed
+        existingUsageItems = new ArrayList<InvoiceItem>();
+        final List<LocalDate> transitionTimes = intervalConsumableInArrear.getTransitionTimes();
+        for (int i = 1; i < transitionTimes.size(); i++) {
+            final LocalDate start = transitionTimes.get(i - 1);
+            final LocalDate end = transitionTimes.get(i);
+            final List<RolledUpUnit> units = new ArrayList<RolledUpUnit>();
+            units.add(new DefaultRolledUpUnit(UNIT_TYPE, nbUnits));
+            rolledUpUsage.add(new DefaultRolledUpUsage(subscription.getId(), start, end, units));
+
+            if (i < transitionTimes.size() - 1) {
+                existingUsageItems.add(new UsageInvoiceItem(UUID.randomUUID(), account.getAccount().getId(), subscription.getBundleId(), subscription.getId(),
+                                                            account.getPhase().getPlan().getName(), account.getPhase().getName(), USAGE_NAME,
+                                                            start, end, computeToBeBilledUsage(), SyntheticAccount.CURRENCY));
+            }
+        }
+    }
+
+    @Benchmark
+    public BigDecimal computeToBeBilledUsage() {
+        try {
+            return intervalConsumableInArrear.computeToBeBilledUsage(nbUnits, UNIT_TYPE);
+        } catch (final CatalogApiException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    @Benchmark
+    public List<InvoiceItem> computeMissingItems() throws CatalogApiException {
+        return intervalConsumableInArrear.computeMissingItems(existingUsageItems);
+    }
+
+    private static DefaultUsage createUsage() {
+        final DefaultTier tier1 = new DefaultTier();
+        tier1.setBlocks(new DefaultTieredBlock[]{createTieredBlock(100, 10, "1.50")});
+        final DefaultTier tier2 = new DefaultTier();
+        tier2.setBlocks(new DefaultTieredBlock[]{createTieredBlock(1000, 100, "10.00")});
+        final DefaultTier tier3 = new DefaultTier();
+        tier3.setBlocks(new DefaultTieredBlock[]{createTieredBlock(10000, 1000, "80.00")});
+
+        final DefaultUsage usage = new DefaultUsage();
+        usage.setName(USAGE_NAME);
+        usage.setBillingMode(BillingMode.IN_ARREAR);
+        usage.setUsageType(UsageType.CONSUMABLE);
+        usage.setBillingPeriod(BillingPeriod.MONTHLY);
+        usage.setTiers(new DefaultTier[]{tier1, tier2, tier3});
+        return usage;
+    }
+
+    private static DefaultTieredBlock createTieredBlock(final int size, final int max, final String price) {
+        final DefaultTieredBlock block = new DefaultTieredBlock();
+        block.setUnit(new DefaultUnit().setName(UNIT_TYPE));
+        block.setSize(new Double(size));
+
+        final DefaultPrice[] prices = new DefaultPrice[1];
+        prices[0] = new DefaultPrice();
+        prices[0].setCurrency(SyntheticAccount.CURRENCY).setValue(new BigDecimal(price));
+
+        block.setPrice(new DefaultInternationalPrice().setPrices(prices));
+        block.setMax(new Double(max));
+        return block;
+    }
+}
@@ -0,0 +1,112 @@
+/*
+ * Copyright 2014 The Billing Project, LLC
+ *
+ * The Billing Project licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.killbill.billing.junction.plumbing.billing;
+
+import java.util.List;
+import java.util.SortedSet;
+import java.util.TreeSet;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+import org.joda.time.LocalDate;
+import org.killbill.billing.benchmarks.SyntheticAccount;
+import org.killbill.billing.callcontext.InternalCallContext;
+import org.killbill.billing.callcontext.InternalTenantContext;
+import org.killbill.billing.entitlement.api.BlockingState;
+import org.killbill.billing.entitlement.api.BlockingStateType;
+import org.killbill.billing.junction.BillingEvent;
+import org.killbill.billing.junction.BlockingInternalApi;
+import org.killbill.billing.subscription.api.SubscriptionBase;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Blocking events insertion for an account with one billing event per subscription and per year of history, and
+ * blocking states (e.g. overdue) spread over that history.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+public class BlockingCalculatorBenchmark {
+
+    @Param({"1", "50", "500"})
+    private int nbSubscriptions;
+
+    @Param({"1", "10"})
+    private int yearsOfHistory;
+
+    @Param({"10", "100"})
+    private int nbBlockingStates;
+
+    private BlockingCalculator blockingCalculator;
+    private SortedSet<BillingEvent> billingEvents;
+    private InternalCallContext context;
+
+    @Setup
+    public void setUp() {
+        final LocalDate targetDate = new LocalDate(2014, 6, 1);
+        final SyntheticAccount account = new SyntheticAccount(nbSubscriptions, targetDate.minusYears(yearsOfHistory));
+        context = account.getInternalCallContext();
+
+        // One billing event per subscription and per year
+        billingEvents = new TreeSet<BillingEvent>();
+        long totalOrdering = 0;
+        for (final SubscriptionBase subscription : account.getSubscriptions()) {
+            for (int i = 0; i < yearsOfHistory; i++) {
+                billingEvents.add(account.createBillingEvent(subscription, account.getStartDateTime().plusYears(i), totalOrdering++));
+            }
+        }
+
+        final List<BlockingState> blockingStates = account.createBlockingStates(nbBlockingStates, targetDate);
+        blockingCalculator = new BlockingCalculator(new BlockingInternalApi() {
+            @Override
+            public BlockingState getBlockingStateForService(final UUID blockableId, final BlockingStateType blockingStateType, final String serviceName, final InternalTenantContext context) {
+                throw new UnsupportedOperationException();
+            }
+
+            @Override
+            public List<BlockingState> getBlockingAllForAccount(final InternalTenantContext context) {
+                return blockingStates;
+            }
+
+            @Override
+            public void setBlockingState(final BlockingState state, final InternalCallContext context) {
+                throw new UnsupportedOperationException();
+            }
+        });
+    }
+
+    @Benchmark
+    public SortedSet<BillingEvent> insertBlockingEvents() {
+        // insertBlockingEvents modifies the set in place
+        final SortedSet<BillingEvent> events = new TreeSet<BillingEvent>(billingEvents);
+        blockingCalculator.insertBlockingEvents(events, context);
+        return events;
+    }
+}
@@ -0,0 +1,153 @@
+/*
+ * Copyright 2014 The Billing Project, LLC
+ *
+ * The Billing Project licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.killbill.billing.payment.core.sm;
+
+import java.math.BigDecimal;
+import java.util.Properties;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.killbill.automaton.MissingEntryException;
+import org.killbill.automaton.State;
+import org.killbill.automaton.StateMachineConfig;
+import org.killbill.billing.account.api.Account;
+import org.killbill.billing.callcontext.DefaultCallContext;
+import org.killbill.billing.callcontext.InternalCallContext;
+import org.killbill.billing.catalog.api.Currency;
+import org.killbill.billing.mock.MockAccountBuilder;
+import org.killbill.billing.osgi.api.OSGIServiceDescriptor;
+import org.killbill.billing.payment.api.PaymentApiException;
+import org.killbill.billing.payment.api.PluginProperty;
+import org.killbill.billing.payment.api.TransactionType;
+import org.killbill.billing.payment.dao.MockPaymentDao;
+import org.killbill.billing.payment.dao.PaymentMethodModelDao;
+import org.killbill.billing.payment.glue.PaymentModule;
+import org.killbill.billing.payment.provider.DefaultPaymentProviderPluginRegistry;
+import org.killbill.billing.payment.provider.MockPaymentProviderPlugin;
+import org.killbill.billing.util.callcontext.CallContext;
+import org.killbill.billing.util.callcontext.CallOrigin;
+import org.killbill.billing.util.callcontext.InternalCallContextFactory;
+import org.killbill.billing.util.callcontext.UserType;
+import org.killbill.billing.util.config.PaymentConfig;
+import org.killbill.bus.api.PersistentBus;
+import org.killbill.clock.Clock;
+import org.killbill.clock.DefaultClock;
+import org.killbill.commons.locker.memory.MemoryGlobalLocker;
+import org.mockito.Mockito;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.skife.config.ConfigurationObjectFactory;
+import org.skife.config.SimplePropertyConfigSource;
+
+import com.google.common.collect.ImmutableList;
+
+/**
+ * Full API purchase through the payment state machine (PURCHASE_INIT to PURCHASE_SUCCESS), against the in-memory
+ * payment DAO and the no-op payment plugin.
+ */
+@org.openjdk.jmh.annotations.State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+public class PaymentAutomatonRunnerBenchmark {
+
+    private static final BigDecimal AMOUNT = new BigDecimal("29.95");
+
+    // When true, the plugin call is dispatched to the plugin executor under the account lock
+    @Param({"false", "true"})
+    private boolean shouldLockAccount;
+
+    private PaymentStateMachineHelper paymentSMHelper;
+    private PaymentAutomatonRunner runner;
+    private MockPaymentDao paymentDao;
+    private MockPaymentProviderPlugin paymentPlugin;
+    private ExecutorService executor;
+    private Account account;
+    private UUID paymentMethodId;
+    private CallContext callContext;
+    private InternalCallContext internalCallContext;
+
+    @Setup
+    public void setUp() throws Exception {
+        final Clock clock = new DefaultClock();
+        final PaymentConfig paymentConfig = new ConfigurationObjectFactory(new SimplePropertyConfigSource(new Properties())).build(PaymentConfig.class);
+        final StateMachineConfig stateMachineConfig = new PaymentModule.StateMachineProvider("org/killbill/billing/payment/PaymentStates.xml").get();
+        paymentSMHelper = new PaymentStateMachineHelper(stateMachineConfig);
+
+        paymentPlugin = new MockPaymentProviderPlugin(clock);
+        final OSGIServiceDescriptor descriptor = Mockito.mock(OSGIServiceDescriptor.class);
+        Mockito.when(descriptor.getRegistrationName()).thenReturn(MockPaymentProviderPlugin.PLUGIN_NAME);
+        final DefaultPaymentProviderPluginRegistry pluginRegistry = new DefaultPaymentProviderPluginRegistry(paymentConfig);
+        pluginRegistry.registerService(descriptor, paymentPlugin);
+
+        internalCallContext = new InternalCallContext(InternalCallContextFactory.INTERNAL_TENANT_RECORD_ID, 1L, UUID.randomUUID(), "benchmark",
+                                                      CallOrigin.INTERNAL, UserType.SYSTEM, null, null, clock.getUTCNow(), clock.getUTCNow());
+        callContext = new DefaultCallContext(null, "benchmark", CallOrigin.INTERNAL, UserType.SYSTEM, UUID.randomUUID(), clock);
+
+        paymentMethodId = UUID.randomUUID();
+        account = new MockAccountBuilder().externalKey(UUID.randomUUID().toString())
+                                          .currency(Currency.USD)
+                                          .paymentMethodId(paymentMethodId)
+                                          .build();
+
+        paymentDao = new MockPaymentDao();
+        paymentDao.insertPaymentMethod(new PaymentMethodModelDao(paymentMethodId, null, clock.getUTCNow(), clock.getUTCNow(), account.getId(),
+                                                                 MockPaymentProviderPlugin.PLUGIN_NAME, true), internalCallContext);
+
+        executor = Executors.newCachedThreadPool();
+        runner = new PaymentAutomatonRunner(stateMachineConfig, paymentConfig, paymentDao, new MemoryGlobalLocker(), pluginRegistry, clock,
+                                            executor, Mockito.mock(PersistentBus.class), paymentSMHelper);
+    }
+
+    @Setup(Level.Iteration)
+    public void resetPayments() {
+        // The DAO and the plugin keep every payment in memory
+        paymentDao.reset();
+        paymentPlugin.clear();
+    }
+
+    @TearDown
+    public void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Benchmark
+    public UUID purchase() throws PaymentApiException {
+        final String key = UUID.randomUUID().toString();
+        return runner.run(true, TransactionType.PURCHASE, account, null, paymentMethodId, null, null, key, key, AMOUNT, Currency.USD,
+                          shouldLockAccount, null, ImmutableList.<PluginProperty>of(), callContext, internalCallContext);
+    }
+
+    @Benchmark
+    public State fetchNextState() throws MissingEntryException {
+        return paymentSMHelper.fetchNextState("PURCHASE_INIT", true);
+    }
+}
@@ -0,0 +1,159 @@
+/*
+ * Copyright 2014 The Billing Project, LLC
+ *
+ * The Billing Project licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.killbill.billing.util.entity.dao;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+import org.killbill.billing.callcontext.InternalTenantContext;
+import org.killbill.billing.dao.MockNonEntityDao;
+import org.killbill.billing.util.cache.Cachable.CacheType;
+import org.killbill.billing.util.cache.CacheController;
+import org.killbill.billing.util.cache.CacheControllerDispatcher;
+import org.killbill.billing.util.cache.CacheLoaderArgument;
+import org.killbill.billing.util.customfield.CustomField;
+import org.killbill.billing.util.customfield.dao.CustomFieldModelDao;
+import org.killbill.billing.util.customfield.dao.CustomFieldSqlDao;
+import org.killbill.clock.DefaultClock;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.google.common.collect.ImmutableMap;
+
+/**
+ * Overhead of the EntitySqlDao proxy, with a stubbed jdbi SqlObject and record id cache: dispatch through the
+ * EntitySqlDaoInvocationPlan (current handler) versus per-call reflection (ReflectiveEntitySqlDaoInvocationHandler).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+public class EntitySqlDaoWrapperInvocationHandlerBenchmark {
+
+    private static final Long RECORD_ID = 12L;
+    private static final Long COUNT = 42L;
+
+    private final String id = UUID.randomUUID().toString();
+    private final InternalTenantContext context = new InternalTenantContext(1L, 1L);
+
+    private CustomFieldSqlDao planSqlDao;
+    private CustomFieldSqlDao reflectiveSqlDao;
+    private Method getRecordIdMethod;
+
+    @Setup
+    public void setUp() throws NoSuchMethodException {
+        // Stands for the jdbi SqlObject: no database access, so that only the proxy is measured
+        final CustomFieldSqlDao rawSqlDao = createProxy(new InvocationHandler() {
+            @Override
+            public Object invoke(final Object proxy, final Method method, final Object[] args) {
+                if ("getCount".equals(method.getName())) {
+                    return COUNT;
+                }
+                throw new UnsupportedOperationException(method.getName());
+            }
+        });
+        final CacheController<Object, Object> recordIdCache = new CacheController<Object, Object>() {
+            @Override
+            public void add(final Object key, final Object value) {
+                throw new UnsupportedOperationException();
+            }
+
+            @Override
+            public Object get(final Object key, final CacheLoaderArgument objectType) {
+                return RECORD_ID;
+            }
+
+            @Override
+            public boolean remove(final Object key) {
+                throw new UnsupportedOperationException();
+            }
+
+            @Override
+            public int size() {
+                return 1;
+            }
+
+            @Override
+            public void removeAll() {
+            }
+
+            @Override
+            public CacheType getCacheType() {
+                return CacheType.RECORD_ID;
+            }
+
+            @Override
+            public long getHitCount() {
+                return 0;
+            }
+
+            @Override
+            public long getMissCount() {
+                return 0;
+            }
+        };
+        final CacheControllerDispatcher cacheControllerDispatcher = new CacheControllerDispatcher(ImmutableMap.<CacheType, CacheController<Object, Object>>of(CacheType.RECORD_ID, recordIdCache));
+
+        planSqlDao = createProxy(new EntitySqlDaoWrapperInvocationHandler<CustomFieldSqlDao, CustomFieldModelDao, CustomField>(CustomFieldSqlDao.class, rawSqlDao, new DefaultClock(),
+                                                                                                                             cacheControllerDispatcher, new MockNonEntityDao()));
+        reflectiveSqlDao = createProxy(new ReflectiveEntitySqlDaoInvocationHandler(CustomFieldSqlDao.class, rawSqlDao, cacheControllerDispatcher));
+        getRecordIdMethod = CustomFieldSqlDao.class.getMethod("getRecordId", String.class, InternalTenantContext.class);
+    }
+
+    @Benchmark
+    public Long cachedCallWithPlan() {
+        return planSqlDao.getRecordId(id, context);
+    }
+
+    @Benchmark
+    public Long cachedCallWithReflection() {
+        return reflectiveSqlDao.getRecordId(id, context);
+    }
+
+    @Benchmark
+    public Long rawCallWithPlan() {
+        return planSqlDao.getCount(context);
+    }
+
+    @Benchmark
+    public Long rawCallWithReflection() {
+        return reflectiveSqlDao.getCount(context);
+    }
+
+    @Benchmark
+    public Object buildPlan() throws Exception {
+        // Reflection work the handler used to do on each call
+        return EntitySqlDaoInvocationPlan.build(CustomFieldSqlDao.class, getRecordIdMethod);
+    }
+
+    private static CustomFieldSqlDao createProxy(final InvocationHandler handler) {
+        return (CustomFieldSqlDao) Proxy.newProxyInstance(CustomFieldSqlDao.class.getClassLoader(), new Class[]{CustomFieldSqlDao.class}, handler);
+    }
+}
@@ -0,0 +1,160 @@
+/*
+ * Copyright 2014 The Billing Project, LLC
+ *
+ * The Billing Project licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.killbill.billing.util.entity.dao;
+
+import java.lang.annotation.Annotation;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.killbill.billing.ObjectType;
+import org.killbill.billing.callcontext.InternalTenantContext;
+import org.killbill.billing.util.cache.Cachable;
+import org.killbill.billing.util.cache.CachableKey;
+import org.killbill.billing.util.cache.CacheController;
+import org.killbill.billing.util.cache.CacheControllerDispatcher;
+import org.killbill.billing.util.cache.CacheLoaderArgument;
+import org.killbill.commons.profiling.Profiling;
+import org.killbill.commons.profiling.Profiling.WithProfilingCallback;
+import org.killbill.commons.profiling.ProfilingFeature.ProfilingFeatureType;
+
+import com.google.common.base.Predicate;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Iterables;
+
+/**
+ * Baseline for EntitySqlDaoWrapperInvocationHandlerBenchmark: raw and cached dispatch as EntitySqlDaoWrapperInvocationHandler
+ * used to do it, i.e. going through reflection on each call instead of relying on an EntitySqlDaoInvocationPlan.
+ * Audited methods are not supported.
+ */
+public class ReflectiveEntitySqlDaoInvocationHandler implements InvocationHandler {
+
+    private final Class<?> sqlDaoClass;
+    private final Object sqlDao;
+    private final CacheControllerDispatcher cacheControllerDispatcher;
+    private final Profiling prof;
+
+    public ReflectiveEntitySqlDaoInvocationHandler(final Class<?> sqlDaoClass, final Object sqlDao, final CacheControllerDispatcher cacheControllerDispatcher) {
+        this.sqlDaoClass = sqlDaoClass;
+        this.sqlDao = sqlDao;
+        this.cacheControllerDispatcher = cacheControllerDispatcher;
+        this.prof = new Profiling<Object>();
+    }
+
+    @Override
+    public Object invoke(final Object proxy, final Method method, final Object[] args) throws Throwable {
+        return prof.executeWithProfiling(ProfilingFeatureType.DAO, sqlDaoClass.getSimpleName() + ":" + method.getName(), new WithProfilingCallback() {
+            @Override
+            public Object execute() throws Throwable {
+                return invokeSafely(method, args);
+            }
+        });
+    }
+
+    private Object invokeSafely(final Method method, final Object[] args) throws Throwable {
+        final Audited auditedAnnotation = method.getAnnotation(Audited.class);
+        final Cachable cachableAnnotation = method.getAnnotation(Cachable.class);
+        if (auditedAnnotation != null) {
+            throw new UnsupportedOperationException();
+        } else if (cachableAnnotation != null) {
+            return invokeWithCaching(cachableAnnotation, method, args);
+        } else {
+            return invokeRaw(method, args);
+        }
+    }
+
+    private Object invokeRaw(final Method method, final Object[] args) throws Throwable {
+        return prof.executeWithProfiling(ProfilingFeatureType.DAO_DETAILS, sqlDaoClass.getSimpleName() + " (raw):" + method.getName(), new WithProfilingCallback() {
+            @Override
+            public Object execute() throws Throwable {
+                final Object result = method.invoke(sqlDao, args);
+                if (result != null && method.getName().equals("getById")) {
+                    throw new UnsupportedOperationException();
+                }
+                return result;
+            }
+        });
+    }
+
+    private Object invokeWithCaching(final Cachable cachableAnnotation, final Method method, final Object[] args) throws Throwable {
+        final ObjectType objectType = getObjectType();
+        final CacheController<Object, Object> cache = cacheControllerDispatcher.getCacheController(cachableAnnotation.value());
+
+        final Map<Integer, Object> keyPieces = new LinkedHashMap<Integer, Object>();
+        final Annotation[][] annotations = method.getParameterAnnotations();
+        for (int i = 0; i < annotations.length; i++) {
+            for (int j = 0; j < annotations[i].length; j++) {
+                final Annotation annotation = annotations[i][j];
+                if (CachableKey.class.equals(annotation.annotationType())) {
+                    keyPieces.put(((CachableKey) annotation).value() - 1, args[i]);
+                    break;
+                }
+            }
+        }
+
+        final StringBuilder cacheKey = new StringBuilder();
+        for (int i = 0; i < keyPieces.size(); i++) {
+            cacheKey.append(String.valueOf(keyPieces.get(i)).toUpperCase());
+            if (i < keyPieces.size() - 1) {
+                cacheKey.append(CacheControllerDispatcher.CACHE_KEY_SEPARATOR);
+            }
+        }
+
+        final InternalTenantContext internalTenantContext = (InternalTenantContext) Iterables.find(ImmutableList.copyOf(args), new Predicate<Object>() {
+            @Override
+            public boolean apply(final Object input) {
+                return input instanceof InternalTenantContext;
+            }
+        }, null);
+        return cache.get(cacheKey.toString(), new CacheLoaderArgument(objectType, args, internalTenantContext));
+    }
+
+    private ObjectType getObjectType() throws InstantiationException, IllegalAccessException, ClassNotFoundException {
+        int foundIndexForEntitySqlDao = -1;
+        for (int i = 0; i < sqlDaoClass.getGenericInterfaces().length; i++) {
+            final Type type = sqlDaoClass.getGenericInterfaces()[0];
+            if (!(type instanceof ParameterizedType)) {
+                return null;
+            }
+
+            if (EntitySqlDao.class.getName().equals(((Class) ((ParameterizedType) type).getRawType()).getName())) {
+                foundIndexForEntitySqlDao = i;
+                break;
+            }
+        }
+        if (foundIndexForEntitySqlDao >= 0) {
+            final Type[] types = ((ParameterizedType) sqlDaoClass.getGenericInterfaces()[foundIndexForEntitySqlDao]).getActualTypeArguments();
+            int foundIndexForEntityModelDao = -1;
+            for (int i = 0; i < types.length; i++) {
+                final Class clz = ((Class) types[i]);
+                if (EntityModelDao.class.getName().equals(((Class) ((ParameterizedType) clz.getGenericInterfaces()[0]).getRawType()).getName())) {
+                    foundIndexForEntityModelDao = i;
+                    break;
+                }
+            }
+
+            if (foundIndexForEntityModelDao >= 0) {
+                final Class<? extends EntityModelDao<?>> clz = (Class<? extends EntityModelDao<?>>) Class.forName(((Class) types[foundIndexForEntityModelDao]).getName());
+                return clz.newInstance().getTableName().getObjectType();
+            }
+        }
+        return null;
+    }
+}
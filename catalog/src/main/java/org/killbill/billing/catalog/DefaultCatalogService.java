@@ -18,6 +18,12 @@
 
 package org.killbill.billing.catalog;
 
+import java.util.List;
+
+import javax.annotation.Nullable;
+
+import org.killbill.billing.ObjectType;
+import org.killbill.billing.callcontext.InternalTenantContext;
 import org.killbill.billing.catalog.api.Catalog;
 import org.killbill.billing.catalog.api.CatalogService;
 import org.killbill.billing.catalog.api.StaticCatalog;
@@ -25,6 +31,13 @@ import org.killbill.billing.catalog.io.VersionedCatalogLoader;
 import org.killbill.billing.platform.api.KillbillService;
 import org.killbill.billing.platform.api.LifecycleHandlerType;
 import org.killbill.billing.platform.api.LifecycleHandlerType.LifecycleLevel;
+import org.killbill.billing.tenant.api.TenantInternalApi;
+import org.killbill.billing.util.cache.Cachable.CacheType;
+import org.killbill.billing.util.cache.CacheController;
+import org.killbill.billing.util.cache.CacheControllerDispatcher;
+import org.killbill.billing.util.cache.CacheLoaderArgument;
+import org.killbill.billing.util.cache.TenantCatalogCacheLoader.LoaderCallback;
+import org.killbill.billing.util.callcontext.InternalCallContextFactory;
 import org.killbill.billing.util.config.CatalogConfig;
 
 import com.google.inject.Inject;
@@ -40,12 +53,31 @@ public class DefaultCatalogService implements KillbillService, Provider<Catalog>
     private boolean isInitialized;
 
     private final VersionedCatalogLoader loader;
+    private final LoaderCallback tenantCatalogLoaderCallback;
+
+    // Only available when the tenant module is installed: without them, everybody gets the default catalog
+    private TenantInternalApi tenantInternalApi;
+    private CacheControllerDispatcher cacheControllerDispatcher;
 
     @Inject
     public DefaultCatalogService(final CatalogConfig config, final VersionedCatalogLoader loader) {
         this.config = config;
         this.isInitialized = false;
         this.loader = loader;
+        this.tenantCatalogLoaderCallback = new LoaderCallback() {
+            @Override
+            public Object loadCatalog(final InternalTenantContext context) throws Exception {
+                final List<String> catalogXMLs = tenantInternalApi.getTenantCatalogs(context);
+                // Cache the default catalog as well for tenants without their own, so we don't keep going back to the KV store
+                return catalogXMLs.isEmpty() ? catalog : loader.load(catalogXMLs);
+            }
+        };
+    }
+
+    @Inject(optional = true)
+    public void initializeTenantCatalogs(final TenantInternalApi tenantInternalApi, final CacheControllerDispatcher cacheControllerDispatcher) {
+        this.tenantInternalApi = tenantInternalApi;
+        this.cacheControllerDispatcher = cacheControllerDispatcher;
     }
 
     @LifecycleHandlerType(LifecycleLevel.LOAD_CATALOG)
@@ -81,4 +113,37 @@ public class DefaultCatalogService implements KillbillService, Provider<Catalog>
     public StaticCatalog getCurrentCatalog() {
         return catalog;
     }
+
+    @Override
+    public Catalog getFullCatalog(final InternalTenantContext context) {
+        return getTenantCatalog(context);
+    }
+
+    @Override
+    public StaticCatalog getCurrentCatalog(final InternalTenantContext context) {
+        return getTenantCatalog(context);
+    }
+
+    @Override
+    public void validateTenantCatalogs(final List<String> catalogXMLs) throws ServiceException {
+        loader.load(catalogXMLs);
+    }
+
+    // Tenant catalogs are parsed and validated once, when first needed (or after a new upload invalidated the cache entry)
+    private VersionedCatalog getTenantCatalog(@Nullable final InternalTenantContext context) {
+        if (tenantInternalApi == null ||
+            context == null ||
+            context.getTenantRecordId() == null ||
+            context.getTenantRecordId() == InternalCallContextFactory.INTERNAL_TENANT_RECORD_ID) {
+            return catalog;
+        }
+
+        final CacheController<Object, Object> tenantCatalogCache = cacheControllerDispatcher.getCacheController(CacheType.TENANT_CATALOG);
+        if (tenantCatalogCache == null) {
+            return catalog;
+        }
+
+        final CacheLoaderArgument cacheLoaderArgument = new CacheLoaderArgument(ObjectType.TENANT, new Object[]{tenantCatalogLoaderCallback}, context);
+        return (VersionedCatalog) tenantCatalogCache.get(context.getTenantRecordId(), cacheLoaderArgument);
+    }
 }
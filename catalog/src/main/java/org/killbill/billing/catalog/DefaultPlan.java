@@ -133,11 +133,16 @@ public class DefaultPlan extends ValidatingConfig<StandaloneCatalog> implements
 
     @Override
     public PlanPhase findPhase(final String name) throws CatalogApiException {
-        for (final PlanPhase pp : getAllPhases()) {
-            if (pp.getName().equals(name)) {
-                return pp;
+        // Same order as getAllPhases(), without allocating the array
+        if (initialPhases != null) {
+            for (final PlanPhase pp : initialPhases) {
+                if (pp.getName().equals(name)) {
+                    return pp;
+                }
             }
-
+        }
+        if (finalPhase != null && finalPhase.getName().equals(name)) {
+            return finalPhase;
         }
         throw new CatalogApiException(ErrorCode.CAT_NO_SUCH_PHASE, name);
     }
@@ -40,6 +40,17 @@ import org.killbill.xmlloader.ValidationErrors;
 @XmlAccessorType(XmlAccessType.NONE)
 public class DefaultPlanPhase extends ValidatingConfig<StandaloneCatalog> implements PlanPhase {
 
+    // Lower case phase types, in PhaseType order (see planName)
+    private static final String[] PHASE_TYPE_SUFFIXES;
+
+    static {
+        final PhaseType[] types = PhaseType.values();
+        PHASE_TYPE_SUFFIXES = new String[types.length];
+        for (int i = 0; i < types.length; i++) {
+            PHASE_TYPE_SUFFIXES[i] = types[i].toString().toLowerCase();
+        }
+    }
+
     @XmlAttribute(required = true)
     private PhaseType type;
 
@@ -64,9 +75,9 @@ public class DefaultPlanPhase extends ValidatingConfig<StandaloneCatalog> implem
     }
 
     public static String planName(final String phaseName) throws CatalogApiException {
-        for (final PhaseType type : PhaseType.values()) {
-            if (phaseName.endsWith(type.toString().toLowerCase())) {
-                return phaseName.substring(0, phaseName.length() - type.toString().length() - 1);
+        for (final String suffix : PHASE_TYPE_SUFFIXES) {
+            if (phaseName.endsWith(suffix)) {
+                return phaseName.substring(0, phaseName.length() - suffix.length() - 1);
             }
         }
         throw new CatalogApiException(ErrorCode.CAT_BAD_PHASE_NAME, phaseName);
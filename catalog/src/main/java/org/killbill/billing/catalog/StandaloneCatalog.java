@@ -19,7 +19,10 @@ package org.killbill.billing.catalog;
 import java.net.URI;
 import java.util.ArrayList;
 import java.util.Date;
+import java.util.EnumMap;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 import javax.xml.bind.annotation.XmlAccessType;
 import javax.xml.bind.annotation.XmlAccessorType;
@@ -86,6 +89,9 @@ public class StandaloneCatalog extends ValidatingConfig<StandaloneCatalog> imple
     @XmlElement(name = "priceLists", required = true)
     private DefaultPriceListSet priceLists;
 
+    // Lookup structures, built on first use (see Index)
+    private volatile Index index;
+
     public StandaloneCatalog() {
     }
 
@@ -146,6 +152,10 @@ public class StandaloneCatalog extends ValidatingConfig<StandaloneCatalog> imple
     }
 
     public DefaultPriceList findCurrentPriceList(final String priceListName) throws CatalogApiException {
+        final DefaultPriceList priceList = priceListName != null ? getIndex().priceListsByName.get(priceListName) : null;
+        if (priceList != null) {
+            return priceList;
+        }
         return priceLists.findPriceListFrom(priceListName);
     }
 
@@ -161,6 +171,11 @@ public class StandaloneCatalog extends ValidatingConfig<StandaloneCatalog> imple
         if (productName == null) {
             throw new CatalogApiException(ErrorCode.CAT_NULL_PRODUCT_NAME);
         }
+        final DefaultPlan indexedPlan = getIndex().findPlan(priceListName, productName, period);
+        if (indexedPlan != null) {
+            return indexedPlan;
+        }
+        // Not found: go through the price lists to report the correct error
         if (priceLists == null) {
             throw new CatalogApiException(ErrorCode.CAT_PRICE_LIST_NOT_FOUND, priceListName);
         }
@@ -178,12 +193,11 @@ public class StandaloneCatalog extends ValidatingConfig<StandaloneCatalog> imple
         if (name == null || plans == null) {
             throw new CatalogApiException(ErrorCode.CAT_NO_SUCH_PLAN, name);
         }
-        for (final DefaultPlan p : plans) {
-            if (p.getName().equals(name)) {
-                return p;
-            }
+        final DefaultPlan plan = getIndex().plansByName.get(name);
+        if (plan == null) {
+            throw new CatalogApiException(ErrorCode.CAT_NO_SUCH_PLAN, name);
         }
-        throw new CatalogApiException(ErrorCode.CAT_NO_SUCH_PLAN, name);
+        return plan;
     }
 
     @Override
@@ -191,12 +205,11 @@ public class StandaloneCatalog extends ValidatingConfig<StandaloneCatalog> imple
         if (name == null || products == null) {
             throw new CatalogApiException(ErrorCode.CAT_NO_SUCH_PRODUCT, name);
         }
-        for (final DefaultProduct p : products) {
-            if (p.getName().equals(name)) {
-                return p;
-            }
+        final DefaultProduct product = getIndex().productsByName.get(name);
+        if (product == null) {
+            throw new CatalogApiException(ErrorCode.CAT_NO_SUCH_PRODUCT, name);
         }
-        throw new CatalogApiException(ErrorCode.CAT_NO_SUCH_PRODUCT, name);
+        return product;
     }
 
     @Override
@@ -205,6 +218,11 @@ public class StandaloneCatalog extends ValidatingConfig<StandaloneCatalog> imple
             throw new CatalogApiException(ErrorCode.CAT_NO_SUCH_PHASE, name);
         }
 
+        final PlanPhase phase = getIndex().phasesByName.get(name);
+        if (phase != null) {
+            return phase;
+        }
+        // Not found: go through the plan to report the correct error
         final String planName = DefaultPlanPhase.planName(name);
         final Plan plan = findCurrentPlan(planName);
         return plan.findPhase(name);
@@ -217,7 +235,7 @@ public class StandaloneCatalog extends ValidatingConfig<StandaloneCatalog> imple
             throw new CatalogApiException(ErrorCode.CAT_PRICE_LIST_NOT_FOUND, name);
         }
 
-        return priceLists.findPriceListFrom(name);
+        return findCurrentPriceList(name);
     }
 
 
@@ -270,6 +288,7 @@ public class StandaloneCatalog extends ValidatingConfig<StandaloneCatalog> imple
     @Override
     public void initialize(final StandaloneCatalog catalog, final URI sourceURI) {
         catalogURI = sourceURI;
+        index = null;
         super.initialize(catalog, sourceURI);
         planRules.initialize(catalog, sourceURI);
         priceLists.initialize(catalog, sourceURI);
@@ -297,6 +316,7 @@ public class StandaloneCatalog extends ValidatingConfig<StandaloneCatalog> imple
 
     protected StandaloneCatalog setProducts(final DefaultProduct[] products) {
         this.products = products;
+        this.index = null;
         return this;
     }
 
@@ -312,6 +332,7 @@ public class StandaloneCatalog extends ValidatingConfig<StandaloneCatalog> imple
 
     protected StandaloneCatalog setPlans(final DefaultPlan[] plans) {
         this.plans = plans;
+        this.index = null;
         return this;
     }
 
@@ -337,6 +358,7 @@ public class StandaloneCatalog extends ValidatingConfig<StandaloneCatalog> imple
 
     protected StandaloneCatalog setPriceLists(final DefaultPriceListSet priceLists) {
         this.priceLists = priceLists;
+        this.index = null;
         return this;
     }
 
@@ -395,4 +417,99 @@ public class StandaloneCatalog extends ValidatingConfig<StandaloneCatalog> imple
 
         return availBasePlans;
     }
+
+    private Index getIndex() {
+        Index result = index;
+        if (result == null) {
+            // Concurrent builds are harmless, they all end up with the same content
+            result = new Index(this);
+            index = result;
+        }
+        return result;
+    }
+
+    /**
+     * Name based lookups (plans, phases, products, price lists, and plans per price list, product and billing period).
+     * <p/>
+     * The catalog is immutable once loaded, so this is computed once instead of scanning the arrays on each lookup.
+     * When several entries share a name, the first one wins, as with the scans.
+     */
+    private static final class Index {
+
+        private final Map<String, DefaultPlan> plansByName = new HashMap<String, DefaultPlan>();
+        private final Map<String, PlanPhase> phasesByName = new HashMap<String, PlanPhase>();
+        private final Map<String, DefaultProduct> productsByName = new HashMap<String, DefaultProduct>();
+        private final Map<String, DefaultPriceList> priceListsByName = new HashMap<String, DefaultPriceList>();
+        // Price list name -> product name -> billing period -> plan
+        private final Map<String, Map<String, Map<BillingPeriod, DefaultPlan>>> plansByPriceListProductAndPeriod = new HashMap<String, Map<String, Map<BillingPeriod, DefaultPlan>>>();
+
+        private Index(final StandaloneCatalog catalog) {
+            if (catalog.plans != null) {
+                for (final DefaultPlan plan : catalog.plans) {
+                    if (!plansByName.containsKey(plan.getName())) {
+                        plansByName.put(plan.getName(), plan);
+                    }
+                }
+                for (final DefaultPlan plan : plansByName.values()) {
+                    for (final PlanPhase phase : plan.getAllPhases()) {
+                        if (phase != null && !phasesByName.containsKey(phase.getName())) {
+                            phasesByName.put(phase.getName(), phase);
+                        }
+                    }
+                }
+            }
+
+            if (catalog.products != null) {
+                for (final DefaultProduct product : catalog.products) {
+                    if (!productsByName.containsKey(product.getName())) {
+                        productsByName.put(product.getName(), product);
+                    }
+                }
+            }
+
+            if (catalog.priceLists != null && catalog.priceLists.getDefaultPricelist() != null) {
+                final List<DefaultPriceList> allPriceLists = new ArrayList<DefaultPriceList>();
+                allPriceLists.add(catalog.priceLists.getDefaultPricelist());
+                for (final DefaultPriceList priceList : catalog.priceLists.getChildPriceLists()) {
+                    allPriceLists.add(priceList);
+                }
+
+                for (final DefaultPriceList priceList : allPriceLists) {
+                    if (priceListsByName.containsKey(priceList.getName())) {
+                        continue;
+                    }
+                    priceListsByName.put(priceList.getName(), priceList);
+
+                    final Map<String, Map<BillingPeriod, DefaultPlan>> plansByProductAndPeriod = new HashMap<String, Map<BillingPeriod, DefaultPlan>>();
+                    for (final DefaultProduct product : productsByName.values()) {
+                        final Map<BillingPeriod, DefaultPlan> plansByPeriod = new EnumMap<BillingPeriod, DefaultPlan>(BillingPeriod.class);
+                        for (final BillingPeriod period : BillingPeriod.values()) {
+                            // Same resolution as DefaultPriceListSet#getPlanFrom (falls back on the default price list)
+                            DefaultPlan plan = priceList.findPlan(product, period);
+                            if (plan == null) {
+                                plan = catalog.priceLists.getDefaultPricelist().findPlan(product, period);
+                            }
+                            if (plan != null) {
+                                plansByPeriod.put(period, plan);
+                            }
+                        }
+                        plansByProductAndPeriod.put(product.getName(), plansByPeriod);
+                    }
+                    plansByPriceListProductAndPeriod.put(priceList.getName(), plansByProductAndPeriod);
+                }
+            }
+        }
+
+        private DefaultPlan findPlan(final String priceListName, final String productName, final BillingPeriod period) {
+            if (priceListName == null || period == null) {
+                return null;
+            }
+            final Map<String, Map<BillingPeriod, DefaultPlan>> plansByProductAndPeriod = plansByPriceListProductAndPeriod.get(priceListName);
+            if (plansByProductAndPeriod == null) {
+                return null;
+            }
+            final Map<BillingPeriod, DefaultPlan> plansByPeriod = plansByProductAndPeriod.get(productName);
+            return plansByPeriod == null ? null : plansByPeriod.get(period);
+        }
+    }
 }
@@ -67,6 +67,9 @@ public class VersionedCatalog extends ValidatingConfig<StandaloneCatalog> implem
     @XmlElement(name = "catalogVersion", required = true)
     private final List<StandaloneCatalog> versions = new ArrayList<StandaloneCatalog>();
 
+    // Effective dates of the versions (same order), for the binary search in indexOfVersionForDate
+    private volatile long[] effectiveDates;
+
     public VersionedCatalog(final Clock clock) {
         this.clock = clock;
     }
@@ -78,23 +81,41 @@ public class VersionedCatalog extends ValidatingConfig<StandaloneCatalog> implem
         return versions.get(indexOfVersionForDate(date.toDate()));
     }
 
-    private List<StandaloneCatalog> versionsBeforeDate(final Date date) throws CatalogApiException {
-        final List<StandaloneCatalog> result = new ArrayList<StandaloneCatalog>();
-        final int index = indexOfVersionForDate(date);
-        for (int i = 0; i <= index; i++) {
-            result.add(versions.get(i));
+    // Index of the latest version effective strictly before the date
+    private int indexOfVersionForDate(final Date date) throws CatalogApiException {
+        final long[] dates = getEffectiveDates();
+        final long time = date.getTime();
+
+        int low = 0;
+        int high = dates.length - 1;
+        int result = -1;
+        while (low <= high) {
+            final int mid = (low + high) >>> 1;
+            if (dates[mid] < time) {
+                result = mid;
+                low = mid + 1;
+            } else {
+                high = mid - 1;
+            }
+        }
+
+        if (result < 0) {
+            throw new CatalogApiException(ErrorCode.CAT_NO_CATALOG_FOR_GIVEN_DATE, date.toString());
         }
         return result;
     }
 
-    private int indexOfVersionForDate(final Date date) throws CatalogApiException {
-        for (int i = versions.size() - 1; i >= 0; i--) {
-            final StandaloneCatalog c = versions.get(i);
-            if (c.getEffectiveDate().getTime() < date.getTime()) {
-                return i;
+    private long[] getEffectiveDates() {
+        long[] dates = effectiveDates;
+        // Versions can also be populated by JAXB, bypassing add()
+        if (dates == null || dates.length != versions.size()) {
+            dates = new long[versions.size()];
+            for (int i = 0; i < dates.length; i++) {
+                dates[i] = versions.get(i).getEffectiveDate().getTime();
             }
+            effectiveDates = dates;
         }
-        throw new CatalogApiException(ErrorCode.CAT_NO_CATALOG_FOR_GIVEN_DATE, date.toString());
+        return dates;
     }
 
     private class PlanRequestWrapper {
@@ -130,13 +151,10 @@ public class VersionedCatalog extends ValidatingConfig<StandaloneCatalog> implem
                           final DateTime requestedDate,
                           final DateTime subscriptionStartDate)
             throws CatalogApiException {
-        final List<StandaloneCatalog> catalogs = versionsBeforeDate(requestedDate.toDate());
-        if (catalogs.size() == 0) {
-            throw new CatalogApiException(ErrorCode.CAT_NO_CATALOG_FOR_GIVEN_DATE, requestedDate.toDate().toString());
-        }
+        final int lastIndex = indexOfVersionForDate(requestedDate.toDate());
 
-        for (int i = catalogs.size() - 1; i >= 0; i--) { // Working backwards to find the latest applicable plan
-            final StandaloneCatalog c = catalogs.get(i);
+        for (int i = lastIndex; i >= 0; i--) { // Working backwards to find the latest applicable plan
+            final StandaloneCatalog c = versions.get(i);
             Plan plan = null;
             try {
                 plan = wrapper.findPlan(c);
@@ -189,6 +207,7 @@ public class VersionedCatalog extends ValidatingConfig<StandaloneCatalog> implem
                 return c1.getEffectiveDate().compareTo(c2.getEffectiveDate());
             }
         });
+        effectiveDates = null;
     }
 
     public Iterator<StandaloneCatalog> iterator() {
@@ -21,21 +21,23 @@ import javax.inject.Inject;
 import org.killbill.billing.catalog.api.Catalog;
 import org.killbill.billing.catalog.api.CatalogService;
 import org.killbill.billing.catalog.api.CatalogUserApi;
+import org.killbill.billing.util.callcontext.InternalCallContextFactory;
 import org.killbill.billing.util.callcontext.TenantContext;
 
 public class DefaultCatalogUserApi implements CatalogUserApi {
 
     private final CatalogService catalogService;
+    private final InternalCallContextFactory internalCallContextFactory;
 
     @Inject
-    public DefaultCatalogUserApi(final CatalogService catalogService) {
+    public DefaultCatalogUserApi(final CatalogService catalogService, final InternalCallContextFactory internalCallContextFactory) {
         this.catalogService = catalogService;
+        this.internalCallContextFactory = internalCallContextFactory;
     }
 
     @Override
     public Catalog getCatalog(final String catalogName, final TenantContext context) {
-        // STEPH TODO this is  hack until we decides what do do exactly:
-        // Probably we want one catalog for tenant but but TBD
-        return catalogService.getFullCatalog();
+        // The catalog name is ignored: each tenant has (at most) one catalog
+        return catalogService.getFullCatalog(internalCallContextFactory.createInternalTenantContext(context));
     }
 }
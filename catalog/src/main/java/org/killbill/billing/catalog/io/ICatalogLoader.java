@@ -18,6 +18,8 @@
 
 package org.killbill.billing.catalog.io;
 
+import java.util.List;
+
 import org.killbill.billing.catalog.VersionedCatalog;
 import org.killbill.billing.platform.api.KillbillService.ServiceException;
 
@@ -25,4 +27,7 @@ public interface ICatalogLoader {
 
     public abstract VersionedCatalog load(String urlString)
             throws ServiceException;
+
+    public abstract VersionedCatalog load(List<String> catalogXMLs)
+            throws ServiceException;
 }
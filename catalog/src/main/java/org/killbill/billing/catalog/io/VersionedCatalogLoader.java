@@ -16,6 +16,8 @@
 
 package org.killbill.billing.catalog.io;
 
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
 import java.net.URI;
 import java.net.URISyntaxException;
 import java.net.URL;
@@ -82,6 +84,23 @@ public class VersionedCatalogLoader implements ICatalogLoader {
         }
     }
 
+    @Override
+    public VersionedCatalog load(final List<String> catalogXMLs) throws ServiceException {
+        try {
+            final VersionedCatalog result = new VersionedCatalog(clock);
+            for (final String catalogXML : catalogXMLs) {
+                final InputStream catalogStream = new ByteArrayInputStream(catalogXML.getBytes("UTF-8"));
+                // Catalogs uploaded for a tenant don't come from an actual location (the URI is only reported in validation errors)
+                final StandaloneCatalog catalog = XMLLoader.getObjectFromStream(null, catalogStream, StandaloneCatalog.class);
+                result.add(catalog);
+            }
+
+            return result;
+        } catch (Exception e) {
+            throw new ServiceException("Problem encountered loading catalog", e);
+        }
+    }
+
     protected List<URI> findXmlReferences(final String directoryContents, final URL url) throws URISyntaxException {
         if (url.getProtocol().equals(PROTOCOL_FOR_FILE)) {
             return findXmlFileReferences(directoryContents, url);
@@ -18,6 +18,7 @@
 
 package org.killbill.billing.catalog;
 
+import org.killbill.billing.callcontext.InternalTenantContext;
 import org.killbill.billing.catalog.api.Catalog;
 import org.killbill.billing.catalog.api.CatalogService;
 import org.killbill.billing.platform.api.KillbillConfigSource;
@@ -35,8 +36,11 @@ public class MockCatalogModule extends KillBillModule {
         final Catalog catalog = Mockito.mock(Catalog.class);
 
         final CatalogService catalogService = Mockito.mock(CatalogService.class);
-        Mockito.when(catalogService.getCurrentCatalog()).thenReturn(new MockCatalog());
+        final MockCatalog currentCatalog = new MockCatalog();
+        Mockito.when(catalogService.getCurrentCatalog()).thenReturn(currentCatalog);
+        Mockito.when(catalogService.getCurrentCatalog(Mockito.<InternalTenantContext>any())).thenReturn(currentCatalog);
         Mockito.when(catalogService.getFullCatalog()).thenReturn(catalog);
+        Mockito.when(catalogService.getFullCatalog(Mockito.<InternalTenantContext>any())).thenReturn(catalog);
         bind(CatalogService.class).toInstance(catalogService);
     }
 }
@@ -16,6 +16,7 @@
 
 package org.killbill.billing.catalog;
 
+import org.killbill.billing.callcontext.InternalTenantContext;
 import org.killbill.billing.catalog.api.Catalog;
 import org.killbill.billing.catalog.api.StaticCatalog;
 
@@ -52,5 +53,15 @@ public class MockCatalogService extends DefaultCatalogService {
         return catalog;
     }
 
+    @Override
+    public Catalog getFullCatalog(final InternalTenantContext context) {
+        return catalog;
+    }
+
+    @Override
+    public StaticCatalog getCurrentCatalog(final InternalTenantContext context) {
+        return catalog;
+    }
+
 
 }
@@ -18,13 +18,30 @@
 
 package org.killbill.billing.catalog;
 
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.killbill.billing.callcontext.InternalTenantContext;
 import org.killbill.billing.catalog.io.VersionedCatalogLoader;
 import org.killbill.billing.platform.api.KillbillService.ServiceException;
+import org.killbill.billing.tenant.api.TenantInternalApi;
+import org.killbill.billing.util.cache.Cachable.CacheType;
+import org.killbill.billing.util.cache.CacheController;
+import org.killbill.billing.util.cache.CacheControllerDispatcher;
+import org.killbill.billing.util.cache.CacheLoaderArgument;
+import org.killbill.billing.util.cache.TenantCatalogCacheLoader;
 import org.killbill.billing.util.config.CatalogConfig;
 import org.killbill.clock.DefaultClock;
+import org.mockito.Mockito;
 import org.testng.Assert;
 import org.testng.annotations.Test;
 
+import com.google.common.base.Charsets;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.io.Resources;
+
 public class TestCatalogService extends CatalogTestSuiteNoDB {
 
     @Test(groups = "fast")
@@ -54,4 +71,131 @@ public class TestCatalogService extends CatalogTestSuiteNoDB {
         Assert.assertNotNull(service.getFullCatalog());
         Assert.assertEquals(service.getFullCatalog().getCatalogName(), "Firearms");
     }
+
+    @Test(groups = "fast")
+    public void testTenantCatalogs() throws ServiceException, IOException {
+        final DefaultCatalogService service = new DefaultCatalogService(new CatalogConfig() {
+            @Override
+            public String getCatalogURI() {
+                return "file:src/test/resources/versionedCatalog";
+            }
+
+        }, new VersionedCatalogLoader(new DefaultClock()));
+        service.loadCatalog();
+
+        final InternalTenantContext tenantWithCatalog = new InternalTenantContext(2L, null);
+        final InternalTenantContext tenantWithoutCatalog = new InternalTenantContext(3L, null);
+        final TenantInternalApi tenantInternalApi = Mockito.mock(TenantInternalApi.class);
+        Mockito.when(tenantInternalApi.getTenantCatalogs(tenantWithCatalog)).thenReturn(ImmutableList.<String>of(Resources.toString(Resources.getResource("WeaponsHire.xml"), Charsets.UTF_8)));
+        Mockito.when(tenantInternalApi.getTenantCatalogs(tenantWithoutCatalog)).thenReturn(ImmutableList.<String>of());
+
+        final CacheController<Object, Object> tenantCatalogCache = new InMemoryCacheController(new TenantCatalogCacheLoader(null, null));
+        service.initializeTenantCatalogs(tenantInternalApi, new CacheControllerDispatcher(ImmutableMap.<CacheType, CacheController<Object, Object>>of(CacheType.TENANT_CATALOG, tenantCatalogCache)));
+
+        // Default tenant
+        Assert.assertEquals(service.getFullCatalog(new InternalTenantContext(0L, null)).getCatalogName(), "WeaponsHireSmall");
+
+        // Tenant catalogs are loaded once
+        Assert.assertEquals(service.getFullCatalog(tenantWithCatalog).getCatalogName(), "Firearms");
+        Assert.assertEquals(service.getCurrentCatalog(tenantWithCatalog).getCatalogName(), "Firearms");
+        Assert.assertEquals(service.getFullCatalog(tenantWithoutCatalog).getCatalogName(), "WeaponsHireSmall");
+        Assert.assertEquals(service.getFullCatalog(tenantWithoutCatalog).getCatalogName(), "WeaponsHireSmall");
+        Mockito.verify(tenantInternalApi, Mockito.times(1)).getTenantCatalogs(tenantWithCatalog);
+        Mockito.verify(tenantInternalApi, Mockito.times(1)).getTenantCatalogs(tenantWithoutCatalog);
+
+        // New upload for the tenant
+        Mockito.when(tenantInternalApi.getTenantCatalogs(tenantWithCatalog)).thenReturn(ImmutableList.<String>of(Resources.toString(Resources.getResource("WeaponsHireSmall.xml"), Charsets.UTF_8)));
+        tenantCatalogCache.remove(tenantWithCatalog.getTenantRecordId());
+        Assert.assertEquals(service.getFullCatalog(tenantWithCatalog).getCatalogName(), "WeaponsHireSmall");
+        Mockito.verify(tenantInternalApi, Mockito.times(2)).getTenantCatalogs(tenantWithCatalog);
+    }
+
+    @Test(groups = "fast")
+    public void testValidateTenantCatalogs() throws ServiceException, IOException {
+        final DefaultCatalogService service = new DefaultCatalogService(new CatalogConfig() {
+            @Override
+            public String getCatalogURI() {
+                return "file:src/test/resources/versionedCatalog";
+            }
+
+        }, new VersionedCatalogLoader(new DefaultClock()));
+        final String weaponsHire = Resources.toString(Resources.getResource("WeaponsHire.xml"), Charsets.UTF_8);
+        final String weaponsHireSmall = Resources.toString(Resources.getResource("WeaponsHireSmall.xml"), Charsets.UTF_8);
+
+        service.validateTenantCatalogs(ImmutableList.<String>of(weaponsHire));
+
+        // Malformed upload
+        try {
+            service.validateTenantCatalogs(ImmutableList.<String>of(weaponsHire.substring(0, weaponsHire.length() / 2)));
+            Assert.fail("Malformed catalog should be rejected");
+        } catch (final ServiceException expected) {
+        }
+
+        // New version with another catalog name than the ones already uploaded
+        try {
+            service.validateTenantCatalogs(ImmutableList.<String>of(weaponsHire, weaponsHireSmall));
+            Assert.fail("Catalog versions with different names should be rejected");
+        } catch (final ServiceException expected) {
+        }
+    }
+
+    private static final class InMemoryCacheController implements CacheController<Object, Object> {
+
+        private final Map<Object, Object> entries = new HashMap<Object, Object>();
+        private final TenantCatalogCacheLoader cacheLoader;
+
+        private long hitCount;
+        private long missCount;
+
+        private InMemoryCacheController(final TenantCatalogCacheLoader cacheLoader) {
+            this.cacheLoader = cacheLoader;
+            this.cacheLoader.init();
+        }
+
+        @Override
+        public void add(final Object key, final Object value) {
+            entries.put(key, value);
+        }
+
+        @Override
+        public Object get(final Object key, final CacheLoaderArgument cacheLoaderArgument) {
+            if (entries.containsKey(key)) {
+                hitCount++;
+            } else {
+                missCount++;
+                entries.put(key, cacheLoader.load(key, cacheLoaderArgument));
+            }
+            return entries.get(key);
+        }
+
+        @Override
+        public boolean remove(final Object key) {
+            return entries.remove(key) != null;
+        }
+
+        @Override
+        public int size() {
+            return entries.size();
+        }
+
+        @Override
+        public void removeAll() {
+            entries.clear();
+        }
+
+        @Override
+        public CacheType getCacheType() {
+            return CacheType.TENANT_CATALOG;
+        }
+
+        @Override
+        public long getHitCount() {
+            return hitCount;
+        }
+
+        @Override
+        public long getMissCount() {
+            return missCount;
+        }
+    }
 }
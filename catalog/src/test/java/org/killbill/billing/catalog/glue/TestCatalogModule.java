@@ -20,6 +20,8 @@ package org.killbill.billing.catalog.glue;
 
 import org.killbill.billing.GuicyKillbillTestNoDBModule;
 import org.killbill.billing.platform.api.KillbillConfigSource;
+import org.killbill.billing.util.glue.CacheModule;
+import org.killbill.billing.util.glue.CallContextModule;
 
 public class TestCatalogModule extends CatalogModule {
 
@@ -31,5 +33,7 @@ public class TestCatalogModule extends CatalogModule {
     public void configure() {
         super.configure();
         install(new GuicyKillbillTestNoDBModule(configSource));
+        install(new CacheModule(configSource));
+        install(new CallContextModule(configSource));
     }
 }
@@ -18,6 +18,7 @@
 
 package org.killbill.billing.catalog.glue;
 
+import org.killbill.billing.mock.glue.MockNonEntityDaoModule;
 import org.killbill.billing.platform.api.KillbillConfigSource;
 
 public class TestCatalogModuleNoDB extends TestCatalogModule {
@@ -25,4 +26,11 @@ public class TestCatalogModuleNoDB extends TestCatalogModule {
     public TestCatalogModuleNoDB(final KillbillConfigSource configSource) {
         super(configSource);
     }
+
+    @Override
+    public void configure() {
+        super.configure();
+
+        install(new MockNonEntityDaoModule(configSource));
+    }
 }
@@ -466,8 +466,9 @@ public class DefaultEntitlement extends EntityBase implements Entitlement {
             return;
         }
 
-        // Get the latest state from disk (we just got cancelled or changed plan)
-        refresh(context);
+        // Get the latest state from disk (we just got cancelled or changed plan): only the subscriptions and the entitlement
+        // blocking states of the subscription can have changed, there is no need to reload everything
+        eventsStream = eventsStreamBuilder.refreshAfterUpdate(eventsStream, internalCallContext);
 
         // If cancellation/change occurs in the future, do nothing for now but add a notification entry.
         // This is to distinguish whether a future cancellation was requested by the user, or was a side effect
@@ -19,6 +19,7 @@ package org.killbill.billing.entitlement.api.svcs;
 import java.util.List;
 import java.util.UUID;
 
+import org.killbill.billing.callcontext.AccountContextSnapshot;
 import org.killbill.billing.callcontext.InternalCallContext;
 import org.killbill.billing.callcontext.InternalTenantContext;
 import org.killbill.clock.Clock;
@@ -56,6 +57,10 @@ public class DefaultInternalBlockingApi implements BlockingInternalApi {
 
     @Override
     public List<BlockingState> getBlockingAllForAccount(final InternalTenantContext context) {
+        final AccountContextSnapshot snapshot = context.getAccountContextSnapshot();
+        if (snapshot != null && snapshot.getBlockingStates() != null) {
+            return snapshot.getBlockingStates();
+        }
         return dao.getBlockingAllForAccountRecordId(context);
     }
 
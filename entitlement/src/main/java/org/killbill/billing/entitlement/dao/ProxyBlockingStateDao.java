@@ -16,8 +16,10 @@
 
 package org.killbill.billing.entitlement.dao;
 
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Comparator;
+import java.util.HashMap;
 import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
@@ -44,6 +46,7 @@ import org.killbill.billing.entitlement.api.BlockingStateType;
 import org.killbill.billing.entitlement.api.DefaultEntitlementApi;
 import org.killbill.billing.entitlement.api.EntitlementApiException;
 import org.killbill.billing.entitlement.engine.core.EventsStreamBuilder;
+import org.killbill.billing.subscription.api.AccountSubscriptions;
 import org.killbill.billing.subscription.api.SubscriptionBase;
 import org.killbill.billing.subscription.api.SubscriptionBaseInternalApi;
 import org.killbill.billing.util.cache.CacheControllerDispatcher;
@@ -260,21 +263,21 @@ public class ProxyBlockingStateDao implements BlockingStateDao {
     // See DefaultEntitlement#blockAddOnsIfRequired
     private List<BlockingState> addBlockingStatesNotOnDisk(final List<BlockingState> blockingStatesOnDisk,
                                                            final InternalTenantContext context) {
-        final Collection<BlockingState> blockingStatesOnDiskCopy = new LinkedList<BlockingState>(blockingStatesOnDisk);
+        final Collection<BlockingState> blockingStatesOnDiskCopy = new ArrayList<BlockingState>(blockingStatesOnDisk);
 
         // Find all base entitlements that we care about (for which we want to find future cancelled add-ons)
         final Iterable<SubscriptionBase> baseSubscriptionsToConsider;
         final Iterable<EventsStream> eventsStreams;
         try {
-            final Map<UUID, List<SubscriptionBase>> subscriptions = subscriptionInternalApi.getSubscriptionsForAccount(context);
-            baseSubscriptionsToConsider = Iterables.<SubscriptionBase>filter(Iterables.<SubscriptionBase>concat(subscriptions.values()),
+            final AccountSubscriptions accountSubscriptions = subscriptionInternalApi.getAccountSubscriptions(context);
+            baseSubscriptionsToConsider = Iterables.<SubscriptionBase>filter(Iterables.<SubscriptionBase>concat(accountSubscriptions.getSubscriptions().values()),
                                                                              new Predicate<SubscriptionBase>() {
                                                                                  @Override
                                                                                  public boolean apply(final SubscriptionBase input) {
                                                                                      return ProductCategory.BASE.equals(input.getCategory());
                                                                                  }
                                                                              });
-            eventsStreams = Iterables.<EventsStream>concat(eventsStreamBuilder.buildForAccount(subscriptions, context).getEventsStreams().values());
+            eventsStreams = Iterables.<EventsStream>concat(eventsStreamBuilder.buildForAccount(accountSubscriptions, context).getEventsStreams().values());
         } catch (EntitlementApiException e) {
             log.error("Error computing blocking states for addons for account record id " + context.getAccountRecordId(), e);
             throw new RuntimeException(e);
@@ -289,16 +292,26 @@ public class ProxyBlockingStateDao implements BlockingStateDao {
                                                              final Collection<BlockingState> blockingStatesOnDiskCopy,
                                                              final Iterable<SubscriptionBase> baseSubscriptionsToConsider,
                                                              final Iterable<EventsStream> eventsStreams) {
+        // Index the events streams and the entitlement cancellation states, to avoid scanning them for each base subscription
+        final Map<UUID, EventsStream> eventsStreamsBySubscriptionId = new HashMap<UUID, EventsStream>();
+        for (final EventsStream eventsStream : eventsStreams) {
+            eventsStreamsBySubscriptionId.put(eventsStream.getSubscriptionBase().getId(), eventsStream);
+        }
+        // Per blocked id, in the order of blockingStatesOnDiskCopy (the first one is the one to consider)
+        final Map<UUID, List<BlockingState>> cancellationBlockingStatesByBlockedId = new HashMap<UUID, List<BlockingState>>();
+        for (final BlockingState blockingState : blockingStatesOnDiskCopy) {
+            indexEntitlementCancellationBlockingState(cancellationBlockingStatesByBlockedId, blockingState);
+        }
+        // Removals are applied at the end, to avoid scanning blockingStatesOnDiskCopy for each of them
+        final Map<BlockingState, Integer> blockingStatesToRemove = new HashMap<BlockingState, Integer>();
+
         // Compute the blocking states not on disk for all base subscriptions
         final DateTime now = clock.getUTCNow();
         for (final SubscriptionBase baseSubscription : baseSubscriptionsToConsider) {
-            final EventsStream eventsStream = Iterables.<EventsStream>find(eventsStreams,
-                                                                           new Predicate<EventsStream>() {
-                                                                               @Override
-                                                                               public boolean apply(final EventsStream input) {
-                                                                                   return input.getSubscriptionBase().getId().equals(baseSubscription.getId());
-                                                                               }
-                                                                           });
+            final EventsStream eventsStream = eventsStreamsBySubscriptionId.get(baseSubscription.getId());
+            if (eventsStream == null) {
+                throw new IllegalStateException("No events stream for base subscription " + baseSubscription.getId());
+            }
 
             // First, check to see if the base entitlement is cancelled
             final Collection<BlockingState> blockingStatesNotOnDisk = eventsStream.computeAddonsBlockingStatesForFutureSubscriptionBaseEvents();
@@ -310,7 +323,7 @@ public class ProxyBlockingStateDao implements BlockingStateDao {
                 BlockingState cancellationBlockingStateOnDisk = null;
                 boolean overrideCancellationBlockingStateOnDisk = false;
                 if (isEntitlementCancellationBlockingState(blockingState)) {
-                    cancellationBlockingStateOnDisk = findEntitlementCancellationBlockingState(blockingState.getBlockedId(), blockingStatesOnDiskCopy);
+                    cancellationBlockingStateOnDisk = findEntitlementCancellationBlockingState(blockingState.getBlockedId(), cancellationBlockingStatesByBlockedId);
                     overrideCancellationBlockingStateOnDisk = cancellationBlockingStateOnDisk != null && blockingState.getEffectiveDate().isBefore(cancellationBlockingStateOnDisk.getEffectiveDate());
                 }
 
@@ -323,33 +336,63 @@ public class ProxyBlockingStateDao implements BlockingStateDao {
                             cancellationBlockingStateOnDisk == null || overrideCancellationBlockingStateOnDisk
                     )) {
                     final BlockingStateModelDao blockingStateModelDao = new BlockingStateModelDao(blockingState, now, now);
-                    blockingStatesOnDiskCopy.add(BlockingStateModelDao.toBlockingState(blockingStateModelDao));
+                    final BlockingState blockingStateToAdd = BlockingStateModelDao.toBlockingState(blockingStateModelDao);
+                    blockingStatesOnDiskCopy.add(blockingStateToAdd);
+                    indexEntitlementCancellationBlockingState(cancellationBlockingStatesByBlockedId, blockingStateToAdd);
 
                     if (overrideCancellationBlockingStateOnDisk) {
-                        blockingStatesOnDiskCopy.remove(cancellationBlockingStateOnDisk);
+                        cancellationBlockingStatesByBlockedId.get(cancellationBlockingStateOnDisk.getBlockedId()).remove(cancellationBlockingStateOnDisk);
+                        final Integer nbToRemove = blockingStatesToRemove.get(cancellationBlockingStateOnDisk);
+                        blockingStatesToRemove.put(cancellationBlockingStateOnDisk, nbToRemove == null ? 1 : nbToRemove + 1);
                     }
                 }
             }
         }
 
         // Return the sorted list
-        return sortedCopy(blockingStatesOnDiskCopy);
+        return sortedCopy(removeFirstOccurrences(blockingStatesOnDiskCopy, blockingStatesToRemove));
+    }
+
+    // Same as calling Collection#remove for each state (and as many times as specified), in a single pass
+    private static Iterable<BlockingState> removeFirstOccurrences(final Collection<BlockingState> blockingStates, final Map<BlockingState, Integer> blockingStatesToRemove) {
+        if (blockingStatesToRemove.isEmpty()) {
+            return blockingStates;
+        }
+
+        final List<BlockingState> result = new ArrayList<BlockingState>(blockingStates.size());
+        for (final BlockingState blockingState : blockingStates) {
+            final Integer nbToRemove = blockingStatesToRemove.get(blockingState);
+            if (nbToRemove == null) {
+                result.add(blockingState);
+            } else if (nbToRemove == 1) {
+                blockingStatesToRemove.remove(blockingState);
+            } else {
+                blockingStatesToRemove.put(blockingState, nbToRemove - 1);
+            }
+        }
+        return result;
+    }
+
+    private static void indexEntitlementCancellationBlockingState(final Map<UUID, List<BlockingState>> cancellationBlockingStatesByBlockedId, final BlockingState blockingState) {
+        if (blockingState.getBlockedId() == null || !isEntitlementCancellationBlockingState(blockingState)) {
+            return;
+        }
+
+        List<BlockingState> cancellationBlockingStates = cancellationBlockingStatesByBlockedId.get(blockingState.getBlockedId());
+        if (cancellationBlockingStates == null) {
+            cancellationBlockingStates = new LinkedList<BlockingState>();
+            cancellationBlockingStatesByBlockedId.put(blockingState.getBlockedId(), cancellationBlockingStates);
+        }
+        cancellationBlockingStates.add(blockingState);
     }
 
-    private BlockingState findEntitlementCancellationBlockingState(@Nullable final UUID blockedId, final Iterable<BlockingState> blockingStatesOnDisk) {
+    private static BlockingState findEntitlementCancellationBlockingState(@Nullable final UUID blockedId, final Map<UUID, List<BlockingState>> cancellationBlockingStatesByBlockedId) {
         if (blockedId == null) {
             return null;
         }
 
-        return Iterables.<BlockingState>tryFind(blockingStatesOnDisk,
-                                                new Predicate<BlockingState>() {
-                                                    @Override
-                                                    public boolean apply(final BlockingState input) {
-                                                        return input.getBlockedId().equals(blockedId) &&
-                                                               isEntitlementCancellationBlockingState(input);
-                                                    }
-                                                })
-                        .orNull();
+        final List<BlockingState> cancellationBlockingStates = cancellationBlockingStatesByBlockedId.get(blockedId);
+        return cancellationBlockingStates == null || cancellationBlockingStates.isEmpty() ? null : cancellationBlockingStates.get(0);
     }
 
     private static boolean isEntitlementCancellationBlockingState(final BlockingState blockingState) {
@@ -18,6 +18,7 @@ package org.killbill.billing.entitlement.engine.core;
 
 import java.util.Collection;
 import java.util.HashMap;
+import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.UUID;
@@ -40,6 +41,7 @@ import org.killbill.billing.entitlement.api.DefaultEntitlementApi;
 import org.killbill.billing.entitlement.api.Entitlement.EntitlementState;
 import org.killbill.billing.entitlement.block.BlockingChecker;
 import org.killbill.billing.entitlement.block.BlockingChecker.BlockingAggregator;
+import org.killbill.billing.entitlement.dao.ProxyBlockingStateDao;
 import org.killbill.billing.junction.DefaultBlockingState;
 import org.killbill.billing.subscription.api.SubscriptionBase;
 import org.killbill.billing.subscription.api.SubscriptionBaseTransitionType;
@@ -367,6 +369,34 @@ public class DefaultEventsStream implements EventsStream {
                                                                        });
     }
 
+    // Incremental refresh (see EventsStreamBuilder#refreshAfterUpdate): same account and bundle, but new subscriptions for the bundle
+    // and new entitlement blocking states for the subscription - all other blocking states are kept as-is
+    DefaultEventsStream refresh(@Nullable final SubscriptionBase newBaseSubscription,
+                                final SubscriptionBase newSubscription,
+                                final List<SubscriptionBase> newAllSubscriptionsForBundle,
+                                final Collection<BlockingState> newSubscriptionEntitlementStates,
+                                final DateTime newUtcNow) {
+        final Collection<BlockingState> newBlockingStates = new LinkedList<BlockingState>();
+        for (final BlockingState blockingState : blockingStates) {
+            if (!BlockingStateType.SUBSCRIPTION.equals(blockingState.getType()) ||
+                !EntitlementService.ENTITLEMENT_SERVICE_NAME.equals(blockingState.getService()) ||
+                !blockingState.getBlockedId().equals(subscription.getId())) {
+                newBlockingStates.add(blockingState);
+            }
+        }
+        newBlockingStates.addAll(newSubscriptionEntitlementStates);
+
+        return new DefaultEventsStream(account,
+                                       bundle,
+                                       ProxyBlockingStateDao.sortedCopy(newBlockingStates),
+                                       blockingChecker,
+                                       newBaseSubscription,
+                                       newSubscription,
+                                       newAllSubscriptionsForBundle,
+                                       internalTenantContext,
+                                       newUtcNow);
+    }
+
     private void setup() {
         computeEntitlementBlockingStates();
         computeBlockingAggregator();
@@ -38,6 +38,7 @@ import org.killbill.billing.callcontext.InternalTenantContext;
 import org.killbill.billing.catalog.api.ProductCategory;
 import org.killbill.clock.Clock;
 import org.killbill.billing.entitlement.AccountEventsStreams;
+import org.killbill.billing.entitlement.EntitlementService;
 import org.killbill.billing.entitlement.EventsStream;
 import org.killbill.billing.entitlement.api.BlockingState;
 import org.killbill.billing.entitlement.api.BlockingStateType;
@@ -47,6 +48,7 @@ import org.killbill.billing.entitlement.block.BlockingChecker;
 import org.killbill.billing.entitlement.dao.DefaultBlockingStateDao;
 import org.killbill.billing.entitlement.dao.OptimizedProxyBlockingStateDao;
 import org.killbill.billing.entitlement.dao.ProxyBlockingStateDao;
+import org.killbill.billing.subscription.api.AccountSubscriptions;
 import org.killbill.billing.subscription.api.SubscriptionBase;
 import org.killbill.billing.subscription.api.SubscriptionBaseInternalApi;
 import org.killbill.billing.subscription.api.user.SubscriptionBaseApiException;
@@ -92,6 +94,48 @@ public class EventsStreamBuilder {
         return buildForEntitlement(eventsStream.getEntitlementId(), tenantContext);
     }
 
+    // Cheaper version of refresh, after the caller wrote new subscription events and/or new entitlement blocking states
+    // for the subscription of that stream: the account, the bundle and the other blocking states are re-used, only
+    // the subscriptions of the bundle and the entitlement blocking states of the subscription are retrieved again
+    public EventsStream refreshAfterUpdate(final EventsStream eventsStream, final InternalTenantContext internalTenantContext) throws EntitlementApiException {
+        final SubscriptionBase previousBaseSubscription = eventsStream.getBasePlanSubscriptionBase();
+        if (!(eventsStream instanceof DefaultEventsStream) ||
+            (previousBaseSubscription != null && !previousBaseSubscription.getId().equals(eventsStream.getEntitlementId()))) {
+            // Blocking states for add-ons are partly computed from the base subscription (see ProxyBlockingStateDao): rebuild everything
+            return buildForEntitlement(eventsStream.getEntitlementId(), internalTenantContext);
+        }
+
+        final List<SubscriptionBase> allSubscriptionsForBundle = subscriptionInternalApi.getSubscriptionsForBundle(eventsStream.getBundleId(), internalTenantContext);
+        final SubscriptionBase subscription = Iterables.<SubscriptionBase>tryFind(allSubscriptionsForBundle,
+                                                                                  new Predicate<SubscriptionBase>() {
+                                                                                      @Override
+                                                                                      public boolean apply(final SubscriptionBase input) {
+                                                                                          return input.getId().equals(eventsStream.getEntitlementId());
+                                                                                      }
+                                                                                  }).orNull();
+        if (subscription == null) {
+            // Subscription moved to another bundle (e.g. transfer)
+            return buildForEntitlement(eventsStream.getEntitlementId(), internalTenantContext);
+        }
+        final SubscriptionBase baseSubscription = Iterables.<SubscriptionBase>tryFind(allSubscriptionsForBundle,
+                                                                                      new Predicate<SubscriptionBase>() {
+                                                                                          @Override
+                                                                                          public boolean apply(final SubscriptionBase input) {
+                                                                                              return ProductCategory.BASE.equals(input.getLastActiveProduct().getCategory());
+                                                                                          }
+                                                                                      }).orNull(); // null for standalone subscriptions
+        if (baseSubscription != null && !baseSubscription.getId().equals(subscription.getId())) {
+            return buildForEntitlement(eventsStream.getEntitlementId(), internalTenantContext);
+        }
+
+        final List<BlockingState> subscriptionEntitlementStates = defaultBlockingStateDao.getBlockingHistoryForService(subscription.getId(),
+                                                                                                                     BlockingStateType.SUBSCRIPTION,
+                                                                                                                     EntitlementService.ENTITLEMENT_SERVICE_NAME,
+                                                                                                                     internalTenantContext);
+
+        return ((DefaultEventsStream) eventsStream).refresh(baseSubscription, subscription, allSubscriptionsForBundle, subscriptionEntitlementStates, clock.getUTCNow());
+    }
+
     public EventsStream buildForBaseSubscription(final UUID bundleId, final TenantContext tenantContext) throws EntitlementApiException {
         final SubscriptionBase baseSubscription;
         try {
@@ -110,13 +154,15 @@ public class EventsStreamBuilder {
     }
 
     public AccountEventsStreams buildForAccount(final InternalTenantContext internalTenantContext) throws EntitlementApiException {
-        // Retrieve the subscriptions (map bundle id -> subscriptions)
-        final Map<UUID, List<SubscriptionBase>> subscriptions = subscriptionInternalApi.getSubscriptionsForAccount(internalTenantContext);
-        return buildForAccount(subscriptions, internalTenantContext);
+        // Retrieve the bundles and subscriptions (map bundle id -> subscriptions) in one go
+        final AccountSubscriptions accountSubscriptions = subscriptionInternalApi.getAccountSubscriptions(internalTenantContext);
+        return buildForAccount(accountSubscriptions, internalTenantContext);
     }
 
     // Special signature for ProxyBlockingStateDao to save a DAO call
-    public AccountEventsStreams buildForAccount(final Map<UUID, List<SubscriptionBase>> subscriptions, final InternalTenantContext internalTenantContext) throws EntitlementApiException {
+    public AccountEventsStreams buildForAccount(final AccountSubscriptions accountSubscriptions, final InternalTenantContext internalTenantContext) throws EntitlementApiException {
+        final Map<UUID, List<SubscriptionBase>> subscriptions = accountSubscriptions.getSubscriptions();
+
         // Retrieve the account
         final Account account;
         try {
@@ -130,11 +176,9 @@ public class EventsStreamBuilder {
             return new DefaultAccountEventsStreams(account);
         }
 
-        // Retrieve the bundles
-        final List<SubscriptionBaseBundle> bundles = subscriptionInternalApi.getBundlesForAccount(account.getId(), internalTenantContext);
         // Map bundle id -> bundles
         final Map<UUID, SubscriptionBaseBundle> bundlesPerId = new HashMap<UUID, SubscriptionBaseBundle>();
-        for (final SubscriptionBaseBundle bundle : bundles) {
+        for (final SubscriptionBaseBundle bundle : accountSubscriptions.getBundles()) {
             bundlesPerId.put(bundle.getId(), bundle);
         }
 
@@ -213,7 +257,7 @@ public class EventsStreamBuilder {
             }
         }
 
-        return new DefaultAccountEventsStreams(account, bundles, entitlementsPerBundle);
+        return new DefaultAccountEventsStreams(account, accountSubscriptions.getBundles(), entitlementsPerBundle);
     }
 
     public EventsStream buildForEntitlement(final UUID entitlementId, final InternalTenantContext internalTenantContext) throws EntitlementApiException {
@@ -136,6 +136,27 @@ public class TestEntitlementUtils extends EntitlementTestSuiteWithEmbeddedDB {
         checkBlockingStatesDAO(cancelledBaseEntitlement, cancelledAddOnEntitlement, baseEffectiveCancellationOrChangeDate, true);
     }
 
+    @Test(groups = "slow", description = "Verify the incremental refresh of an events stream is equivalent to a full rebuild")
+    public void testRefreshAfterUpdate() throws Exception {
+        final DefaultEventsStream eventsStream = (DefaultEventsStream) eventsStreamBuilder.buildForEntitlement(baseEntitlement.getId(), callContext);
+        Assert.assertFalse(eventsStream.isEntitlementFutureCancelled());
+
+        // Cancel the base plan (new subscription event and new entitlement blocking state)
+        baseEntitlement.cancelEntitlementWithPolicyOverrideBillingPolicy(EntitlementActionPolicy.END_OF_TERM, BillingActionPolicy.END_OF_TERM, callContext);
+        // No blocking event (EOT)
+        assertListenerStatus();
+
+        final DefaultEventsStream refreshedEventsStream = (DefaultEventsStream) eventsStreamBuilder.refreshAfterUpdate(eventsStream, internalCallContext);
+        final DefaultEventsStream rebuiltEventsStream = (DefaultEventsStream) eventsStreamBuilder.buildForEntitlement(baseEntitlement.getId(), callContext);
+        Assert.assertTrue(refreshedEventsStream.isEntitlementFutureCancelled());
+        Assert.assertEquals(refreshedEventsStream.getEntitlementState(), rebuiltEventsStream.getEntitlementState());
+        Assert.assertEquals(refreshedEventsStream.getEntitlementCancellationEvent().getId(), rebuiltEventsStream.getEntitlementCancellationEvent().getId());
+        Assert.assertEquals(refreshedEventsStream.getBlockingStates().size(), rebuiltEventsStream.getBlockingStates().size());
+        Assert.assertEquals(refreshedEventsStream.getSubscriptionBase().getFutureEndDate().compareTo(rebuiltEventsStream.getSubscriptionBase().getFutureEndDate()), 0);
+        Assert.assertEquals(refreshedEventsStream.computeAddonsBlockingStatesForFutureSubscriptionBaseEvents().size(),
+                            rebuiltEventsStream.computeAddonsBlockingStatesForFutureSubscriptionBaseEvents().size());
+    }
+
     @Test(groups = "slow", description = "Verify add-ons blocking states are not impacted for add-on IMM cancellations")
     public void testCancellationBaseEOTAddOnIMM() throws Exception {
         // Cancel the base plan
@@ -37,6 +37,7 @@ import org.killbill.billing.ObjectType;
 import org.killbill.billing.account.api.Account;
 import org.killbill.billing.account.api.AccountApiException;
 import org.killbill.billing.account.api.AccountInternalApi;
+import org.killbill.billing.callcontext.AccountContextSnapshot;
 import org.killbill.billing.callcontext.InternalCallContext;
 import org.killbill.billing.callcontext.InternalTenantContext;
 import org.killbill.billing.catalog.api.BillingMode;
@@ -55,6 +56,7 @@ import org.killbill.billing.invoice.api.InvoicePayment;
 import org.killbill.billing.invoice.api.user.DefaultInvoiceAdjustmentEvent;
 import org.killbill.billing.invoice.api.user.DefaultInvoiceCreationEvent;
 import org.killbill.billing.invoice.api.user.DefaultNullInvoiceEvent;
+import org.killbill.billing.invoice.dao.InvoiceBillingWatermarkModelDao;
 import org.killbill.billing.invoice.dao.InvoiceDao;
 import org.killbill.billing.invoice.dao.InvoiceItemModelDao;
 import org.killbill.billing.invoice.dao.InvoiceModelDao;
@@ -64,16 +66,20 @@ import org.killbill.billing.invoice.model.DefaultInvoice;
 import org.killbill.billing.invoice.model.FixedPriceInvoiceItem;
 import org.killbill.billing.invoice.model.RecurringInvoiceItem;
 import org.killbill.billing.invoice.plugin.api.InvoicePluginApi;
+import org.killbill.billing.junction.BillingEvent;
 import org.killbill.billing.junction.BillingEventSet;
 import org.killbill.billing.junction.BillingInternalApi;
+import org.killbill.billing.junction.BlockingInternalApi;
 import org.killbill.billing.osgi.api.OSGIServiceRegistration;
 import org.killbill.billing.payment.api.PluginProperty;
 import org.killbill.billing.subscription.api.SubscriptionBaseInternalApi;
 import org.killbill.billing.subscription.api.user.SubscriptionBaseApiException;
+import org.killbill.billing.tag.TagInternalApi;
 import org.killbill.billing.util.cache.Cachable.CacheType;
 import org.killbill.billing.util.cache.CacheControllerDispatcher;
 import org.killbill.billing.util.callcontext.CallContext;
 import org.killbill.billing.util.callcontext.TenantContext;
+import org.killbill.billing.util.config.InvoiceConfig;
 import org.killbill.billing.util.dao.NonEntityDao;
 import org.killbill.billing.util.globallocker.LockerType;
 import org.killbill.billing.util.timezone.DateAndTimeZoneContext;
@@ -87,10 +93,14 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Charsets;
 import com.google.common.base.Function;
 import com.google.common.base.Joiner;
 import com.google.common.collect.Collections2;
 import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Ordering;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
 import com.google.inject.Inject;
 
 public class InvoiceDispatcher {
@@ -102,6 +112,8 @@ public class InvoiceDispatcher {
     private final BillingInternalApi billingApi;
     private final AccountInternalApi accountApi;
     private final SubscriptionBaseInternalApi subscriptionApi;
+    private final TagInternalApi tagApi;
+    private final BlockingInternalApi blockingApi;
     private final InvoiceDao invoiceDao;
     private final NonEntityDao nonEntityDao;
     private final InvoiceNotifier invoiceNotifier;
@@ -110,22 +122,28 @@ public class InvoiceDispatcher {
     private final Clock clock;
     private final OSGIServiceRegistration<InvoicePluginApi> pluginRegistry;
     private final CacheControllerDispatcher controllerDispatcher;
+    private final InvoiceConfig invoiceConfig;
 
     @Inject
     public InvoiceDispatcher(final OSGIServiceRegistration<InvoicePluginApi> pluginRegistry,
                              final InvoiceGenerator generator, final AccountInternalApi accountApi,
                              final BillingInternalApi billingApi,
                              final SubscriptionBaseInternalApi SubscriptionApi,
+                             final TagInternalApi tagApi,
+                             final BlockingInternalApi blockingApi,
                              final InvoiceDao invoiceDao,
                              final NonEntityDao nonEntityDao,
                              final InvoiceNotifier invoiceNotifier,
                              final GlobalLocker locker,
                              final PersistentBus eventBus,
-                             final Clock clock, final CacheControllerDispatcher controllerDispatcher) {
+                             final Clock clock, final CacheControllerDispatcher controllerDispatcher,
+                             final InvoiceConfig invoiceConfig) {
         this.pluginRegistry = pluginRegistry;
         this.generator = generator;
         this.billingApi = billingApi;
         this.subscriptionApi = SubscriptionApi;
+        this.tagApi = tagApi;
+        this.blockingApi = blockingApi;
         this.accountApi = accountApi;
         this.invoiceDao = invoiceDao;
         this.nonEntityDao = nonEntityDao;
@@ -134,6 +152,7 @@ public class InvoiceDispatcher {
         this.eventBus = eventBus;
         this.clock = clock;
         this.controllerDispatcher = controllerDispatcher;
+        this.invoiceConfig = invoiceConfig;
     }
 
     public void processSubscription(final EffectiveSubscriptionInternalEvent transition,
@@ -180,17 +199,28 @@ public class InvoiceDispatcher {
                                            final boolean dryRun, final InternalCallContext context) throws InvoiceApiException {
         try {
 
+            // Load the account, its tags, bundles and blocking states once, instead of letting each module reload them
+            final InternalCallContext contextWithSnapshot = new InternalCallContext(context, loadAccountContextSnapshot(accountId, context));
+
             // Make sure to first set the BCD if needed then get the account object (to have the BCD set)
-            final BillingEventSet billingEvents = billingApi.getBillingEventsForAccountAndUpdateAccountBCD(accountId, context);
+            final BillingEventSet billingEvents = billingApi.getBillingEventsForAccountAndUpdateAccountBCD(accountId, contextWithSnapshot);
 
+            // Not from the snapshot, which doesn't see the BCD update
             final Account account = accountApi.getAccountById(accountId, context);
             final DateAndTimeZoneContext dateAndTimeZoneContext = billingEvents.iterator().hasNext() ?
                                                                   new DateAndTimeZoneContext(billingEvents.iterator().next().getEffectiveDate(), account.getTimeZone(), clock) :
                                                                   null;
 
+            final LocalDate targetDate = dateAndTimeZoneContext != null ? dateAndTimeZoneContext.computeTargetDate(targetDateTime) : null;
+
+            LocalDate billedThroughDate = null;
             List<Invoice> invoices = new ArrayList<Invoice>();
             if (!billingEvents.isAccountAutoInvoiceOff()) {
-                invoices = ImmutableList.<Invoice>copyOf(Collections2.transform(invoiceDao.getInvoicesByAccount(context),
+                billedThroughDate = getBilledThroughDateForIncrementalInvoicing(billingEvents, targetDate, context);
+                final List<InvoiceModelDao> existingInvoices = billedThroughDate != null ?
+                                                               invoiceDao.getInvoicesByAccountPastBilledThroughDate(billedThroughDate, context) :
+                                                               invoiceDao.getInvoicesByAccount(context);
+                invoices = ImmutableList.<Invoice>copyOf(Collections2.transform(existingInvoices,
                                                                                 new Function<InvoiceModelDao, Invoice>() {
                                                                                     @Override
                                                                                     public Invoice apply(final InvoiceModelDao input) {
@@ -201,12 +231,19 @@ public class InvoiceDispatcher {
 
             final Currency targetCurrency = account.getCurrency();
 
-            final LocalDate targetDate = dateAndTimeZoneContext != null ? dateAndTimeZoneContext.computeTargetDate(targetDateTime) : null;
-            final Invoice invoice = targetDate != null ? generator.generateInvoice(accountId, billingEvents, invoices, targetDate, targetCurrency, context) : null;
+            final Invoice invoice = targetDate != null ? generator.generateInvoice(accountId, billingEvents, invoices, billedThroughDate, targetDate, targetCurrency, context) : null;
+
+            // Everything up to the target date is reconciled by this run
+            final String billingEventsHash = !dryRun && targetDate != null && isIncrementalInvoicingEligible(billingEvents) ? computeBillingEventsHash(billingEvents, targetDate) : null;
+
             boolean isRealInvoiceWithItems = false;
             if (invoice == null) {
                 log.info("Generated null invoice for accountId {} and targetDate {} (targetDateTime {})", new Object[]{accountId, targetDate, targetDateTime});
                 if (!dryRun) {
+                    if (billingEventsHash != null) {
+                        invoiceDao.setBillingWatermark(targetDate, billingEventsHash, context);
+                    }
+
                     final BusInternalEvent event = new DefaultNullInvoiceEvent(accountId, clock.getUTCToday(),
                                                                                context.getAccountRecordId(), context.getTenantRecordId(), context.getUserToken());
                     postEvent(event, accountId, context);
@@ -259,7 +296,8 @@ public class InvoiceDispatcher {
                                                                                                                                             }));
 
                     final Map<UUID, List<DateTime>> callbackDateTimePerSubscriptions = createNextFutureNotificationDate(invoiceItemModelDaos, billingEvents.getUsages(), dateAndTimeZoneContext);
-                    invoiceDao.createInvoice(invoiceModelDao, invoiceItemModelDaos, isRealInvoiceWithItems, callbackDateTimePerSubscriptions, context);
+                    invoiceDao.createInvoice(invoiceModelDao, invoiceItemModelDaos, isRealInvoiceWithItems, callbackDateTimePerSubscriptions,
+                                             billingEventsHash != null ? targetDate : null, billingEventsHash, context);
 
                     final List<InvoiceItem> fixedPriceInvoiceItems = invoice.getInvoiceItems(FixedPriceInvoiceItem.class);
                     final List<InvoiceItem> recurringInvoiceItems = invoice.getInvoiceItems(RecurringInvoiceItem.class);
@@ -296,6 +334,67 @@ public class InvoiceDispatcher {
         }
     }
 
+    private AccountContextSnapshot loadAccountContextSnapshot(final UUID accountId, final InternalCallContext context) throws AccountApiException {
+        final Account account = accountApi.getAccountById(accountId, context);
+        return new AccountContextSnapshot(account,
+                                          tagApi.getTagsForAccount(false, context),
+                                          subscriptionApi.getBundlesForAccount(accountId, context),
+                                          blockingApi.getBlockingAllForAccount(context));
+    }
+
+    private LocalDate getBilledThroughDateForIncrementalInvoicing(final BillingEventSet billingEvents, @Nullable final LocalDate targetDate, final InternalCallContext context) {
+        if (targetDate == null || !isIncrementalInvoicingEligible(billingEvents)) {
+            return null;
+        }
+
+        final InvoiceBillingWatermarkModelDao watermark = invoiceDao.getValidBillingWatermark(context);
+        if (watermark == null || targetDate.isBefore(watermark.getBilledThroughDate())) {
+            return null;
+        }
+
+        // Billing events changed behind the watermark (backdated change, blocking state, auto_invoice_off tag, ...): we need a full replay to repair
+        if (!watermark.getBillingEventsHash().equals(computeBillingEventsHash(billingEvents, watermark.getBilledThroughDate()))) {
+            log.info("Billing events changed before billed-through date {} for accountRecordId {}, reverting to full invoice generation",
+                     watermark.getBilledThroughDate(), context.getAccountRecordId());
+            return null;
+        }
+
+        return watermark.getBilledThroughDate();
+    }
+
+    private boolean isIncrementalInvoicingEligible(final BillingEventSet billingEvents) {
+        // Usage items aren't covered by the watermark
+        return invoiceConfig.isIncrementalInvoicingEnabled() &&
+               !billingEvents.isAccountAutoInvoiceOff() &&
+               billingEvents.getUsages().isEmpty();
+    }
+
+    @VisibleForTesting
+    String computeBillingEventsHash(final BillingEventSet billingEvents, final LocalDate billedThroughDate) {
+        final Hasher hasher = Hashing.sha1().newHasher();
+        for (final BillingEvent event : billingEvents) {
+            if (!new LocalDate(event.getEffectiveDate(), event.getTimeZone()).isBefore(billedThroughDate)) {
+                continue;
+            }
+
+            // Note: the total ordering isn't stable across runs for blocking events, so it isn't part of the hash
+            hasher.putString(event.getSubscription().getId().toString(), Charsets.UTF_8)
+                  .putLong(event.getEffectiveDate().getMillis())
+                  .putString(String.valueOf(event.getTransitionType()), Charsets.UTF_8)
+                  .putString(event.getPlan().getName(), Charsets.UTF_8)
+                  .putString(event.getPlanPhase().getName(), Charsets.UTF_8)
+                  .putString(String.valueOf(event.getBillingPeriod()), Charsets.UTF_8)
+                  .putInt(event.getBillCycleDayLocal())
+                  .putString(String.valueOf(event.getFixedPrice()), Charsets.UTF_8)
+                  .putString(String.valueOf(event.getRecurringPrice()), Charsets.UTF_8)
+                  .putString(String.valueOf(event.getCurrency()), Charsets.UTF_8);
+        }
+        for (final UUID subscriptionId : Ordering.<UUID>natural().sortedCopy(billingEvents.getSubscriptionIdsWithAutoInvoiceOff())) {
+            hasher.putString(subscriptionId.toString(), Charsets.UTF_8);
+        }
+        return hasher.hash().toString();
+    }
+
     private TenantContext buildTenantContext(final InternalTenantContext context) {
         return context.toTenantContext(nonEntityDao.retrieveIdFromObject(context.getTenantRecordId(), ObjectType.TENANT, controllerDispatcher.getCacheController(CacheType.OBJECT_ID)));
     }
@@ -56,6 +56,7 @@ import org.killbill.billing.util.timezone.DateAndTimeZoneContext;
 import com.google.common.base.Function;
 import com.google.common.base.Predicate;
 import com.google.common.collect.Collections2;
+import com.google.common.collect.ImmutableList;
 import com.google.common.collect.Iterables;
 
 public class DefaultInvoiceInternalApi implements InvoiceInternalApi {
@@ -108,6 +109,18 @@ public class DefaultInvoiceInternalApi implements InvoiceInternalApi {
         dao.notifyOfPayment(new InvoicePaymentModelDao(invoicePayment), context);
     }
 
+    @Override
+    public List<InvoicePayment> notifyOfPaymentForUnpaidInvoices(final UUID accountId, final LocalDate upToDate, final BigDecimal amount, final Currency currency, final Currency processedCurrency,
+                                                                 final UUID paymentId, final DateTime paymentDate, final InternalCallContext context) throws InvoiceApiException {
+        final List<InvoicePaymentModelDao> invoicePayments = dao.notifyOfPaymentForUnpaidInvoices(accountId, upToDate, amount, currency, processedCurrency, paymentId, paymentDate, context);
+        return ImmutableList.<InvoicePayment>copyOf(Collections2.transform(invoicePayments, new Function<InvoicePaymentModelDao, InvoicePayment>() {
+            @Override
+            public InvoicePayment apply(final InvoicePaymentModelDao input) {
+                return new DefaultInvoicePayment(input);
+            }
+        }));
+    }
+
     @Override
     public InvoicePayment getInvoicePaymentForAttempt(final UUID paymentId, final InternalTenantContext context) throws InvoiceApiException {
         return getInvoicePayment(paymentId, InvoicePaymentType.ATTEMPT, context);
@@ -157,6 +170,7 @@ public class DefaultInvoiceInternalApi implements InvoiceInternalApi {
         if (invoicePayments.size() == 0) {
             return null;
         }
+        // Invoice payments are ordered by record id: for a payment made for several invoices, this is the one of the oldest invoice
         return Iterables.tryFind(invoicePayments, new Predicate<InvoicePayment>() {
             @Override
             public boolean apply(final InvoicePayment input) {
@@ -62,8 +62,10 @@ import com.google.common.base.Objects;
 import com.google.common.base.Preconditions;
 import com.google.common.base.Predicate;
 import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.Iterables;
 import com.google.common.collect.Iterators;
+import com.google.common.collect.Lists;
 import com.google.common.collect.Ordering;
 import com.google.inject.Inject;
 
@@ -152,6 +154,83 @@ public class DefaultInvoiceDao extends EntityDaoBase<InvoiceModelDao, Invoice, I
         });
     }
 
+    @Override
+    public List<InvoiceModelDao> getInvoicesByAccountPastBilledThroughDate(final LocalDate billedThroughDate, final InternalTenantContext context) {
+        return transactionalSqlDao.execute(new EntitySqlDaoTransactionWrapper<List<InvoiceModelDao>>() {
+            @Override
+            public List<InvoiceModelDao> inTransaction(final EntitySqlDaoWrapperFactory<EntitySqlDao> entitySqlDaoWrapperFactory) throws Exception {
+                final InvoiceItemSqlDao invoiceItemSqlDao = entitySqlDaoWrapperFactory.become(InvoiceItemSqlDao.class);
+                final List<InvoiceItemModelDao> invoiceItems = invoiceItemSqlDao.getInvoiceItemsPastBilledThroughDate(billedThroughDate.toDate(), context);
+
+                final Map<UUID, List<InvoiceItemModelDao>> invoiceItemsPerInvoiceId = new HashMap<UUID, List<InvoiceItemModelDao>>();
+                for (final InvoiceItemModelDao item : invoiceItems) {
+                    if (invoiceItemsPerInvoiceId.get(item.getInvoiceId()) == null) {
+                        invoiceItemsPerInvoiceId.put(item.getInvoiceId(), new LinkedList<InvoiceItemModelDao>());
+                    }
+                    invoiceItemsPerInvoiceId.get(item.getInvoiceId()).add(item);
+                }
+
+                // Invoices without any such item are still needed when their target date is past the watermark (see the target date adjustment in the generator)
+                final InvoiceSqlDao invoiceSqlDao = entitySqlDaoWrapperFactory.become(InvoiceSqlDao.class);
+                final List<InvoiceModelDao> invoices = ImmutableList.<InvoiceModelDao>copyOf(INVOICE_MODEL_DAO_ORDERING.sortedCopy(Iterables.<InvoiceModelDao>filter(invoiceSqlDao.getByAccountRecordId(context),
+                                                                                                                                                                     new Predicate<InvoiceModelDao>() {
+                                                                                                                                                                         @Override
+                                                                                                                                                                         public boolean apply(final InvoiceModelDao invoice) {
+                                                                                                                                                                             return !invoice.isMigrated() &&
+                                                                                                                                                                                    (invoice.getTargetDate().compareTo(billedThroughDate) >= 0 || invoiceItemsPerInvoiceId.get(invoice.getId()) != null);
+                                                                                                                                                                         }
+                                                                                                                                                                     })));
+                for (final InvoiceModelDao invoice : invoices) {
+                    invoice.addInvoiceItems(Objects.firstNonNull(invoiceItemsPerInvoiceId.get(invoice.getId()), ImmutableList.<InvoiceItemModelDao>of()));
+                }
+
+                return invoices;
+            }
+        });
+    }
+
+    @Override
+    public InvoiceBillingWatermarkModelDao getValidBillingWatermark(final InternalTenantContext context) {
+        return transactionalSqlDao.execute(new EntitySqlDaoTransactionWrapper<InvoiceBillingWatermarkModelDao>() {
+            @Override
+            public InvoiceBillingWatermarkModelDao inTransaction(final EntitySqlDaoWrapperFactory<EntitySqlDao> entitySqlDaoWrapperFactory) throws Exception {
+                final InvoiceBillingWatermarkModelDao watermark = entitySqlDaoWrapperFactory.become(InvoiceBillingWatermarkSqlDao.class).getWatermarkForAccount(context);
+                if (watermark == null) {
+                    return null;
+                }
+
+                // Any item written since (repair, adjustment, another node invoicing the account, ...) invalidates the watermark
+                final Long nbNewItems = entitySqlDaoWrapperFactory.become(InvoiceItemSqlDao.class).getGeneratedItemsCountAfterRecordId(watermark.getLastItemRecordId(), context);
+                if (nbNewItems != null && nbNewItems > 0) {
+                    log.info("Ignoring billed-through watermark {} for accountRecordId {}: {} invoice items were written since", watermark.getBilledThroughDate(), context.getAccountRecordId(), nbNewItems);
+                    return null;
+                }
+                return watermark;
+            }
+        });
+    }
+
+    @Override
+    public void setBillingWatermark(final LocalDate billedThroughDate, final String billingEventsHash, final InternalCallContext context) {
+        transactionalSqlDao.execute(new EntitySqlDaoTransactionWrapper<Void>() {
+            @Override
+            public Void inTransaction(final EntitySqlDaoWrapperFactory<EntitySqlDao> entitySqlDaoWrapperFactory) throws Exception {
+                setBillingWatermark(entitySqlDaoWrapperFactory, billedThroughDate, billingEventsHash, context);
+                return null;
+            }
+        });
+    }
+
+    // Must run in the transaction writing the items, so that the watermark always covers what the invoice run generated
+    private void setBillingWatermark(final EntitySqlDaoWrapperFactory<EntitySqlDao> entitySqlDaoWrapperFactory, final LocalDate billedThroughDate,
+                                     final String billingEventsHash, final InternalCallContext context) {
+        final Long lastItemRecordId = entitySqlDaoWrapperFactory.become(InvoiceItemSqlDao.class).getLastRecordIdForAccount(context);
+
+        final InvoiceBillingWatermarkSqlDao watermarkSqlDao = entitySqlDaoWrapperFactory.become(InvoiceBillingWatermarkSqlDao.class);
+        watermarkSqlDao.deleteWatermarkForAccount(context);
+        watermarkSqlDao.create(new InvoiceBillingWatermarkModelDao(context.getCreatedDate(), billedThroughDate, Objects.firstNonNull(lastItemRecordId, 0L), billingEventsHash), context);
+    }
+
     private List<InvoiceModelDao> getAllNonMigratedInvoicesByAccountAfterDate(final InvoiceSqlDao invoiceSqlDao, final LocalDate fromDate, final InternalTenantContext context) {
         return ImmutableList.<InvoiceModelDao>copyOf(INVOICE_MODEL_DAO_ORDERING.sortedCopy(Iterables.<InvoiceModelDao>filter(invoiceSqlDao.getByAccountRecordId(context),
                                                                                                                              new Predicate<InvoiceModelDao>() {
@@ -208,6 +287,7 @@ public class DefaultInvoiceDao extends EntityDaoBase<InvoiceModelDao, Invoice, I
     @Override
     public void createInvoice(final InvoiceModelDao invoice, final List<InvoiceItemModelDao> invoiceItems,
                               final boolean isRealInvoice, final Map<UUID, List<DateTime>> callbackDateTimePerSubscriptions,
+                              @Nullable final LocalDate billedThroughDate, @Nullable final String billingEventsHash,
                               final InternalCallContext context) {
         transactionalSqlDao.execute(new EntitySqlDaoTransactionWrapper<Void>() {
             @Override
@@ -232,6 +312,10 @@ public class DefaultInvoiceDao extends EntityDaoBase<InvoiceModelDao, Invoice, I
 
                     notifyOfFutureBillingEvents(entitySqlDaoWrapperFactory, invoice.getAccountId(), callbackDateTimePerSubscriptions, context.getUserToken());
                 }
+
+                if (billedThroughDate != null) {
+                    setBillingWatermark(entitySqlDaoWrapperFactory, billedThroughDate, billingEventsHash, context);
+                }
                 return null;
             }
         });
@@ -364,18 +448,16 @@ public class DefaultInvoiceDao extends EntityDaoBase<InvoiceModelDao, Invoice, I
             public InvoicePaymentModelDao inTransaction(final EntitySqlDaoWrapperFactory<EntitySqlDao> entitySqlDaoWrapperFactory) throws Exception {
                 final InvoicePaymentSqlDao transactional = entitySqlDaoWrapperFactory.become(InvoicePaymentSqlDao.class);
 
-                final InvoiceSqlDao transInvoiceDao = entitySqlDaoWrapperFactory.become(InvoiceSqlDao.class);
-
-                final List<InvoicePaymentModelDao> paymentsForId = transactional.getByPaymentId(paymentId.toString(), context);
-                final InvoicePaymentModelDao payment = Iterables.tryFind(paymentsForId, new Predicate<InvoicePaymentModelDao>() {
-                    @Override
-                    public boolean apply(final InvoicePaymentModelDao input) {
-                        return input.getType() == InvoicePaymentType.ATTEMPT;
-                    }
-                }).orNull();
-                if (payment == null) {
+                // A payment for all unpaid invoices has one attempt per invoice, oldest invoice first
+                final List<InvoicePaymentModelDao> attempts = getAttempts(transactional.getByPaymentId(paymentId.toString(), context));
+                if (attempts.isEmpty()) {
                     throw new InvoiceApiException(ErrorCode.INVOICE_PAYMENT_BY_ATTEMPT_NOT_FOUND, paymentId);
                 }
+                if (attempts.size() > 1 && !isInvoiceItemAdjusted) {
+                    return createRefundForInvoicePayments(attempts, requestedRefundAmount, isInvoiceAdjusted, transactionExternalKey, entitySqlDaoWrapperFactory, context);
+                }
+
+                final InvoicePaymentModelDao payment = attempts.size() == 1 ? attempts.get(0) : getAttemptForInvoiceItems(attempts, invoiceItemIdsWithNullAmounts.keySet(), entitySqlDaoWrapperFactory, context);
 
                 // Retrieve the amounts to adjust, if needed
                 final Map<UUID, BigDecimal> invoiceItemIdsWithAmounts = invoiceDaoHelper.computeItemAdjustments(payment.getInvoiceId().toString(),
@@ -397,42 +479,7 @@ public class DefaultInvoiceDao extends EntityDaoBase<InvoiceModelDao, Invoice, I
                                                                                  payment.getInvoiceId(), paymentId,
                                                                                  context.getCreatedDate(), requestedPositiveAmount.negate(),
                                                                                  payment.getCurrency(), payment.getProcessedCurrency(), transactionExternalKey, payment.getId());
-                transactional.create(refund, context);
-
-                // Retrieve invoice after the Refund
-                final InvoiceModelDao invoice = transInvoiceDao.getById(payment.getInvoiceId().toString(), context);
-                if (invoice != null) {
-                    invoiceDaoHelper.populateChildren(invoice, entitySqlDaoWrapperFactory, context);
-                } else {
-                    throw new IllegalStateException("Invoice shouldn't be null for payment " + payment.getId());
-                }
-
-                final BigDecimal invoiceBalanceAfterRefund = InvoiceModelDaoHelper.getBalance(invoice);
-                final InvoiceItemSqlDao transInvoiceItemDao = entitySqlDaoWrapperFactory.become(InvoiceItemSqlDao.class);
-
-                // At this point, we created the refund which made the invoice balance positive and applied any existing
-                // available CBA to that invoice.
-                // We now need to adjust the invoice and/or invoice items if needed and specified.
-                if (isInvoiceAdjusted && !isInvoiceItemAdjusted) {
-                    // Invoice adjustment
-                    final BigDecimal maxBalanceToAdjust = (invoiceBalanceAfterRefund.compareTo(BigDecimal.ZERO) <= 0) ? BigDecimal.ZERO : invoiceBalanceAfterRefund;
-                    final BigDecimal requestedPositiveAmountToAdjust = requestedPositiveAmount.compareTo(maxBalanceToAdjust) > 0 ? maxBalanceToAdjust : requestedPositiveAmount;
-                    if (requestedPositiveAmountToAdjust.compareTo(BigDecimal.ZERO) > 0) {
-                        final InvoiceItemModelDao adjItem = new InvoiceItemModelDao(context.getCreatedDate(), InvoiceItemType.REFUND_ADJ, invoice.getId(), invoice.getAccountId(),
-                                                                                    null, null, null, null, null, null, context.getCreatedDate().toLocalDate(), null,
-                                                                                    requestedPositiveAmountToAdjust.negate(), null, invoice.getCurrency(), null);
-                        transInvoiceItemDao.create(adjItem, context);
-                    }
-                } else if (isInvoiceAdjusted) {
-                    // Invoice item adjustment
-                    for (final UUID invoiceItemId : invoiceItemIdsWithAmounts.keySet()) {
-                        final BigDecimal adjAmount = invoiceItemIdsWithAmounts.get(invoiceItemId);
-                        final InvoiceItemModelDao item = invoiceDaoHelper.createAdjustmentItem(entitySqlDaoWrapperFactory, invoice.getId(), invoiceItemId, adjAmount,
-                                                                                               invoice.getCurrency(), context.getCreatedDate().toLocalDate(),
-                                                                                               context);
-                        transInvoiceItemDao.create(item, context);
-                    }
-                }
+                final InvoiceModelDao invoice = createRefundAndAdjustments(refund, isInvoiceAdjusted, isInvoiceItemAdjusted, invoiceItemIdsWithAmounts, entitySqlDaoWrapperFactory, context);
 
                 cbaDao.doCBAComplexity(invoice.getAccountId(), entitySqlDaoWrapperFactory, context);
 
@@ -444,6 +491,125 @@ public class DefaultInvoiceDao extends EntityDaoBase<InvoiceModelDao, Invoice, I
         });
     }
 
+    // Spread the refund of a payment made for several invoices across its invoice payments, most recent invoice first
+    private InvoicePaymentModelDao createRefundForInvoicePayments(final List<InvoicePaymentModelDao> attempts, @Nullable final BigDecimal requestedRefundAmount, final boolean isInvoiceAdjusted,
+                                                                  final String transactionExternalKey, final EntitySqlDaoWrapperFactory<EntitySqlDao> entitySqlDaoWrapperFactory,
+                                                                  final InternalCallContext context) throws InvoiceApiException {
+        // Check first if that refund already got inserted (see above)
+        final InvoicePaymentModelDao existingRefund = entitySqlDaoWrapperFactory.become(InvoicePaymentSqlDao.class).getPaymentsForCookieId(transactionExternalKey, context);
+        if (existingRefund != null) {
+            return existingRefund;
+        }
+
+        final Map<UUID, BigDecimal> remainingAmountsPaid = getRemainingAmountsPaid(attempts, entitySqlDaoWrapperFactory, context);
+        final BigDecimal maxRefundAmount = sum(remainingAmountsPaid.values());
+        final BigDecimal requestedPositiveAmount = requestedRefundAmount == null ? maxRefundAmount : requestedRefundAmount;
+        if (requestedPositiveAmount.compareTo(maxRefundAmount) > 0) {
+            throw new InvoiceApiException(ErrorCode.REFUND_AMOUNT_TOO_HIGH, requestedPositiveAmount, maxRefundAmount);
+        }
+
+        InvoicePaymentModelDao firstRefund = null;
+        final List<InvoiceModelDao> refundedInvoices = new LinkedList<InvoiceModelDao>();
+        BigDecimal remainingAmountToRefund = requestedPositiveAmount;
+        for (final InvoicePaymentModelDao payment : Lists.reverse(attempts)) {
+            if (remainingAmountToRefund.compareTo(BigDecimal.ZERO) <= 0) {
+                break;
+            }
+            final BigDecimal remainingAmountPaid = remainingAmountsPaid.get(payment.getId());
+            final BigDecimal refundAmount = remainingAmountToRefund.compareTo(remainingAmountPaid) < 0 ? remainingAmountToRefund : remainingAmountPaid;
+            if (refundAmount.compareTo(BigDecimal.ZERO) <= 0) {
+                continue;
+            }
+
+            final InvoicePaymentModelDao refund = new InvoicePaymentModelDao(UUID.randomUUID(), context.getCreatedDate(), InvoicePaymentType.REFUND,
+                                                                             payment.getInvoiceId(), payment.getPaymentId(),
+                                                                             context.getCreatedDate(), refundAmount.negate(),
+                                                                             payment.getCurrency(), payment.getProcessedCurrency(), transactionExternalKey, payment.getId());
+            refundedInvoices.add(createRefundAndAdjustments(refund, isInvoiceAdjusted, false, ImmutableMap.<UUID, BigDecimal>of(), entitySqlDaoWrapperFactory, context));
+            if (firstRefund == null) {
+                firstRefund = refund;
+            }
+            remainingAmountToRefund = remainingAmountToRefund.subtract(refundAmount);
+        }
+        if (firstRefund == null) {
+            throw new InvoiceApiException(ErrorCode.PAYMENT_REFUND_AMOUNT_NEGATIVE_OR_NULL, attempts.get(0).getPaymentId(), requestedPositiveAmount);
+        }
+
+        final UUID accountId = refundedInvoices.get(0).getAccountId();
+        cbaDao.doCBAComplexity(accountId, entitySqlDaoWrapperFactory, context);
+
+        // Notify the bus since the balance of the invoices changed
+        for (final InvoiceModelDao invoice : refundedInvoices) {
+            notifyBusOfInvoiceAdjustment(entitySqlDaoWrapperFactory, invoice.getId(), accountId, context.getUserToken(), context);
+        }
+
+        return firstRefund;
+    }
+
+    // Create the refund and adjust the invoice and/or invoice items if needed, and return the invoice as it was after the refund (before the adjustments)
+    private InvoiceModelDao createRefundAndAdjustments(final InvoicePaymentModelDao refund, final boolean isInvoiceAdjusted, final boolean isInvoiceItemAdjusted,
+                                                       final Map<UUID, BigDecimal> invoiceItemIdsWithAmounts, final EntitySqlDaoWrapperFactory<EntitySqlDao> entitySqlDaoWrapperFactory,
+                                                       final InternalCallContext context) throws InvoiceApiException {
+        entitySqlDaoWrapperFactory.become(InvoicePaymentSqlDao.class).create(refund, context);
+
+        // Retrieve invoice after the Refund
+        final InvoiceModelDao invoice = entitySqlDaoWrapperFactory.become(InvoiceSqlDao.class).getById(refund.getInvoiceId().toString(), context);
+        if (invoice != null) {
+            invoiceDaoHelper.populateChildren(invoice, entitySqlDaoWrapperFactory, context);
+        } else {
+            throw new IllegalStateException("Invoice shouldn't be null for payment " + refund.getLinkedInvoicePaymentId());
+        }
+
+        final BigDecimal invoiceBalanceAfterRefund = InvoiceModelDaoHelper.getBalance(invoice);
+        final InvoiceItemSqlDao transInvoiceItemDao = entitySqlDaoWrapperFactory.become(InvoiceItemSqlDao.class);
+
+        // At this point, we created the refund which made the invoice balance positive and applied any existing
+        // available CBA to that invoice.
+        // We now need to adjust the invoice and/or invoice items if needed and specified.
+        final BigDecimal requestedPositiveAmount = refund.getAmount().negate();
+        if (isInvoiceAdjusted && !isInvoiceItemAdjusted) {
+            // Invoice adjustment
+            final BigDecimal maxBalanceToAdjust = (invoiceBalanceAfterRefund.compareTo(BigDecimal.ZERO) <= 0) ? BigDecimal.ZERO : invoiceBalanceAfterRefund;
+            final BigDecimal requestedPositiveAmountToAdjust = requestedPositiveAmount.compareTo(maxBalanceToAdjust) > 0 ? maxBalanceToAdjust : requestedPositiveAmount;
+            if (requestedPositiveAmountToAdjust.compareTo(BigDecimal.ZERO) > 0) {
+                final InvoiceItemModelDao adjItem = new InvoiceItemModelDao(context.getCreatedDate(), InvoiceItemType.REFUND_ADJ, invoice.getId(), invoice.getAccountId(),
+                                                                            null, null, null, null, null, null, context.getCreatedDate().toLocalDate(), null,
+                                                                            requestedPositiveAmountToAdjust.negate(), null, invoice.getCurrency(), null);
+                transInvoiceItemDao.create(adjItem, context);
+            }
+        } else if (isInvoiceAdjusted) {
+            // Invoice item adjustment
+            for (final UUID invoiceItemId : invoiceItemIdsWithAmounts.keySet()) {
+                final BigDecimal adjAmount = invoiceItemIdsWithAmounts.get(invoiceItemId);
+                final InvoiceItemModelDao item = invoiceDaoHelper.createAdjustmentItem(entitySqlDaoWrapperFactory, invoice.getId(), invoiceItemId, adjAmount,
+                                                                                       invoice.getCurrency(), context.getCreatedDate().toLocalDate(),
+                                                                                       context);
+                transInvoiceItemDao.create(item, context);
+            }
+        }
+        return invoice;
+    }
+
+    // Invoice item adjustments of a payment made for several invoices apply to the invoice payment of the invoice the items belong to
+    private InvoicePaymentModelDao getAttemptForInvoiceItems(final List<InvoicePaymentModelDao> attempts, final Collection<UUID> invoiceItemIds,
+                                                             final EntitySqlDaoWrapperFactory<EntitySqlDao> entitySqlDaoWrapperFactory, final InternalTenantContext context) throws InvoiceApiException {
+        final UUID invoiceItemId = invoiceItemIds.iterator().next();
+        final InvoiceItemModelDao invoiceItem = entitySqlDaoWrapperFactory.become(InvoiceItemSqlDao.class).getById(invoiceItemId.toString(), context);
+        if (invoiceItem == null) {
+            throw new InvoiceApiException(ErrorCode.INVOICE_ITEM_NOT_FOUND, invoiceItemId);
+        }
+        final InvoicePaymentModelDao attempt = Iterables.tryFind(attempts, new Predicate<InvoicePaymentModelDao>() {
+            @Override
+            public boolean apply(final InvoicePaymentModelDao input) {
+                return input.getInvoiceId().equals(invoiceItem.getInvoiceId());
+            }
+        }).orNull();
+        if (attempt == null) {
+            throw new InvoiceApiException(ErrorCode.INVOICE_ITEM_NOT_FOUND, invoiceItemId);
+        }
+        return attempt;
+    }
+
     @Override
     public InvoicePaymentModelDao postChargeback(final UUID paymentId, final BigDecimal amount, final Currency currency, final InternalCallContext context) throws InvoiceApiException {
         return transactionalSqlDao.execute(InvoiceApiException.class, new EntitySqlDaoTransactionWrapper<InvoicePaymentModelDao>() {
@@ -451,22 +617,17 @@ public class DefaultInvoiceDao extends EntityDaoBase<InvoiceModelDao, Invoice, I
             public InvoicePaymentModelDao inTransaction(final EntitySqlDaoWrapperFactory<EntitySqlDao> entitySqlDaoWrapperFactory) throws Exception {
                 final InvoicePaymentSqlDao transactional = entitySqlDaoWrapperFactory.become(InvoicePaymentSqlDao.class);
 
-                final List<InvoicePaymentModelDao> invoicePayments = transactional.getByPaymentId(paymentId.toString(), context);
-                final InvoicePaymentModelDao invoicePayment = Iterables.tryFind(invoicePayments, new Predicate<InvoicePaymentModelDao>() {
-                    @Override
-                    public boolean apply(final InvoicePaymentModelDao input) {
-                        return input.getType() == InvoicePaymentType.ATTEMPT;
-                    }
-                }).orNull();
-                if (invoicePayment == null) {
+                // A payment for all unpaid invoices has one attempt per invoice, oldest invoice first
+                final List<InvoicePaymentModelDao> invoicePayments = getAttempts(transactional.getByPaymentId(paymentId.toString(), context));
+                if (invoicePayments.isEmpty()) {
                     throw new InvoiceApiException(ErrorCode.PAYMENT_NO_SUCH_PAYMENT, paymentId);
                 }
                 // We expect the code to correctly pass the account currency -- the payment code, more generic accept chargeBack in different currencies,
                 // but this is only for direct payment (no invoice)
-                Preconditions.checkArgument(invoicePayment.getCurrency() == currency);
+                Preconditions.checkArgument(invoicePayments.get(0).getCurrency() == currency);
 
-                final UUID invoicePaymentId = invoicePayment.getId();
-                final BigDecimal maxChargedBackAmount = invoiceDaoHelper.getRemainingAmountPaidFromTransaction(invoicePaymentId, entitySqlDaoWrapperFactory, context);
+                final Map<UUID, BigDecimal> remainingAmountsPaid = getRemainingAmountsPaid(invoicePayments, entitySqlDaoWrapperFactory, context);
+                final BigDecimal maxChargedBackAmount = sum(remainingAmountsPaid.values());
                 final BigDecimal requestedChargedBackAmount = (amount == null) ? maxChargedBackAmount : amount;
                 if (requestedChargedBackAmount.compareTo(BigDecimal.ZERO) <= 0) {
                     throw new InvoiceApiException(ErrorCode.CHARGE_BACK_AMOUNT_IS_NEGATIVE);
@@ -475,28 +636,72 @@ public class DefaultInvoiceDao extends EntityDaoBase<InvoiceModelDao, Invoice, I
                     throw new InvoiceApiException(ErrorCode.CHARGE_BACK_AMOUNT_TOO_HIGH, requestedChargedBackAmount, maxChargedBackAmount);
                 }
 
-                final InvoicePaymentModelDao payment = entitySqlDaoWrapperFactory.become(InvoicePaymentSqlDao.class).getById(invoicePaymentId.toString(), context);
-                if (payment == null) {
-                    throw new InvoiceApiException(ErrorCode.INVOICE_PAYMENT_NOT_FOUND, invoicePaymentId.toString());
+                // Spread the chargeback across the invoice payments, most recent invoice first
+                InvoicePaymentModelDao firstChargeBack = null;
+                final List<UUID> chargedBackInvoiceIds = new LinkedList<UUID>();
+                BigDecimal remainingAmountToChargeBack = requestedChargedBackAmount;
+                for (final InvoicePaymentModelDao payment : Lists.reverse(invoicePayments)) {
+                    if (remainingAmountToChargeBack.compareTo(BigDecimal.ZERO) <= 0) {
+                        break;
+                    }
+                    final BigDecimal remainingAmountPaid = remainingAmountsPaid.get(payment.getId());
+                    final BigDecimal chargedBackAmount = remainingAmountToChargeBack.compareTo(remainingAmountPaid) < 0 ? remainingAmountToChargeBack : remainingAmountPaid;
+                    if (chargedBackAmount.compareTo(BigDecimal.ZERO) <= 0) {
+                        continue;
+                    }
+
+                    final InvoicePaymentModelDao chargeBack = new InvoicePaymentModelDao(UUID.randomUUID(), context.getCreatedDate(), InvoicePaymentType.CHARGED_BACK,
+                                                                                         payment.getInvoiceId(), payment.getPaymentId(), context.getCreatedDate(),
+                                                                                         chargedBackAmount.negate(), payment.getCurrency(), payment.getProcessedCurrency(),
+                                                                                         null, payment.getId());
+                    transactional.create(chargeBack, context);
+                    chargedBackInvoiceIds.add(payment.getInvoiceId());
+                    if (firstChargeBack == null) {
+                        firstChargeBack = chargeBack;
+                    }
+                    remainingAmountToChargeBack = remainingAmountToChargeBack.subtract(chargedBackAmount);
                 }
-                final InvoicePaymentModelDao chargeBack = new InvoicePaymentModelDao(UUID.randomUUID(), context.getCreatedDate(), InvoicePaymentType.CHARGED_BACK,
-                                                                                     payment.getInvoiceId(), payment.getPaymentId(), context.getCreatedDate(),
-                                                                                     requestedChargedBackAmount.negate(), payment.getCurrency(), payment.getProcessedCurrency(),
-                                                                                     null, payment.getId());
-                transactional.create(chargeBack, context);
 
                 // Notify the bus since the balance of the invoice changed
-                final UUID accountId = transactional.getAccountIdFromInvoicePaymentId(chargeBack.getId().toString(), context);
+                final UUID accountId = transactional.getAccountIdFromInvoicePaymentId(firstChargeBack.getId().toString(), context);
 
                 cbaDao.doCBAComplexity(accountId, entitySqlDaoWrapperFactory, context);
 
-                notifyBusOfInvoiceAdjustment(entitySqlDaoWrapperFactory, payment.getInvoiceId(), accountId, context.getUserToken(), context);
+                for (final UUID invoiceId : chargedBackInvoiceIds) {
+                    notifyBusOfInvoiceAdjustment(entitySqlDaoWrapperFactory, invoiceId, accountId, context.getUserToken(), context);
+                }
 
-                return chargeBack;
+                return firstChargeBack;
             }
         });
     }
 
+    private List<InvoicePaymentModelDao> getAttempts(final Iterable<InvoicePaymentModelDao> invoicePayments) {
+        return ImmutableList.<InvoicePaymentModelDao>copyOf(Iterables.filter(invoicePayments, new Predicate<InvoicePaymentModelDao>() {
+            @Override
+            public boolean apply(final InvoicePaymentModelDao input) {
+                return input.getType() == InvoicePaymentType.ATTEMPT;
+            }
+        }));
+    }
+
+    private Map<UUID, BigDecimal> getRemainingAmountsPaid(final Iterable<InvoicePaymentModelDao> attempts, final EntitySqlDaoWrapperFactory<EntitySqlDao> entitySqlDaoWrapperFactory,
+                                                          final InternalTenantContext context) {
+        final Map<UUID, BigDecimal> remainingAmountsPaid = new HashMap<UUID, BigDecimal>();
+        for (final InvoicePaymentModelDao attempt : attempts) {
+            remainingAmountsPaid.put(attempt.getId(), invoiceDaoHelper.getRemainingAmountPaidFromTransaction(attempt.getId(), entitySqlDaoWrapperFactory, context));
+        }
+        return remainingAmountsPaid;
+    }
+
+    private static BigDecimal sum(final Iterable<BigDecimal> amounts) {
+        BigDecimal sum = BigDecimal.ZERO;
+        for (final BigDecimal amount : amounts) {
+            sum = sum.add(amount);
+        }
+        return sum;
+    }
+
     @Override
     public BigDecimal getRemainingAmountPaid(final UUID invoicePaymentId, final InternalTenantContext context) {
         return transactionalSqlDao.execute(new EntitySqlDaoTransactionWrapper<BigDecimal>() {
@@ -593,6 +798,51 @@ public class DefaultInvoiceDao extends EntityDaoBase<InvoiceModelDao, Invoice, I
         });
     }
 
+    @Override
+    public List<InvoicePaymentModelDao> notifyOfPaymentForUnpaidInvoices(final UUID accountId, final LocalDate upToDate, final BigDecimal amount, final Currency currency, final Currency processedCurrency,
+                                                                         final UUID paymentId, final DateTime paymentDate, final InternalCallContext context) {
+        return transactionalSqlDao.execute(new EntitySqlDaoTransactionWrapper<List<InvoicePaymentModelDao>>() {
+            @Override
+            public List<InvoicePaymentModelDao> inTransaction(final EntitySqlDaoWrapperFactory<EntitySqlDao> entitySqlDaoWrapperFactory) throws Exception {
+                final InvoicePaymentSqlDao transactional = entitySqlDaoWrapperFactory.become(InvoicePaymentSqlDao.class);
+                final List<InvoicePaymentModelDao> existingAttempts = ImmutableList.<InvoicePaymentModelDao>copyOf(Iterables.filter(transactional.getInvoicePayments(paymentId.toString(), context), new Predicate<InvoicePaymentModelDao>() {
+                    @Override
+                    public boolean apply(final InvoicePaymentModelDao input) {
+                        return input.getType() == InvoicePaymentType.ATTEMPT;
+                    }
+                }));
+                if (!existingAttempts.isEmpty()) {
+                    return existingAttempts;
+                }
+
+                // Oldest first (the sort is stable, so invoices with the same target date stay in creation order)
+                final List<InvoiceModelDao> unpaidInvoices = INVOICE_MODEL_DAO_ORDERING.sortedCopy(invoiceDaoHelper.getUnpaidInvoicesByAccountFromTransaction(accountId, entitySqlDaoWrapperFactory,
+                                                                                                                                                          upToDate, context));
+                final List<InvoicePaymentModelDao> invoicePayments = new LinkedList<InvoicePaymentModelDao>();
+                BigDecimal remainingAmount = amount;
+                for (int i = 0; i < unpaidInvoices.size() && remainingAmount.compareTo(BigDecimal.ZERO) > 0; i++) {
+                    final InvoiceModelDao invoice = unpaidInvoices.get(i);
+                    final BigDecimal balance = InvoiceModelDaoHelper.getBalance(invoice);
+                    // As for single invoice payments, anything above the balances (e.g. the balances went down since the payment was requested) goes to the last invoice
+                    final boolean isLastInvoice = i == unpaidInvoices.size() - 1;
+                    final BigDecimal invoiceAmount = isLastInvoice || remainingAmount.compareTo(balance) < 0 ? remainingAmount : balance;
+
+                    final InvoicePaymentModelDao invoicePayment = new InvoicePaymentModelDao(UUID.randomUUID(), context.getCreatedDate(), InvoicePaymentType.ATTEMPT,
+                                                                                             invoice.getId(), paymentId, paymentDate, invoiceAmount,
+                                                                                             currency, processedCurrency, null, null);
+                    transactional.create(invoicePayment, context);
+                    invoicePayments.add(invoicePayment);
+                    remainingAmount = remainingAmount.subtract(invoiceAmount);
+                }
+
+                if (remainingAmount.compareTo(BigDecimal.ZERO) > 0) {
+                    log.warn("Payment {} of {} couldn't be fully allocated, no unpaid invoice left for {}", paymentId, amount, remainingAmount);
+                }
+                return invoicePayments;
+            }
+        });
+    }
+
     @Override
     public List<InvoiceItemModelDao> insertExternalCharges(final UUID accountId, final LocalDate effectiveDate,
                                                            final Iterable<InvoiceItemModelDao> charges, final InternalCallContext context)
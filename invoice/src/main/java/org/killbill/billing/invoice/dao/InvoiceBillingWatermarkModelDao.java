@@ -0,0 +1,135 @@
+/*
+ * Copyright 2014 The Billing Project, LLC
+ *
+ * The Billing Project licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.killbill.billing.invoice.dao;
+
+import java.util.UUID;
+
+import org.joda.time.DateTime;
+import org.joda.time.LocalDate;
+import org.killbill.billing.util.dao.TableName;
+import org.killbill.billing.util.entity.Entity;
+import org.killbill.billing.util.entity.dao.EntityModelDao;
+import org.killbill.billing.util.entity.dao.EntityModelDaoBase;
+
+/**
+ * Per-account billed-through watermark, used for incremental invoice generation.
+ * <p/>
+ * Everything ending on or before the billedThroughDate was reconciled by a previous invoice run. The watermark
+ * is only valid as long as nothing changed behind it: the lastItemRecordId and billingEventsHash are used to detect that.
+ */
+public class InvoiceBillingWatermarkModelDao extends EntityModelDaoBase implements EntityModelDao<Entity> {
+
+    private LocalDate billedThroughDate;
+    private Long lastItemRecordId;
+    private String billingEventsHash;
+
+    public InvoiceBillingWatermarkModelDao() { /* For the DAO mapper */ }
+
+    public InvoiceBillingWatermarkModelDao(final UUID id, final DateTime createdDate, final DateTime updatedDate, final LocalDate billedThroughDate,
+                                           final Long lastItemRecordId, final String billingEventsHash) {
+        super(id, createdDate, updatedDate);
+        this.billedThroughDate = billedThroughDate;
+        this.lastItemRecordId = lastItemRecordId;
+        this.billingEventsHash = billingEventsHash;
+    }
+
+    public InvoiceBillingWatermarkModelDao(final DateTime createdDate, final LocalDate billedThroughDate, final Long lastItemRecordId, final String billingEventsHash) {
+        this(UUID.randomUUID(), createdDate, createdDate, billedThroughDate, lastItemRecordId, billingEventsHash);
+    }
+
+    public LocalDate getBilledThroughDate() {
+        return billedThroughDate;
+    }
+
+    public Long getLastItemRecordId() {
+        return lastItemRecordId;
+    }
+
+    public String getBillingEventsHash() {
+        return billingEventsHash;
+    }
+
+    public void setBilledThroughDate(final LocalDate billedThroughDate) {
+        this.billedThroughDate = billedThroughDate;
+    }
+
+    public void setLastItemRecordId(final Long lastItemRecordId) {
+        this.lastItemRecordId = lastItemRecordId;
+    }
+
+    public void setBillingEventsHash(final String billingEventsHash) {
+        this.billingEventsHash = billingEventsHash;
+    }
+
+    @Override
+    public String toString() {
+        final StringBuilder sb = new StringBuilder();
+        sb.append("InvoiceBillingWatermarkModelDao");
+        sb.append("{id=").append(id);
+        sb.append(", billedThroughDate=").append(billedThroughDate);
+        sb.append(", lastItemRecordId=").append(lastItemRecordId);
+        sb.append(", billingEventsHash='").append(billingEventsHash).append('\'');
+        sb.append('}');
+        return sb.toString();
+    }
+
+    @Override
+    public boolean equals(final Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (o == null || getClass() != o.getClass()) {
+            return false;
+        }
+        if (!super.equals(o)) {
+            return false;
+        }
+
+        final InvoiceBillingWatermarkModelDao that = (InvoiceBillingWatermarkModelDao) o;
+
+        if (billedThroughDate != null ? billedThroughDate.compareTo(that.billedThroughDate) != 0 : that.billedThroughDate != null) {
+            return false;
+        }
+        if (billingEventsHash != null ? !billingEventsHash.equals(that.billingEventsHash) : that.billingEventsHash != null) {
+            return false;
+        }
+        if (lastItemRecordId != null ? !lastItemRecordId.equals(that.lastItemRecordId) : that.lastItemRecordId != null) {
+            return false;
+        }
+
+        return true;
+    }
+
+    @Override
+    public int hashCode() {
+        int result = super.hashCode();
+        result = 31 * result + (billedThroughDate != null ? billedThroughDate.hashCode() : 0);
+        result = 31 * result + (lastItemRecordId != null ? lastItemRecordId.hashCode() : 0);
+        result = 31 * result + (billingEventsHash != null ? billingEventsHash.hashCode() : 0);
+        return result;
+    }
+
+    @Override
+    public TableName getTableName() {
+        return TableName.INVOICE_BILLING_WATERMARKS;
+    }
+
+    @Override
+    public TableName getHistoryTableName() {
+        return null;
+    }
+}
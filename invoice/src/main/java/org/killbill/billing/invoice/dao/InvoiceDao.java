@@ -35,8 +35,20 @@ import org.killbill.billing.util.entity.dao.EntityDao;
 
 public interface InvoiceDao extends EntityDao<InvoiceModelDao, Invoice, InvoiceApiException> {
 
+    /**
+     * Create an invoice (or only its items, if they adjust existing invoices).
+     *
+     * @param invoice                          the invoice
+     * @param invoiceItems                     the invoice items
+     * @param isRealInvoice                    whether the invoice itself needs to be created
+     * @param callbackDateTimePerSubscriptions the future notifications to schedule
+     * @param billedThroughDate                if not null, the billed-through watermark to record in the same transaction
+     * @param billingEventsHash                hash of the billing events behind billedThroughDate (required with billedThroughDate)
+     * @param context                          the call context
+     */
     void createInvoice(final InvoiceModelDao invoice, final List<InvoiceItemModelDao> invoiceItems,
                        final boolean isRealInvoice, final Map<UUID, List<DateTime>> callbackDateTimePerSubscriptions,
+                       @Nullable final LocalDate billedThroughDate, @Nullable final String billingEventsHash,
                        final InternalCallContext context);
 
     InvoiceModelDao getByNumber(Integer number, InternalTenantContext context) throws InvoiceApiException;
@@ -45,10 +57,38 @@ public interface InvoiceDao extends EntityDao<InvoiceModelDao, Invoice, InvoiceA
 
     List<InvoiceModelDao> getInvoicesByAccount(LocalDate fromDate, InternalTenantContext context);
 
+    /**
+     * Retrieve the invoices which can still be modified by an invoice run past the billed-through watermark.
+     * <p/>
+     * Only the recurring and fixed items ending after the watermark (and their adjustments) are populated, invoice payments are not.
+     *
+     * @param billedThroughDate the account billed-through watermark
+     * @param context           the tenant context
+     * @return the (partially populated) invoices
+     */
+    List<InvoiceModelDao> getInvoicesByAccountPastBilledThroughDate(LocalDate billedThroughDate, InternalTenantContext context);
+
+    /**
+     * @param context the tenant context
+     * @return the billed-through watermark for the account, null if there is none or if it was invalidated by invoice items written since
+     */
+    InvoiceBillingWatermarkModelDao getValidBillingWatermark(InternalTenantContext context);
+
+    /**
+     * Record the billed-through watermark for the account, after an invoice run which didn't generate anything
+     * (see createInvoice otherwise).
+     *
+     * @param billedThroughDate the target date of the invoice run
+     * @param billingEventsHash hash of the billing events behind billedThroughDate
+     * @param context           the call context
+     */
+    void setBillingWatermark(LocalDate billedThroughDate, String billingEventsHash, InternalCallContext context);
+
     List<InvoiceModelDao> getInvoicesBySubscription(UUID subscriptionId, InternalTenantContext context);
 
     public Pagination<InvoiceModelDao> searchInvoices(String searchKey, Long offset, Long limit, InternalTenantContext context);
 
+    // For a payment made for several invoices, this is the oldest invoice paid
     UUID getInvoiceIdByPaymentId(UUID paymentId, InternalTenantContext context);
 
     List<InvoicePaymentModelDao> getInvoicePayments(UUID paymentId, InternalTenantContext context);
@@ -64,10 +104,14 @@ public interface InvoiceDao extends EntityDao<InvoiceModelDao, Invoice, InvoiceA
     // Include migrated invoices
     List<InvoiceModelDao> getAllInvoicesByAccount(InternalTenantContext context);
 
+    // A chargeback of a payment made for several invoices is spread across its invoice payments, most recent invoice first
     InvoicePaymentModelDao postChargeback(UUID paymentId, BigDecimal amount, Currency currency, InternalCallContext context) throws InvoiceApiException;
 
     /**
      * Create a refund.
+     * <p/>
+     * The refund of a payment made for several invoices is spread across its invoice payments, most recent invoice first,
+     * unless invoice items are adjusted: it then applies to the invoice these items belong to.
      *
      * @param paymentId                 payment associated with that refund
      * @param amount                    amount to refund
@@ -75,7 +119,7 @@ public interface InvoiceDao extends EntityDao<InvoiceModelDao, Invoice, InvoiceA
      * @param invoiceItemIdsWithAmounts invoice item ids and associated amounts to adjust
      * @param transactionExternalKey    transaction refund externalKey
      * @param context                   the call callcontext
-     * @return the created invoice payment object associated with this refund
+     * @return the created invoice payment object associated with this refund (the first one, if it was spread across several invoices)
      * @throws InvoiceApiException
      */
     InvoicePaymentModelDao createRefund(UUID paymentId, BigDecimal amount, boolean isInvoiceAdjusted, Map<UUID, BigDecimal> invoiceItemIdsWithAmounts,
@@ -160,6 +204,24 @@ public interface InvoiceDao extends EntityDao<InvoiceModelDao, Invoice, InvoiceA
 
     void notifyOfPayment(InvoicePaymentModelDao invoicePayment, InternalCallContext context);
 
+    /**
+     * Allocate a single payment across the unpaid invoices of the account, oldest first, in one transaction.
+     * <p/>
+     * The call is idempotent: if the payment was already allocated, the existing invoice payments are returned.
+     *
+     * @param accountId         the account id
+     * @param upToDate          only invoices with a target date up to that date are paid
+     * @param amount            the amount paid
+     * @param currency          the currency of the invoices
+     * @param processedCurrency the currency of the payment
+     * @param paymentId         the payment id
+     * @param paymentDate       the payment date
+     * @param context           the call context
+     * @return the invoice payments, one per invoice paid
+     */
+    List<InvoicePaymentModelDao> notifyOfPaymentForUnpaidInvoices(UUID accountId, LocalDate upToDate, BigDecimal amount, Currency currency, Currency processedCurrency,
+                                                                  UUID paymentId, DateTime paymentDate, InternalCallContext context);
+
     /**
      * @param accountId the account for which we need to rebalance the CBA
      * @param context   the callcontext
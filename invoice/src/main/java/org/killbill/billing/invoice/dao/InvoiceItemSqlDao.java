@@ -16,6 +16,7 @@
 
 package org.killbill.billing.invoice.dao;
 
+import java.util.Date;
 import java.util.List;
 
 import org.skife.jdbi.v2.sqlobject.Bind;
@@ -37,4 +38,15 @@ public interface InvoiceItemSqlDao extends EntitySqlDao<InvoiceItemModelDao, Inv
     @SqlQuery
     List<InvoiceItemModelDao> getInvoiceItemsBySubscription(@Bind("subscriptionId") final String subscriptionId,
                                                             @BindBean final InternalTenantContext context);
+
+    @SqlQuery
+    List<InvoiceItemModelDao> getInvoiceItemsPastBilledThroughDate(@Bind("billedThroughDate") final Date billedThroughDate,
+                                                                   @BindBean final InternalTenantContext context);
+
+    @SqlQuery
+    Long getLastRecordIdForAccount(@BindBean final InternalTenantContext context);
+
+    @SqlQuery
+    Long getGeneratedItemsCountAfterRecordId(@Bind("recordId") final Long recordId,
+                                             @BindBean final InternalTenantContext context);
 }
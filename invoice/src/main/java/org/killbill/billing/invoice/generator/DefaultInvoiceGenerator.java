@@ -60,6 +60,7 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.google.common.base.Function;
+import com.google.common.base.Preconditions;
 import com.google.common.base.Predicate;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.Iterables;
@@ -93,9 +94,20 @@ public class DefaultInvoiceGenerator implements InvoiceGenerator {
                                    @Nullable final List<Invoice> existingInvoices,
                                    final LocalDate targetDate,
                                    final Currency targetCurrency, final InternalCallContext context) throws InvoiceApiException {
+        return generateInvoice(accountId, events, existingInvoices, null, targetDate, targetCurrency, context);
+    }
+
+    @Override
+    public Invoice generateInvoice(final UUID accountId, @Nullable final BillingEventSet events,
+                                   @Nullable final List<Invoice> existingInvoices,
+                                   @Nullable final LocalDate billedThroughDate,
+                                   final LocalDate targetDate,
+                                   final Currency targetCurrency, final InternalCallContext context) throws InvoiceApiException {
         if ((events == null) || (events.size() == 0) || events.isAccountAutoInvoiceOff()) {
             return null;
         }
+        // Usage items aren't tracked by the watermark
+        Preconditions.checkState(billedThroughDate == null || events.getUsages().isEmpty(), "Incremental invoicing isn't supported for usage billing");
 
         validateTargetDate(targetDate);
         final LocalDate adjustedTargetDate = adjustTargetDate(existingInvoices, targetDate);
@@ -103,7 +115,7 @@ public class DefaultInvoiceGenerator implements InvoiceGenerator {
         final Invoice invoice = new DefaultInvoice(accountId, clock.getUTCToday(), adjustedTargetDate, targetCurrency);
         final UUID invoiceId = invoice.getId();
 
-        final List<InvoiceItem> inAdvanceItems = generateInAdvanceInvoiceItems(accountId, invoiceId, events, existingInvoices, adjustedTargetDate, targetCurrency);
+        final List<InvoiceItem> inAdvanceItems = generateInAdvanceInvoiceItems(accountId, invoiceId, events, existingInvoices, billedThroughDate, adjustedTargetDate, targetCurrency);
         invoice.addInvoiceItems(inAdvanceItems);
 
         final List<InvoiceItem> usageItems = generateUsageInvoiceItems(invoiceId, events, existingInvoices, targetDate, context);
@@ -175,8 +187,8 @@ public class DefaultInvoiceGenerator implements InvoiceGenerator {
     }
 
     private List<InvoiceItem> generateInAdvanceInvoiceItems(final UUID accountId, final UUID invoiceId, final BillingEventSet eventSet,
-                                                            @Nullable final List<Invoice> existingInvoices, final LocalDate targetDate,
-                                                            final Currency targetCurrency) throws InvoiceApiException {
+                                                            @Nullable final List<Invoice> existingInvoices, @Nullable final LocalDate billedThroughDate,
+                                                            final LocalDate targetDate, final Currency targetCurrency) throws InvoiceApiException {
         final AccountItemTree accountItemTree = new AccountItemTree(accountId);
         if (existingInvoices != null) {
             for (final Invoice invoice : existingInvoices) {
@@ -191,7 +203,16 @@ public class DefaultInvoiceGenerator implements InvoiceGenerator {
         }
 
         // Generate list of proposed invoice items based on billing events from junction-- proposed items are ALL items since beginning of time
-        final List<InvoiceItem> proposedItems = generateInAdvanceInvoiceItems(invoiceId, accountId, eventSet, targetDate, targetCurrency);
+        // (or since the billed-through watermark, in which case they need to match what was retrieved for the existing items)
+        final List<InvoiceItem> proposedItems = generateInAdvanceInvoiceItems(invoiceId, accountId, eventSet, billedThroughDate, targetDate, targetCurrency);
+        if (billedThroughDate != null) {
+            final Iterator<InvoiceItem> proposedItemsIterator = proposedItems.iterator();
+            while (proposedItemsIterator.hasNext()) {
+                if (!isPastBilledThroughDate(proposedItemsIterator.next(), billedThroughDate)) {
+                    proposedItemsIterator.remove();
+                }
+            }
+        }
 
         accountItemTree.mergeWithProposedItems(proposedItems);
         return accountItemTree.getResultingItemList();
@@ -220,8 +241,14 @@ public class DefaultInvoiceGenerator implements InvoiceGenerator {
         return maxDate;
     }
 
+    // See pastBilledThroughDate in InvoiceItemSqlDao.sql.stg
+    private boolean isPastBilledThroughDate(final InvoiceItem item, final LocalDate billedThroughDate) {
+        return item.getEndDate() != null ? item.getEndDate().isAfter(billedThroughDate) : !item.getStartDate().isBefore(billedThroughDate);
+    }
+
     private List<InvoiceItem> generateInAdvanceInvoiceItems(final UUID invoiceId, final UUID accountId, final BillingEventSet events,
-                                                            final LocalDate targetDate, final Currency currency) throws InvoiceApiException {
+                                                            @Nullable final LocalDate billedThroughDate, final LocalDate targetDate,
+                                                            final Currency currency) throws InvoiceApiException {
         final List<InvoiceItem> items = new ArrayList<InvoiceItem>();
 
         if (events.size() == 0) {
@@ -242,6 +269,12 @@ public class DefaultInvoiceGenerator implements InvoiceGenerator {
             if (!events.getSubscriptionIdsWithAutoInvoiceOff().
                     contains(thisEvent.getSubscription().getId())) { // don't consider events for subscriptions that have auto_invoice_off
                 final BillingEvent adjustedNextEvent = (thisEvent.getSubscription().getId() == nextEvent.getSubscription().getId()) ? nextEvent : null;
+                // Events superseded before the watermark can only generate items behind it
+                if (billedThroughDate != null &&
+                    adjustedNextEvent != null &&
+                    new LocalDate(adjustedNextEvent.getEffectiveDate(), adjustedNextEvent.getTimeZone()).isBefore(billedThroughDate)) {
+                    continue;
+                }
                 items.addAll(processInAdvanceEvents(invoiceId, accountId, thisEvent, adjustedNextEvent, targetDate, currency, logStringBuilder));
             }
         }
@@ -33,4 +33,11 @@ public interface InvoiceGenerator {
 
     public Invoice generateInvoice(UUID accountId, @Nullable BillingEventSet events, @Nullable List<Invoice> existingInvoices,
                                    LocalDate targetDate, Currency targetCurrency, final InternalCallContext context) throws InvoiceApiException;
+
+    /**
+     * Same as above, but restricted to the items which can still change past the billed-through watermark: existing invoices
+     * are expected to only contain the recurring and fixed items ending after billedThroughDate (and their adjustments).
+     */
+    public Invoice generateInvoice(UUID accountId, @Nullable BillingEventSet events, @Nullable List<Invoice> existingInvoices, @Nullable LocalDate billedThroughDate,
+                                   LocalDate targetDate, Currency targetCurrency, final InternalCallContext context) throws InvoiceApiException;
 }
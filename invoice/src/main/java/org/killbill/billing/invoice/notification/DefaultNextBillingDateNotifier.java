@@ -49,6 +49,7 @@ public class DefaultNextBillingDateNotifier implements NextBillingDateNotifier {
     private final SubscriptionBaseInternalApi subscriptionApi;
     private final InvoiceListener listener;
     private final InternalCallContextFactory callContextFactory;
+    private final NextBillingDateBatchRunner batchRunner;
 
     private NotificationQueue nextBillingQueue;
 
@@ -57,12 +58,14 @@ public class DefaultNextBillingDateNotifier implements NextBillingDateNotifier {
                                           final InvoiceConfig config,
                                           final SubscriptionBaseInternalApi subscriptionApi,
                                           final InvoiceListener listener,
-                                          final InternalCallContextFactory callContextFactory) {
+                                          final InternalCallContextFactory callContextFactory,
+                                          final NextBillingDateBatchRunner batchRunner) {
         this.notificationQueueService = notificationQueueService;
         this.config = config;
         this.subscriptionApi = subscriptionApi;
         this.listener = listener;
         this.callContextFactory = callContextFactory;
+        this.batchRunner = batchRunner;
     }
 
     @Override
@@ -101,6 +104,7 @@ public class DefaultNextBillingDateNotifier implements NextBillingDateNotifier {
 
     @Override
     public void start() {
+        batchRunner.start();
         nextBillingQueue.startQueue();
     }
 
@@ -110,9 +114,14 @@ public class DefaultNextBillingDateNotifier implements NextBillingDateNotifier {
             nextBillingQueue.stopQueue();
             notificationQueueService.deleteNotificationQueue(nextBillingQueue.getServiceName(), nextBillingQueue.getQueueName());
         }
+        batchRunner.stop();
     }
 
     private void processEvent(final UUID subscriptionId, final DateTime eventDateTime, final UUID userToken, final Long accountRecordId, final Long tenantRecordId) {
-        listener.handleNextBillingDateEvent(subscriptionId, eventDateTime, userToken, accountRecordId, tenantRecordId);
+        if (batchRunner.isEnabled()) {
+            batchRunner.processNextBillingDate(subscriptionId, eventDateTime, userToken, accountRecordId, tenantRecordId);
+        } else {
+            listener.handleNextBillingDateEvent(subscriptionId, eventDateTime, userToken, accountRecordId, tenantRecordId);
+        }
     }
 }
@@ -0,0 +1,386 @@
+/*
+ * Copyright 2014 The Billing Project, LLC
+ *
+ * The Billing Project licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.killbill.billing.invoice.notification;
+
+import java.util.HashSet;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.joda.time.DateTime;
+import org.killbill.billing.account.api.AccountApiException;
+import org.killbill.billing.account.api.AccountInternalApi;
+import org.killbill.billing.callcontext.InternalCallContext;
+import org.killbill.billing.invoice.InvoiceDispatcher;
+import org.killbill.billing.invoice.api.InvoiceApiException;
+import org.killbill.billing.util.callcontext.CallOrigin;
+import org.killbill.billing.util.callcontext.InternalCallContextFactory;
+import org.killbill.billing.util.callcontext.UserType;
+import org.killbill.billing.util.config.InvoiceConfig;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.inject.Inject;
+
+/**
+ * Groups next billing date notifications by account and bounds the number of accounts invoiced concurrently.
+ * <p/>
+ * On busy billing days, most subscriptions of an account share the same billing date: instead of running the invoice
+ * dispatcher (account lock, billing events, existing invoices) once per subscription, notifications which arrive while
+ * a run is still pending for their account join that run, which then uses the latest target date of the group.
+ * The run is executed by the notification thread which created it, once one of the batch threads permits is available.
+ * The notification threads which joined it wait for it to complete, so notifications are only acknowledged once the
+ * account has been invoiced, and a failed run fails all of them (so that the notification queue retries them).
+ * <p/>
+ * Notifications are only grouped when the notification queue dispatches them concurrently, i.e. when
+ * org.killbill.notificationq.main.notification.nbThreads is greater than 1: with the default single notification thread,
+ * each notification is processed on its own. Similarly, at most that many accounts are invoiced concurrently, whatever
+ * org.killbill.invoice.batch.threads.nb is. Notifications are not pulled from the queue in bulk, and each run still
+ * looks up its own account.
+ */
+public class NextBillingDateBatchRunner {
+
+    private static final Logger log = LoggerFactory.getLogger(NextBillingDateBatchRunner.class);
+
+    private final InvoiceDispatcher dispatcher;
+    private final AccountInternalApi accountApi;
+    private final InternalCallContextFactory internalCallContextFactory;
+    private final InvoiceConfig invoiceConfig;
+
+    // Runs created which haven't started yet
+    private final ConcurrentMap<AccountRunKey, AccountRun> pendingRuns;
+    // Bounds the number of accounts invoiced concurrently
+    private final Semaphore runPermits;
+    private final BatchRunStats stats;
+
+    @Inject
+    public NextBillingDateBatchRunner(final InvoiceDispatcher dispatcher,
+                                      final AccountInternalApi accountApi,
+                                      final InternalCallContextFactory internalCallContextFactory,
+                                      final InvoiceConfig invoiceConfig) {
+        this.dispatcher = dispatcher;
+        this.accountApi = accountApi;
+        this.internalCallContextFactory = internalCallContextFactory;
+        this.invoiceConfig = invoiceConfig;
+        this.pendingRuns = new ConcurrentHashMap<AccountRunKey, AccountRun>();
+        this.runPermits = new Semaphore(Math.max(invoiceConfig.getBatchThreadNb(), 1), true);
+        this.stats = new BatchRunStats();
+    }
+
+    public boolean isEnabled() {
+        return invoiceConfig.getBatchThreadNb() > 0;
+    }
+
+    public void start() {
+        if (isEnabled()) {
+            log.info("Invoice batch runs enabled for up to {} accounts concurrently: notifications are only grouped by account " +
+                     "when org.killbill.notificationq.main.notification.nbThreads is greater than 1", invoiceConfig.getBatchThreadNb());
+        }
+        stats.reset(System.nanoTime());
+    }
+
+    public void stop() {
+        stats.report(System.nanoTime());
+    }
+
+    /**
+     * Process a next billing date notification, sharing the invoice run with the other notifications pending for the
+     * same account. The call returns once the account has been invoiced, and throws if the run failed.
+     */
+    public void processNextBillingDate(final UUID subscriptionId, final DateTime eventDateTime, final UUID userToken, final Long accountRecordId, final Long tenantRecordId) {
+        stats.notifications.incrementAndGet();
+
+        final AccountRunKey key = new AccountRunKey(tenantRecordId, accountRecordId);
+        while (true) {
+            final AccountRun pendingRun = pendingRuns.get(key);
+            if (pendingRun != null) {
+                if (pendingRun.join(subscriptionId, eventDateTime)) {
+                    stats.coalescedNotifications.incrementAndGet();
+                    pendingRun.awaitCompletion();
+                    return;
+                }
+                // Otherwise the run just started, retry with a new one
+                continue;
+            }
+
+            final AccountRun newRun = new AccountRun(key, userToken);
+            newRun.join(subscriptionId, eventDateTime);
+            if (pendingRuns.putIfAbsent(key, newRun) == null) {
+                newRun.run();
+                return;
+            }
+        }
+    }
+
+    @VisibleForTesting
+    BatchRunStats getStats() {
+        return stats;
+    }
+
+    private void processAccountRun(final AccountRun run, final DateTime targetDateTime, final int nbSubscriptions) {
+        final long startNanos = System.nanoTime();
+        stats.recordQueueWait(startNanos - run.getSubmittedNanos());
+
+        final AccountRunKey key = run.getKey();
+        boolean success = false;
+        try {
+            final InternalCallContext context = internalCallContextFactory.createInternalCallContext(key.getTenantRecordId(), key.getAccountRecordId(), "Next Billing Date", CallOrigin.INTERNAL, UserType.SYSTEM, run.getUserToken());
+            final UUID accountId = accountApi.getByRecordId(key.getAccountRecordId(), context);
+            final long accountLookupNanos = System.nanoTime();
+            stats.accountLookupNanos.addAndGet(accountLookupNanos - startNanos);
+
+            log.debug("Processing {} next billing date notification(s) for account {}, targetDate {}", new Object[]{nbSubscriptions, accountId, targetDateTime});
+            dispatcher.processAccount(accountId, targetDateTime, false, context);
+            stats.recordInvoiceGeneration(System.nanoTime() - accountLookupNanos);
+            success = true;
+        } catch (final AccountApiException e) {
+            // As in InvoiceListener, API errors aren't retried
+            log.error(e.getMessage());
+        } catch (final InvoiceApiException e) {
+            log.error(e.getMessage());
+        } finally {
+            if (!success) {
+                stats.failedRuns.incrementAndGet();
+            }
+            stats.runs.incrementAndGet();
+            stats.maybeReport(System.nanoTime(), TimeUnit.MILLISECONDS.toNanos(invoiceConfig.getBatchReportRate().getMillis()));
+        }
+    }
+
+    private final class AccountRun {
+
+        private final AccountRunKey key;
+        private final UUID userToken;
+        private final long submittedNanos;
+        private final Set<UUID> subscriptionIds;
+        private final CountDownLatch completionLatch;
+
+        private DateTime targetDateTime;
+        private boolean started;
+        private volatile RuntimeException failure;
+
+        private AccountRun(final AccountRunKey key, final UUID userToken) {
+            this.key = key;
+            this.userToken = userToken;
+            this.submittedNanos = System.nanoTime();
+            this.subscriptionIds = new HashSet<UUID>();
+            this.completionLatch = new CountDownLatch(1);
+        }
+
+        public synchronized boolean join(final UUID subscriptionId, final DateTime eventDateTime) {
+            if (started) {
+                return false;
+            }
+            subscriptionIds.add(subscriptionId);
+            if (targetDateTime == null || eventDateTime.isAfter(targetDateTime)) {
+                targetDateTime = eventDateTime;
+            }
+            return true;
+        }
+
+        public void run() {
+            try {
+                // Other notifications for that account keep joining the run while it waits for a permit
+                runPermits.acquireUninterruptibly();
+                try {
+                    final DateTime runTargetDateTime;
+                    final int nbSubscriptions;
+                    synchronized (this) {
+                        started = true;
+                        pendingRuns.remove(key, this);
+                        runTargetDateTime = targetDateTime;
+                        nbSubscriptions = subscriptionIds.size();
+                    }
+
+                    processAccountRun(this, runTargetDateTime, nbSubscriptions);
+                } finally {
+                    runPermits.release();
+                }
+            } catch (final RuntimeException e) {
+                failure = e;
+                throw e;
+            } finally {
+                synchronized (this) {
+                    // Don't let notifications join a run which won't process them
+                    started = true;
+                    pendingRuns.remove(key, this);
+                }
+                completionLatch.countDown();
+            }
+        }
+
+        public void awaitCompletion() {
+            try {
+                completionLatch.await();
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Interrupted while waiting for invoice batch run for accountRecordId " + key.getAccountRecordId(), e);
+            }
+            if (failure != null) {
+                throw new IllegalStateException("Invoice batch run failed for accountRecordId " + key.getAccountRecordId(), failure);
+            }
+        }
+
+        public AccountRunKey getKey() {
+            return key;
+        }
+
+        public UUID getUserToken() {
+            return userToken;
+        }
+
+        public long getSubmittedNanos() {
+            return submittedNanos;
+        }
+    }
+
+    private static final class AccountRunKey {
+
+        private final Long tenantRecordId;
+        private final Long accountRecordId;
+
+        private AccountRunKey(final Long tenantRecordId, final Long accountRecordId) {
+            this.tenantRecordId = tenantRecordId;
+            this.accountRecordId = accountRecordId;
+        }
+
+        public Long getTenantRecordId() {
+            return tenantRecordId;
+        }
+
+        public Long getAccountRecordId() {
+            return accountRecordId;
+        }
+
+        @Override
+        public boolean equals(final Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (o == null || getClass() != o.getClass()) {
+                return false;
+            }
+
+            final AccountRunKey that = (AccountRunKey) o;
+
+            if (accountRecordId != null ? !accountRecordId.equals(that.accountRecordId) : that.accountRecordId != null) {
+                return false;
+            }
+            if (tenantRecordId != null ? !tenantRecordId.equals(that.tenantRecordId) : that.tenantRecordId != null) {
+                return false;
+            }
+
+            return true;
+        }
+
+        @Override
+        public int hashCode() {
+            int result = tenantRecordId != null ? tenantRecordId.hashCode() : 0;
+            result = 31 * result + (accountRecordId != null ? accountRecordId.hashCode() : 0);
+            return result;
+        }
+    }
+
+    @VisibleForTesting
+    static final class BatchRunStats {
+
+        final AtomicLong notifications = new AtomicLong();
+        final AtomicLong coalescedNotifications = new AtomicLong();
+        final AtomicLong runs = new AtomicLong();
+        final AtomicLong failedRuns = new AtomicLong();
+        final AtomicLong queueWaitNanos = new AtomicLong();
+        final AtomicLong maxQueueWaitNanos = new AtomicLong();
+        final AtomicLong accountLookupNanos = new AtomicLong();
+        final AtomicLong invoiceGenerationNanos = new AtomicLong();
+        final AtomicLong maxInvoiceGenerationNanos = new AtomicLong();
+        final AtomicLong lastReportNanos = new AtomicLong();
+
+        void reset(final long nowNanos) {
+            lastReportNanos.set(nowNanos);
+            notifications.set(0);
+            coalescedNotifications.set(0);
+            runs.set(0);
+            failedRuns.set(0);
+            queueWaitNanos.set(0);
+            maxQueueWaitNanos.set(0);
+            accountLookupNanos.set(0);
+            invoiceGenerationNanos.set(0);
+            maxInvoiceGenerationNanos.set(0);
+        }
+
+        void recordQueueWait(final long nanos) {
+            queueWaitNanos.addAndGet(nanos);
+            updateMax(maxQueueWaitNanos, nanos);
+        }
+
+        void recordInvoiceGeneration(final long nanos) {
+            invoiceGenerationNanos.addAndGet(nanos);
+            updateMax(maxInvoiceGenerationNanos, nanos);
+        }
+
+        void maybeReport(final long nowNanos, final long reportRateNanos) {
+            final long lastReport = lastReportNanos.get();
+            if (nowNanos - lastReport >= reportRateNanos && lastReportNanos.compareAndSet(lastReport, nowNanos)) {
+                doReport(nowNanos - lastReport);
+            }
+        }
+
+        void report(final long nowNanos) {
+            doReport(nowNanos - lastReportNanos.getAndSet(nowNanos));
+        }
+
+        private void doReport(final long elapsedNanos) {
+            final long nbNotifications = notifications.getAndSet(0);
+            final long nbCoalesced = coalescedNotifications.getAndSet(0);
+            final long nbRuns = runs.getAndSet(0);
+            final long nbFailedRuns = failedRuns.getAndSet(0);
+            final long queueWait = queueWaitNanos.getAndSet(0);
+            final long maxQueueWait = maxQueueWaitNanos.getAndSet(0);
+            final long accountLookup = accountLookupNanos.getAndSet(0);
+            final long invoiceGeneration = invoiceGenerationNanos.getAndSet(0);
+            final long maxInvoiceGeneration = maxInvoiceGenerationNanos.getAndSet(0);
+            if (nbRuns == 0) {
+                return;
+            }
+
+            final double elapsedSeconds = Math.max(elapsedNanos, 1L) / 1e9;
+            log.info(String.format("Invoice batch runs: %d notifications (%d grouped), %d account runs (%d failed), %.1f runs/s, " +
+                                   "queue wait avg=%dms max=%dms, account lookup avg=%dms, invoice generation avg=%dms max=%dms",
+                                   nbNotifications, nbCoalesced, nbRuns, nbFailedRuns, nbRuns / elapsedSeconds,
+                                   toMillis(queueWait / nbRuns), toMillis(maxQueueWait),
+                                   toMillis(accountLookup / nbRuns),
+                                   toMillis(invoiceGeneration / nbRuns), toMillis(maxInvoiceGeneration)));
+        }
+
+        private static long toMillis(final long nanos) {
+            return TimeUnit.NANOSECONDS.toMillis(nanos);
+        }
+
+        private static void updateMax(final AtomicLong max, final long value) {
+            long current = max.get();
+            while (value > current && !max.compareAndSet(current, value)) {
+                current = max.get();
+            }
+        }
+    }
+}
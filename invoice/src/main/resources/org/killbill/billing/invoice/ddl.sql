@@ -70,7 +70,24 @@ CREATE TABLE invoice_payments (
     PRIMARY KEY(record_id)
 ) /*! CHARACTER SET utf8 COLLATE utf8_bin */;
 CREATE UNIQUE INDEX invoice_payments_id ON invoice_payments(id);
-CREATE UNIQUE INDEX invoice_payments ON invoice_payments(payment_id, type);
+CREATE UNIQUE INDEX invoice_payments ON invoice_payments(payment_id, type, invoice_id);
 CREATE INDEX invoice_payments_invoice_id ON invoice_payments(invoice_id);
 CREATE INDEX invoice_payments_reversals ON invoice_payments(linked_invoice_payment_id);
 CREATE INDEX invoice_payments_tenant_account_record_id ON invoice_payments(tenant_record_id, account_record_id);
+
+DROP TABLE IF EXISTS invoice_billing_watermarks;
+CREATE TABLE invoice_billing_watermarks (
+    record_id int(11) unsigned NOT NULL AUTO_INCREMENT,
+    id char(36) NOT NULL,
+    billed_through_date date NOT NULL,
+    last_item_record_id int(11) unsigned NOT NULL,
+    billing_events_hash varchar(64) NOT NULL,
+    created_by varchar(50) NOT NULL,
+    created_date datetime NOT NULL,
+    account_record_id int(11) unsigned default null,
+    tenant_record_id int(11) unsigned default null,
+    PRIMARY KEY(record_id)
+) /*! CHARACTER SET utf8 COLLATE utf8_bin */;
+CREATE UNIQUE INDEX invoice_billing_watermarks_id ON invoice_billing_watermarks(id);
+CREATE UNIQUE INDEX invoice_billing_watermarks_account_record_id ON invoice_billing_watermarks(account_record_id);
+CREATE INDEX invoice_billing_watermarks_tenant_account_record_id ON invoice_billing_watermarks(tenant_record_id, account_record_id);
@@ -34,13 +34,16 @@ import org.killbill.billing.invoice.glue.TestInvoiceModuleWithEmbeddedDb;
 import org.killbill.billing.invoice.notification.NextBillingDateNotifier;
 import org.killbill.billing.invoice.plugin.api.InvoicePluginApi;
 import org.killbill.billing.junction.BillingInternalApi;
+import org.killbill.billing.junction.BlockingInternalApi;
 import org.killbill.billing.lifecycle.api.BusService;
 import org.killbill.billing.osgi.api.OSGIServiceRegistration;
 import org.killbill.billing.platform.api.KillbillConfigSource;
 import org.killbill.billing.subscription.api.SubscriptionBaseInternalApi;
+import org.killbill.billing.tag.TagInternalApi;
 import org.killbill.billing.util.api.TagUserApi;
 import org.killbill.billing.util.cache.CacheControllerDispatcher;
 import org.killbill.billing.util.callcontext.InternalCallContextFactory;
+import org.killbill.billing.util.config.InvoiceConfig;
 import org.killbill.billing.util.dao.NonEntityDao;
 import org.killbill.bus.api.PersistentBus;
 import org.killbill.clock.Clock;
@@ -85,6 +88,10 @@ public abstract class InvoiceTestSuiteWithEmbeddedDB extends GuicyKillbillTestSu
     @Inject
     protected SubscriptionBaseInternalApi subscriptionApi;
     @Inject
+    protected TagInternalApi tagInternalApi;
+    @Inject
+    protected BlockingInternalApi blockingInternalApi;
+    @Inject
     protected BusService busService;
     @Inject
     protected InvoiceDao invoiceDao;
@@ -110,6 +117,8 @@ public abstract class InvoiceTestSuiteWithEmbeddedDB extends GuicyKillbillTestSu
     protected TestInvoiceNotificationQListener testInvoiceNotificationQListener;
     @Inject
     protected OSGIServiceRegistration<InvoicePluginApi> pluginRegistry;
+    @Inject
+    protected InvoiceConfig invoiceConfig;
 
     @Override
     protected KillbillConfigSource getConfigSource() {
@@ -43,14 +43,18 @@ import org.killbill.billing.invoice.api.InvoiceApiException;
 import org.killbill.billing.invoice.api.InvoiceItem;
 import org.killbill.billing.invoice.api.InvoiceItemType;
 import org.killbill.billing.invoice.api.InvoiceNotifier;
+import org.killbill.billing.invoice.dao.InvoiceBillingWatermarkModelDao;
+import org.killbill.billing.invoice.dao.InvoiceDao;
 import org.killbill.billing.invoice.dao.InvoiceItemModelDao;
 import org.killbill.billing.invoice.dao.InvoiceModelDao;
 import org.killbill.billing.invoice.notification.NullInvoiceNotifier;
 import org.killbill.billing.junction.BillingEventSet;
 import org.killbill.billing.subscription.api.SubscriptionBase;
 import org.killbill.billing.subscription.api.SubscriptionBaseTransitionType;
+import org.killbill.billing.util.config.InvoiceConfig;
 import org.killbill.billing.util.timezone.DateAndTimeZoneContext;
 import org.killbill.clock.ClockMock;
+import org.mockito.ArgumentCaptor;
 import org.mockito.Mockito;
 import org.testng.Assert;
 import org.testng.annotations.BeforeMethod;
@@ -90,13 +94,19 @@ public class TestInvoiceDispatcher extends InvoiceTestSuiteWithEmbeddedDB {
         final DateTime target = new DateTime();
 
         final InvoiceNotifier invoiceNotifier = new NullInvoiceNotifier();
-        final InvoiceDispatcher dispatcher = new InvoiceDispatcher(pluginRegistry, generator, accountApi, billingApi, subscriptionApi, invoiceDao,
+        final InvoiceDispatcher dispatcher = new InvoiceDispatcher(pluginRegistry, generator, accountApi, billingApi, subscriptionApi, tagInternalApi, blockingInternalApi, invoiceDao,
                                                                    nonEntityDao, invoiceNotifier, locker, busService.getBus(),
-                                                                   clock, controllerDispatcher);
+                                                                   clock, controllerDispatcher, invoiceConfig);
 
         Invoice invoice = dispatcher.processAccount(accountId, target, true, context);
         Assert.assertNotNull(invoice);
 
+        // The billing events are computed with a snapshot of the account
+        final ArgumentCaptor<InternalCallContext> contextCaptor = ArgumentCaptor.forClass(InternalCallContext.class);
+        Mockito.verify(billingApi, Mockito.atLeastOnce()).getBillingEventsForAccountAndUpdateAccountBCD(Mockito.eq(accountId), contextCaptor.capture());
+        Assert.assertNotNull(contextCaptor.getValue().getAccountContextSnapshot());
+        Assert.assertEquals(contextCaptor.getValue().getAccountContextSnapshot().getAccount().getId(), accountId);
+
         List<InvoiceModelDao> invoices = invoiceDao.getInvoicesByAccount(context);
         Assert.assertEquals(invoices.size(), 0);
 
@@ -143,9 +153,9 @@ public class TestInvoiceDispatcher extends InvoiceTestSuiteWithEmbeddedDB {
 
         Mockito.when(billingApi.getBillingEventsForAccountAndUpdateAccountBCD(Mockito.<UUID>any(), Mockito.<InternalCallContext>any())).thenReturn(events);
         final InvoiceNotifier invoiceNotifier = new NullInvoiceNotifier();
-        final InvoiceDispatcher dispatcher = new InvoiceDispatcher(pluginRegistry, generator, accountApi, billingApi, subscriptionApi, invoiceDao,
+        final InvoiceDispatcher dispatcher = new InvoiceDispatcher(pluginRegistry, generator, accountApi, billingApi, subscriptionApi, tagInternalApi, blockingInternalApi, invoiceDao,
                                                                    nonEntityDao, invoiceNotifier, locker, busService.getBus(),
-                                                                   clock, controllerDispatcher);
+                                                                   clock, controllerDispatcher, invoiceConfig);
 
         final Invoice invoice = dispatcher.processAccount(account.getId(), new DateTime("2012-07-30T00:00:00.000Z"), false, context);
         Assert.assertNotNull(invoice);
@@ -187,6 +197,109 @@ public class TestInvoiceDispatcher extends InvoiceTestSuiteWithEmbeddedDB {
         }
     }
 
+    @Test(groups = "slow")
+    public void testIncrementalInvoicing() throws Exception {
+        final BillingEventSet events = new MockBillingEventSet();
+        final MockPlan bicycleTrialEvergreen1USD = MockPlan.createBicycleTrialEvergreen1USD();
+        events.add(invoiceUtil.createMockBillingEvent(account, subscription, new DateTime("2012-05-01T00:03:42.000Z"), bicycleTrialEvergreen1USD,
+                                                      new MockPlanPhase(bicycleTrialEvergreen1USD, PhaseType.EVERGREEN), null, new BigDecimal("249.95"), account.getCurrency(), BillingPeriod.MONTHLY,
+                                                      1, BillingMode.IN_ADVANCE, "CREATE", 1L, SubscriptionBaseTransitionType.CREATE));
+        Mockito.when(billingApi.getBillingEventsForAccountAndUpdateAccountBCD(Mockito.<UUID>any(), Mockito.<InternalCallContext>any())).thenReturn(events);
+
+        final InvoiceDao spiedInvoiceDao = Mockito.spy(invoiceDao);
+        final InvoiceDispatcher dispatcher = createDispatcherWithIncrementalInvoicing(spiedInvoiceDao);
+
+        // First run: no watermark yet, full invoicing
+        final Invoice firstInvoice = dispatcher.processAccount(account.getId(), new DateTime("2012-05-15T00:00:00.000Z"), false, context);
+        Assert.assertNotNull(firstInvoice);
+        Assert.assertEquals(firstInvoice.getNumberOfItems(), 1);
+        Mockito.verify(spiedInvoiceDao, Mockito.never()).getInvoicesByAccountPastBilledThroughDate(Mockito.<LocalDate>any(), Mockito.<InternalCallContext>any());
+
+        // The watermark was written with the invoice
+        final InvoiceBillingWatermarkModelDao watermark = invoiceDao.getValidBillingWatermark(context);
+        Assert.assertNotNull(watermark);
+        Assert.assertEquals(watermark.getBilledThroughDate(), new LocalDate("2012-05-15"));
+        Assert.assertEquals(watermark.getBillingEventsHash(), dispatcher.computeBillingEventsHash(events, new LocalDate("2012-05-15")));
+
+        // Second run: only the items past the watermark are loaded, and only the next period is invoiced
+        final Invoice secondInvoice = dispatcher.processAccount(account.getId(), new DateTime("2012-06-15T00:00:00.000Z"), false, context);
+        Assert.assertNotNull(secondInvoice);
+        Mockito.verify(spiedInvoiceDao).getInvoicesByAccountPastBilledThroughDate(Mockito.eq(new LocalDate("2012-05-15")), Mockito.<InternalCallContext>any());
+        Assert.assertEquals(secondInvoice.getNumberOfItems(), 1);
+        Assert.assertEquals(secondInvoice.getInvoiceItems().get(0).getInvoiceItemType(), InvoiceItemType.RECURRING);
+        Assert.assertEquals(secondInvoice.getInvoiceItems().get(0).getStartDate(), new LocalDate("2012-06-01"));
+        Assert.assertEquals(secondInvoice.getInvoiceItems().get(0).getEndDate(), new LocalDate("2012-07-01"));
+
+        Assert.assertEquals(invoiceDao.getValidBillingWatermark(context).getBilledThroughDate(), new LocalDate("2012-06-15"));
+        Assert.assertEquals(invoiceDao.getInvoicesByAccount(context).size(), 2);
+    }
+
+    @Test(groups = "slow")
+    public void testComputeBillingEventsHash() throws Exception {
+        final MockPlan bicycleTrialEvergreen1USD = MockPlan.createBicycleTrialEvergreen1USD();
+        final BillingEventSet events = new MockBillingEventSet();
+        events.add(invoiceUtil.createMockBillingEvent(account, subscription, new DateTime("2012-05-01T00:03:42.000Z"), bicycleTrialEvergreen1USD,
+                                                      new MockPlanPhase(bicycleTrialEvergreen1USD, PhaseType.EVERGREEN), null, new BigDecimal("249.95"), account.getCurrency(), BillingPeriod.MONTHLY,
+                                                      1, BillingMode.IN_ADVANCE, "CREATE", 1L, SubscriptionBaseTransitionType.CREATE));
+
+        final InvoiceDispatcher dispatcher = createDispatcherWithIncrementalInvoicing(invoiceDao);
+        final String hash = dispatcher.computeBillingEventsHash(events, new LocalDate("2012-05-15"));
+        Assert.assertEquals(dispatcher.computeBillingEventsHash(events, new LocalDate("2012-05-15")), hash);
+
+        // Events on or after the billed-through date aren't part of the hash
+        final MockPlan jetTrialEvergreen1000USD = MockPlan.createJetTrialEvergreen1000USD();
+        events.add(invoiceUtil.createMockBillingEvent(account, subscription, new DateTime("2012-05-15T00:04:00.000Z"), jetTrialEvergreen1000USD,
+                                                      new MockPlanPhase(jetTrialEvergreen1000USD, PhaseType.EVERGREEN), null, new BigDecimal("1000"), account.getCurrency(), BillingPeriod.MONTHLY,
+                                                      1, BillingMode.IN_ADVANCE, "CHANGE", 2L, SubscriptionBaseTransitionType.CHANGE));
+        Assert.assertEquals(dispatcher.computeBillingEventsHash(events, new LocalDate("2012-05-15")), hash);
+
+        // But they are once the watermark moves past them
+        Assert.assertNotEquals(dispatcher.computeBillingEventsHash(events, new LocalDate("2012-05-16")), hash);
+
+        // Any change before the billed-through date changes the hash
+        final BillingEventSet otherEvents = new MockBillingEventSet();
+        otherEvents.add(invoiceUtil.createMockBillingEvent(account, subscription, new DateTime("2012-05-01T00:03:42.000Z"), bicycleTrialEvergreen1USD,
+                                                           new MockPlanPhase(bicycleTrialEvergreen1USD, PhaseType.EVERGREEN), null, new BigDecimal("199.95"), account.getCurrency(), BillingPeriod.MONTHLY,
+                                                           1, BillingMode.IN_ADVANCE, "CREATE", 1L, SubscriptionBaseTransitionType.CREATE));
+        Assert.assertNotEquals(dispatcher.computeBillingEventsHash(otherEvents, new LocalDate("2012-05-15")), hash);
+    }
+
+    @Test(groups = "slow")
+    public void testIncrementalInvoicingFallsBackToFullInvoicing() throws Exception {
+        final BillingEventSet events = new MockBillingEventSet();
+        final MockPlan bicycleTrialEvergreen1USD = MockPlan.createBicycleTrialEvergreen1USD();
+        events.add(invoiceUtil.createMockBillingEvent(account, subscription, new DateTime("2012-05-01T00:03:42.000Z"), bicycleTrialEvergreen1USD,
+                                                      new MockPlanPhase(bicycleTrialEvergreen1USD, PhaseType.EVERGREEN), null, new BigDecimal("249.95"), account.getCurrency(), BillingPeriod.MONTHLY,
+                                                      1, BillingMode.IN_ADVANCE, "CREATE", 1L, SubscriptionBaseTransitionType.CREATE));
+        Mockito.when(billingApi.getBillingEventsForAccountAndUpdateAccountBCD(Mockito.<UUID>any(), Mockito.<InternalCallContext>any())).thenReturn(events);
+
+        final InvoiceDao spiedInvoiceDao = Mockito.spy(invoiceDao);
+        final InvoiceDispatcher dispatcher = createDispatcherWithIncrementalInvoicing(spiedInvoiceDao);
+
+        Assert.assertNotNull(dispatcher.processAccount(account.getId(), new DateTime("2012-05-15T00:00:00.000Z"), false, context));
+        Assert.assertNotNull(invoiceDao.getValidBillingWatermark(context));
+
+        // Backdated upgrade, behind the watermark: the billing events hash doesn't match anymore
+        final MockPlan jetTrialEvergreen1000USD = MockPlan.createJetTrialEvergreen1000USD();
+        events.add(invoiceUtil.createMockBillingEvent(account, subscription, new DateTime("2012-05-10T00:04:00.000Z"), jetTrialEvergreen1000USD,
+                                                      new MockPlanPhase(jetTrialEvergreen1000USD, PhaseType.EVERGREEN), null, new BigDecimal("1000"), account.getCurrency(), BillingPeriod.MONTHLY,
+                                                      1, BillingMode.IN_ADVANCE, "CHANGE", 2L, SubscriptionBaseTransitionType.CHANGE));
+
+        final Invoice invoice = dispatcher.processAccount(account.getId(), new DateTime("2012-05-16T00:00:00.000Z"), false, context);
+        Assert.assertNotNull(invoice);
+        Mockito.verify(spiedInvoiceDao, Mockito.never()).getInvoicesByAccountPastBilledThroughDate(Mockito.<LocalDate>any(), Mockito.<InternalCallContext>any());
+
+        // The full replay repaired the original period
+        boolean foundRepair = false;
+        for (final InvoiceItem item : invoice.getInvoiceItems()) {
+            foundRepair = foundRepair || item.getInvoiceItemType() == InvoiceItemType.REPAIR_ADJ;
+        }
+        Assert.assertTrue(foundRepair);
+
+        // And a new watermark covers the new billing events
+        Assert.assertEquals(invoiceDao.getValidBillingWatermark(context).getBillingEventsHash(), dispatcher.computeBillingEventsHash(events, new LocalDate("2012-05-16")));
+    }
+
     @Test(groups = "slow")
     public void testCreateNextFutureNotificationDate() throws Exception {
 
@@ -201,9 +314,9 @@ public class TestInvoiceDispatcher extends InvoiceTestSuiteWithEmbeddedDB {
                                                                  null, "planName", "phaseName", null, startDate, endDate, new BigDecimal("23.9"), new BigDecimal("23.9"), Currency.EUR, null);
 
         final InvoiceNotifier invoiceNotifier = new NullInvoiceNotifier();
-        final InvoiceDispatcher dispatcher = new InvoiceDispatcher(pluginRegistry, generator, accountApi, billingApi, subscriptionApi, invoiceDao,
+        final InvoiceDispatcher dispatcher = new InvoiceDispatcher(pluginRegistry, generator, accountApi, billingApi, subscriptionApi, tagInternalApi, blockingInternalApi, invoiceDao,
                                                                    nonEntityDao, invoiceNotifier, locker, busService.getBus(),
-                                                                   clock, controllerDispatcher);
+                                                                   clock, controllerDispatcher, invoiceConfig);
 
         final Map<UUID, List<DateTime>> result = dispatcher.createNextFutureNotificationDate(Collections.singletonList(item), null, dateAndTimeZoneContext);
 
@@ -217,4 +330,12 @@ public class TestInvoiceDispatcher extends InvoiceTestSuiteWithEmbeddedDB {
 
         Assert.assertTrue(receivedDates.get(0).compareTo(new DateTime(2012, 11, 27, 1, 12, 23, DateTimeZone.UTC)) <= 0);
     }
+
+    private InvoiceDispatcher createDispatcherWithIncrementalInvoicing(final InvoiceDao invoiceDao) {
+        final InvoiceConfig incrementalInvoiceConfig = Mockito.mock(InvoiceConfig.class);
+        Mockito.when(incrementalInvoiceConfig.isIncrementalInvoicingEnabled()).thenReturn(true);
+        return new InvoiceDispatcher(pluginRegistry, generator, accountApi, billingApi, subscriptionApi, tagInternalApi, blockingInternalApi, invoiceDao,
+                                     nonEntityDao, new NullInvoiceNotifier(), locker, busService.getBus(),
+                                     clock, controllerDispatcher, incrementalInvoiceConfig);
+    }
 }
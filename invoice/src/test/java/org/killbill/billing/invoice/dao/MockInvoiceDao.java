@@ -33,6 +33,8 @@ import org.killbill.billing.callcontext.InternalTenantContext;
 import org.killbill.billing.catalog.api.Currency;
 import org.killbill.billing.invoice.api.Invoice;
 import org.killbill.billing.invoice.api.InvoiceApiException;
+import org.killbill.billing.invoice.api.InvoiceItemType;
+import org.killbill.billing.invoice.api.InvoicePaymentType;
 import org.killbill.billing.invoice.api.user.DefaultInvoiceCreationEvent;
 import org.killbill.billing.util.entity.DefaultPagination;
 import org.killbill.billing.util.entity.Pagination;
@@ -59,7 +61,8 @@ public class MockInvoiceDao extends MockEntityDaoBase<InvoiceModelDao, Invoice,
 
     @Override
     public void createInvoice(final InvoiceModelDao invoice, final List<InvoiceItemModelDao> invoiceItems,
-                              final boolean isRealInvoice, final Map<UUID, List<DateTime>> callbackDateTimePerSubscriptions, final InternalCallContext context) {
+                              final boolean isRealInvoice, final Map<UUID, List<DateTime>> callbackDateTimePerSubscriptions,
+                              @Nullable final LocalDate billedThroughDate, @Nullable final String billingEventsHash, final InternalCallContext context) {
         synchronized (monitor) {
             invoices.put(invoice.getId(), invoice);
             for (final InvoiceItemModelDao invoiceItemModelDao : invoiceItems) {
@@ -133,6 +136,58 @@ public class MockInvoiceDao extends MockEntityDaoBase<InvoiceModelDao, Invoice,
         return invoicesForAccount;
     }
 
+    @Override
+    public List<InvoiceModelDao> getInvoicesByAccountPastBilledThroughDate(final LocalDate billedThroughDate, final InternalTenantContext context) {
+        final List<InvoiceModelDao> result = new ArrayList<InvoiceModelDao>();
+
+        synchronized (monitor) {
+            final UUID accountId = accountRecordIds.inverse().get(context.getAccountRecordId());
+
+            // Same filtering as getInvoiceItemsPastBilledThroughDate
+            final List<UUID> itemIdsPastBilledThroughDate = new ArrayList<UUID>();
+            for (final InvoiceItemModelDao item : items.values()) {
+                if (accountId.equals(item.getAccountId()) &&
+                    (item.getType() == InvoiceItemType.RECURRING || item.getType() == InvoiceItemType.FIXED) &&
+                    ((item.getEndDate() != null && item.getEndDate().isAfter(billedThroughDate)) ||
+                     (item.getEndDate() == null && !item.getStartDate().isBefore(billedThroughDate)))) {
+                    itemIdsPastBilledThroughDate.add(item.getId());
+                }
+            }
+
+            for (final InvoiceModelDao invoice : invoices.values()) {
+                if (!accountId.equals(invoice.getAccountId()) || invoice.isMigrated()) {
+                    continue;
+                }
+
+                final List<InvoiceItemModelDao> invoiceItems = new ArrayList<InvoiceItemModelDao>();
+                for (final InvoiceItemModelDao item : items.values()) {
+                    if (invoice.getId().equals(item.getInvoiceId()) &&
+                        (itemIdsPastBilledThroughDate.contains(item.getId()) ||
+                         ((item.getType() == InvoiceItemType.REPAIR_ADJ || item.getType() == InvoiceItemType.ITEM_ADJ) && itemIdsPastBilledThroughDate.contains(item.getLinkedItemId())))) {
+                        invoiceItems.add(item);
+                    }
+                }
+
+                if (!invoiceItems.isEmpty() || !invoice.getTargetDate().isBefore(billedThroughDate)) {
+                    final InvoiceModelDao partialInvoice = new InvoiceModelDao(invoice.getId(), invoice.getCreatedDate(), invoice.getAccountId(), invoice.getInvoiceNumber(),
+                                                                               invoice.getInvoiceDate(), invoice.getTargetDate(), invoice.getCurrency(), invoice.isMigrated());
+                    partialInvoice.addInvoiceItems(invoiceItems);
+                    result.add(partialInvoice);
+                }
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public InvoiceBillingWatermarkModelDao getValidBillingWatermark(final InternalTenantContext context) {
+        return null;
+    }
+
+    @Override
+    public void setBillingWatermark(final LocalDate billedThroughDate, final String billingEventsHash, final InternalCallContext context) {
+    }
+
     @Override
     public List<InvoiceModelDao> getInvoicesBySubscription(final UUID subscriptionId, final InternalTenantContext context) {
         final List<InvoiceModelDao> result = new ArrayList<InvoiceModelDao>();
@@ -218,6 +273,26 @@ public class MockInvoiceDao extends MockEntityDaoBase<InvoiceModelDao, Invoice,
         }
     }
 
+    @Override
+    public List<InvoicePaymentModelDao> notifyOfPaymentForUnpaidInvoices(final UUID accountId, final LocalDate upToDate, final BigDecimal amount, final Currency currency, final Currency processedCurrency,
+                                                                         final UUID paymentId, final DateTime paymentDate, final InternalCallContext context) {
+        final List<InvoicePaymentModelDao> invoicePayments = new ArrayList<InvoicePaymentModelDao>();
+        BigDecimal remainingAmount = amount;
+        for (final InvoiceModelDao invoice : getUnpaidInvoicesByAccountId(accountId, upToDate, context)) {
+            if (remainingAmount.compareTo(BigDecimal.ZERO) <= 0) {
+                break;
+            }
+            final BigDecimal balance = InvoiceModelDaoHelper.getBalance(invoice);
+            final BigDecimal invoiceAmount = remainingAmount.compareTo(balance) < 0 ? remainingAmount : balance;
+            final InvoicePaymentModelDao invoicePayment = new InvoicePaymentModelDao(UUID.randomUUID(), paymentDate, InvoicePaymentType.ATTEMPT, invoice.getId(), paymentId,
+                                                                                     paymentDate, invoiceAmount, currency, processedCurrency, null, null);
+            notifyOfPayment(invoicePayment, context);
+            invoicePayments.add(invoicePayment);
+            remainingAmount = remainingAmount.subtract(invoiceAmount);
+        }
+        return invoicePayments;
+    }
+
     @Override
     public void consumeExstingCBAOnAccountWithUnpaidInvoices(final UUID accountId, final InternalCallContext context) {
     }
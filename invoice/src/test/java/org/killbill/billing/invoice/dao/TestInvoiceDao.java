@@ -57,6 +57,7 @@ import org.killbill.billing.invoice.model.DefaultInvoice;
 import org.killbill.billing.invoice.model.DefaultInvoicePayment;
 import org.killbill.billing.invoice.model.ExternalChargeInvoiceItem;
 import org.killbill.billing.invoice.model.FixedPriceInvoiceItem;
+import org.killbill.billing.invoice.model.ItemAdjInvoiceItem;
 import org.killbill.billing.invoice.model.RecurringInvoiceItem;
 import org.killbill.billing.invoice.model.RepairAdjInvoiceItem;
 import org.killbill.billing.junction.BillingEvent;
@@ -156,6 +157,45 @@ public class TestInvoiceDao extends InvoiceTestSuiteWithEmbeddedDB {
         assertEquals(InvoiceModelDaoHelper.getBalance(retrievedInvoice).compareTo(new BigDecimal("10.00")), 0);
     }
 
+    @Test(groups = "slow")
+    public void testInvoicePaymentForUnpaidInvoices() throws InvoiceApiException {
+        final UUID accountId = account.getId();
+        final UUID subscriptionId = UUID.randomUUID();
+        final UUID bundleId = UUID.randomUUID();
+
+        // Create the most recent invoice first, to verify the allocation follows the target dates
+        final LocalDate recentTargetDate = clock.getUTCToday();
+        final Invoice recentInvoice = new DefaultInvoice(accountId, recentTargetDate, recentTargetDate, Currency.USD);
+        recentInvoice.addInvoiceItem(new RecurringInvoiceItem(recentInvoice.getId(), accountId, bundleId, subscriptionId, "test plan", "test phase", recentTargetDate,
+                                                              recentTargetDate.plusMonths(1), new BigDecimal("14.00"), new BigDecimal("14.00"), Currency.USD));
+        invoiceUtil.createInvoice(recentInvoice, true, context);
+
+        final LocalDate oldTargetDate = recentTargetDate.minusMonths(1);
+        final Invoice oldInvoice = new DefaultInvoice(accountId, oldTargetDate, oldTargetDate, Currency.USD);
+        oldInvoice.addInvoiceItem(new RecurringInvoiceItem(oldInvoice.getId(), accountId, bundleId, subscriptionId, "test plan", "test phase", oldTargetDate,
+                                                           recentTargetDate, new BigDecimal("21.00"), new BigDecimal("21.00"), Currency.USD));
+        invoiceUtil.createInvoice(oldInvoice, true, context);
+
+        final UUID paymentId = UUID.randomUUID();
+        final List<InvoicePaymentModelDao> invoicePayments = invoiceDao.notifyOfPaymentForUnpaidInvoices(accountId, recentTargetDate, new BigDecimal("25.00"), Currency.USD, Currency.USD,
+                                                                                                          paymentId, clock.getUTCNow(), context);
+        assertEquals(invoicePayments.size(), 2);
+        assertEquals(invoicePayments.get(0).getInvoiceId(), oldInvoice.getId());
+        assertEquals(invoicePayments.get(0).getAmount().compareTo(new BigDecimal("21.00")), 0);
+        assertEquals(invoicePayments.get(1).getInvoiceId(), recentInvoice.getId());
+        assertEquals(invoicePayments.get(1).getAmount().compareTo(new BigDecimal("4.00")), 0);
+
+        assertEquals(InvoiceModelDaoHelper.getBalance(invoiceDao.getById(oldInvoice.getId(), context)).compareTo(BigDecimal.ZERO), 0);
+        assertEquals(InvoiceModelDaoHelper.getBalance(invoiceDao.getById(recentInvoice.getId(), context)).compareTo(new BigDecimal("10.00")), 0);
+
+        // Notifying again for the same payment is a no-op
+        final List<InvoicePaymentModelDao> replayedInvoicePayments = invoiceDao.notifyOfPaymentForUnpaidInvoices(accountId, recentTargetDate, new BigDecimal("25.00"), Currency.USD, Currency.USD,
+                                                                                                                  paymentId, clock.getUTCNow(), context);
+        assertEquals(replayedInvoicePayments.size(), 2);
+        assertEquals(invoiceDao.getInvoicePayments(paymentId, context).size(), 2);
+        assertEquals(InvoiceModelDaoHelper.getBalance(invoiceDao.getById(recentInvoice.getId(), context)).compareTo(new BigDecimal("10.00")), 0);
+    }
+
     @Test(groups = "slow")
     public void testRetrievalForNonExistentInvoiceOrInvoiceItem() throws InvoiceApiException {
         try {
@@ -1600,4 +1640,54 @@ public class TestInvoiceDao extends InvoiceTestSuiteWithEmbeddedDB {
         Assert.assertEquals(invoiceDao.getAccountCBA(accountId, context).doubleValue(), 10.00);
         invoiceUtil.verifyInvoice(invoice1.getId(), 0.00, 10.00, context);
     }
+
+    @Test(groups = "slow")
+    public void testBillingWatermark() throws Exception {
+        final UUID accountId = account.getId();
+        final UUID bundleId = UUID.randomUUID();
+        final UUID subscriptionId = UUID.randomUUID();
+
+        assertNull(invoiceDao.getValidBillingWatermark(context));
+
+        // Old invoice, entirely behind the watermark
+        final Invoice oldInvoice = new DefaultInvoice(accountId, clock.getUTCToday(), new LocalDate(2012, 4, 1), Currency.USD);
+        oldInvoice.addInvoiceItem(new RecurringInvoiceItem(oldInvoice.getId(), accountId, bundleId, subscriptionId, "test plan", "test phase", new LocalDate(2012, 4, 1),
+                                                           new LocalDate(2012, 5, 1), TEN, TEN, Currency.USD));
+        invoiceUtil.createInvoice(oldInvoice, true, context);
+
+        // The watermark is written along with the invoice
+        final Invoice invoice = new DefaultInvoice(accountId, clock.getUTCToday(), new LocalDate(2012, 5, 1), Currency.USD);
+        final InvoiceItem recurringItem = new RecurringInvoiceItem(invoice.getId(), accountId, bundleId, subscriptionId, "test plan", "test phase", new LocalDate(2012, 5, 1),
+                                                                   new LocalDate(2012, 6, 1), TEN, TEN, Currency.USD);
+        invoiceDao.createInvoice(new InvoiceModelDao(invoice), ImmutableList.<InvoiceItemModelDao>of(new InvoiceItemModelDao(recurringItem)), true,
+                                 ImmutableMap.<UUID, List<DateTime>>of(), new LocalDate(2012, 5, 15), "hash1", context);
+
+        final InvoiceBillingWatermarkModelDao watermark = invoiceDao.getValidBillingWatermark(context);
+        assertNotNull(watermark);
+        assertEquals(watermark.getBilledThroughDate(), new LocalDate(2012, 5, 15));
+        assertEquals(watermark.getBillingEventsHash(), "hash1");
+        assertNotNull(watermark.getLastItemRecordId());
+
+        // Only the items past the watermark are returned
+        final List<InvoiceModelDao> invoicesPastWatermark = invoiceDao.getInvoicesByAccountPastBilledThroughDate(new LocalDate(2012, 5, 15), context);
+        assertEquals(invoicesPastWatermark.size(), 1);
+        assertEquals(invoicesPastWatermark.get(0).getId(), invoice.getId());
+        assertEquals(invoicesPastWatermark.get(0).getInvoiceItems().size(), 1);
+        assertEquals(invoicesPastWatermark.get(0).getInvoiceItems().get(0).getId(), recurringItem.getId());
+
+        // Moving the watermark without generating anything
+        invoiceDao.setBillingWatermark(new LocalDate(2012, 5, 20), "hash2", context);
+        assertEquals(invoiceDao.getValidBillingWatermark(context).getBilledThroughDate(), new LocalDate(2012, 5, 20));
+        assertEquals(invoiceDao.getValidBillingWatermark(context).getBillingEventsHash(), "hash2");
+
+        // Adjustments linked to items past the watermark are returned with them
+        final InvoiceItem itemAdjustment = new ItemAdjInvoiceItem(recurringItem, new LocalDate(2012, 5, 20), FIVE.negate(), Currency.USD);
+        invoiceUtil.createInvoiceItem(itemAdjustment, context);
+        final List<InvoiceModelDao> invoicesWithAdjustment = invoiceDao.getInvoicesByAccountPastBilledThroughDate(new LocalDate(2012, 5, 20), context);
+        assertEquals(invoicesWithAdjustment.size(), 1);
+        assertEquals(invoicesWithAdjustment.get(0).getInvoiceItems().size(), 2);
+
+        // But any item written since invalidates the watermark
+        assertNull(invoiceDao.getValidBillingWatermark(context));
+    }
 }
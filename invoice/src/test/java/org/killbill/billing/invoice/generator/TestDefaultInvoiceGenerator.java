@@ -63,6 +63,7 @@ import org.killbill.billing.util.currency.KillBillMoney;
 import org.killbill.clock.Clock;
 import org.killbill.clock.DefaultClock;
 import org.mockito.Mockito;
+import org.skife.config.TimeSpan;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.testng.annotations.Test;
@@ -111,6 +112,21 @@ public class TestDefaultInvoiceGenerator extends InvoiceTestSuiteNoDB {
             public boolean isInsertZeroUsageItems() {
                 return true;
             }
+
+            @Override
+            public boolean isIncrementalInvoicingEnabled() {
+                return false;
+            }
+
+            @Override
+            public int getBatchThreadNb() {
+                return 0;
+            }
+
+            @Override
+            public TimeSpan getBatchReportRate() {
+                return new TimeSpan("1m");
+            }
         };
         this.generator = new DefaultInvoiceGenerator(clock, null, invoiceConfig, null, controllerDispatcher);
     }
@@ -365,6 +381,50 @@ public class TestDefaultInvoiceGenerator extends InvoiceTestSuiteNoDB {
         assertNull(invoice2);
     }
 
+    @Test(groups = "fast")
+    public void testIncrementalGenerationPastBilledThroughDate() throws InvoiceApiException, CatalogApiException {
+        final BillingEventSet events = new MockBillingEventSet();
+
+        final SubscriptionBase sub = createSubscription();
+        final Plan plan1 = new MockPlan();
+        final PlanPhase phase1 = createMockMonthlyPlanPhase(FIVE);
+        events.add(createBillingEvent(sub.getId(), sub.getBundleId(), invoiceUtil.buildDate(2011, 9, 1), plan1, phase1, 1));
+        final PlanPhase phase2 = createMockMonthlyPlanPhase(TEN);
+        events.add(createBillingEvent(sub.getId(), sub.getBundleId(), invoiceUtil.buildDate(2011, 10, 1), plan1, phase2, 1));
+
+        final UUID accountId = UUID.randomUUID();
+        final LocalDate billedThroughDate = invoiceUtil.buildDate(2011, 12, 1);
+        final Invoice invoice1 = generator.generateInvoice(accountId, events, null, billedThroughDate, Currency.USD, internalCallContext);
+        assertNotNull(invoice1);
+        assertEquals(invoice1.getNumberOfItems(), 4);
+
+        // Only the item for December is past the watermark
+        final Invoice partialInvoice1 = new DefaultInvoice(invoice1.getId(), accountId, null, invoice1.getInvoiceDate(), invoice1.getTargetDate(), Currency.USD, false);
+        for (final InvoiceItem item : invoice1.getInvoiceItems()) {
+            if (item.getEndDate().isAfter(billedThroughDate)) {
+                partialInvoice1.addInvoiceItem(item);
+            }
+        }
+        assertEquals(partialInvoice1.getNumberOfItems(), 1);
+
+        final List<Invoice> allInvoices = new ArrayList<Invoice>();
+        allInvoices.add(invoice1);
+        final List<Invoice> invoicesPastBilledThroughDate = new ArrayList<Invoice>();
+        invoicesPastBilledThroughDate.add(partialInvoice1);
+
+        final LocalDate targetDate = invoiceUtil.buildDate(2012, 1, 3);
+        final Invoice fullInvoice = generator.generateInvoice(accountId, events, allInvoices, targetDate, Currency.USD, internalCallContext);
+        final Invoice incrementalInvoice = generator.generateInvoice(accountId, events, invoicesPastBilledThroughDate, billedThroughDate, targetDate, Currency.USD, internalCallContext);
+
+        assertNotNull(fullInvoice);
+        assertNotNull(incrementalInvoice);
+        assertEquals(incrementalInvoice.getNumberOfItems(), 1);
+        assertEquals(fullInvoice.getNumberOfItems(), 1);
+        assertEquals(incrementalInvoice.getInvoiceItems().get(0).getStartDate(), fullInvoice.getInvoiceItems().get(0).getStartDate());
+        assertEquals(incrementalInvoice.getInvoiceItems().get(0).getEndDate(), fullInvoice.getInvoiceItems().get(0).getEndDate());
+        assertEquals(incrementalInvoice.getBalance(), KillBillMoney.of(TEN, incrementalInvoice.getCurrency()));
+    }
+
     // TODO: modify this test to keep a running total of expected invoice amount over time
     @Test(groups = "fast")
     public void testMultiplePlansWithUtterChaos() throws InvoiceApiException, CatalogApiException {
@@ -21,6 +21,7 @@ package org.killbill.billing.invoice.glue;
 import org.killbill.billing.catalog.glue.CatalogModule;
 import org.killbill.billing.invoice.TestInvoiceHelper;
 import org.killbill.billing.junction.BillingInternalApi;
+import org.killbill.billing.junction.BlockingInternalApi;
 import org.killbill.billing.platform.api.KillbillConfigSource;
 import org.killbill.billing.subscription.api.SubscriptionBaseInternalApi;
 import org.killbill.billing.usage.glue.UsageModule;
@@ -42,6 +43,7 @@ public class TestInvoiceModule extends DefaultInvoiceModule {
     private void installExternalApis() {
         bind(SubscriptionBaseInternalApi.class).toInstance(Mockito.mock(SubscriptionBaseInternalApi.class));
         bind(BillingInternalApi.class).toInstance(Mockito.mock(BillingInternalApi.class));
+        bind(BlockingInternalApi.class).toInstance(Mockito.mock(BlockingInternalApi.class));
     }
 
     @Override
@@ -0,0 +1,213 @@
+/*
+ * Copyright 2014 The Billing Project, LLC
+ *
+ * The Billing Project licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.killbill.billing.invoice.notification;
+
+import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.joda.time.DateTime;
+import org.killbill.billing.account.api.AccountInternalApi;
+import org.killbill.billing.callcontext.InternalCallContext;
+import org.killbill.billing.callcontext.InternalTenantContext;
+import org.killbill.billing.invoice.InvoiceDispatcher;
+import org.killbill.billing.invoice.InvoiceTestSuiteNoDB;
+import org.killbill.billing.util.callcontext.CallOrigin;
+import org.killbill.billing.util.callcontext.InternalCallContextFactory;
+import org.killbill.billing.util.callcontext.UserType;
+import org.killbill.billing.util.config.InvoiceConfig;
+import org.mockito.Mockito;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.skife.config.TimeSpan;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import static com.jayway.awaitility.Awaitility.await;
+
+public class TestNextBillingDateBatchRunner extends InvoiceTestSuiteNoDB {
+
+    @Test(groups = "fast")
+    public void testNotificationsForSameAccountShareOneRun() throws Exception {
+        final Long accountRecordIdA = 1L;
+        final Long accountRecordIdB = 2L;
+        final UUID accountIdA = UUID.randomUUID();
+        final UUID accountIdB = UUID.randomUUID();
+
+        final InvoiceConfig invoiceConfig = Mockito.mock(InvoiceConfig.class);
+        Mockito.when(invoiceConfig.getBatchThreadNb()).thenReturn(1);
+        Mockito.when(invoiceConfig.getBatchReportRate()).thenReturn(new TimeSpan("1h"));
+
+        final InternalCallContextFactory callContextFactory = Mockito.mock(InternalCallContextFactory.class);
+        Mockito.when(callContextFactory.createInternalCallContext(Mockito.anyLong(), Mockito.anyLong(), Mockito.anyString(), Mockito.<CallOrigin>any(), Mockito.<UserType>any(), Mockito.<UUID>any()))
+               .thenReturn(internalCallContext);
+
+        final AccountInternalApi accountInternalApi = Mockito.mock(AccountInternalApi.class);
+        Mockito.when(accountInternalApi.getByRecordId(Mockito.eq(accountRecordIdA), Mockito.<InternalTenantContext>any())).thenReturn(accountIdA);
+        Mockito.when(accountInternalApi.getByRecordId(Mockito.eq(accountRecordIdB), Mockito.<InternalTenantContext>any())).thenReturn(accountIdB);
+
+        // Keep the only permit busy on account A, while notifications for account B pile up
+        final CountDownLatch accountAStarted = new CountDownLatch(1);
+        final CountDownLatch accountAReleased = new CountDownLatch(1);
+        final InvoiceDispatcher dispatcher = Mockito.mock(InvoiceDispatcher.class);
+        Mockito.when(dispatcher.processAccount(Mockito.eq(accountIdA), Mockito.<DateTime>any(), Mockito.eq(false), Mockito.<InternalCallContext>any()))
+               .thenAnswer(new Answer<Object>() {
+                   @Override
+                   public Object answer(final InvocationOnMock invocation) throws Throwable {
+                       accountAStarted.countDown();
+                       accountAReleased.await(1, TimeUnit.MINUTES);
+                       return null;
+                   }
+               });
+
+        final NextBillingDateBatchRunner batchRunner = new NextBillingDateBatchRunner(dispatcher, accountInternalApi, callContextFactory, invoiceConfig);
+        Assert.assertTrue(batchRunner.isEnabled());
+        batchRunner.start();
+
+        final DateTime firstEventDate = new DateTime(2014, 6, 1, 0, 0, 1);
+        final DateTime secondEventDate = new DateTime(2014, 6, 1, 0, 0, 2);
+        final ExecutorService notificationThreads = Executors.newFixedThreadPool(3);
+        try {
+            final Future<?> notificationA = notificationThreads.submit(new NotificationCall(batchRunner, firstEventDate, accountRecordIdA));
+            Assert.assertTrue(accountAStarted.await(1, TimeUnit.MINUTES));
+
+            final Future<?> notificationB1 = notificationThreads.submit(new NotificationCall(batchRunner, firstEventDate, accountRecordIdB));
+            final Future<?> notificationB2 = notificationThreads.submit(new NotificationCall(batchRunner, secondEventDate, accountRecordIdB));
+            await().atMost(1, TimeUnit.MINUTES).until(new Callable<Boolean>() {
+                @Override
+                public Boolean call() throws Exception {
+                    return batchRunner.getStats().coalescedNotifications.get() == 1;
+                }
+            });
+
+            accountAReleased.countDown();
+            notificationA.get(1, TimeUnit.MINUTES);
+            notificationB1.get(1, TimeUnit.MINUTES);
+            notificationB2.get(1, TimeUnit.MINUTES);
+        } finally {
+            accountAReleased.countDown();
+            notificationThreads.shutdownNow();
+        }
+
+        Assert.assertEquals(batchRunner.getStats().runs.get(), 2);
+        Assert.assertEquals(batchRunner.getStats().coalescedNotifications.get(), 1);
+        Mockito.verify(dispatcher, Mockito.times(1)).processAccount(Mockito.eq(accountIdB), Mockito.eq(secondEventDate), Mockito.eq(false), Mockito.<InternalCallContext>any());
+        Mockito.verify(dispatcher, Mockito.never()).processAccount(Mockito.eq(accountIdB), Mockito.eq(firstEventDate), Mockito.eq(false), Mockito.<InternalCallContext>any());
+
+        batchRunner.stop();
+    }
+
+    @Test(groups = "fast")
+    public void testFailedRunFailsAllNotifications() throws Exception {
+        final Long accountRecordIdA = 1L;
+        final Long accountRecordIdB = 2L;
+        final UUID accountIdA = UUID.randomUUID();
+        final UUID accountIdB = UUID.randomUUID();
+
+        final InvoiceConfig invoiceConfig = Mockito.mock(InvoiceConfig.class);
+        Mockito.when(invoiceConfig.getBatchThreadNb()).thenReturn(1);
+        Mockito.when(invoiceConfig.getBatchReportRate()).thenReturn(new TimeSpan("1h"));
+
+        final InternalCallContextFactory callContextFactory = Mockito.mock(InternalCallContextFactory.class);
+        Mockito.when(callContextFactory.createInternalCallContext(Mockito.anyLong(), Mockito.anyLong(), Mockito.anyString(), Mockito.<CallOrigin>any(), Mockito.<UserType>any(), Mockito.<UUID>any()))
+               .thenReturn(internalCallContext);
+
+        final AccountInternalApi accountInternalApi = Mockito.mock(AccountInternalApi.class);
+        Mockito.when(accountInternalApi.getByRecordId(Mockito.eq(accountRecordIdA), Mockito.<InternalTenantContext>any())).thenReturn(accountIdA);
+        Mockito.when(accountInternalApi.getByRecordId(Mockito.eq(accountRecordIdB), Mockito.<InternalTenantContext>any())).thenReturn(accountIdB);
+
+        final CountDownLatch accountAStarted = new CountDownLatch(1);
+        final CountDownLatch accountAReleased = new CountDownLatch(1);
+        final InvoiceDispatcher dispatcher = Mockito.mock(InvoiceDispatcher.class);
+        Mockito.when(dispatcher.processAccount(Mockito.eq(accountIdA), Mockito.<DateTime>any(), Mockito.eq(false), Mockito.<InternalCallContext>any()))
+               .thenAnswer(new Answer<Object>() {
+                   @Override
+                   public Object answer(final InvocationOnMock invocation) throws Throwable {
+                       accountAStarted.countDown();
+                       accountAReleased.await(1, TimeUnit.MINUTES);
+                       return null;
+                   }
+               });
+        Mockito.when(dispatcher.processAccount(Mockito.eq(accountIdB), Mockito.<DateTime>any(), Mockito.eq(false), Mockito.<InternalCallContext>any()))
+               .thenThrow(new IllegalStateException("Database is down"));
+
+        final NextBillingDateBatchRunner batchRunner = new NextBillingDateBatchRunner(dispatcher, accountInternalApi, callContextFactory, invoiceConfig);
+        batchRunner.start();
+
+        final DateTime eventDate = new DateTime(2014, 6, 1, 0, 0, 1);
+        final ExecutorService notificationThreads = Executors.newFixedThreadPool(3);
+        try {
+            final Future<?> notificationA = notificationThreads.submit(new NotificationCall(batchRunner, eventDate, accountRecordIdA));
+            Assert.assertTrue(accountAStarted.await(1, TimeUnit.MINUTES));
+
+            final Future<?> notificationB1 = notificationThreads.submit(new NotificationCall(batchRunner, eventDate, accountRecordIdB));
+            final Future<?> notificationB2 = notificationThreads.submit(new NotificationCall(batchRunner, eventDate, accountRecordIdB));
+            await().atMost(1, TimeUnit.MINUTES).until(new Callable<Boolean>() {
+                @Override
+                public Boolean call() throws Exception {
+                    return batchRunner.getStats().coalescedNotifications.get() == 1;
+                }
+            });
+
+            accountAReleased.countDown();
+            notificationA.get(1, TimeUnit.MINUTES);
+
+            // Both notifications of account B fail, so that the notification queue retries them
+            for (final Future<?> notificationB : new Future<?>[]{notificationB1, notificationB2}) {
+                try {
+                    notificationB.get(1, TimeUnit.MINUTES);
+                    Assert.fail("Notification should have failed");
+                } catch (final ExecutionException e) {
+                    Assert.assertTrue(e.getCause() instanceof IllegalStateException);
+                }
+            }
+        } finally {
+            accountAReleased.countDown();
+            notificationThreads.shutdownNow();
+        }
+
+        Assert.assertEquals(batchRunner.getStats().runs.get(), 2);
+        Assert.assertEquals(batchRunner.getStats().failedRuns.get(), 1);
+        Mockito.verify(dispatcher, Mockito.times(1)).processAccount(Mockito.eq(accountIdB), Mockito.eq(eventDate), Mockito.eq(false), Mockito.<InternalCallContext>any());
+
+        batchRunner.stop();
+    }
+
+    private static final class NotificationCall implements Callable<Void> {
+
+        private final NextBillingDateBatchRunner batchRunner;
+        private final DateTime eventDate;
+        private final Long accountRecordId;
+
+        private NotificationCall(final NextBillingDateBatchRunner batchRunner, final DateTime eventDate, final Long accountRecordId) {
+            this.batchRunner = batchRunner;
+            this.eventDate = eventDate;
+            this.accountRecordId = accountRecordId;
+        }
+
+        @Override
+        public Void call() throws Exception {
+            batchRunner.processNextBillingDate(UUID.randomUUID(), eventDate, UUID.randomUUID(), accountRecordId, 1L);
+            return null;
+        }
+    }
+}
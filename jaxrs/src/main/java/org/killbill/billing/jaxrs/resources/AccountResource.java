@@ -74,6 +74,7 @@ import org.killbill.billing.jaxrs.json.OverdueStateJson;
 import org.killbill.billing.jaxrs.json.PaymentMethodJson;
 import org.killbill.billing.jaxrs.util.Context;
 import org.killbill.billing.jaxrs.util.JaxrsUriBuilder;
+import org.killbill.billing.junction.BillingEventsTraceUserApi;
 import org.killbill.billing.overdue.OverdueApiException;
 import org.killbill.billing.overdue.OverdueState;
 import org.killbill.billing.overdue.OverdueUserApi;
@@ -120,6 +121,7 @@ public class AccountResource extends JaxRsResourceBase {
     private final InvoiceUserApi invoiceApi;
     private final InvoicePaymentApi invoicePaymentApi;
     private final OverdueUserApi overdueApi;
+    private final BillingEventsTraceUserApi billingEventsTraceApi;
 
     @Inject
     public AccountResource(final JaxrsUriBuilder uriBuilder,
@@ -132,6 +134,7 @@ public class AccountResource extends JaxRsResourceBase {
                            final CustomFieldUserApi customFieldUserApi,
                            final SubscriptionApi subscriptionApi,
                            final OverdueUserApi overdueApi,
+                           final BillingEventsTraceUserApi billingEventsTraceApi,
                            final Clock clock,
                            final Context context) {
         super(uriBuilder, tagUserApi, customFieldUserApi, auditUserApi, accountApi, paymentApi, clock, context);
@@ -139,6 +142,7 @@ public class AccountResource extends JaxRsResourceBase {
         this.invoiceApi = invoiceApi;
         this.invoicePaymentApi = invoicePaymentApi;
         this.overdueApi = overdueApi;
+        this.billingEventsTraceApi = billingEventsTraceApi;
     }
 
     @Timed
@@ -479,6 +483,7 @@ public class AccountResource extends JaxRsResourceBase {
     public Response payAllInvoices(@PathParam("accountId") final String accountId,
                                    @QueryParam(QUERY_PAYMENT_EXTERNAL) @DefaultValue("false") final Boolean externalPayment,
                                    @QueryParam(QUERY_PAYMENT_AMOUNT) final BigDecimal paymentAmount,
+                                   @QueryParam(QUERY_PAY_WITH_SINGLE_PAYMENT) @DefaultValue("false") final Boolean singlePayment,
                                    @QueryParam(QUERY_PLUGIN_PROPERTY) final List<String> pluginPropertiesString,
                                    @HeaderParam(HDR_CREATED_BY) final String createdBy,
                                    @HeaderParam(HDR_REASON) final String reason,
@@ -490,25 +495,8 @@ public class AccountResource extends JaxRsResourceBase {
         final Account account = accountUserApi.getAccountById(UUID.fromString(accountId), callContext);
         final Collection<Invoice> unpaidInvoices = invoiceApi.getUnpaidInvoicesByAccountId(account.getId(), clock.getUTCToday(), callContext);
 
-        BigDecimal remainingRequestPayment = paymentAmount;
-        if (remainingRequestPayment == null) {
-            remainingRequestPayment = BigDecimal.ZERO;
-            for (final Invoice invoice : unpaidInvoices) {
-                remainingRequestPayment = remainingRequestPayment.add(invoice.getBalance());
-            }
-        }
-
-        for (final Invoice invoice : unpaidInvoices) {
-            final BigDecimal amountToPay = (remainingRequestPayment.compareTo(invoice.getBalance()) >= 0) ?
-                                           invoice.getBalance() : remainingRequestPayment;
-            if (amountToPay.compareTo(BigDecimal.ZERO) > 0) {
-                createPurchaseForInvoice(account, invoice.getId(), amountToPay, externalPayment, callContext);
-            }
-            remainingRequestPayment = remainingRequestPayment.subtract(amountToPay);
-            if (remainingRequestPayment.compareTo(BigDecimal.ZERO) == 0) {
-                break;
-            }
-        }
+        final BigDecimal requestedPayment = paymentAmount == null ? getBalance(unpaidInvoices) : paymentAmount;
+        final BigDecimal remainingRequestPayment = payUnpaidInvoices(account, unpaidInvoices, requestedPayment, externalPayment, singlePayment, callContext);
         //
         // If the amount requested is greater than what had to be paid and if this an for an external payment (check, ..)
         // then we apply some credit on the account.
@@ -528,6 +516,7 @@ public class AccountResource extends JaxRsResourceBase {
                                         @PathParam("accountId") final String accountId,
                                         @QueryParam(QUERY_PAYMENT_METHOD_IS_DEFAULT) @DefaultValue("false") final Boolean isDefault,
                                         @QueryParam(QUERY_PAY_ALL_UNPAID_INVOICES) @DefaultValue("false") final Boolean payAllUnpaidInvoices,
+                                        @QueryParam(QUERY_PAY_WITH_SINGLE_PAYMENT) @DefaultValue("false") final Boolean singlePayment,
                                         @QueryParam(QUERY_PLUGIN_PROPERTY) final List<String> pluginPropertiesString,
                                         @HeaderParam(HDR_CREATED_BY) final String createdBy,
                                         @HeaderParam(HDR_REASON) final String reason,
@@ -549,9 +538,7 @@ public class AccountResource extends JaxRsResourceBase {
 
         final UUID paymentMethodId = paymentApi.addPaymentMethod(account, data.getExternalKey(), data.getPluginName(), isDefault, data.getPluginDetail(), pluginProperties, callContext);
         if (payAllUnpaidInvoices && unpaidInvoices.size() > 0) {
-            for (final Invoice invoice : unpaidInvoices) {
-                createPurchaseForInvoice(account, invoice.getId(), invoice.getBalance(), false, callContext);
-            }
+            payUnpaidInvoices(account, unpaidInvoices, getBalance(unpaidInvoices), false, singlePayment, callContext);
         }
         return uriBuilder.buildResponse(PaymentMethodResource.class, "getPaymentMethod", paymentMethodId, uriInfo.getBaseUri().toString());
     }
@@ -589,6 +576,7 @@ public class AccountResource extends JaxRsResourceBase {
     public Response setDefaultPaymentMethod(@PathParam("accountId") final String accountId,
                                             @PathParam("paymentMethodId") final String paymentMethodId,
                                             @QueryParam(QUERY_PAY_ALL_UNPAID_INVOICES) @DefaultValue("false") final Boolean payAllUnpaidInvoices,
+                                            @QueryParam(QUERY_PAY_WITH_SINGLE_PAYMENT) @DefaultValue("false") final Boolean singlePayment,
                                             @QueryParam(QUERY_PLUGIN_PROPERTY) final List<String> pluginPropertiesString,
                                             @HeaderParam(HDR_CREATED_BY) final String createdBy,
                                             @HeaderParam(HDR_REASON) final String reason,
@@ -602,9 +590,7 @@ public class AccountResource extends JaxRsResourceBase {
 
         if (payAllUnpaidInvoices) {
             final Collection<Invoice> unpaidInvoices = invoiceApi.getUnpaidInvoicesByAccountId(account.getId(), clock.getUTCToday(), callContext);
-            for (final Invoice invoice : unpaidInvoices) {
-                createPurchaseForInvoice(account, invoice.getId(), invoice.getBalance(), false, callContext);
-            }
+            payUnpaidInvoices(account, unpaidInvoices, getBalance(unpaidInvoices), false, singlePayment, callContext);
         }
         return Response.status(Status.OK).build();
     }
@@ -698,6 +684,25 @@ public class AccountResource extends JaxRsResourceBase {
         return Response.status(Status.OK).entity(new OverdueStateJson(overdueState)).build();
     }
 
+    /*
+     * *************************      BILLING EVENTS TRACE     *****************************
+     */
+
+    @Timed
+    @GET
+    @Path("/{accountId:" + UUID_PATTERN + "}/" + BILLING_EVENTS_TRACE)
+    @Produces(APPLICATION_JSON)
+    public Response getBillingEventsTrace(@PathParam("accountId") final String accountId,
+                                          @javax.ws.rs.core.Context final HttpServletRequest request) throws AccountApiException {
+        final TenantContext tenantContext = context.createContext(request);
+
+        // Make sure the account belongs to the tenant
+        final Account account = accountUserApi.getAccountById(UUID.fromString(accountId), tenantContext);
+        final List<String> traces = billingEventsTraceApi.getBillingEventsTrace(account.getId(), tenantContext);
+
+        return Response.status(Status.OK).entity(traces).build();
+    }
+
     /*
      * *************************      CUSTOM FIELDS     *****************************
      */
@@ -887,6 +892,41 @@ public class AccountResource extends JaxRsResourceBase {
         return Response.status(Status.OK).build();
     }
 
+    // Pay the unpaid invoices, either with one payment per invoice or with a single payment allocated oldest invoice first, and return what's left of the requested amount
+    private BigDecimal payUnpaidInvoices(final Account account, final Collection<Invoice> unpaidInvoices, final BigDecimal requestedPayment, final Boolean externalPayment,
+                                         final boolean singlePayment, final CallContext callContext) throws PaymentApiException {
+        BigDecimal remainingRequestPayment = requestedPayment;
+        if (singlePayment) {
+            final BigDecimal unpaidBalance = getBalance(unpaidInvoices);
+            final BigDecimal amountToPay = (remainingRequestPayment.compareTo(unpaidBalance) >= 0) ? unpaidBalance : remainingRequestPayment;
+            if (amountToPay.compareTo(BigDecimal.ZERO) > 0) {
+                createPurchaseForUnpaidInvoices(account, amountToPay, externalPayment, callContext);
+            }
+            return remainingRequestPayment.subtract(amountToPay);
+        }
+
+        for (final Invoice invoice : unpaidInvoices) {
+            final BigDecimal amountToPay = (remainingRequestPayment.compareTo(invoice.getBalance()) >= 0) ?
+                                           invoice.getBalance() : remainingRequestPayment;
+            if (amountToPay.compareTo(BigDecimal.ZERO) > 0) {
+                createPurchaseForInvoice(account, invoice.getId(), amountToPay, externalPayment, callContext);
+            }
+            remainingRequestPayment = remainingRequestPayment.subtract(amountToPay);
+            if (remainingRequestPayment.compareTo(BigDecimal.ZERO) == 0) {
+                break;
+            }
+        }
+        return remainingRequestPayment;
+    }
+
+    private static BigDecimal getBalance(final Iterable<Invoice> invoices) {
+        BigDecimal balance = BigDecimal.ZERO;
+        for (final Invoice invoice : invoices) {
+            balance = balance.add(invoice.getBalance());
+        }
+        return balance;
+    }
+
     @Override
     protected ObjectType getObjectType() {
         return ObjectType.ACCOUNT;
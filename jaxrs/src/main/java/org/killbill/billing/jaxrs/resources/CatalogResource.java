@@ -29,7 +29,7 @@ import javax.ws.rs.core.Response.Status;
 
 import org.killbill.billing.account.api.AccountUserApi;
 import org.killbill.billing.catalog.api.CatalogApiException;
-import org.killbill.billing.catalog.api.CatalogService;
+import org.killbill.billing.catalog.api.CatalogUserApi;
 import org.killbill.billing.catalog.api.Listing;
 import org.killbill.billing.catalog.api.StaticCatalog;
 import org.killbill.billing.payment.api.PaymentApi;
@@ -54,10 +54,10 @@ import static javax.ws.rs.core.MediaType.APPLICATION_XML;
 @Path(JaxrsResource.CATALOG_PATH)
 public class CatalogResource extends JaxRsResourceBase {
 
-    private final CatalogService catalogService;
+    private final CatalogUserApi catalogUserApi;
 
     @Inject
-    public CatalogResource(final CatalogService catalogService,
+    public CatalogResource(final CatalogUserApi catalogUserApi,
                            final JaxrsUriBuilder uriBuilder,
                            final TagUserApi tagUserApi,
                            final CustomFieldUserApi customFieldUserApi,
@@ -67,21 +67,21 @@ public class CatalogResource extends JaxRsResourceBase {
                            final Clock clock,
                            final Context context) {
         super(uriBuilder, tagUserApi, customFieldUserApi, auditUserApi, accountUserApi, paymentApi, clock, context);
-        this.catalogService = catalogService;
+        this.catalogUserApi = catalogUserApi;
     }
 
     @Timed
     @GET
     @Produces(APPLICATION_XML)
     public Response getCatalogXml(@javax.ws.rs.core.Context final HttpServletRequest request) throws Exception {
-        return Response.status(Status.OK).entity(XMLWriter.writeXML(catalogService.getCurrentCatalog(), StaticCatalog.class)).build();
+        return Response.status(Status.OK).entity(XMLWriter.writeXML(getCurrentCatalog(request), StaticCatalog.class)).build();
     }
 
     @Timed
     @GET
     @Produces(APPLICATION_JSON)
     public Response getCatalogJson(@javax.ws.rs.core.Context final HttpServletRequest request) throws Exception {
-        final StaticCatalog catalog = catalogService.getCurrentCatalog();
+        final StaticCatalog catalog = getCurrentCatalog(request);
 
         return Response.status(Status.OK).entity(catalog).build();
     }
@@ -106,7 +106,7 @@ public class CatalogResource extends JaxRsResourceBase {
     @Produces(APPLICATION_JSON)
     public Response getAvailableAddons(@QueryParam("baseProductName") final String baseProductName,
                                        @javax.ws.rs.core.Context final HttpServletRequest request) throws CatalogApiException {
-        final StaticCatalog catalog = catalogService.getCurrentCatalog();
+        final StaticCatalog catalog = getCurrentCatalog(request);
         final List<Listing> listings = catalog.getAvailableAddonListings(baseProductName);
         final List<PlanDetailJson> details = new ArrayList<PlanDetailJson>();
         for (final Listing listing : listings) {
@@ -120,7 +120,7 @@ public class CatalogResource extends JaxRsResourceBase {
     @Path("/availableBasePlans")
     @Produces(APPLICATION_JSON)
     public Response getAvailableBasePlans(@javax.ws.rs.core.Context final HttpServletRequest request) throws CatalogApiException {
-        final StaticCatalog catalog = catalogService.getCurrentCatalog();
+        final StaticCatalog catalog = getCurrentCatalog(request);
         final List<Listing> listings = catalog.getAvailableBasePlanListings();
         final List<PlanDetailJson> details = new ArrayList<PlanDetailJson>();
         for (final Listing listing : listings) {
@@ -134,9 +134,14 @@ public class CatalogResource extends JaxRsResourceBase {
     @Path("/simpleCatalog")
     @Produces(APPLICATION_JSON)
     public Response getSimpleCatalog(@javax.ws.rs.core.Context final HttpServletRequest request) throws CatalogApiException {
-        final StaticCatalog catalog = catalogService.getCurrentCatalog();
+        final StaticCatalog catalog = getCurrentCatalog(request);
 
         final CatalogJsonSimple json = new CatalogJsonSimple(catalog);
         return Response.status(Status.OK).entity(json).build();
     }
+
+    private StaticCatalog getCurrentCatalog(final HttpServletRequest request) {
+        // The tenant catalog is versioned: it also exposes its current version
+        return (StaticCatalog) catalogUserApi.getCatalog(null, context.createContext(request));
+    }
 }
@@ -360,6 +360,23 @@ public abstract class JaxRsResourceBase implements JaxrsResource {
                                                            properties, createInvoicePaymentControlPluginApiPaymentOptions(externalPayment), callContext);
     }
 
+    /**
+     * Single payment for the unpaid invoices of the account: the invoice payment control plugin allocates it oldest invoice first.
+     */
+    protected Payment createPurchaseForUnpaidInvoices(final Account account, final BigDecimal amountToPay, final Boolean externalPayment, final CallContext callContext) throws PaymentApiException {
+
+        final List<PluginProperty> properties = new ArrayList<PluginProperty>();
+        final String paymentExternalKey = UUID.randomUUID().toString();
+        final String transactionExternalKey = UUID.randomUUID().toString();
+        final PluginProperty allUnpaidInvoicesProperty = new PluginProperty("IPCD_ALL_UNPAID_INVOICES" /* InvoicePaymentControlPluginApi.PROP_IPCD_ALL_UNPAID_INVOICES (contract with plugin)  */,
+                                                                            "true", false);
+        properties.add(allUnpaidInvoicesProperty);
+
+        final UUID paymentMethodId = externalPayment ? null : account.getPaymentMethodId();
+        return paymentApi.createPurchaseWithPaymentControl(account, paymentMethodId, null, amountToPay, account.getCurrency(), paymentExternalKey, transactionExternalKey,
+                                                           properties, createInvoicePaymentControlPluginApiPaymentOptions(externalPayment), callContext);
+    }
+
     protected PaymentOptions createInvoicePaymentControlPluginApiPaymentOptions(final boolean isExternalPayment) {
         return new PaymentOptions() {
             @Override
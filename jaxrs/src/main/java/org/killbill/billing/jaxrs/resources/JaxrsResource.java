@@ -94,6 +94,7 @@ public interface JaxrsResource {
     public static final String QUERY_PAYMENT_METHOD_IS_DEFAULT = "isDefault";
 
     public static final String QUERY_PAY_ALL_UNPAID_INVOICES = "payAllUnpaidInvoices";
+    public static final String QUERY_PAY_WITH_SINGLE_PAYMENT = "singlePayment";
     public static final String QUERY_PAY_INVOICE = "payInvoice";
 
     public static final String QUERY_PLUGIN_PROPERTY = "pluginProperty";
@@ -178,11 +179,14 @@ public interface JaxrsResource {
     public static final String OVERDUE = "overdue";
     public static final String OVERDUE_PATH = PREFIX + "/" + OVERDUE;
 
+    public static final String BILLING_EVENTS_TRACE = "billingEventsTrace";
+
     public static final String TENANTS = "tenants";
     public static final String TENANTS_PATH = PREFIX + "/" + TENANTS;
 
     public static final String USAGES = "usages";
     public static final String USAGES_PATH = PREFIX + "/" + USAGES;
+    public static final String BULK = "bulk";
 
     public static final String EXPORT = "export";
     public static final String EXPORT_PATH = PREFIX + "/" + EXPORT;
@@ -16,7 +16,14 @@
 
 package org.killbill.billing.jaxrs.resources;
 
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.UUID;
 
 import javax.annotation.concurrent.Immutable;
@@ -43,6 +50,7 @@ import org.killbill.billing.entitlement.api.EntitlementApi;
 import org.killbill.billing.entitlement.api.EntitlementApiException;
 import org.killbill.billing.jaxrs.json.RolledUpUsageJson;
 import org.killbill.billing.jaxrs.json.SubscriptionUsageRecordJson;
+import org.killbill.billing.jaxrs.json.SubscriptionUsageRecordJson.UnitUsageRecordJson;
 import org.killbill.billing.jaxrs.util.Context;
 import org.killbill.billing.jaxrs.util.JaxrsUriBuilder;
 import org.killbill.billing.payment.api.PaymentApi;
@@ -57,6 +65,7 @@ import org.killbill.billing.util.callcontext.TenantContext;
 import org.killbill.clock.Clock;
 
 import com.codahale.metrics.annotation.Timed;
+import com.google.common.base.Charsets;
 import com.google.common.base.Preconditions;
 import com.google.common.collect.ImmutableList;
 import com.google.inject.Singleton;
@@ -66,6 +75,9 @@ import static javax.ws.rs.core.MediaType.APPLICATION_JSON;
 @Path(JaxrsResource.USAGES_PATH)
 public class UsageResource extends JaxRsResourceBase {
 
+    // Newline delimited JSON: one SubscriptionUsageRecordJson per line
+    private static final String APPLICATION_NDJSON = "application/x-ndjson";
+
     private final UsageUserApi usageUserApi;
     private final EntitlementApi entitlementApi;
 
@@ -112,6 +124,86 @@ public class UsageResource extends JaxRsResourceBase {
         return Response.status(Status.CREATED).build();
     }
 
+    @Timed
+    @POST
+    @Path("/" + BULK)
+    @Consumes(APPLICATION_JSON)
+    @Produces(APPLICATION_JSON)
+    public Response recordUsages(final List<SubscriptionUsageRecordJson> json,
+                                 @HeaderParam(HDR_CREATED_BY) final String createdBy,
+                                 @HeaderParam(HDR_REASON) final String reason,
+                                 @HeaderParam(HDR_COMMENT) final String comment,
+                                 @javax.ws.rs.core.Context final HttpServletRequest request) throws EntitlementApiException {
+        final CallContext callContext = context.createContext(createdBy, reason, comment, request);
+        return recordUsages(json, callContext);
+    }
+
+    @Timed
+    @POST
+    @Path("/" + BULK)
+    @Consumes(APPLICATION_NDJSON)
+    @Produces(APPLICATION_JSON)
+    public Response recordUsagesFromNDJson(final InputStream input,
+                                           @HeaderParam(HDR_CREATED_BY) final String createdBy,
+                                           @HeaderParam(HDR_REASON) final String reason,
+                                           @HeaderParam(HDR_COMMENT) final String comment,
+                                           @javax.ws.rs.core.Context final HttpServletRequest request) throws EntitlementApiException, IOException {
+        final List<SubscriptionUsageRecordJson> json = new ArrayList<SubscriptionUsageRecordJson>();
+        final BufferedReader reader = new BufferedReader(new InputStreamReader(input, Charsets.UTF_8));
+        String line;
+        while ((line = reader.readLine()) != null) {
+            if (!line.trim().isEmpty()) {
+                json.add(mapper.readValue(line, SubscriptionUsageRecordJson.class));
+            }
+        }
+
+        final CallContext callContext = context.createContext(createdBy, reason, comment, request);
+        return recordUsages(json, callContext);
+    }
+
+    private Response recordUsages(final List<SubscriptionUsageRecordJson> json, final CallContext callContext) throws EntitlementApiException {
+        Preconditions.checkNotNull(json);
+
+        // Validate everything first, so that nothing is recorded if one of the records is invalid. Records for the same
+        // subscription are merged, so that each subscription is verified and its usage inserted (in a single batch) once
+        final Map<UUID, List<UnitUsageRecordJson>> unitUsageRecordsPerSubscription = new LinkedHashMap<UUID, List<UnitUsageRecordJson>>();
+        for (final SubscriptionUsageRecordJson recordJson : json) {
+            Preconditions.checkNotNull(recordJson.getSubscriptionId());
+            Preconditions.checkNotNull(recordJson.getUnitUsageRecords());
+            Preconditions.checkArgument(!recordJson.getUnitUsageRecords().isEmpty());
+
+            final UUID subscriptionId = UUID.fromString(recordJson.getSubscriptionId());
+            List<UnitUsageRecordJson> unitUsageRecords = unitUsageRecordsPerSubscription.get(subscriptionId);
+            if (unitUsageRecords == null) {
+                final Entitlement entitlement = entitlementApi.getEntitlementForId(subscriptionId, callContext);
+                if (entitlement.getState() != EntitlementState.ACTIVE) {
+                    return Response.status(Status.BAD_REQUEST).build();
+                }
+                unitUsageRecords = new ArrayList<UnitUsageRecordJson>();
+                unitUsageRecordsPerSubscription.put(subscriptionId, unitUsageRecords);
+            }
+            unitUsageRecords.addAll(recordJson.getUnitUsageRecords());
+        }
+
+        // Each subscription's usage is committed in its own transaction, so the request isn't atomic: the records stored so far
+        // are returned (in request order), also when recording fails midway, so that the caller only needs to retry the others
+        final List<SubscriptionUsageRecordJson> recordedUsages = new ArrayList<SubscriptionUsageRecordJson>(unitUsageRecordsPerSubscription.size());
+        for (final UUID subscriptionId : unitUsageRecordsPerSubscription.keySet()) {
+            final SubscriptionUsageRecordJson recordJson = new SubscriptionUsageRecordJson(subscriptionId.toString(), unitUsageRecordsPerSubscription.get(subscriptionId));
+            try {
+                usageUserApi.recordRolledUpUsage(recordJson.toSubscriptionUsageRecord(), callContext);
+            } catch (final RuntimeException e) {
+                if (recordedUsages.isEmpty()) {
+                    throw e;
+                }
+                log.warn("Failed to record usage for subscriptionId " + subscriptionId + ", usage was only recorded for " + recordedUsages.size() + " subscriptions", e);
+                return Response.status(Status.INTERNAL_SERVER_ERROR).entity(recordedUsages).build();
+            }
+            recordedUsages.add(recordJson);
+        }
+        return Response.status(Status.CREATED).entity(recordedUsages).build();
+    }
+
     @Timed
     @GET
     @Path("/{subscriptionId:" + UUID_PATTERN + "}/{unitType}")
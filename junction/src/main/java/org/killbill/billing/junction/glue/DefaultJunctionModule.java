@@ -19,11 +19,16 @@
 package org.killbill.billing.junction.glue;
 
 import org.killbill.billing.glue.JunctionModule;
+import org.killbill.billing.junction.BillingEventsTraceUserApi;
 import org.killbill.billing.junction.BillingInternalApi;
+import org.killbill.billing.junction.plumbing.billing.BillingEventsTracer;
 import org.killbill.billing.junction.plumbing.billing.BlockingCalculator;
+import org.killbill.billing.junction.plumbing.billing.DefaultBillingEventsTraceUserApi;
 import org.killbill.billing.junction.plumbing.billing.DefaultInternalBillingApi;
 import org.killbill.billing.platform.api.KillbillConfigSource;
+import org.killbill.billing.util.config.JunctionConfig;
 import org.killbill.billing.util.glue.KillBillModule;
+import org.skife.config.ConfigurationObjectFactory;
 
 public class DefaultJunctionModule extends KillBillModule implements JunctionModule {
 
@@ -33,15 +38,27 @@ public class DefaultJunctionModule extends KillBillModule implements JunctionMod
 
     @Override
     protected void configure() {
+        installConfig();
         installBillingApi();
+        installBillingEventsTraceUserApi();
         installBlockingCalculator();
     }
 
+    protected void installConfig() {
+        final JunctionConfig config = new ConfigurationObjectFactory(skifeConfigSource).build(JunctionConfig.class);
+        bind(JunctionConfig.class).toInstance(config);
+    }
+
     @Override
     public void installBillingApi() {
+        bind(BillingEventsTracer.class).asEagerSingleton();
         bind(BillingInternalApi.class).to(DefaultInternalBillingApi.class).asEagerSingleton();
     }
 
+    public void installBillingEventsTraceUserApi() {
+        bind(BillingEventsTraceUserApi.class).to(DefaultBillingEventsTraceUserApi.class).asEagerSingleton();
+    }
+
     public void installBlockingCalculator() {
         bind(BlockingCalculator.class).asEagerSingleton();
     }
@@ -0,0 +1,179 @@
+/*
+ * Copyright 2014 The Billing Project, LLC
+ *
+ * The Billing Project licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.killbill.billing.junction.plumbing.billing;
+
+import java.math.BigDecimal;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+import org.joda.time.DateTime;
+import org.killbill.billing.callcontext.InternalTenantContext;
+import org.killbill.billing.junction.BillingEvent;
+import org.killbill.billing.subscription.api.SubscriptionBaseTransitionType;
+import org.killbill.billing.util.config.JunctionConfig;
+import org.killbill.clock.Clock;
+
+import com.google.common.base.Objects;
+import com.google.common.collect.ImmutableList;
+import com.google.inject.Inject;
+
+/**
+ * Keeps, when enabled, the last billing events computed for the most recently invoiced accounts.
+ * <p/>
+ * Only a summary of each event is kept (the events themselves reference the account, subscription and catalog objects):
+ * it is rendered when the trace is dumped, so recording is cheap and nothing at all is done when tracing is disabled.
+ */
+public class BillingEventsTracer {
+
+    private final Clock clock;
+    private final boolean enabled;
+    private final int maxEntriesPerAccount;
+    // Access ordered, the least recently traced account is evicted first
+    private final Map<UUID, LinkedList<TraceEntry>> traces;
+
+    @Inject
+    public BillingEventsTracer(final JunctionConfig config, final Clock clock) {
+        this.clock = clock;
+        this.enabled = config.isBillingEventsTraceEnabled();
+        this.maxEntriesPerAccount = Math.max(1, config.getBillingEventsTraceMaxEntriesPerAccount());
+
+        final int maxAccounts = Math.max(1, config.getBillingEventsTraceMaxAccounts());
+        this.traces = new LinkedHashMap<UUID, LinkedList<TraceEntry>>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(final Map.Entry<UUID, LinkedList<TraceEntry>> eldest) {
+                return size() > maxAccounts;
+            }
+        };
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public void record(final UUID accountId, final String title, final Iterable<BillingEvent> events, final InternalTenantContext context) {
+        if (!enabled) {
+            return;
+        }
+
+        final ImmutableList.Builder<BillingEventSummary> summaries = ImmutableList.<BillingEventSummary>builder();
+        for (final BillingEvent event : events) {
+            summaries.add(new BillingEventSummary(event));
+        }
+        final TraceEntry entry = new TraceEntry(context.getTenantRecordId(), clock.getUTCNow(), title, summaries.build());
+        synchronized (traces) {
+            LinkedList<TraceEntry> entries = traces.get(accountId);
+            if (entries == null) {
+                entries = new LinkedList<TraceEntry>();
+                traces.put(accountId, entries);
+            }
+            entries.addLast(entry);
+            while (entries.size() > maxEntriesPerAccount) {
+                entries.removeFirst();
+            }
+        }
+    }
+
+    /**
+     * @param accountId account id
+     * @param context   tenant context, entries recorded for other tenants are ignored
+     * @return the traced billing events computations for that account, oldest first (empty if tracing is disabled)
+     */
+    public List<String> dump(final UUID accountId, final InternalTenantContext context) {
+        final List<TraceEntry> entries;
+        synchronized (traces) {
+            final LinkedList<TraceEntry> entriesForAccount = traces.get(accountId);
+            if (entriesForAccount == null) {
+                return ImmutableList.<String>of();
+            }
+            entries = ImmutableList.<TraceEntry>copyOf(entriesForAccount);
+        }
+
+        final ImmutableList.Builder<String> result = ImmutableList.<String>builder();
+        for (final TraceEntry entry : entries) {
+            if (Objects.equal(entry.tenantRecordId, context.getTenantRecordId())) {
+                result.add(entry.render(accountId));
+            }
+        }
+        return result.build();
+    }
+
+    private static final class TraceEntry {
+
+        private final Long tenantRecordId;
+        private final DateTime recordedDate;
+        private final String title;
+        private final List<BillingEventSummary> events;
+
+        private TraceEntry(final Long tenantRecordId, final DateTime recordedDate, final String title, final List<BillingEventSummary> events) {
+            this.tenantRecordId = tenantRecordId;
+            this.recordedDate = recordedDate;
+            this.title = title;
+            this.events = events;
+        }
+
+        private String render(final UUID accountId) {
+            final StringBuilder sb = new StringBuilder(title).append(" for accountId ").append(accountId)
+                                                             .append(" computed on ").append(recordedDate);
+            for (final BillingEventSummary event : events) {
+                sb.append("\n").append(event.toString());
+            }
+            return sb.toString();
+        }
+    }
+
+    // Same fields as DefaultBillingEvent#toString, plus what drives the invoice items
+    private static final class BillingEventSummary {
+
+        private final SubscriptionBaseTransitionType type;
+        private final DateTime effectiveDate;
+        private final String planPhaseName;
+        private final UUID subscriptionId;
+        private final int billCycleDayLocal;
+        private final BigDecimal fixedPrice;
+        private final BigDecimal recurringPrice;
+        private final Long totalOrdering;
+
+        private BillingEventSummary(final BillingEvent event) {
+            this.type = event.getTransitionType();
+            this.effectiveDate = event.getEffectiveDate();
+            this.planPhaseName = event.getPlanPhase() != null ? event.getPlanPhase().getName() : null;
+            this.subscriptionId = event.getSubscription() != null ? event.getSubscription().getId() : null;
+            this.billCycleDayLocal = event.getBillCycleDayLocal();
+            this.fixedPrice = event.getFixedPrice();
+            this.recurringPrice = event.getRecurringPrice();
+            this.totalOrdering = event.getTotalOrdering();
+        }
+
+        @Override
+        public String toString() {
+            final StringBuilder sb = new StringBuilder("BillingEvent");
+            sb.append("{type=").append(type);
+            sb.append(", effectiveDate=").append(effectiveDate);
+            sb.append(", planPhaseName=").append(planPhaseName);
+            sb.append(", subscriptionId=").append(subscriptionId);
+            sb.append(", billCycleDayLocal=").append(billCycleDayLocal);
+            sb.append(", fixedPrice=").append(fixedPrice);
+            sb.append(", recurringPrice=").append(recurringPrice);
+            sb.append(", totalOrdering=").append(totalOrdering);
+            sb.append('}');
+            return sb.toString();
+        }
+    }
+}
@@ -19,7 +19,9 @@ package org.killbill.billing.junction.plumbing.billing;
 import java.math.BigDecimal;
 import java.util.ArrayList;
 import java.util.Hashtable;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.SortedSet;
 import java.util.TreeSet;
 import java.util.UUID;
@@ -90,57 +92,86 @@ public class BlockingCalculator {
             return;
         }
 
-        final Account account = billingEvents.first().getAccount();
-
-        final Hashtable<UUID, List<SubscriptionBase>> bundleMap = createBundleSubscriptionMap(billingEvents);
-
-        final SortedSet<BillingEvent> billingEventsToAdd = new TreeSet<BillingEvent>();
-        final SortedSet<BillingEvent> billingEventsToRemove = new TreeSet<BillingEvent>();
-
         final List<BlockingState> blockingEvents = blockingApi.getBlockingAllForAccount(context);
         final List<DisabledDuration> blockingDurations = createBlockingDurations(blockingEvents);
-        for (final UUID bundleId : bundleMap.keySet()) {
-            for (final SubscriptionBase subscription : bundleMap.get(bundleId)) {
-                billingEventsToAdd.addAll(createNewEvents(blockingDurations, billingEvents, account, subscription));
-                billingEventsToRemove.addAll(eventsToRemove(blockingDurations, billingEvents, subscription));
-            }
+        if (blockingDurations.isEmpty()) {
+            return;
         }
 
-        for (final BillingEvent eventToAdd : billingEventsToAdd) {
-            billingEvents.add(eventToAdd);
+        final SortedSet<BillingEvent> billingEventsToAdd = new TreeSet<BillingEvent>();
+        final List<BillingEvent> billingEventsToRemove = new ArrayList<BillingEvent>();
+        for (final List<BillingEvent> subscriptionBillingEvents : partitionBySubscription(billingEvents).values()) {
+            billingEventsToAdd.addAll(createNewEvents(blockingDurations, subscriptionBillingEvents));
+            billingEventsToRemove.addAll(eventsToRemove(blockingDurations, subscriptionBillingEvents));
         }
 
+        billingEvents.addAll(billingEventsToAdd);
         for (final BillingEvent eventToRemove : billingEventsToRemove) {
             billingEvents.remove(eventToRemove);
         }
     }
 
+    // Billing events are ordered by subscription first, then by date: one pass is enough to split them
+    protected Map<UUID, List<BillingEvent>> partitionBySubscription(final SortedSet<BillingEvent> billingEvents) {
+        final Map<UUID, List<BillingEvent>> result = new LinkedHashMap<UUID, List<BillingEvent>>();
+        for (final BillingEvent event : billingEvents) {
+            final UUID subscriptionId = event.getSubscription().getId();
+            List<BillingEvent> subscriptionBillingEvents = result.get(subscriptionId);
+            if (subscriptionBillingEvents == null) {
+                subscriptionBillingEvents = new ArrayList<BillingEvent>();
+                result.put(subscriptionId, subscriptionBillingEvents);
+            }
+            subscriptionBillingEvents.add(event);
+        }
+        return result;
+    }
+
     protected SortedSet<BillingEvent> eventsToRemove(final List<DisabledDuration> disabledDuration,
                                                      final SortedSet<BillingEvent> billingEvents, final SubscriptionBase subscription) {
-        final SortedSet<BillingEvent> result = new TreeSet<BillingEvent>();
+        return new TreeSet<BillingEvent>(eventsToRemove(disabledDuration, filterToList(billingEvents, subscription)));
+    }
 
-        final SortedSet<BillingEvent> filteredBillingEvents = filter(billingEvents, subscription);
+    // The disabled durations and the billing events (of a single subscription) are both sorted: sweep them together
+    private List<BillingEvent> eventsToRemove(final List<DisabledDuration> disabledDuration, final List<BillingEvent> subscriptionBillingEvents) {
+        final List<BillingEvent> result = new ArrayList<BillingEvent>();
+
+        int i = 0;
         for (final DisabledDuration duration : disabledDuration) {
-            for (final BillingEvent event : filteredBillingEvents) {
-                if (duration.getEnd() == null || event.getEffectiveDate().isBefore(duration.getEnd())) {
-                    if (event.getEffectiveDate().isAfter(duration.getStart())) { //between the pair
-                        result.add(event);
-                    }
-                } else { //after the last event of the pair no need to keep checking
-                    break;
-                }
+            // Skip the events up to the beginning of the duration
+            while (i < subscriptionBillingEvents.size() && !subscriptionBillingEvents.get(i).getEffectiveDate().isAfter(duration.getStart())) {
+                i++;
+            }
+            // Remove the ones between the pair
+            while (i < subscriptionBillingEvents.size() &&
+                   (duration.getEnd() == null || subscriptionBillingEvents.get(i).getEffectiveDate().isBefore(duration.getEnd()))) {
+                result.add(subscriptionBillingEvents.get(i));
+                i++;
             }
         }
         return result;
     }
 
     protected SortedSet<BillingEvent> createNewEvents(final List<DisabledDuration> disabledDuration, final SortedSet<BillingEvent> billingEvents, final Account account, final SubscriptionBase subscription) {
-        final SortedSet<BillingEvent> result = new TreeSet<BillingEvent>();
+        return new TreeSet<BillingEvent>(createNewEvents(disabledDuration, filterToList(billingEvents, subscription)));
+    }
+
+    private List<BillingEvent> createNewEvents(final List<DisabledDuration> disabledDuration, final List<BillingEvent> subscriptionBillingEvents) {
+        final List<BillingEvent> result = new ArrayList<BillingEvent>();
+
+        // Durations are in ascending order and don't overlap, so the lookups below are for increasing dates
+        int nbEventsBefore = 0;
         for (final DisabledDuration duration : disabledDuration) {
             // The first one before the blocked duration
-            final BillingEvent precedingInitialEvent = precedingBillingEventForSubscription(duration.getStart(), billingEvents, subscription);
+            nbEventsBefore = countEventsBefore(duration.getStart(), subscriptionBillingEvents, nbEventsBefore);
+            final BillingEvent precedingInitialEvent = precedingBillingEvent(duration.getStart(), subscriptionBillingEvents, nbEventsBefore);
             // The last one during of before the duration
-            final BillingEvent precedingFinalEvent = precedingBillingEventForSubscription(duration.getEnd(), billingEvents, subscription);
+            final BillingEvent precedingFinalEvent;
+            if (duration.getEnd() == null) {
+                precedingFinalEvent = null;
+            } else {
+                nbEventsBefore = countEventsBefore(duration.getEnd(), subscriptionBillingEvents, nbEventsBefore);
+                precedingFinalEvent = precedingBillingEvent(duration.getEnd(), subscriptionBillingEvents, nbEventsBefore);
+            }
 
             if (precedingInitialEvent != null) { // there is a preceding billing event
                 result.add(createNewDisableEvent(duration.getStart(), precedingInitialEvent));
@@ -160,26 +191,34 @@ public class BlockingCalculator {
             return null;
         }
 
-        final SortedSet<BillingEvent> filteredBillingEvents = filter(billingEvents, subscription);
-        BillingEvent result = filteredBillingEvents.first();
+        final List<BillingEvent> subscriptionBillingEvents = filterToList(billingEvents, subscription);
+        return precedingBillingEvent(datetime, subscriptionBillingEvents, countEventsBefore(datetime, subscriptionBillingEvents, 0));
+    }
 
-        if (datetime.isBefore(result.getEffectiveDate())) {
-            //This case can happen, for example, if we have an add on and the bundle goes into disabled before the add on is created
-            return null;
+    // Number of events strictly before datetime, resuming the scan at fromIndex (events before it are known to be before datetime)
+    private int countEventsBefore(final DateTime datetime, final List<BillingEvent> subscriptionBillingEvents, final int fromIndex) {
+        int i = fromIndex;
+        while (i < subscriptionBillingEvents.size() && subscriptionBillingEvents.get(i).getEffectiveDate().isBefore(datetime)) {
+            i++;
         }
+        return i;
+    }
 
-        for (final BillingEvent event : filteredBillingEvents) {
-            if (!event.getEffectiveDate().isBefore(datetime)) { // found it its the previous event
-                return result;
-            } else { // still looking
-                result = event;
-            }
+    private BillingEvent precedingBillingEvent(final DateTime datetime, final List<BillingEvent> subscriptionBillingEvents, final int nbEventsBefore) {
+        if (subscriptionBillingEvents.isEmpty() || datetime.isBefore(subscriptionBillingEvents.get(0).getEffectiveDate())) {
+            //This case can happen, for example, if we have an add on and the bundle goes into disabled before the add on is created
+            return null;
         }
-        return result;
+        // If the first event is exactly at datetime, it is the one to consider
+        return subscriptionBillingEvents.get(Math.max(nbEventsBefore - 1, 0));
     }
 
     protected SortedSet<BillingEvent> filter(final SortedSet<BillingEvent> billingEvents, final SubscriptionBase subscription) {
-        final SortedSet<BillingEvent> result = new TreeSet<BillingEvent>();
+        return new TreeSet<BillingEvent>(filterToList(billingEvents, subscription));
+    }
+
+    private List<BillingEvent> filterToList(final SortedSet<BillingEvent> billingEvents, final SubscriptionBase subscription) {
+        final List<BillingEvent> result = new ArrayList<BillingEvent>();
         for (final BillingEvent event : billingEvents) {
             if (event.getSubscription() == subscription) {
                 result.add(event);
@@ -16,6 +16,7 @@
 
 package org.killbill.billing.junction.plumbing.billing;
 
+import java.util.Collection;
 import java.util.List;
 import java.util.SortedSet;
 import java.util.UUID;
@@ -38,12 +39,14 @@ import org.killbill.billing.account.api.AccountApiException;
 import org.killbill.billing.account.api.AccountInternalApi;
 import org.killbill.billing.account.api.MutableAccountData;
 import org.killbill.billing.callcontext.InternalCallContext;
+import org.killbill.billing.callcontext.InternalTenantContext;
 import org.killbill.billing.catalog.api.CatalogApiException;
 import org.killbill.billing.catalog.api.CatalogService;
 import org.killbill.billing.events.EffectiveSubscriptionInternalEvent;
 import org.killbill.billing.junction.BillingEvent;
 import org.killbill.billing.junction.BillingEventSet;
 import org.killbill.billing.junction.BillingInternalApi;
+import org.killbill.billing.subscription.api.AccountSubscriptions;
 import org.killbill.billing.subscription.api.SubscriptionBase;
 import org.killbill.billing.subscription.api.SubscriptionBaseInternalApi;
 import org.killbill.billing.subscription.api.user.SubscriptionBaseBundle;
@@ -52,7 +55,10 @@ import org.killbill.billing.util.tag.ControlTagType;
 import org.killbill.billing.util.tag.Tag;
 
 import com.google.common.base.Function;
+import com.google.common.base.Predicate;
+import com.google.common.collect.ArrayListMultimap;
 import com.google.common.collect.Collections2;
+import com.google.common.collect.Multimap;
 import com.google.inject.Inject;
 
 public class DefaultInternalBillingApi implements BillingInternalApi {
@@ -64,6 +70,7 @@ public class DefaultInternalBillingApi implements BillingInternalApi {
     private final CatalogService catalogService;
     private final BlockingCalculator blockCalculator;
     private final TagInternalApi tagApi;
+    private final BillingEventsTracer tracer;
     private final Clock clock;
 
     @Inject
@@ -73,6 +80,7 @@ public class DefaultInternalBillingApi implements BillingInternalApi {
                                      final BlockingCalculator blockCalculator,
                                      final CatalogService catalogService,
                                      final TagInternalApi tagApi,
+                                     final BillingEventsTracer tracer,
                                      final Clock clock) {
         this.accountApi = accountApi;
         this.bcdCalculator = bcdCalculator;
@@ -80,41 +88,68 @@ public class DefaultInternalBillingApi implements BillingInternalApi {
         this.catalogService = catalogService;
         this.blockCalculator = blockCalculator;
         this.tagApi = tagApi;
+        this.tracer = tracer;
         this.clock = clock;
     }
 
     @Override
     public BillingEventSet getBillingEventsForAccountAndUpdateAccountBCD(final UUID accountId, final InternalCallContext context) {
-        final List<SubscriptionBaseBundle> bundles = subscriptionApi.getBundlesForAccount(accountId, context);
+        // Load the bundles and subscriptions (with their events) of the account at once, instead of bundle per bundle
+        final AccountSubscriptions accountSubscriptions = subscriptionApi.getAccountSubscriptions(context);
         final DefaultBillingEventSet result = new DefaultBillingEventSet();
-        result.setRecurrringBillingMode(catalogService.getCurrentCatalog().getRecurringBillingMode());
+        result.setRecurrringBillingMode(catalogService.getCurrentCatalog(context).getRecurringBillingMode());
 
         try {
             final Account account = accountApi.getAccountById(accountId, context);
 
+            // Retrieve all tags of the account (account and bundles) at once, instead of querying them per object
+            final Multimap<UUID, Tag> tagsByObjectId = getTagsByObjectId(context);
+
             // Check to see if billing is off for the account
-            final List<Tag> accountTags = tagApi.getTags(accountId, ObjectType.ACCOUNT, context);
-            final boolean found_AUTO_INVOICING_OFF = is_AUTO_INVOICING_OFF(accountTags);
+            final boolean found_AUTO_INVOICING_OFF = is_AUTO_INVOICING_OFF(getTags(tagsByObjectId, accountId, ObjectType.ACCOUNT));
             if (found_AUTO_INVOICING_OFF) {
                 result.setAccountAutoInvoiceIsOff(true);
                 return result; // billing is off, we are done
             }
 
-            addBillingEventsForBundles(bundles, account, context, result);
+            final boolean success = addBillingEventsForBundles(accountSubscriptions, account, tagsByObjectId, context, result);
+            if (!success) {
+                logTrace(accountId, context);
+            }
         } catch (AccountApiException e) {
             log.warn("Failed while getting BillingEvent", e);
+            logTrace(accountId, context);
+        }
+
+        // Keep the events, before and after the blocking calculator does its magic. Rendering them is expensive
+        // for large accounts, so this is only done on demand (trace) or when debugging
+        tracer.record(accountId, "Billing Events Raw", result, context);
+        final StringBuilder logStringBuilder = log.isDebugEnabled() ? new StringBuilder("Computed billing events for accountId ").append(accountId) : null;
+        if (logStringBuilder != null) {
+            eventsToString(logStringBuilder, result, "\nBilling Events Raw");
         }
 
-        // Pretty-print the events, before and after the blocking calculator does its magic
-        final StringBuilder logStringBuilder = new StringBuilder("Computed billing events for accountId ").append(accountId);
-        eventsToString(logStringBuilder, result, "\nBilling Events Raw");
         blockCalculator.insertBlockingEvents(result, context);
-        eventsToString(logStringBuilder, result, "\nBilling Events After Blocking");
-        log.info(logStringBuilder.toString());
+
+        tracer.record(accountId, "Billing Events After Blocking", result, context);
+        if (logStringBuilder != null) {
+            eventsToString(logStringBuilder, result, "\nBilling Events After Blocking");
+            log.debug(logStringBuilder.toString());
+        }
 
         return result;
     }
 
+    // Dump the previous computations for that account, to help figuring out what changed
+    private void logTrace(final UUID accountId, final InternalTenantContext context) {
+        if (!tracer.isEnabled()) {
+            return;
+        }
+        for (final String trace : tracer.dump(accountId, context)) {
+            log.warn(trace);
+        }
+    }
+
     private void eventsToString(final StringBuilder stringBuilder, final SortedSet<BillingEvent> events, final String title) {
         stringBuilder.append(title);
         for (final BillingEvent event : events) {
@@ -122,27 +157,32 @@ public class DefaultInternalBillingApi implements BillingInternalApi {
         }
     }
 
-    private void addBillingEventsForBundles(final List<SubscriptionBaseBundle> bundles, final Account account, final InternalCallContext context,
-                                            final DefaultBillingEventSet result) {
-        for (final SubscriptionBaseBundle bundle : bundles) {
-            final List<SubscriptionBase> subscriptions = subscriptionApi.getSubscriptionsForBundle(bundle.getId(), context);
+    // Returns false if some billing events could not be computed
+    private boolean addBillingEventsForBundles(final AccountSubscriptions accountSubscriptions, final Account account, final Multimap<UUID, Tag> tagsByObjectId,
+                                            final InternalCallContext context, final DefaultBillingEventSet result) {
+        boolean success = true;
+        for (final SubscriptionBaseBundle bundle : accountSubscriptions.getBundles()) {
+            final List<SubscriptionBase> subscriptions = accountSubscriptions.getSubscriptionsForBundle(bundle.getId());
 
             //Check if billing is off for the bundle
-            final List<Tag> bundleTags = tagApi.getTags(bundle.getId(), ObjectType.BUNDLE, context);
+            final Collection<Tag> bundleTags = getTags(tagsByObjectId, bundle.getId(), ObjectType.BUNDLE);
             boolean found_AUTO_INVOICING_OFF = is_AUTO_INVOICING_OFF(bundleTags);
             if (found_AUTO_INVOICING_OFF) {
                 for (final SubscriptionBase subscription : subscriptions) { // billing is off so list sub ids in set to be excluded
                     result.getSubscriptionIdsWithAutoInvoiceOff().add(subscription.getId());
                 }
             } else { // billing is not off
-                addBillingEventsForSubscription(subscriptions, bundle, account, context, result);
+                success = addBillingEventsForSubscription(subscriptions, bundle, account, context, result) && success;
             }
         }
+        return success;
     }
 
-    private void addBillingEventsForSubscription(final List<SubscriptionBase> subscriptions, final SubscriptionBaseBundle bundle, final Account account, final InternalCallContext context, final DefaultBillingEventSet result) {
+    // Returns false if some billing events could not be computed
+    private boolean addBillingEventsForSubscription(final List<SubscriptionBase> subscriptions, final SubscriptionBaseBundle bundle, final Account account, final InternalCallContext context, final DefaultBillingEventSet result) {
 
         boolean updatedAccountBCD = false;
+        boolean success = true;
         for (final SubscriptionBase subscription : subscriptions) {
 
             // The subscription did not even start, so there is nothing to do yet, we can skip and avoid some NPE down the line when calculating the BCD
@@ -161,19 +201,39 @@ public class DefaultInternalBillingApi implements BillingInternalApi {
                         updatedAccountBCD = true;
                     }
 
-                    final BillingEvent event = new DefaultBillingEvent(account, transition, subscription, bcdLocal, account.getCurrency(), catalogService.getFullCatalog());
+                    final BillingEvent event = new DefaultBillingEvent(account, transition, subscription, bcdLocal, account.getCurrency(), catalogService.getFullCatalog(context));
                     result.add(event);
                 } catch (CatalogApiException e) {
                     log.error("Failing to identify catalog components while creating BillingEvent from transition: " +
                               transition.getId().toString(), e);
+                    success = false;
                 } catch (Exception e) {
                     log.warn("Failed while getting BillingEvent", e);
+                    success = false;
                 }
             }
         }
+        return success;
+    }
+
+    private Multimap<UUID, Tag> getTagsByObjectId(final InternalCallContext context) {
+        final Multimap<UUID, Tag> tagsByObjectId = ArrayListMultimap.create();
+        for (final Tag tag : tagApi.getTagsForAccount(false, context)) {
+            tagsByObjectId.put(tag.getObjectId(), tag);
+        }
+        return tagsByObjectId;
+    }
+
+    private Collection<Tag> getTags(final Multimap<UUID, Tag> tagsByObjectId, final UUID objectId, final ObjectType objectType) {
+        return Collections2.filter(tagsByObjectId.get(objectId), new Predicate<Tag>() {
+            @Override
+            public boolean apply(final Tag tag) {
+                return objectType.equals(tag.getObjectType());
+            }
+        });
     }
 
-    private final boolean is_AUTO_INVOICING_OFF(final List<Tag> tags) {
+    private final boolean is_AUTO_INVOICING_OFF(final Collection<Tag> tags) {
         return ControlTagType.isAutoInvoicingOff(Collections2.transform(tags, new Function<Tag, UUID>() {
             @Nullable
             @Override
@@ -0,0 +1,120 @@
+/*
+ * Copyright 2014 The Billing Project, LLC
+ *
+ * The Billing Project licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.killbill.billing.junction.plumbing.billing;
+
+import java.util.List;
+import java.util.Properties;
+import java.util.UUID;
+
+import org.killbill.billing.callcontext.InternalTenantContext;
+import org.killbill.billing.catalog.api.PlanPhase;
+import org.killbill.billing.junction.BillingEvent;
+import org.killbill.billing.junction.JunctionTestSuiteNoDB;
+import org.killbill.billing.subscription.api.SubscriptionBaseTransitionType;
+import org.killbill.billing.util.config.JunctionConfig;
+import org.mockito.Mockito;
+import org.skife.config.ConfigurationObjectFactory;
+import org.skife.config.SimplePropertyConfigSource;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import com.google.common.collect.ImmutableList;
+
+public class TestBillingEventsTracer extends JunctionTestSuiteNoDB {
+
+    @Test(groups = "fast")
+    public void testDisabled() throws Exception {
+        final BillingEventsTracer tracer = createTracer(false, 10, 10);
+        Assert.assertFalse(tracer.isEnabled());
+
+        final UUID accountId = UUID.randomUUID();
+        tracer.record(accountId, "Billing Events Raw", ImmutableList.<BillingEvent>of(createBillingEvent("event-1")), internalCallContext);
+        Assert.assertEquals(tracer.dump(accountId, internalCallContext).size(), 0);
+    }
+
+    @Test(groups = "fast")
+    public void testEntriesPerAccountAreBounded() throws Exception {
+        final BillingEventsTracer tracer = createTracer(true, 10, 2);
+
+        final UUID accountId = UUID.randomUUID();
+        tracer.record(accountId, "Run 1", ImmutableList.<BillingEvent>of(createBillingEvent("event-1")), internalCallContext);
+        tracer.record(accountId, "Run 2", ImmutableList.<BillingEvent>of(createBillingEvent("event-2")), internalCallContext);
+        tracer.record(accountId, "Run 3", ImmutableList.<BillingEvent>of(createBillingEvent("event-3"), createBillingEvent("event-4")), internalCallContext);
+
+        final List<String> traces = tracer.dump(accountId, internalCallContext);
+        Assert.assertEquals(traces.size(), 2);
+        Assert.assertTrue(traces.get(0).startsWith("Run 2 for accountId " + accountId));
+        Assert.assertTrue(traces.get(0).endsWith("\n" + billingEventToString("event-2")));
+        Assert.assertTrue(traces.get(1).startsWith("Run 3 for accountId " + accountId));
+        Assert.assertTrue(traces.get(1).endsWith("\n" + billingEventToString("event-3") + "\n" + billingEventToString("event-4")));
+    }
+
+    @Test(groups = "fast")
+    public void testLeastRecentlyTracedAccountIsEvicted() throws Exception {
+        final BillingEventsTracer tracer = createTracer(true, 2, 10);
+
+        final UUID accountId1 = UUID.randomUUID();
+        final UUID accountId2 = UUID.randomUUID();
+        final UUID accountId3 = UUID.randomUUID();
+        tracer.record(accountId1, "Run", ImmutableList.<BillingEvent>of(), internalCallContext);
+        tracer.record(accountId2, "Run", ImmutableList.<BillingEvent>of(), internalCallContext);
+        tracer.record(accountId1, "Run", ImmutableList.<BillingEvent>of(), internalCallContext);
+        tracer.record(accountId3, "Run", ImmutableList.<BillingEvent>of(), internalCallContext);
+
+        Assert.assertEquals(tracer.dump(accountId1, internalCallContext).size(), 2);
+        Assert.assertEquals(tracer.dump(accountId2, internalCallContext).size(), 0);
+        Assert.assertEquals(tracer.dump(accountId3, internalCallContext).size(), 1);
+    }
+
+    @Test(groups = "fast")
+    public void testTracesAreScopedToTheTenant() throws Exception {
+        final BillingEventsTracer tracer = createTracer(true, 10, 10);
+
+        final UUID accountId = UUID.randomUUID();
+        tracer.record(accountId, "Run", ImmutableList.<BillingEvent>of(createBillingEvent("event-1")), internalCallContext);
+
+        final InternalTenantContext otherTenantContext = new InternalTenantContext(internalCallContext.getTenantRecordId() + 1, internalCallContext.getAccountRecordId());
+        Assert.assertEquals(tracer.dump(accountId, otherTenantContext).size(), 0);
+        Assert.assertEquals(tracer.dump(accountId, internalCallContext).size(), 1);
+    }
+
+    private BillingEventsTracer createTracer(final boolean enabled, final int maxAccounts, final int maxEntriesPerAccount) {
+        final Properties properties = new Properties();
+        properties.setProperty("org.killbill.junction.trace.enabled", String.valueOf(enabled));
+        properties.setProperty("org.killbill.junction.trace.maxAccounts", String.valueOf(maxAccounts));
+        properties.setProperty("org.killbill.junction.trace.maxEntriesPerAccount", String.valueOf(maxEntriesPerAccount));
+        final JunctionConfig config = new ConfigurationObjectFactory(new SimplePropertyConfigSource(properties)).build(JunctionConfig.class);
+        return new BillingEventsTracer(config, clock);
+    }
+
+    private BillingEvent createBillingEvent(final String planPhaseName) {
+        final PlanPhase planPhase = Mockito.mock(PlanPhase.class);
+        Mockito.when(planPhase.getName()).thenReturn(planPhaseName);
+
+        final BillingEvent event = Mockito.mock(BillingEvent.class);
+        Mockito.when(event.getTransitionType()).thenReturn(SubscriptionBaseTransitionType.CREATE);
+        Mockito.when(event.getPlanPhase()).thenReturn(planPhase);
+        Mockito.when(event.getBillCycleDayLocal()).thenReturn(1);
+        Mockito.when(event.getTotalOrdering()).thenReturn(1L);
+        return event;
+    }
+
+    private String billingEventToString(final String planPhaseName) {
+        return "BillingEvent{type=CREATE, effectiveDate=null, planPhaseName=" + planPhaseName + ", subscriptionId=null, billCycleDayLocal=1, " +
+               "fixedPrice=null, recurringPrice=null, totalOrdering=1}";
+    }
+}
@@ -771,6 +771,56 @@ public class TestBlockingCalculator extends JunctionTestSuiteNoDB {
         assertEquals(events.get(4).getTransitionType(), SubscriptionBaseTransitionType.CHANGE);
     }
 
+    // S1-S4 subscriptions in different bundles, blocked twice
+    // B1 -------[------]---[-------------------
+    // S1 --A--------B-----------C---------------
+    // S4 --D------------------------------------
+
+    //Result
+    // S1 --A----[------]B--[--------------------
+    // S4 --D----[------]---[--------------------
+    @Test(groups = "fast")
+    public void testInsertBlockingEventsForSeveralDurations() {
+        final BillingEvent A = createRealEvent(new LocalDate(2012, 1, 1).toDateTimeAtStartOfDay(DateTimeZone.UTC), subscription1, SubscriptionBaseTransitionType.CREATE);
+        final BillingEvent B = createRealEvent(new LocalDate(2012, 3, 1).toDateTimeAtStartOfDay(DateTimeZone.UTC), subscription1);
+        final BillingEvent C = createRealEvent(new LocalDate(2012, 6, 1).toDateTimeAtStartOfDay(DateTimeZone.UTC), subscription1);
+        final BillingEvent D = createRealEvent(new LocalDate(2012, 1, 1).toDateTimeAtStartOfDay(DateTimeZone.UTC), subscription4, SubscriptionBaseTransitionType.CREATE);
+        final SortedSet<BillingEvent> billingEvents = new TreeSet<BillingEvent>();
+        billingEvents.add(A);
+        billingEvents.add(B);
+        billingEvents.add(C);
+        billingEvents.add(D);
+
+        final List<BlockingState> blockingStates = new ArrayList<BlockingState>();
+        blockingStates.add(new DefaultBlockingState(bundleId1, BlockingStateType.SUBSCRIPTION_BUNDLE, DISABLED_BUNDLE, "test", true, true, true, new LocalDate(2012, 2, 1).toDateTimeAtStartOfDay(DateTimeZone.UTC)));
+        blockingStates.add(new DefaultBlockingState(bundleId1, BlockingStateType.SUBSCRIPTION_BUNDLE, CLEAR_BUNDLE, "test", false, false, false, new LocalDate(2012, 4, 1).toDateTimeAtStartOfDay(DateTimeZone.UTC)));
+        blockingStates.add(new DefaultBlockingState(bundleId1, BlockingStateType.SUBSCRIPTION_BUNDLE, DISABLED_BUNDLE, "test", true, true, true, new LocalDate(2012, 5, 1).toDateTimeAtStartOfDay(DateTimeZone.UTC)));
+
+        setBlockingStates(blockingStates);
+
+        blockingCalculator.insertBlockingEvents(billingEvents, internalCallContext);
+
+        assertEquals(billingEvents.size(), 8);
+
+        final List<BillingEvent> s1Events = new ArrayList<BillingEvent>(blockingCalculator.filter(billingEvents, subscription1));
+        assertEquals(s1Events.size(), 4);
+        assertEquals(s1Events.get(0), A);
+        assertEquals(s1Events.get(1).getEffectiveDate(), new LocalDate(2012, 2, 1).toDateTimeAtStartOfDay(DateTimeZone.UTC));
+        assertEquals(s1Events.get(1).getTransitionType(), SubscriptionBaseTransitionType.START_BILLING_DISABLED);
+        assertEquals(s1Events.get(2).getEffectiveDate(), new LocalDate(2012, 4, 1).toDateTimeAtStartOfDay(DateTimeZone.UTC));
+        assertEquals(s1Events.get(2).getTransitionType(), SubscriptionBaseTransitionType.END_BILLING_DISABLED);
+        assertEquals(s1Events.get(2).getPlan(), B.getPlan());
+        assertEquals(s1Events.get(3).getEffectiveDate(), new LocalDate(2012, 5, 1).toDateTimeAtStartOfDay(DateTimeZone.UTC));
+        assertEquals(s1Events.get(3).getTransitionType(), SubscriptionBaseTransitionType.START_BILLING_DISABLED);
+
+        final List<BillingEvent> s4Events = new ArrayList<BillingEvent>(blockingCalculator.filter(billingEvents, subscription4));
+        assertEquals(s4Events.size(), 4);
+        assertEquals(s4Events.get(0), D);
+        assertEquals(s4Events.get(1).getTransitionType(), SubscriptionBaseTransitionType.START_BILLING_DISABLED);
+        assertEquals(s4Events.get(2).getTransitionType(), SubscriptionBaseTransitionType.END_BILLING_DISABLED);
+        assertEquals(s4Events.get(3).getTransitionType(), SubscriptionBaseTransitionType.START_BILLING_DISABLED);
+    }
+
     private void setBlockingStates(final List<BlockingState> blockingStates) {
         for (final BlockingState blockingState : blockingStates) {
             blockingStateDao.setBlockingState(blockingState, clock, internalCallContext);
@@ -17,6 +17,7 @@
 package org.killbill.billing.overdue.wrapper;
 
 import org.killbill.billing.account.api.Account;
+import org.killbill.billing.callcontext.AccountContextSnapshot;
 import org.killbill.billing.callcontext.InternalCallContext;
 import org.killbill.billing.callcontext.InternalTenantContext;
 import org.killbill.clock.Clock;
@@ -53,11 +54,15 @@ public class OverdueWrapper {
         this.overdueStateApplicator = overdueStateApplicator;
     }
 
-    public OverdueState refresh(final InternalCallContext context) throws OverdueException, OverdueApiException {
+    public OverdueState refresh(final InternalCallContext callContext) throws OverdueException, OverdueApiException {
         if (overdueStateSet.size() < 1) { // No configuration available
             return overdueStateSet.getClearState();
         }
 
+        // The account has already been loaded: share it with the other modules. Tags and blocking states are
+        // left out of the snapshot since they may be modified by the overdue state applicator
+        final InternalCallContext context = new InternalCallContext(callContext, new AccountContextSnapshot(overdueable, null, null, null));
+
         final BillingState billingState = billingState(context);
         final String previousOverdueStateName = api.getBlockingStateForService(overdueable.getId(), BlockingStateType.ACCOUNT, OverdueService.OVERDUE_SERVICE_NAME, context).getStateName();
 
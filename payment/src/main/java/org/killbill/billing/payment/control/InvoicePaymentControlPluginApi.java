@@ -80,6 +80,7 @@ public final class InvoicePaymentControlPluginApi implements PaymentControlPlugi
     /* Don't change value String for properties as they are referenced from jaxrs without the constants which are not accessible */
     public final static String PLUGIN_NAME = "__INVOICE_PAYMENT_CONTROL_PLUGIN__";
     public static final String PROP_IPCD_INVOICE_ID = "IPCD_INVOICE_ID";
+    public static final String PROP_IPCD_ALL_UNPAID_INVOICES = "IPCD_ALL_UNPAID_INVOICES";
     public static final String PROP_IPCD_REFUND_IDS_WITH_AMOUNT_KEY = "IPCD_REFUND_IDS_AMOUNTS";
     public static final String PROP_IPCD_REFUND_WITH_ADJUSTMENTS = "IPCD_REFUND_WITH_ADJUSTMENTS";
 
@@ -120,6 +121,9 @@ public final class InvoicePaymentControlPluginApi implements PaymentControlPlugi
         final InternalCallContext internalContext = internalCallContextFactory.createInternalCallContext(paymentControlContext.getAccountId(), paymentControlContext);
         switch (transactionType) {
             case PURCHASE:
+                if (isForAllUnpaidInvoices(paymentControlContext)) {
+                    return getPluginPurchaseResultForUnpaidInvoices(paymentControlContext, internalContext);
+                }
                 return getPluginPurchaseResult(paymentControlContext, internalContext);
             case REFUND:
                 return getPluginRefundResult(paymentControlContext, internalContext);
@@ -143,6 +147,19 @@ public final class InvoicePaymentControlPluginApi implements PaymentControlPlugi
             final InvoicePayment existingInvoicePayment;
             switch (transactionType) {
                 case PURCHASE:
+                    if (isForAllUnpaidInvoices(paymentControlContext)) {
+                        // Idempotent, a single transaction allocates the payment oldest invoice first
+                        invoiceApi.notifyOfPaymentForUnpaidInvoices(paymentControlContext.getAccountId(),
+                                                                    clock.getUTCToday(),
+                                                                    paymentControlContext.getAmount(),
+                                                                    paymentControlContext.getCurrency(),
+                                                                    paymentControlContext.getProcessedCurrency(),
+                                                                    paymentControlContext.getPaymentId(),
+                                                                    paymentControlContext.getCreatedDate(),
+                                                                    internalContext);
+                        break;
+                    }
+
                     final UUID invoiceId = getInvoiceId(paymentControlContext);
                     existingInvoicePayment = invoiceApi.getInvoicePaymentForAttempt(paymentControlContext.getPaymentId(), internalContext);
                     if (existingInvoicePayment != null) {
@@ -223,6 +240,41 @@ public final class InvoicePaymentControlPluginApi implements PaymentControlPlugi
         return UUID.fromString((String) invoiceProp.getValue());
     }
 
+    private boolean isForAllUnpaidInvoices(final PaymentControlContext paymentControlContext) {
+        final PluginProperty allUnpaidInvoicesProp = getPluginProperty(paymentControlContext.getPluginProperties(), PROP_IPCD_ALL_UNPAID_INVOICES);
+        return allUnpaidInvoicesProp != null && Boolean.valueOf(String.valueOf(allUnpaidInvoicesProp.getValue()));
+    }
+
+    private PriorPaymentControlResult getPluginPurchaseResultForUnpaidInvoices(final PaymentControlContext paymentControlPluginContext, final InternalCallContext internalContext) throws PaymentControlApiException {
+
+        try {
+            invoiceApi.consumeExistingCBAOnAccountWithUnpaidInvoices(paymentControlPluginContext.getAccountId(), internalContext);
+
+            BigDecimal unpaidBalance = BigDecimal.ZERO;
+            for (final Invoice invoice : invoiceApi.getUnpaidInvoicesByAccountId(paymentControlPluginContext.getAccountId(), clock.getUTCToday(), internalContext)) {
+                unpaidBalance = unpaidBalance.add(invoice.getBalance());
+            }
+
+            final BigDecimal inputAmount = paymentControlPluginContext.getAmount();
+            final BigDecimal requestedAmount = inputAmount == null || unpaidBalance.compareTo(inputAmount) < 0 ? unpaidBalance : inputAmount;
+
+            final boolean isAborted = requestedAmount.compareTo(BigDecimal.ZERO) <= 0;
+            if (!isAborted && insert_AUTO_PAY_OFF_ifRequired(paymentControlPluginContext, requestedAmount)) {
+                return new DefaultPriorPaymentControlResult(true);
+            }
+
+            if (paymentControlPluginContext.isApiPayment() && isAborted) {
+                throw new PaymentControlApiException("Payment for account " + paymentControlPluginContext.getAccountId() +
+                                                     " aborted : unpaid balance is = " + unpaidBalance +
+                                                     ", requested payment amount is = " + inputAmount);
+            } else {
+                return new DefaultPriorPaymentControlResult(isAborted, requestedAmount);
+            }
+        } catch (InvoiceApiException e) {
+            throw new PaymentControlApiException(e);
+        }
+    }
+
     private PriorPaymentControlResult getPluginPurchaseResult(final PaymentControlContext paymentControlPluginContext, final InternalCallContext internalContext) throws PaymentControlApiException {
 
         try {
@@ -28,6 +28,7 @@ import java.util.concurrent.ExecutorService;
 import javax.annotation.Nullable;
 
 import org.killbill.billing.ErrorCode;
+import org.killbill.billing.ObjectType;
 import org.killbill.billing.account.api.Account;
 import org.killbill.billing.account.api.AccountApiException;
 import org.killbill.billing.account.api.AccountInternalApi;
@@ -51,9 +52,14 @@ import org.killbill.billing.payment.provider.DefaultNoOpPaymentMethodPlugin;
 import org.killbill.billing.payment.provider.DefaultPaymentMethodInfoPlugin;
 import org.killbill.billing.payment.provider.ExternalPaymentProviderPlugin;
 import org.killbill.billing.tag.TagInternalApi;
+import org.killbill.billing.util.cache.Cachable.CacheType;
+import org.killbill.billing.util.cache.CacheController;
 import org.killbill.billing.util.cache.CacheControllerDispatcher;
+import org.killbill.billing.util.cache.CacheLoaderArgument;
+import org.killbill.billing.util.cache.PaymentMethodPluginInfoCacheLoader;
 import org.killbill.billing.util.callcontext.CallContext;
 import org.killbill.billing.util.callcontext.TenantContext;
+import org.killbill.billing.util.config.PaymentConfig;
 import org.killbill.billing.util.dao.NonEntityDao;
 import org.killbill.billing.util.entity.Pagination;
 import org.killbill.billing.util.entity.dao.DefaultPaginationHelper.EntityPaginationBuilder;
@@ -67,6 +73,7 @@ import com.google.common.base.Function;
 import com.google.common.base.Objects;
 import com.google.common.collect.Collections2;
 import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Iterables;
 import com.google.inject.Inject;
 import com.google.inject.name.Named;
 
@@ -78,6 +85,8 @@ public class PaymentMethodProcessor extends ProcessorBase {
 
     private static final Logger log = LoggerFactory.getLogger(PaymentMethodProcessor.class);
 
+    private final PaymentConfig paymentConfig;
+
     @Inject
     public PaymentMethodProcessor(final OSGIServiceRegistration<PaymentPluginApi> pluginRegistry,
                                   final AccountInternalApi accountInternalApi,
@@ -88,8 +97,10 @@ public class PaymentMethodProcessor extends ProcessorBase {
                                   final GlobalLocker locker,
                                   @Named(PLUGIN_EXECUTOR_NAMED) final ExecutorService executor,
                                   final Clock clock,
-                                  final CacheControllerDispatcher controllerDispatcher) {
+                                  final CacheControllerDispatcher controllerDispatcher,
+                                  final PaymentConfig paymentConfig) {
         super(pluginRegistry, accountInternalApi, paymentDao, nonEntityDao, tagUserApi, locker, executor, invoiceApi, clock, controllerDispatcher);
+        this.paymentConfig = paymentConfig;
     }
 
     public UUID addPaymentMethod(final String paymentMethodExternalKey, final String paymentPluginServiceName, final Account account,
@@ -165,7 +176,12 @@ public class PaymentMethodProcessor extends ProcessorBase {
         if (withPluginInfo) {
             try {
                 final PaymentPluginApi pluginApi = getPaymentPluginApi(paymentMethodModelDao.getPluginName());
-                paymentMethodPlugin = pluginApi.getPaymentMethodDetail(paymentMethodModelDao.getAccountId(), paymentMethodModelDao.getId(), properties, tenantContext);
+                final PaymentMethodPlugin cachedPaymentMethodPlugin = getCachedPaymentMethodPlugin(pluginApi, paymentMethodModelDao, properties, tenantContext, context);
+                if (cachedPaymentMethodPlugin != null) {
+                    paymentMethodPlugin = cachedPaymentMethodPlugin;
+                } else {
+                    paymentMethodPlugin = pluginApi.getPaymentMethodDetail(paymentMethodModelDao.getAccountId(), paymentMethodModelDao.getId(), properties, tenantContext);
+                }
             } catch (final PaymentPluginApiException e) {
                 log.warn("Error retrieving payment method " + paymentMethodModelDao.getId() + " from plugin " + paymentMethodModelDao.getPluginName(), e);
                 throw new PaymentApiException(ErrorCode.PAYMENT_GET_PAYMENT_METHODS, paymentMethodModelDao.getAccountId(), paymentMethodModelDao.getId());
@@ -177,6 +193,45 @@ public class PaymentMethodProcessor extends ProcessorBase {
         return new DefaultPaymentMethod(paymentMethodModelDao, paymentMethodPlugin);
     }
 
+    private void invalidatePaymentMethodPluginInfoCache(final UUID accountId, final InternalTenantContext context) {
+        final CacheController<Object, Object> cache = controllerDispatcher.getCacheController(CacheType.PAYMENT_METHOD_PLUGIN_INFO);
+        if (cache == null) {
+            return;
+        }
+        for (final PaymentMethodModelDao paymentMethodModelDao : paymentDao.getPaymentMethods(accountId, context)) {
+            cache.remove(paymentMethodModelDao.getId());
+        }
+    }
+
+    //
+    // Plugin details are only cached when enabled, and when no plugin property could change what the plugin returns. Returns null
+    // if the details aren't cached (including when the plugin call failed, so that the caller can retry it and report the error).
+    //
+    private PaymentMethodPlugin getCachedPaymentMethodPlugin(final PaymentPluginApi pluginApi, final PaymentMethodModelDao paymentMethodModelDao, final Iterable<PluginProperty> properties,
+                                                             final TenantContext tenantContext, final InternalTenantContext context) {
+        if (!paymentConfig.isPaymentMethodPluginInfoCacheEnabled() || (properties != null && !Iterables.isEmpty(properties))) {
+            return null;
+        }
+        final CacheController<Object, Object> cache = controllerDispatcher.getCacheController(CacheType.PAYMENT_METHOD_PLUGIN_INFO);
+        if (cache == null) {
+            return null;
+        }
+
+        final CacheLoaderArgument cacheLoaderArgument = new CacheLoaderArgument(ObjectType.PAYMENT_METHOD,
+                                                                                new Object[]{new PaymentMethodPluginInfoCacheLoader.LoaderCallback() {
+                                                                                    @Override
+                                                                                    public Object loadPaymentMethodPluginInfo(final UUID paymentMethodId, final InternalTenantContext internalTenantContext) {
+                                                                                        try {
+                                                                                            return pluginApi.getPaymentMethodDetail(paymentMethodModelDao.getAccountId(), paymentMethodId, properties, tenantContext);
+                                                                                        } catch (final PaymentPluginApiException e) {
+                                                                                            return null;
+                                                                                        }
+                                                                                    }
+                                                                                }},
+                                                                                context);
+        return (PaymentMethodPlugin) cache.get(paymentMethodModelDao.getId(), cacheLoaderArgument);
+    }
+
     public Pagination<PaymentMethod> getPaymentMethods(final Long offset, final Long limit, final boolean withPluginInfo, final Iterable<PluginProperty> properties, final TenantContext tenantContext, final InternalTenantContext internalTenantContext) {
         return getEntityPaginationFromPlugins(getAvailablePlugins(),
                                               offset,
@@ -386,6 +441,8 @@ public class PaymentMethodProcessor extends ProcessorBase {
 
                         pluginApi.setDefaultPaymentMethod(account.getId(), paymentMethodId, properties, callContext);
                         accountInternalApi.updatePaymentMethod(account.getId(), paymentMethodId, context);
+                        // The plugin details of both the previous and the new default payment methods have changed
+                        invalidatePaymentMethodPluginInfoCache(account.getId(), context);
                         return PluginDispatcher.createPluginDispatcherReturnType(null);
                     } catch (final PaymentPluginApiException e) {
                         throw new PaymentApiException(ErrorCode.PAYMENT_UPD_PAYMENT_METHOD, account.getId(), e.getErrorMessage());
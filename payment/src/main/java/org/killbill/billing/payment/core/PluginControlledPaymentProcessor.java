@@ -30,6 +30,7 @@ import org.killbill.billing.account.api.Account;
 import org.killbill.billing.account.api.AccountApiException;
 import org.killbill.billing.account.api.AccountInternalApi;
 import org.killbill.billing.callcontext.InternalCallContext;
+import org.killbill.billing.callcontext.InternalTenantContext;
 import org.killbill.billing.catalog.api.Currency;
 import org.killbill.billing.invoice.api.InvoiceInternalApi;
 import org.killbill.billing.osgi.api.OSGIServiceRegistration;
@@ -41,6 +42,7 @@ import org.killbill.billing.payment.core.sm.PluginControlledPaymentAutomatonRunn
 import org.killbill.billing.payment.core.sm.RetryStateMachineHelper;
 import org.killbill.billing.payment.dao.PaymentAttemptModelDao;
 import org.killbill.billing.payment.dao.PaymentDao;
+import org.killbill.billing.payment.dao.PaymentMethodModelDao;
 import org.killbill.billing.payment.dao.PaymentModelDao;
 import org.killbill.billing.payment.dao.PluginPropertySerializer;
 import org.killbill.billing.payment.dao.PluginPropertySerializer.PluginPropertySerializerException;
@@ -199,6 +201,29 @@ public class PluginControlledPaymentProcessor extends ProcessorBase {
                                                                 callContext, internalCallContext);
     }
 
+    // Name of the payment plugin (not the payment control plugin) a retry of that attempt will call
+    public String getPaymentPluginName(final UUID attemptId, final InternalTenantContext context) {
+        final PaymentAttemptModelDao attempt = paymentDao.getPaymentAttempt(attemptId, context);
+        if (attempt == null) {
+            return null;
+        }
+
+        try {
+            final UUID paymentMethodId = attempt.getPaymentMethodId() != null ?
+                                         attempt.getPaymentMethodId() :
+                                         accountInternalApi.getAccountById(attempt.getAccountId(), context).getPaymentMethodId();
+            if (paymentMethodId == null) {
+                return null;
+            }
+
+            final PaymentMethodModelDao paymentMethod = paymentDao.getPaymentMethodIncludedDeleted(paymentMethodId, context);
+            return paymentMethod != null ? paymentMethod.getPluginName() : null;
+        } catch (AccountApiException e) {
+            log.warn("Failed to retrieve the payment plugin for attempt " + attemptId, e);
+            return null;
+        }
+    }
+
     public void retryPaymentTransaction(final UUID attemptId, final String pluginName, final InternalCallContext internalCallContext) {
         try {
 
@@ -19,6 +19,7 @@ package org.killbill.billing.payment.core.janitor;
 
 import java.util.List;
 
+import org.joda.time.DateTime;
 import org.killbill.billing.ObjectType;
 import org.killbill.billing.account.api.Account;
 import org.killbill.billing.account.api.AccountApiException;
@@ -56,6 +57,8 @@ import com.google.common.collect.Iterables;
  */
 final class AttemptCompletionTask extends CompletionTaskBase<PaymentAttemptModelDao> {
 
+    private static final int MAX_ITEMS_PER_LOOP = 100; // Limit of items per page
+
     public AttemptCompletionTask(final Janitor janitor, final InternalCallContextFactory internalCallContextFactory, final PaymentConfig paymentConfig,
                                  final NonEntityDao nonEntityDao, final PaymentDao paymentDao, final Clock clock, final PaymentStateMachineHelper paymentStateMachineHelper,
                                  final RetryStateMachineHelper retrySMHelper, final CacheControllerDispatcher controllerDispatcher, final AccountInternalApi accountInternalApi,
@@ -63,9 +66,41 @@ final class AttemptCompletionTask extends CompletionTaskBase<PaymentAttemptModel
         super(janitor, internalCallContextFactory, paymentConfig, nonEntityDao, paymentDao, clock, paymentStateMachineHelper, retrySMHelper, controllerDispatcher, accountInternalApi, pluginControlledPaymentAutomatonRunner, pluginRegistry);
     }
 
+    //
+    // Go through the incomplete attempts one page at a time (keyset pagination on the record id), so that only a page
+    // of attempts is ever in memory.
+    //
+    @Override
+    public void run() {
+        if (isJanitorStopped()) {
+            log.info("Janitor AttemptCompletionTask was requested to stop");
+            return;
+        }
+
+        final DateTime createdBeforeDate = getCreatedDateBefore();
+
+        int nbItems = 0;
+        Long lastRecordId = 0L;
+        List<PaymentAttemptModelDao> page;
+        do {
+            page = paymentDao.getPaymentAttemptsByState(retrySMHelper.getInitialState().getName(), createdBeforeDate, lastRecordId,
+                                                        getNbShards(), getShard(), MAX_ITEMS_PER_LOOP, completionTaskCallContext);
+            nbItems += page.size();
+            if (!processItems(page)) {
+                return;
+            }
+            if (!page.isEmpty()) {
+                lastRecordId = page.get(page.size() - 1).getRecordId();
+            }
+        } while (page.size() == MAX_ITEMS_PER_LOOP);
+
+        log.info("Janitor AttemptCompletionTask end run : processed {} incomplete attempts", nbItems);
+    }
+
     @Override
     public List<PaymentAttemptModelDao> getItemsForIteration() {
-        final List<PaymentAttemptModelDao> incompleteAttempts = paymentDao.getPaymentAttemptsByState(retrySMHelper.getInitialState().getName(), getCreatedDateBefore(), completionTaskCallContext);
+        final List<PaymentAttemptModelDao> incompleteAttempts = paymentDao.getPaymentAttemptsByState(retrySMHelper.getInitialState().getName(), getCreatedDateBefore(), 0L,
+                                                                                                     getNbShards(), getShard(), MAX_ITEMS_PER_LOOP, completionTaskCallContext);
         log.info("Janitor AttemptCompletionTask start run : found " + incompleteAttempts.size() + " incomplete attempts");
         return incompleteAttempts;
     }
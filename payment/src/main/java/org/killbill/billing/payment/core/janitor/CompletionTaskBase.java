@@ -17,8 +17,13 @@
 
 package org.killbill.billing.payment.core.janitor;
 
+import java.util.ArrayList;
 import java.util.List;
 import java.util.UUID;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
 
 import org.joda.time.DateTime;
 import org.killbill.billing.ObjectType;
@@ -92,18 +97,78 @@ abstract class CompletionTaskBase<T> implements Runnable {
             log.info("Janitor Task " + taskName + " was requested to stop");
             return;
         }
-        final List<T> items = getItemsForIteration();
-        for (T item : items) {
-            if (janitor.isStopped()) {
-                log.info("Janitor Task " + taskName + " was requested to stop");
-                return;
+        processItems(getItemsForIteration());
+    }
+
+    //
+    // Process the items, in parallel if the janitor has worker threads, and return once they have all been processed.
+    // Returns false if the janitor was requested to stop in the meantime.
+    //
+    protected boolean processItems(final List<T> items) {
+        final ExecutorService workerExecutor = janitor.getWorkerExecutor();
+        if (workerExecutor == null || items.size() <= 1) {
+            for (final T item : items) {
+                if (!doIterationUnlessStopped(item)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        final List<Future<?>> futures = new ArrayList<Future<?>>(items.size());
+        try {
+            for (final T item : items) {
+                futures.add(workerExecutor.submit(new Runnable() {
+                    @Override
+                    public void run() {
+                        doIterationUnlessStopped(item);
+                    }
+                }));
             }
+        } catch (final RejectedExecutionException e) {
+            log.info("Janitor Task " + taskName + " was requested to stop");
+        }
+
+        for (final Future<?> future : futures) {
             try {
-                doIteration(item);
-            } catch(IllegalStateException e) {
-                log.warn(e.getMessage());
+                future.get();
+            } catch (final ExecutionException e) {
+                log.warn("Janitor Task " + taskName + " failed to process item", e.getCause());
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return false;
             }
         }
+        return futures.size() == items.size() && !janitor.isStopped();
+    }
+
+    private boolean doIterationUnlessStopped(final T item) {
+        if (janitor.isStopped()) {
+            log.info("Janitor Task " + taskName + " was requested to stop");
+            return false;
+        }
+        try {
+            doIteration(item);
+        } catch(IllegalStateException e) {
+            log.warn(e.getMessage());
+        }
+        return true;
+    }
+
+    //
+    // Each janitor instance only handles the accounts of its own shard (account_record_id modulo the number of shards),
+    // so that several nodes can share the work without looking at the same rows.
+    //
+    protected int getNbShards() {
+        return Math.max(1, paymentConfig.getJanitorNbShards());
+    }
+
+    protected int getShard() {
+        return paymentConfig.getJanitorShard();
+    }
+
+    protected boolean isJanitorStopped() {
+        return janitor.isStopped();
     }
 
     public abstract List<T> getItemsForIteration();
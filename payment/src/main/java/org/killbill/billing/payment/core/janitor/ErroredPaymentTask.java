@@ -41,6 +41,7 @@ import org.killbill.billing.payment.dao.PaymentDao;
 import org.killbill.billing.payment.dao.PaymentMethodModelDao;
 import org.killbill.billing.payment.dao.PaymentModelDao;
 import org.killbill.billing.payment.dao.PaymentTransactionModelDao;
+import org.killbill.billing.payment.dispatcher.PluginRateLimiters;
 import org.killbill.billing.payment.plugin.api.PaymentPluginApi;
 import org.killbill.billing.payment.plugin.api.PaymentPluginApiException;
 import org.killbill.billing.payment.plugin.api.PaymentTransactionInfoPlugin;
@@ -61,27 +62,71 @@ public class ErroredPaymentTask extends CompletionTaskBase<PaymentModelDao> {
     // We could configure all that if this becomes useful but we also want to avoid a flurry of parameters.
     private static final int SAFETY_DELAY_MS = (3 * 60 * 1000); // 3 minutes
     private final int OLDER_PAYMENTS_IN_DAYS = 3; // don't look at ERRORED payment older than 3 days
-    private final int MAX_ITEMS_PER_LOOP = 100; // Limit of items per iteration
+    private final int MAX_ITEMS_PER_LOOP = 100; // Limit of items per page
+
+    private final PluginRateLimiters pluginRateLimiters;
 
     public ErroredPaymentTask(final Janitor janitor, final InternalCallContextFactory internalCallContextFactory, final PaymentConfig paymentConfig,
                                  final NonEntityDao nonEntityDao, final PaymentDao paymentDao, final Clock clock,
                                  final PaymentStateMachineHelper paymentStateMachineHelper, final RetryStateMachineHelper retrySMHelper, final CacheControllerDispatcher controllerDispatcher, final AccountInternalApi accountInternalApi,
                                  final PluginControlledPaymentAutomatonRunner pluginControlledPaymentAutomatonRunner, final OSGIServiceRegistration<PaymentPluginApi> pluginRegistry) {
         super(janitor, internalCallContextFactory, paymentConfig, nonEntityDao, paymentDao, clock, paymentStateMachineHelper, retrySMHelper, controllerDispatcher, accountInternalApi, pluginControlledPaymentAutomatonRunner, pluginRegistry);
+        // Don't overwhelm a gateway which just recovered from an outage
+        this.pluginRateLimiters = new PluginRateLimiters(paymentConfig.getJanitorPluginCallsPerSecond());
+    }
+
+    //
+    // Go through all the errored payments of our shard, one page at a time (keyset pagination on the record id, so that
+    // payments we fail to fix aren't returned again in the same run).
+    //
+    @Override
+    public void run() {
+        if (isJanitorStopped()) {
+            log.info("Janitor ErroredPaymentTask was requested to stop");
+            return;
+        }
+
+        final DateTime createdBeforeDate = getErroredCreatedBeforeDate();
+        final DateTime createdAfterDate = getErroredCreatedAfterDate();
+
+        int nbItems = 0;
+        Long lastRecordId = 0L;
+        List<PaymentModelDao> page;
+        do {
+            page = getItemsForIteration(createdBeforeDate, createdAfterDate, lastRecordId);
+            nbItems += page.size();
+            if (!processItems(page)) {
+                return;
+            }
+            if (!page.isEmpty()) {
+                lastRecordId = page.get(page.size() - 1).getRecordId();
+            }
+        } while (page.size() == MAX_ITEMS_PER_LOOP);
+
+        log.info("Janitor ErroredPaymentTask end run : processed {} errored/unknown payments", nbItems);
     }
 
     @Override
     public List<PaymentModelDao> getItemsForIteration() {
+        return getItemsForIteration(getErroredCreatedBeforeDate(), getErroredCreatedAfterDate(), 0L);
+    }
+
+    private List<PaymentModelDao> getItemsForIteration(final DateTime createdBeforeDate, final DateTime createdAfterDate, final Long afterRecordId) {
+        final List<PaymentModelDao> result = paymentDao.getPaymentsByStates(paymentStateMachineHelper.getErroredStateNames(), createdBeforeDate, createdAfterDate, afterRecordId,
+                                                                            getNbShards(), getShard(), MAX_ITEMS_PER_LOOP, completionTaskCallContext);
+        log.info("Janitor ErroredPaymentTask found {} errored/unknown payments after recordId {}", result.size(), afterRecordId);
+        return result;
+    }
+
+    private DateTime getErroredCreatedBeforeDate() {
         // In theory this should be the plugin timeout but we add a 3 minutes delay for safety.
         int delayBeforeNow = (int) paymentConfig.getPaymentPluginTimeout().getMillis() + SAFETY_DELAY_MS;
-        final DateTime createdBeforeDate = clock.getUTCNow().minusMillis(delayBeforeNow);
+        return clock.getUTCNow().minusMillis(delayBeforeNow);
+    }
 
+    private DateTime getErroredCreatedAfterDate() {
         // We want to avoid iterating on the same failed payments -- if for some reasons they can't fix themselves.
-        final DateTime createdAfterDate = clock.getUTCNow().minusDays(OLDER_PAYMENTS_IN_DAYS);
-
-        final List<PaymentModelDao> result = paymentDao.getPaymentsByStates(paymentStateMachineHelper.getErroredStateNames(), createdBeforeDate, createdAfterDate, MAX_ITEMS_PER_LOOP, completionTaskCallContext);
-        log.info("Janitor ErroredPaymentTask start run : found {} errored/unknown payments", result.size());
-        return result;
+        return clock.getUTCNow().minusDays(OLDER_PAYMENTS_IN_DAYS);
     }
 
     @Override
@@ -105,6 +150,7 @@ public class ErroredPaymentTask extends CompletionTaskBase<PaymentModelDao> {
 
 
         PaymentTransactionInfoPlugin pluginErroredTransaction = null;
+        pluginRateLimiters.acquire(paymentMethod.getPluginName());
         try {
             final List<PaymentTransactionInfoPlugin> result = paymentPluginApi.getPaymentInfo(item.getAccountId(), item.getId(), ImmutableList.<PluginProperty>of(), callContext);
 
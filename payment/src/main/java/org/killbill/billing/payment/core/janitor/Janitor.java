@@ -17,7 +17,11 @@
 
 package org.killbill.billing.payment.core.janitor;
 
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 
 import javax.inject.Inject;
@@ -47,6 +51,7 @@ public class Janitor {
     private final static Logger log = LoggerFactory.getLogger(Janitor.class);
 
     private final static int TERMINATION_TIMEOUT_SEC = 5;
+    private final static String WORKER_THREAD_PREFIX = "PaymentJanitor-th-";
 
     private final ScheduledExecutorService janitorExecutor;
     private final PaymentConfig paymentConfig;
@@ -54,6 +59,8 @@ public class Janitor {
     private final AttemptCompletionTask attemptCompletionTask;
     private final ErroredPaymentTask erroredPaymentCompletionTask;
 
+    // Only used when the janitor is configured with more than one thread, the items are processed serially otherwise
+    private volatile ExecutorService workerExecutor;
     private volatile boolean isStopped;
 
     @Inject
@@ -86,6 +93,29 @@ public class Janitor {
             return;
         }
 
+        // A shard outside of [0, nbShards) would never match any account, so its payments would silently never be completed
+        final int nbShards = paymentConfig.getJanitorNbShards();
+        final int shard = paymentConfig.getJanitorShard();
+        if (nbShards < 1 || shard < 0 || shard >= nbShards) {
+            throw new IllegalStateException("Invalid janitor shard " + shard + " for " + nbShards + " shards, check org.killbill.payment.janitor.shard and org.killbill.payment.janitor.shards.nb");
+        }
+
+        final int nbThreads = paymentConfig.getJanitorThreadNb();
+        if (nbThreads > 1) {
+            workerExecutor = new ThreadPoolExecutor(nbThreads, nbThreads,
+                                                    0L, TimeUnit.MILLISECONDS,
+                                                    new LinkedBlockingQueue<Runnable>(),
+                                                    new ThreadFactory() {
+
+                                                        @Override
+                                                        public Thread newThread(final Runnable r) {
+                                                            final Thread th = new Thread(r);
+                                                            th.setName(WORKER_THREAD_PREFIX + th.getId());
+                                                            return th;
+                                                        }
+                                                    });
+        }
+
         // Start task for removing old pending payments.
         final TimeUnit pendingRateUnit = paymentConfig.getJanitorRunningRate().getUnit();
         final long pendingPeriod = paymentConfig.getJanitorRunningRate().getPeriod();
@@ -114,7 +144,13 @@ public class Janitor {
              * Then, awaitTermination with a timeout is required to ensure tasks completed.
              */
             janitorExecutor.shutdown();
+            if (workerExecutor != null) {
+                workerExecutor.shutdown();
+            }
             boolean success = janitorExecutor.awaitTermination(TERMINATION_TIMEOUT_SEC, TimeUnit.SECONDS);
+            if (success && workerExecutor != null) {
+                success = workerExecutor.awaitTermination(TERMINATION_TIMEOUT_SEC, TimeUnit.SECONDS);
+            }
             if (!success) {
                 log.warn("Janitor failed to complete termination within " + TERMINATION_TIMEOUT_SEC + "sec");
             }
@@ -129,4 +165,8 @@ public class Janitor {
     public boolean isStopped() {
         return isStopped;
     }
+
+    public ExecutorService getWorkerExecutor() {
+        return workerExecutor;
+    }
 }
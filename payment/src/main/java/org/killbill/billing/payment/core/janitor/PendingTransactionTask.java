@@ -60,9 +60,9 @@ final class PendingTransactionTask extends CompletionTaskBase<Integer> {
     public void doIteration(final Integer item) {
 
         // TODO this is needs to be fixed see- #230
-        int result = paymentDao.failOldPendingTransactions(TransactionStatus.PLUGIN_FAILURE, getCreatedDateBefore(), completionTaskCallContext);
+        int result = paymentDao.failOldPendingTransactions(TransactionStatus.PAYMENT_FAILURE, getCreatedDateBefore(), getNbShards(), getShard(), completionTaskCallContext);
         if (result > 0) {
-            log.info("Janitor PendingTransactionTask moved " + result + " PENDING payments ->  PLUGIN_FAILURE");
+            log.info("Janitor PendingTransactionTask moved " + result + " PENDING payments ->  PAYMENT_FAILURE");
         }
     }
 }
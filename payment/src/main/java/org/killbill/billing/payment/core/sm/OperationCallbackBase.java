@@ -19,16 +19,22 @@ package org.killbill.billing.payment.core.sm;
 
 import java.util.concurrent.Callable;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
 
+import javax.annotation.Nullable;
+
 import org.killbill.automaton.OperationException;
 import org.killbill.automaton.OperationResult;
 import org.killbill.billing.account.api.Account;
 import org.killbill.billing.payment.core.ProcessorBase.CallableWithAccountLock;
 import org.killbill.billing.payment.core.ProcessorBase.WithAccountLockCallback;
+import org.killbill.billing.payment.dispatcher.PluginBulkheads.Bulkhead;
 import org.killbill.billing.payment.dispatcher.PluginDispatcher;
 import org.killbill.billing.payment.dispatcher.PluginDispatcher.PluginDispatcherReturnType;
 import org.killbill.commons.locker.GlobalLocker;
+import org.killbill.commons.locker.LockFailedException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -37,7 +43,7 @@ public abstract class OperationCallbackBase<CallbackOperationResult, CallbackOpe
     protected final Logger logger = LoggerFactory.getLogger(OperationCallbackBase.class);
 
     private final GlobalLocker locker;
-    private final PluginDispatcher<OperationResult> paymentPluginDispatcher;
+    protected final PluginDispatcher<OperationResult> paymentPluginDispatcher;
 
     protected final PaymentStateContext paymentStateContext;
 
@@ -55,14 +61,32 @@ public abstract class OperationCallbackBase<CallbackOperationResult, CallbackOpe
     // callback to eventually throw a OperationException, that will be used to drive the state machine in the right direction.
     //
     protected <ExceptionType extends Exception> OperationResult dispatchWithAccountLockAndTimeout(final WithAccountLockCallback<PluginDispatcherReturnType<OperationResult>, ExceptionType> callback) throws OperationException {
+        return dispatchWithAccountLockAndTimeout(callback, null);
+    }
+
+    // A null bulkhead means the call isn't isolated and uses the default plugin timeout
+    protected <ExceptionType extends Exception> OperationResult dispatchWithAccountLockAndTimeout(final WithAccountLockCallback<PluginDispatcherReturnType<OperationResult>, ExceptionType> callback,
+                                                                                                  @Nullable final Bulkhead bulkhead) throws OperationException {
         final Account account = paymentStateContext.getAccount();
         logger.debug("Dispatching plugin call for account {}", account.getExternalKey());
 
         try {
-            final Callable<PluginDispatcherReturnType<OperationResult>> task = new CallableWithAccountLock<OperationResult, ExceptionType>(locker,
-                                                                                                                                           account.getExternalKey(),
-                                                                                                                                           callback);
-            final OperationResult operationResult = paymentPluginDispatcher.dispatchWithTimeout(task);
+            final Callable<PluginDispatcherReturnType<OperationResult>> lockedTask = new CallableWithAccountLock<OperationResult, ExceptionType>(locker,
+                                                                                                                                                 account.getExternalKey(),
+                                                                                                                                                 callback);
+            final OperationResult operationResult;
+            if (bulkhead == null) {
+                operationResult = paymentPluginDispatcher.dispatchWithTimeout(lockedTask);
+            } else {
+                final Callable<PluginDispatcherReturnType<OperationResult>> task = new CallableWithBulkhead<PluginDispatcherReturnType<OperationResult>>(bulkhead, lockedTask);
+                try {
+                    operationResult = paymentPluginDispatcher.dispatchWithTimeout(task, bulkhead.getTimeoutMillis(), TimeUnit.MILLISECONDS);
+                } catch (final RejectedExecutionException e) {
+                    // The task will never run, so it won't give back its permit
+                    bulkhead.cancel();
+                    throw e;
+                }
+            }
             logger.debug("Successful plugin call for account {} with result {}", account.getExternalKey(), operationResult);
             return operationResult;
         } catch (final ExecutionException e) {
@@ -91,4 +115,42 @@ public abstract class OperationCallbackBase<CallbackOperationResult, CallbackOpe
     protected abstract OperationException wrapTimeoutException(final PaymentStateContext paymentStateContext, final TimeoutException e);
 
     protected abstract OperationException wrapInterruptedException(final PaymentStateContext paymentStateContext, final InterruptedException e);
+
+    //
+    // Keeps the bulkhead permit until the plugin call completes on the plugin thread: the caller may have given up on it (timeout),
+    // but the plugin is still busy with it and it must count against the concurrency limit. Its latency then exceeds the timeout,
+    // so it's recorded as a failure by the circuit breaker.
+    //
+    // The latency is measured from the time the plugin thread picks up the call: the time spent waiting in the (shared) executor
+    // queue says nothing about that gateway, and counting it would let a slow gateway inflate the timeouts of the healthy ones.
+    //
+    private static final class CallableWithBulkhead<T> implements Callable<T> {
+
+        private final Bulkhead bulkhead;
+        private final Callable<T> delegate;
+
+        private CallableWithBulkhead(final Bulkhead bulkhead, final Callable<T> delegate) {
+            this.bulkhead = bulkhead;
+            this.delegate = delegate;
+            bulkhead.onCallQueued();
+        }
+
+        @Override
+        public T call() throws Exception {
+            bulkhead.onCallStarted(true);
+            final long startNanos = System.nanoTime();
+            boolean success = false;
+            try {
+                final T result = delegate.call();
+                success = true;
+                return result;
+            } catch (final LockFailedException e) {
+                // Not the plugin's fault
+                success = true;
+                throw e;
+            } finally {
+                bulkhead.release(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos), success);
+            }
+        }
+    }
 }
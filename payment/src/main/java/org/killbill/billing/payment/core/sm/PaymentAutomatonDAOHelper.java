@@ -64,6 +64,8 @@ public class PaymentAutomatonDAOHelper {
     private final OSGIServiceRegistration<PaymentPluginApi> pluginRegistry;
     private final PersistentBus eventBus;
 
+    private String pluginName;
+
     // Used to build new payments and transactions
     public PaymentAutomatonDAOHelper(final PaymentStateContext paymentStateContext,
                                      final DateTime utcNow, final PaymentDao paymentDao,
@@ -135,13 +137,19 @@ public class PaymentAutomatonDAOHelper {
     }
 
     public PaymentPluginApi getPaymentProviderPlugin() throws PaymentApiException {
+        return getPaymentPluginApi(getPaymentProviderPluginName());
+    }
 
-        final UUID paymentMethodId = paymentStateContext.getPaymentMethodId();
-        final PaymentMethodModelDao methodDao = paymentDao.getPaymentMethodIncludedDeleted(paymentMethodId, internalCallContext);
-        if (methodDao == null) {
-            throw new PaymentApiException(ErrorCode.PAYMENT_NO_SUCH_PAYMENT_METHOD, paymentMethodId);
+    public String getPaymentProviderPluginName() throws PaymentApiException {
+        if (pluginName == null) {
+            final UUID paymentMethodId = paymentStateContext.getPaymentMethodId();
+            final PaymentMethodModelDao methodDao = paymentDao.getPaymentMethodIncludedDeleted(paymentMethodId, internalCallContext);
+            if (methodDao == null) {
+                throw new PaymentApiException(ErrorCode.PAYMENT_NO_SUCH_PAYMENT_METHOD, paymentMethodId);
+            }
+            pluginName = methodDao.getPluginName();
         }
-        return getPaymentPluginApi(methodDao.getPluginName());
+        return pluginName;
     }
 
     public PaymentModelDao getPayment() throws PaymentApiException {
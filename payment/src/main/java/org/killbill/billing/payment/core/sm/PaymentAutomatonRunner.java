@@ -35,7 +35,6 @@ import org.killbill.automaton.OperationResult;
 import org.killbill.automaton.State;
 import org.killbill.automaton.State.EnteringStateCallback;
 import org.killbill.automaton.State.LeavingStateCallback;
-import org.killbill.automaton.StateMachine;
 import org.killbill.automaton.StateMachineConfig;
 import org.killbill.billing.ErrorCode;
 import org.killbill.billing.account.api.Account;
@@ -48,6 +47,7 @@ import org.killbill.billing.payment.api.TransactionType;
 import org.killbill.billing.payment.control.InvoicePaymentControlPluginApi;
 import org.killbill.billing.payment.dao.PaymentDao;
 import org.killbill.billing.payment.dao.PaymentModelDao;
+import org.killbill.billing.payment.dispatcher.PluginBulkheads;
 import org.killbill.billing.payment.dispatcher.PluginDispatcher;
 import org.killbill.billing.payment.glue.PaymentModule;
 import org.killbill.billing.payment.plugin.api.PaymentPluginApi;
@@ -84,7 +84,8 @@ public class PaymentAutomatonRunner {
                                   final Clock clock,
                                   @Named(PLUGIN_EXECUTOR_NAMED) final ExecutorService executor,
                                   final PersistentBus eventBus,
-                                  final PaymentStateMachineHelper paymentSMHelper) {
+                                  final PaymentStateMachineHelper paymentSMHelper,
+                                  @Nullable final PluginBulkheads pluginBulkheads) {
         this.paymentSMHelper = paymentSMHelper;
         this.paymentDao = paymentDao;
         this.locker = locker;
@@ -93,8 +94,20 @@ public class PaymentAutomatonRunner {
         this.eventBus = eventBus;
 
         final long paymentPluginTimeoutSec = TimeUnit.SECONDS.convert(paymentConfig.getPaymentPluginTimeout().getPeriod(), paymentConfig.getPaymentPluginTimeout().getUnit());
-        this.paymentPluginDispatcher = new PluginDispatcher<OperationResult>(paymentPluginTimeoutSec, executor);
+        this.paymentPluginDispatcher = new PluginDispatcher<OperationResult>(paymentPluginTimeoutSec, executor, pluginBulkheads);
+    }
 
+    // Without bulkheads, the plugin calls are not isolated from each other
+    public PaymentAutomatonRunner(final StateMachineConfig stateMachineConfig,
+                                  final PaymentConfig paymentConfig,
+                                  final PaymentDao paymentDao,
+                                  final GlobalLocker locker,
+                                  final OSGIServiceRegistration<PaymentPluginApi> pluginRegistry,
+                                  final Clock clock,
+                                  final ExecutorService executor,
+                                  final PersistentBus eventBus,
+                                  final PaymentStateMachineHelper paymentSMHelper) {
+        this(stateMachineConfig, paymentConfig, paymentDao, locker, pluginRegistry, clock, executor, eventBus, paymentSMHelper, null);
     }
 
     public UUID run(final boolean isApiPayment, final TransactionType transactionType, final Account account, @Nullable final UUID attemptId, @Nullable final UUID paymentMethodId,
@@ -181,8 +194,7 @@ public class PaymentAutomatonRunner {
                                             final LeavingStateCallback leavingStateCallback, final OperationCallback operationCallback, final EnteringStateCallback enteringStateCallback,
                                             final UUID accountId, final String invoiceId) throws PaymentApiException {
         try {
-            final StateMachine initialStateMachine = paymentSMHelper.getStateMachineForStateName(initialStateName);
-            final State initialState = initialStateMachine.getState(initialStateName);
+            final State initialState = paymentSMHelper.getState(initialStateName);
             final Operation operation = paymentSMHelper.getOperationForTransaction(transactionType);
 
             initialState.runOperation(operation, operationCallback, enteringStateCallback, leavingStateCallback);
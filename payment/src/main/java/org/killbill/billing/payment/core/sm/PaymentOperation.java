@@ -20,8 +20,11 @@ package org.killbill.billing.payment.core.sm;
 import java.math.BigDecimal;
 import java.util.Iterator;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
 
+import javax.annotation.Nullable;
+
 import org.killbill.automaton.Operation.OperationCallback;
 import org.killbill.automaton.OperationException;
 import org.killbill.automaton.OperationResult;
@@ -31,6 +34,7 @@ import org.killbill.billing.payment.api.TransactionStatus;
 import org.killbill.billing.payment.api.TransactionType;
 import org.killbill.billing.payment.core.ProcessorBase.WithAccountLockCallback;
 import org.killbill.billing.payment.dao.PaymentTransactionModelDao;
+import org.killbill.billing.payment.dispatcher.PluginBulkheads.Bulkhead;
 import org.killbill.billing.payment.dispatcher.PluginDispatcher;
 import org.killbill.billing.payment.dispatcher.PluginDispatcher.PluginDispatcherReturnType;
 import org.killbill.billing.payment.plugin.api.PaymentPluginApi;
@@ -62,17 +66,42 @@ public abstract class PaymentOperation extends OperationCallbackBase<PaymentTran
 
     @Override
     public OperationResult doOperationCallback() throws OperationException {
+        final String pluginName;
+        final Bulkhead bulkhead;
         try {
             this.plugin = daoHelper.getPaymentProviderPlugin();
-
-            if (paymentStateContext.shouldLockAccountAndDispatch()) {
-                return doOperationCallbackWithDispatchAndAccountLock();
-            } else {
-                return doSimpleOperationCallback();
-            }
+            pluginName = daoHelper.getPaymentProviderPluginName();
+            // No plugin call when the result is overridden
+            bulkhead = paymentStateContext.getOverridePluginOperationResult() == null ? paymentPluginDispatcher.getBulkhead(pluginName) : null;
         } catch (final PaymentApiException e) {
             throw new OperationException(e, OperationResult.EXCEPTION);
         }
+
+        if (bulkhead != null && !bulkhead.tryAcquire()) {
+            // Fail fast when the plugin is unhealthy or saturated: like for a timeout, the transaction ends up UNKNOWN and the Janitor
+            // will fix it (the plugin won't know about it, so it will be moved to PLUGIN_FAILURE)
+            logger.warn("Payment plugin {} unavailable for account {} (circuit breaker open or too many concurrent calls)", pluginName, paymentStateContext.getAccount().getExternalKey());
+            setUnknownPaymentInfoPlugin();
+            throw new OperationException(new PaymentApiException(ErrorCode.PAYMENT_PLUGIN_EXCEPTION, "Payment plugin unavailable (circuit breaker open or too many concurrent calls)"), OperationResult.EXCEPTION);
+        }
+
+        if (paymentStateContext.shouldLockAccountAndDispatch()) {
+            // The permit is given back by the plugin thread, once the call has really completed
+            return doOperationCallbackWithDispatchAndAccountLock(bulkhead);
+        } else if (bulkhead == null) {
+            return doSimpleOperationCallback();
+        }
+
+        bulkhead.onCallStarted(false);
+        final long startNanos = System.nanoTime();
+        boolean success = false;
+        try {
+            final OperationResult result = doSimpleOperationCallback();
+            success = true;
+            return result;
+        } finally {
+            bulkhead.release(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos), success);
+        }
     }
 
     @Override
@@ -94,7 +123,12 @@ public abstract class PaymentOperation extends OperationCallbackBase<PaymentTran
     @Override
     protected OperationException wrapTimeoutException(final PaymentStateContext paymentStateContext, final TimeoutException e) {
         logger.error("Plugin call TIMEOUT for account {}", paymentStateContext.getAccount().getExternalKey());
+        setUnknownPaymentInfoPlugin();
+        return new OperationException(e, OperationResult.EXCEPTION);
+    }
 
+    // The outcome on the gateway side is unknown: the UNDEFINED status moves the transaction to UNKNOWN, for the Janitor to fix it
+    private void setUnknownPaymentInfoPlugin() {
         final PaymentTransactionInfoPlugin paymentInfoPlugin = new DefaultNoOpPaymentInfoPlugin(paymentStateContext.getPaymentId(),
                                                                                                 paymentStateContext.getTransactionId(),
                                                                                                 paymentStateContext.getTransactionType(),
@@ -106,7 +140,6 @@ public abstract class PaymentOperation extends OperationCallbackBase<PaymentTran
                                                                                                 null);
 
         paymentStateContext.setPaymentInfoPlugin(paymentInfoPlugin);
-        return new OperationException(e, OperationResult.EXCEPTION);
     }
 
     @Override
@@ -139,14 +172,15 @@ public abstract class PaymentOperation extends OperationCallbackBase<PaymentTran
         return result;
     }
 
-    private OperationResult doOperationCallbackWithDispatchAndAccountLock() throws OperationException {
+    private OperationResult doOperationCallbackWithDispatchAndAccountLock(@Nullable final Bulkhead bulkhead) throws OperationException {
         return dispatchWithAccountLockAndTimeout(new WithAccountLockCallback<PluginDispatcherReturnType<OperationResult>, OperationException>() {
-            @Override
-            public PluginDispatcherReturnType<OperationResult> doOperation() throws OperationException {
-                final OperationResult result = doSimpleOperationCallback();
-                return PluginDispatcher.createPluginDispatcherReturnType(result);
-            }
-        });
+                                                     @Override
+                                                     public PluginDispatcherReturnType<OperationResult> doOperation() throws OperationException {
+                                                         final OperationResult result = doSimpleOperationCallback();
+                                                         return PluginDispatcher.createPluginDispatcherReturnType(result);
+                                                     }
+                                                 },
+                                                 bulkhead);
     }
 
     private OperationResult doSimpleOperationCallback() throws OperationException {
@@ -17,6 +17,10 @@
 
 package org.killbill.billing.payment.core.sm;
 
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.Map;
+
 import javax.inject.Inject;
 
 import org.killbill.automaton.MissingEntryException;
@@ -29,12 +33,11 @@ import org.killbill.automaton.Transition;
 import org.killbill.billing.payment.api.TransactionType;
 import org.killbill.billing.payment.glue.PaymentModule;
 
-import com.google.common.base.Predicate;
-import com.google.common.collect.ImmutableList;
-import com.google.common.collect.Iterables;
-
 /**
  * This class needs to know about the payment state machine xml file. All the knowledge about the xml file is encapsulated here.
+ * <p/>
+ * The state machine config is compiled once into lookup tables (by state name, by transaction type and by operation result),
+ * so that the lookups below neither scan the xml model nor allocate.
  */
 public class PaymentStateMachineHelper {
 
@@ -77,14 +80,86 @@ public class PaymentStateMachineHelper {
     private final StateMachineConfig stateMachineConfig;
     private final String[] errorStateNames = {AUTH_ERRORED, CAPTURE_ERRORED, PURCHASE_ERRORED, REFUND_ERRORED, CREDIT_ERRORED, VOID_ERRORED, CHARGEBACK_ERRORED};
 
+    private final Map<TransactionType, String> successfulStateNames = new EnumMap<TransactionType, String>(TransactionType.class);
+    private final Map<TransactionType, String> pendingStateNames = new EnumMap<TransactionType, String>(TransactionType.class);
+    private final Map<TransactionType, String> erroredStateNames = new EnumMap<TransactionType, String>(TransactionType.class);
+    private final Map<TransactionType, String> failureStateNames = new EnumMap<TransactionType, String>(TransactionType.class);
+    private final Map<TransactionType, String> stateMachineNames = new EnumMap<TransactionType, String>(TransactionType.class);
+
+    // Compiled from the config
+    private final Map<TransactionType, StateMachine> stateMachinesByTransactionType = new EnumMap<TransactionType, StateMachine>(TransactionType.class);
+    private final Map<TransactionType, Operation> operationsByTransactionType = new EnumMap<TransactionType, Operation>(TransactionType.class);
+    private final Map<String, StateMachine> stateMachinesByStateName = new HashMap<String, StateMachine>();
+    private final Map<String, State> statesByName = new HashMap<String, State>();
+    // Final states, indexed by initial state name and then by OperationResult ordinal
+    private final Map<String, State[]> nextStatesByStateName = new HashMap<String, State[]>();
+
     @Inject
     public PaymentStateMachineHelper(@javax.inject.Named(PaymentModule.STATE_MACHINE_PAYMENT) final StateMachineConfig stateMachineConfig) {
         this.stateMachineConfig = stateMachineConfig;
+
+        registerTransactionType(TransactionType.AUTHORIZE, AUTHORIZE_STATE_MACHINE_NAME, AUTHORIZE_SUCCESS, AUTHORIZE_FAILED, AUTH_ERRORED);
+        registerTransactionType(TransactionType.CAPTURE, CAPTURE_STATE_MACHINE_NAME, CAPTURE_SUCCESS, CAPTURE_FAILED, CAPTURE_ERRORED);
+        registerTransactionType(TransactionType.PURCHASE, PURCHASE_STATE_MACHINE_NAME, PURCHASE_SUCCESS, PURCHASE_FAILED, PURCHASE_ERRORED);
+        registerTransactionType(TransactionType.REFUND, REFUND_STATE_MACHINE_NAME, REFUND_SUCCESS, REFUND_FAILED, REFUND_ERRORED);
+        registerTransactionType(TransactionType.CREDIT, CREDIT_STATE_MACHINE_NAME, CREDIT_SUCCESS, CREDIT_FAILED, CREDIT_ERRORED);
+        registerTransactionType(TransactionType.VOID, VOID_STATE_MACHINE_NAME, VOID_SUCCESS, VOID_FAILED, VOID_ERRORED);
+        registerTransactionType(TransactionType.CHARGEBACK, CHARGEBACK_STATE_MACHINE_NAME, CHARGEBACK_SUCCESS, CHARGEBACK_FAILED, CHARGEBACK_ERRORED);
+        pendingStateNames.put(TransactionType.AUTHORIZE, AUTHORIZE_PENDING);
+
+        compile();
+    }
+
+    private void registerTransactionType(final TransactionType transactionType, final String stateMachineName, final String successStateName, final String failureStateName, final String erroredStateName) {
+        stateMachineNames.put(transactionType, stateMachineName);
+        successfulStateNames.put(transactionType, successStateName);
+        failureStateNames.put(transactionType, failureStateName);
+        erroredStateNames.put(transactionType, erroredStateName);
+    }
+
+    private void compile() {
+        for (final StateMachine stateMachine : stateMachineConfig.getStateMachines()) {
+            for (final State state : stateMachine.getStates()) {
+                // First definition wins, as in the config lookups
+                if (!statesByName.containsKey(state.getName())) {
+                    statesByName.put(state.getName(), state);
+                    stateMachinesByStateName.put(state.getName(), stateMachine);
+                }
+            }
+
+            for (final Transition transition : stateMachine.getTransitions()) {
+                final String initialStateName = transition.getInitialState().getName();
+                State[] nextStates = nextStatesByStateName.get(initialStateName);
+                if (nextStates == null) {
+                    nextStates = new State[OperationResult.values().length];
+                    nextStatesByStateName.put(initialStateName, nextStates);
+                }
+                final int index = transition.getOperationResult().ordinal();
+                if (nextStates[index] == null) {
+                    nextStates[index] = transition.getFinalState();
+                }
+            }
+        }
+
+        for (final Map.Entry<TransactionType, String> entry : stateMachineNames.entrySet()) {
+            try {
+                final StateMachine stateMachine = stateMachineConfig.getStateMachine(entry.getValue());
+                stateMachinesByTransactionType.put(entry.getKey(), stateMachine);
+                // Only one operation defined, this is the current PaymentStates.xml model
+                operationsByTransactionType.put(entry.getKey(), stateMachine.getOperations()[0]);
+            } catch (final MissingEntryException ignored) {
+                // Reported when the transaction type is used
+            }
+        }
     }
 
     public State getState(final String stateName) throws MissingEntryException {
-        final StateMachine stateMachine = stateMachineConfig.getStateMachineForState(stateName);
-        return stateMachine.getState(stateName);
+        final State state = statesByName.get(stateName);
+        if (state == null) {
+            final StateMachine stateMachine = stateMachineConfig.getStateMachineForState(stateName);
+            return stateMachine.getState(stateName);
+        }
+        return state;
     }
 
     public String getInitStateNameForTransaction() {
@@ -92,107 +167,55 @@ public class PaymentStateMachineHelper {
     }
 
     public String getSuccessfulStateForTransaction(final TransactionType transactionType) {
-        switch (transactionType) {
-            case AUTHORIZE:
-                return AUTHORIZE_SUCCESS;
-            case CAPTURE:
-                return CAPTURE_SUCCESS;
-            case PURCHASE:
-                return PURCHASE_SUCCESS;
-            case REFUND:
-                return REFUND_SUCCESS;
-            case CREDIT:
-                return CREDIT_SUCCESS;
-            case VOID:
-                return VOID_SUCCESS;
-            case CHARGEBACK:
-                return CHARGEBACK_SUCCESS;
-            default:
-                throw new IllegalStateException("Unsupported transaction type " + transactionType);
-        }
+        return getStateName(successfulStateNames, transactionType);
     }
 
     public String getPendingStateForTransaction(final TransactionType transactionType) {
-        switch (transactionType) {
-            case AUTHORIZE:
-                return AUTHORIZE_PENDING;
-            default:
-                throw new IllegalStateException("Unsupported transaction type " + transactionType);
-        }
+        return getStateName(pendingStateNames, transactionType);
     }
 
-
     public String getErroredStateForTransaction(final TransactionType transactionType) {
-        switch (transactionType) {
-            case AUTHORIZE:
-                return AUTH_ERRORED;
-            case CAPTURE:
-                return CAPTURE_ERRORED;
-            case PURCHASE:
-                return PURCHASE_ERRORED;
-            case REFUND:
-                return REFUND_ERRORED;
-            case CREDIT:
-                return CREDIT_ERRORED;
-            case VOID:
-                return VOID_ERRORED;
-            case CHARGEBACK:
-                return CHARGEBACK_ERRORED;
-            default:
-                throw new IllegalStateException("Unsupported transaction type " + transactionType);
-        }
+        return getStateName(erroredStateNames, transactionType);
     }
 
     public String getFailureStateForTransaction(final TransactionType transactionType) {
-        switch (transactionType) {
-            case AUTHORIZE:
-                return AUTHORIZE_FAILED;
-            case CAPTURE:
-                return CAPTURE_FAILED;
-            case PURCHASE:
-                return PURCHASE_FAILED;
-            case REFUND:
-                return REFUND_FAILED;
-            case CREDIT:
-                return CREDIT_FAILED;
-            case VOID:
-                return VOID_FAILED;
-            case CHARGEBACK:
-                return CHARGEBACK_FAILED;
-            default:
-                throw new IllegalStateException("Unsupported transaction type " + transactionType);
+        return getStateName(failureStateNames, transactionType);
+    }
+
+    private String getStateName(final Map<TransactionType, String> stateNames, final TransactionType transactionType) {
+        final String stateName = stateNames.get(transactionType);
+        if (stateName == null) {
+            throw new IllegalStateException("Unsupported transaction type " + transactionType);
         }
+        return stateName;
     }
 
     public StateMachine getStateMachineForStateName(final String stateName) throws MissingEntryException {
-        return stateMachineConfig.getStateMachineForState(stateName);
+        final StateMachine stateMachine = stateMachinesByStateName.get(stateName);
+        return stateMachine != null ? stateMachine : stateMachineConfig.getStateMachineForState(stateName);
     }
 
     public Operation getOperationForTransaction(final TransactionType transactionType) throws MissingEntryException {
-        final StateMachine stateMachine = getStateMachineForTransaction(transactionType);
-        // Only one operation defined, this is the current PaymentStates.xml model
-        return stateMachine.getOperations()[0];
+        final Operation operation = operationsByTransactionType.get(transactionType);
+        if (operation == null) {
+            // Only one operation defined, this is the current PaymentStates.xml model
+            return getStateMachineForTransaction(transactionType).getOperations()[0];
+        }
+        return operation;
     }
 
     public StateMachine getStateMachineForTransaction(final TransactionType transactionType) throws MissingEntryException {
-        switch (transactionType) {
-            case AUTHORIZE:
-                return stateMachineConfig.getStateMachine(AUTHORIZE_STATE_MACHINE_NAME);
-            case CAPTURE:
-                return stateMachineConfig.getStateMachine(CAPTURE_STATE_MACHINE_NAME);
-            case PURCHASE:
-                return stateMachineConfig.getStateMachine(PURCHASE_STATE_MACHINE_NAME);
-            case REFUND:
-                return stateMachineConfig.getStateMachine(REFUND_STATE_MACHINE_NAME);
-            case CREDIT:
-                return stateMachineConfig.getStateMachine(CREDIT_STATE_MACHINE_NAME);
-            case VOID:
-                return stateMachineConfig.getStateMachine(VOID_STATE_MACHINE_NAME);
-            case CHARGEBACK:
-                return stateMachineConfig.getStateMachine(CHARGEBACK_STATE_MACHINE_NAME);
-            default:
-                throw new IllegalStateException("Unsupported transaction type " + transactionType + " for null payment id");
+        final StateMachine stateMachine = stateMachinesByTransactionType.get(transactionType);
+        if (stateMachine != null) {
+            return stateMachine;
         }
+
+        final String stateMachineName = stateMachineNames.get(transactionType);
+        if (stateMachineName == null) {
+            throw new IllegalStateException("Unsupported transaction type " + transactionType + " for null payment id");
+        }
+        // Will throw MissingEntryException
+        return stateMachineConfig.getStateMachine(stateMachineName);
     }
 
     // A better way would be to change the xml to add attributes to the state (e.g isTerminal, isSuccess, isInit,...)
@@ -201,16 +224,14 @@ public class PaymentStateMachineHelper {
     }
 
     public final State fetchNextState(final String prevStateName, final boolean isSuccess) throws MissingEntryException {
-        final StateMachine stateMachine = getStateMachineForStateName(prevStateName);
-        final Transition transition = Iterables.tryFind(ImmutableList.copyOf(stateMachine.getTransitions()), new Predicate<Transition>() {
-            @Override
-            public boolean apply(final Transition input) {
-                // This works because there is only one operation defined for a given state machine, which is our model for PaymentStates.xml
-                return input.getInitialState().getName().equals(prevStateName) &&
-                       input.getOperationResult().equals(isSuccess ? OperationResult.SUCCESS : OperationResult.FAILURE);
-            }
-        }).orNull();
-        return transition != null ? transition.getFinalState() : null;
+        // This works because there is only one operation defined for a given state machine, which is our model for PaymentStates.xml
+        final State[] nextStates = nextStatesByStateName.get(prevStateName);
+        if (nextStates == null) {
+            // Throws if the state is unknown
+            getStateMachineForStateName(prevStateName);
+            return null;
+        }
+        return nextStates[(isSuccess ? OperationResult.SUCCESS : OperationResult.FAILURE).ordinal()];
     }
 
     public String[] getErroredStateNames() {
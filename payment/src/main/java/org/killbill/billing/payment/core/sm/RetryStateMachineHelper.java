@@ -17,6 +17,9 @@
 
 package org.killbill.billing.payment.core.sm;
 
+import java.util.HashMap;
+import java.util.Map;
+
 import javax.inject.Inject;
 import javax.inject.Named;
 
@@ -43,6 +46,7 @@ public class RetryStateMachineHelper {
     private final Operation retryOperation;
     private final State initialState;
     private final State retriedState;
+    private final Map<String, State> statesByName = new HashMap<String, State>();
 
     @Inject
     public RetryStateMachineHelper(@Named(PaymentModule.STATE_MACHINE_RETRY) final StateMachineConfig retryStateMachineConfig) throws MissingEntryException {
@@ -51,10 +55,17 @@ public class RetryStateMachineHelper {
         this.retryOperation = retryStateMachine.getOperation(RETRY_OPERATION_NAME);
         this.initialState = retryStateMachine.getState(INIT_STATE_NAME);
         this.retriedState = retryStateMachine.getState(RETRIED_STATE_NAME);
+        for (final State state : retryStateMachine.getStates()) {
+            if (!statesByName.containsKey(state.getName())) {
+                statesByName.put(state.getName(), state);
+            }
+        }
     }
 
     public State getState(final String stateName) throws MissingEntryException {
-        return retryStateMachine.getState(stateName);
+        final State state = statesByName.get(stateName);
+        // Let the state machine throw the MissingEntryException
+        return state != null ? state : retryStateMachine.getState(stateName);
     }
 
     public StateMachineConfig getRetryStateMachineConfig() {
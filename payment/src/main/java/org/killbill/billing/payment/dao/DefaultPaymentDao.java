@@ -21,6 +21,7 @@ package org.killbill.billing.payment.dao;
 import java.math.BigDecimal;
 import java.util.Collection;
 import java.util.Iterator;
+import java.util.LinkedList;
 import java.util.List;
 import java.util.UUID;
 
@@ -29,6 +30,7 @@ import javax.inject.Inject;
 import javax.management.ImmutableDescriptor;
 
 import org.joda.time.DateTime;
+import org.killbill.billing.ObjectType;
 import org.killbill.billing.callcontext.InternalCallContext;
 import org.killbill.billing.callcontext.InternalTenantContext;
 import org.killbill.billing.catalog.api.Currency;
@@ -41,7 +43,11 @@ import org.killbill.billing.payment.api.Payment;
 import org.killbill.billing.payment.api.PaymentMethod;
 import org.killbill.billing.payment.api.TransactionStatus;
 import org.killbill.billing.payment.api.TransactionType;
+import org.killbill.billing.util.cache.Cachable.CacheType;
+import org.killbill.billing.util.cache.CacheController;
 import org.killbill.billing.util.cache.CacheControllerDispatcher;
+import org.killbill.billing.util.cache.CacheLoaderArgument;
+import org.killbill.billing.util.cache.PaymentMethodCacheLoader;
 import org.killbill.billing.util.dao.NonEntityDao;
 import org.killbill.billing.util.entity.Pagination;
 import org.killbill.billing.util.entity.dao.DefaultPaginationSqlDaoHelper;
@@ -67,10 +73,13 @@ public class DefaultPaymentDao implements PaymentDao {
 
     private final static Logger log = LoggerFactory.getLogger(DefaultPaymentDao.class);
 
+    private static final int MAX_PENDING_TRANSACTIONS_PER_UPDATE = 100;
+
     private final EntitySqlDaoTransactionalJdbiWrapper transactionalSqlDao;
     private final DefaultPaginationSqlDaoHelper paginationHelper;
     private final PersistentBus eventBus;
     private final Clock clock;
+    private final CacheControllerDispatcher cacheControllerDispatcher;
 
     @Inject
     public DefaultPaymentDao(final IDBI dbi, final Clock clock, final CacheControllerDispatcher cacheControllerDispatcher, final NonEntityDao nonEntityDao, final PersistentBus eventBus) {
@@ -78,6 +87,7 @@ public class DefaultPaymentDao implements PaymentDao {
         this.paginationHelper = new DefaultPaginationSqlDaoHelper(transactionalSqlDao);
         this.eventBus = eventBus;
         this.clock = clock;
+        this.cacheControllerDispatcher = cacheControllerDispatcher;
     }
 
     @Override
@@ -119,12 +129,13 @@ public class DefaultPaymentDao implements PaymentDao {
     }
 
     @Override
-    public List<PaymentAttemptModelDao> getPaymentAttemptsByState(final String stateName, final DateTime createdBeforeDate, final InternalTenantContext context) {
+    public List<PaymentAttemptModelDao> getPaymentAttemptsByState(final String stateName, final DateTime createdBeforeDate, final Long afterRecordId,
+                                                                final int nbShards, final int shard, final int limit, final InternalTenantContext context) {
         return transactionalSqlDao.execute(new EntitySqlDaoTransactionWrapper<List<PaymentAttemptModelDao>>() {
             @Override
             public List<PaymentAttemptModelDao> inTransaction(final EntitySqlDaoWrapperFactory<EntitySqlDao> entitySqlDaoWrapperFactory) throws Exception {
                 final PaymentAttemptSqlDao transactional = entitySqlDaoWrapperFactory.become(PaymentAttemptSqlDao.class);
-                return transactional.getByStateName(stateName, createdBeforeDate.toDate(), context);
+                return transactional.getByStateName(stateName, createdBeforeDate.toDate(), afterRecordId, nbShards, shard, context, limit);
             }
         });
     }
@@ -153,27 +164,45 @@ public class DefaultPaymentDao implements PaymentDao {
         });
     }
 
+    //
+    // Expire the old PENDING transactions one page at a time, each page in its own (short) transaction: memory stays bounded
+    // and the row locks are only held for the duration of a page update. Transactions which completed in the meantime
+    // are left untouched by the update.
+    //
     @Override
-    public int failOldPendingTransactions(final TransactionStatus newTransactionStatus, final DateTime createdBeforeDate, final InternalCallContext context) {
-        return transactionalSqlDao.execute(new EntitySqlDaoTransactionWrapper<Integer>() {
-            @Override
-            public Integer inTransaction(final EntitySqlDaoWrapperFactory<EntitySqlDao> entitySqlDaoWrapperFactory) throws Exception {
-                final TransactionSqlDao transactional = entitySqlDaoWrapperFactory.become(TransactionSqlDao.class);
-                final List<PaymentTransactionModelDao> oldPendingTransactions = transactional.getByTransactionStatusPriorDate(TransactionStatus.PENDING.toString(), createdBeforeDate.toDate(), context);
-                if (oldPendingTransactions.size() > 0) {
-                    final Collection<String> oldPendingTransactionIds = Collections2.transform(oldPendingTransactions, new Function<PaymentTransactionModelDao, String>() {
-                        @Override
-                        public String apply(final PaymentTransactionModelDao input) {
-                            return input.getId().toString();
-                        }
-                    });
-
-
-                    return transactional.failOldPendingTransactions(oldPendingTransactionIds, TransactionStatus.PAYMENT_FAILURE.toString(), context);
+    public int failOldPendingTransactions(final TransactionStatus newTransactionStatus, final DateTime createdBeforeDate, final int nbShards, final int shard, final InternalCallContext context) {
+        int result = 0;
+        Long lastRecordId = 0L;
+        List<PaymentTransactionModelDao> page;
+        do {
+            final Long afterRecordId = lastRecordId;
+            page = transactionalSqlDao.execute(new EntitySqlDaoTransactionWrapper<List<PaymentTransactionModelDao>>() {
+                @Override
+                public List<PaymentTransactionModelDao> inTransaction(final EntitySqlDaoWrapperFactory<EntitySqlDao> entitySqlDaoWrapperFactory) throws Exception {
+                    return entitySqlDaoWrapperFactory.become(TransactionSqlDao.class).getByTransactionStatusPriorDate(TransactionStatus.PENDING.toString(), createdBeforeDate.toDate(),
+                                                                                                                     afterRecordId, nbShards, shard, MAX_PENDING_TRANSACTIONS_PER_UPDATE, context);
                 }
-                return 0;
+            });
+            if (page.isEmpty()) {
+                break;
             }
-        });
+            lastRecordId = page.get(page.size() - 1).getRecordId();
+
+            final Collection<String> oldPendingTransactionIds = ImmutableList.copyOf(Collections2.transform(page, new Function<PaymentTransactionModelDao, String>() {
+                @Override
+                public String apply(final PaymentTransactionModelDao input) {
+                    return input.getId().toString();
+                }
+            }));
+            result += transactionalSqlDao.execute(new EntitySqlDaoTransactionWrapper<Integer>() {
+                @Override
+                public Integer inTransaction(final EntitySqlDaoWrapperFactory<EntitySqlDao> entitySqlDaoWrapperFactory) throws Exception {
+                    return entitySqlDaoWrapperFactory.become(TransactionSqlDao.class).failOldPendingTransactions(oldPendingTransactionIds, TransactionStatus.PENDING.toString(),
+                                                                                                                 newTransactionStatus.toString(), context);
+                }
+            });
+        } while (page.size() == MAX_PENDING_TRANSACTIONS_PER_UPDATE);
+        return result;
     }
 
     @Override
@@ -326,11 +355,13 @@ public class DefaultPaymentDao implements PaymentDao {
     }
 
     @Override
-    public List<PaymentModelDao> getPaymentsByStates(final String[] states, final DateTime createdBeforeDate, final DateTime createdAfterDate, final int limit, final InternalTenantContext context) {
+    public List<PaymentModelDao> getPaymentsByStates(final String[] states, final DateTime createdBeforeDate, final DateTime createdAfterDate, final Long afterRecordId,
+                                                     final int nbShards, final int shard, final int limit, final InternalTenantContext context) {
         return transactionalSqlDao.execute(new EntitySqlDaoTransactionWrapper<List<PaymentModelDao>>() {
             @Override
             public List<PaymentModelDao> inTransaction(final EntitySqlDaoWrapperFactory<EntitySqlDao> entitySqlDaoWrapperFactory) throws Exception {
-                return entitySqlDaoWrapperFactory.become(PaymentSqlDao.class).getPaymentsByStates(ImmutableList.copyOf(states), createdBeforeDate.toDate(), createdAfterDate.toDate(), context, limit);
+                return entitySqlDaoWrapperFactory.become(PaymentSqlDao.class).getPaymentsByStates(ImmutableList.copyOf(states), createdBeforeDate.toDate(), createdAfterDate.toDate(),
+                                                                                                afterRecordId, nbShards, shard, context, limit);
             }
         });
     }
@@ -358,12 +389,14 @@ public class DefaultPaymentDao implements PaymentDao {
 
     @Override
     public PaymentMethodModelDao insertPaymentMethod(final PaymentMethodModelDao paymentMethod, final InternalCallContext context) {
-        return transactionalSqlDao.execute(new EntitySqlDaoTransactionWrapper<PaymentMethodModelDao>() {
+        final PaymentMethodModelDao result = transactionalSqlDao.execute(new EntitySqlDaoTransactionWrapper<PaymentMethodModelDao>() {
             @Override
             public PaymentMethodModelDao inTransaction(final EntitySqlDaoWrapperFactory<EntitySqlDao> entitySqlDaoWrapperFactory) throws Exception {
                 return insertPaymentMethodInTransaction(entitySqlDaoWrapperFactory, paymentMethod, context);
             }
         });
+        invalidatePaymentMethodCaches(ImmutableList.<UUID>of(paymentMethod.getId()));
+        return result;
     }
 
     private PaymentMethodModelDao insertPaymentMethodInTransaction(final EntitySqlDaoWrapperFactory<EntitySqlDao> entitySqlDaoWrapperFactory, final PaymentMethodModelDao paymentMethod, final InternalCallContext context)
@@ -376,6 +409,18 @@ public class DefaultPaymentDao implements PaymentDao {
 
     @Override
     public PaymentMethodModelDao getPaymentMethod(final UUID paymentMethodId, final InternalTenantContext context) {
+        final CacheController<Object, Object> cache = cacheControllerDispatcher.getCacheController(CacheType.PAYMENT_METHOD);
+        if (cache != null) {
+            // Same filtering as getById: the cached entry includes deleted payment methods and isn't tenant specific
+            final PaymentMethodModelDao paymentMethod = getCachedPaymentMethod(cache, paymentMethodId, context);
+            if (paymentMethod == null ||
+                !paymentMethod.isActive() ||
+                (paymentMethod.getTenantRecordId() != null && !paymentMethod.getTenantRecordId().equals(context.getTenantRecordId()))) {
+                return null;
+            }
+            return paymentMethod;
+        }
+
         return transactionalSqlDao.execute(new EntitySqlDaoTransactionWrapper<PaymentMethodModelDao>() {
             @Override
             public PaymentMethodModelDao inTransaction(final EntitySqlDaoWrapperFactory<EntitySqlDao> entitySqlDaoWrapperFactory) throws Exception {
@@ -396,6 +441,14 @@ public class DefaultPaymentDao implements PaymentDao {
 
     @Override
     public PaymentMethodModelDao getPaymentMethodIncludedDeleted(final UUID paymentMethodId, final InternalTenantContext context) {
+        final CacheController<Object, Object> cache = cacheControllerDispatcher.getCacheController(CacheType.PAYMENT_METHOD);
+        if (cache != null) {
+            return getCachedPaymentMethod(cache, paymentMethodId, context);
+        }
+        return getPaymentMethodIncludedDeletedFromDb(paymentMethodId, context);
+    }
+
+    private PaymentMethodModelDao getPaymentMethodIncludedDeletedFromDb(final UUID paymentMethodId, final InternalTenantContext context) {
         return transactionalSqlDao.execute(new EntitySqlDaoTransactionWrapper<PaymentMethodModelDao>() {
             @Override
             public PaymentMethodModelDao inTransaction(final EntitySqlDaoWrapperFactory<EntitySqlDao> entitySqlDaoWrapperFactory) throws Exception {
@@ -404,6 +457,32 @@ public class DefaultPaymentDao implements PaymentDao {
         });
     }
 
+    private PaymentMethodModelDao getCachedPaymentMethod(final CacheController<Object, Object> cache, final UUID paymentMethodId, final InternalTenantContext context) {
+        final CacheLoaderArgument cacheLoaderArgument = new CacheLoaderArgument(ObjectType.PAYMENT_METHOD,
+                                                                                new Object[]{new PaymentMethodCacheLoader.LoaderCallback() {
+                                                                                    @Override
+                                                                                    public Object loadPaymentMethod(final UUID paymentMethodId, final InternalTenantContext context) {
+                                                                                        return getPaymentMethodIncludedDeletedFromDb(paymentMethodId, context);
+                                                                                    }
+                                                                                }},
+                                                                                context);
+        return (PaymentMethodModelDao) cache.get(paymentMethodId, cacheLoaderArgument);
+    }
+
+    // Called once the transaction has been committed: the cache controller drops values loaded concurrently from the previous
+    // version, but other nodes keep serving theirs until the TTL (see ehcache.xml) expires
+    private void invalidatePaymentMethodCaches(final Iterable<UUID> paymentMethodIds) {
+        for (final CacheType cacheType : new CacheType[]{CacheType.PAYMENT_METHOD, CacheType.PAYMENT_METHOD_PLUGIN_INFO}) {
+            final CacheController<Object, Object> cache = cacheControllerDispatcher.getCacheController(cacheType);
+            if (cache == null) {
+                continue;
+            }
+            for (final UUID paymentMethodId : paymentMethodIds) {
+                cache.remove(paymentMethodId);
+            }
+        }
+    }
+
     @Override
     public PaymentMethodModelDao getPaymentMethodByExternalKeyIncludedDeleted(final String paymentMethodExternalKey, final InternalTenantContext context) {
         return transactionalSqlDao.execute(new EntitySqlDaoTransactionWrapper<PaymentMethodModelDao>() {
@@ -472,6 +551,7 @@ public class DefaultPaymentDao implements PaymentDao {
                 return null;
             }
         });
+        invalidatePaymentMethodCaches(ImmutableList.<UUID>of(paymentMethodId));
     }
 
     private void deletedPaymentMethodInTransaction(final EntitySqlDaoWrapperFactory<EntitySqlDao> entitySqlDaoWrapperFactory, final UUID paymentMethodId, final InternalCallContext context) {
@@ -486,7 +566,8 @@ public class DefaultPaymentDao implements PaymentDao {
     @Override
     public List<PaymentMethodModelDao> refreshPaymentMethods(final UUID accountId, final String pluginName,
                                                              final List<PaymentMethodModelDao> newPaymentMethods, final InternalCallContext context) {
-        return transactionalSqlDao.execute(new EntitySqlDaoTransactionWrapper<List<PaymentMethodModelDao>>() {
+        final Collection<UUID> modifiedPaymentMethodIds = new LinkedList<UUID>();
+        final List<PaymentMethodModelDao> result = transactionalSqlDao.execute(new EntitySqlDaoTransactionWrapper<List<PaymentMethodModelDao>>() {
 
             @Override
             public List<PaymentMethodModelDao> inTransaction(final EntitySqlDaoWrapperFactory<EntitySqlDao> entitySqlDaoWrapperFactory) throws Exception {
@@ -516,6 +597,7 @@ public class DefaultPaymentDao implements PaymentDao {
                         } else if (existingPaymentMethod.equalsButActive(finalPaymentMethod)) {
                             // We already have it but its status has changed - update it accordingly
                             undeletedPaymentMethodInTransaction(entitySqlDaoWrapperFactory, existingPaymentMethod.getId(), context);
+                            modifiedPaymentMethodIds.add(existingPaymentMethod.getId());
                             foundExistingPaymentMethod = existingPaymentMethod;
                             break;
                         }
@@ -524,6 +606,7 @@ public class DefaultPaymentDao implements PaymentDao {
 
                     if (foundExistingPaymentMethod == null) {
                         insertPaymentMethodInTransaction(entitySqlDaoWrapperFactory, finalPaymentMethod, context);
+                        modifiedPaymentMethodIds.add(finalPaymentMethod.getId());
                     } else {
                         existingPaymentMethods.remove(foundExistingPaymentMethod);
                     }
@@ -536,11 +619,14 @@ public class DefaultPaymentDao implements PaymentDao {
                     // a marked as deleted object
                     if (existingPaymentMethod.isActive()) {
                         deletedPaymentMethodInTransaction(entitySqlDaoWrapperFactory, existingPaymentMethod.getId(), context);
+                        modifiedPaymentMethodIds.add(existingPaymentMethod.getId());
                     }
                 }
                 return transactional.getByAccountId(accountId.toString(), context);
             }
         });
+        invalidatePaymentMethodCaches(modifiedPaymentMethodIds);
+        return result;
     }
 
     private void postPaymentEventFromTransaction(final UUID accountId,
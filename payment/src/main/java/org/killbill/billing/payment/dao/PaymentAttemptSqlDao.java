@@ -52,6 +52,10 @@ public interface PaymentAttemptSqlDao extends EntitySqlDao<PaymentAttemptModelDa
     @SqlQuery
     List<PaymentAttemptModelDao> getByStateName(@Bind("stateName") final String stateName,
                                                 @Bind("createdBeforeDate") final Date createdBeforeDate,
-                                                @BindBean final InternalTenantContext context);
+                                                @Bind("afterRecordId") final Long afterRecordId,
+                                                @Bind("nbShards") final int nbShards,
+                                                @Bind("shard") final int shard,
+                                                @BindBean final InternalTenantContext context,
+                                                @Bind("limit") final int limit);
 
 }
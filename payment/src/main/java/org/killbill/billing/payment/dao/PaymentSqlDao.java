@@ -65,6 +65,9 @@ public interface PaymentSqlDao extends EntitySqlDao<PaymentModelDao, Payment> {
     public List<PaymentModelDao> getPaymentsByStates(@StateCollectionBinder final Collection<String> states,
                                                      @Bind("createdBeforeDate") final Date createdBeforeDate,
                                                      @Bind("createdAfterDate") final Date createdAfterDate,
+                                                     @Bind("afterRecordId") final Long afterRecordId,
+                                                     @Bind("nbShards") final int nbShards,
+                                                     @Bind("shard") final int shard,
                                                      @BindBean final InternalTenantContext context,
                                                      @Bind("limit") final int limit);
 
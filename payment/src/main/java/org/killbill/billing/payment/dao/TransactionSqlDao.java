@@ -55,13 +55,18 @@ public interface TransactionSqlDao extends EntitySqlDao<PaymentTransactionModelD
     @SqlQuery
     List<PaymentTransactionModelDao> getByTransactionStatusPriorDate(@Bind("transactionStatus") final String transactionStatus,
                                                                      @Bind("beforeCreatedDate") final Date beforeCreatedDate,
+                                                                     @Bind("afterRecordId") final Long afterRecordId,
+                                                                     @Bind("nbShards") final int nbShards,
+                                                                     @Bind("shard") final int shard,
+                                                                     @Bind("limit") final int limit,
                                                                      @BindBean final InternalTenantContext context);
 
     @SqlUpdate
     @Audited(ChangeType.UPDATE)
     int failOldPendingTransactions(@UUIDCollectionBinder final Collection<String> pendingTransactionIds,
-                                    @Bind("newTransactionStatus") final String newTransactionStatus,
-                                    @BindBean final InternalCallContext context);
+                                   @Bind("pendingTransactionStatus") final String pendingTransactionStatus,
+                                   @Bind("newTransactionStatus") final String newTransactionStatus,
+                                   @BindBean final InternalCallContext context);
 
     @SqlQuery
     public List<PaymentTransactionModelDao> getByPaymentId(@Bind("paymentId") final UUID paymentId,
@@ -0,0 +1,253 @@
+/*
+ * Copyright 2014 The Billing Project, LLC
+ *
+ * The Billing Project licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.killbill.billing.payment.dispatcher;
+
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.killbill.billing.util.config.PaymentConfig;
+import org.killbill.clock.Clock;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.MetricRegistry;
+import com.google.inject.Inject;
+
+/**
+ * Isolates the payment plugins from each other: each plugin gets its own concurrency limit, circuit breaker and
+ * (optionally) a timeout derived from its observed latency, so that a slow gateway doesn't starve the others.
+ * <p/>
+ * The number of calls waiting for a plugin thread and running on the plugin are exposed per plugin, as gauges.
+ */
+public class PluginBulkheads {
+
+    private static final Logger log = LoggerFactory.getLogger(PluginBulkheads.class);
+
+    // Number of latencies kept per plugin, and minimum number of samples before the adaptive timeout kicks in
+    private static final int LATENCY_WINDOW_SIZE = 100;
+    private static final int MIN_LATENCY_SAMPLES = 20;
+
+    private final PaymentConfig paymentConfig;
+    private final Clock clock;
+    private final ConcurrentMap<String, Bulkhead> bulkheads = new ConcurrentHashMap<String, Bulkhead>();
+
+    private MetricRegistry metricRegistry;
+
+    @Inject
+    public PluginBulkheads(final PaymentConfig paymentConfig, final Clock clock) {
+        this.paymentConfig = paymentConfig;
+        this.clock = clock;
+    }
+
+    @Inject(optional = true)
+    public void setMetricRegistry(final MetricRegistry metricRegistry) {
+        this.metricRegistry = metricRegistry;
+    }
+
+    public Bulkhead getBulkhead(final String pluginName) {
+        Bulkhead bulkhead = bulkheads.get(pluginName);
+        if (bulkhead == null) {
+            final Bulkhead newBulkhead = new Bulkhead(pluginName);
+            bulkhead = bulkheads.putIfAbsent(pluginName, newBulkhead);
+            if (bulkhead == null) {
+                bulkhead = newBulkhead;
+                registerGauges(bulkhead);
+            }
+        }
+        return bulkhead;
+    }
+
+    private void registerGauges(final Bulkhead bulkhead) {
+        if (metricRegistry == null) {
+            return;
+        }
+        metricRegistry.register(MetricRegistry.name(PluginBulkheads.class, bulkhead.pluginName, "queuedCalls"), new Gauge<Integer>() {
+            @Override
+            public Integer getValue() {
+                return bulkhead.getQueuedCalls();
+            }
+        });
+        metricRegistry.register(MetricRegistry.name(PluginBulkheads.class, bulkhead.pluginName, "activeCalls"), new Gauge<Integer>() {
+            @Override
+            public Integer getValue() {
+                return bulkhead.getActiveCalls();
+            }
+        });
+    }
+
+    private enum CircuitState {
+        CLOSED,
+        OPEN,
+        HALF_OPEN
+    }
+
+    public class Bulkhead {
+
+        private final String pluginName;
+        private final Semaphore semaphore;
+
+        // Calls waiting for a plugin thread, and calls running on the plugin
+        private final AtomicInteger queuedCalls = new AtomicInteger(0);
+        private final AtomicInteger activeCalls = new AtomicInteger(0);
+
+        // Ring buffer of the latest successful call latencies, in milliseconds
+        private final long[] latencies = new long[LATENCY_WINDOW_SIZE];
+        private int nbLatencies = 0;
+        private int nextLatency = 0;
+
+        private CircuitState circuitState = CircuitState.CLOSED;
+        private int consecutiveFailures = 0;
+        private long openUntilMillis = 0;
+
+        private Bulkhead(final String pluginName) {
+            this.pluginName = pluginName;
+            final int maxConcurrentCalls = paymentConfig.getPaymentPluginMaxConcurrentCalls();
+            this.semaphore = maxConcurrentCalls > 0 ? new Semaphore(maxConcurrentCalls) : null;
+        }
+
+        /**
+         * @return true if the call can proceed, in which case release must be called once it completes
+         */
+        public boolean tryAcquire() {
+            final boolean isTrialCall;
+            synchronized (this) {
+                if (circuitState == CircuitState.HALF_OPEN) {
+                    // A trial call is already in flight
+                    return false;
+                } else if (circuitState == CircuitState.OPEN) {
+                    if (clock.getUTCNow().getMillis() < openUntilMillis) {
+                        return false;
+                    }
+                    circuitState = CircuitState.HALF_OPEN;
+                    isTrialCall = true;
+                } else {
+                    isTrialCall = false;
+                }
+            }
+
+            if (semaphore != null && !semaphore.tryAcquire()) {
+                if (isTrialCall) {
+                    synchronized (this) {
+                        circuitState = CircuitState.OPEN;
+                    }
+                }
+                log.warn("Too many concurrent calls to payment plugin {}, rejecting call", pluginName);
+                return false;
+            }
+            return true;
+        }
+
+        // The call was handed over to the plugin executor
+        public void onCallQueued() {
+            queuedCalls.incrementAndGet();
+        }
+
+        // The call is about to reach the plugin; wasQueued is false for calls made on the calling thread
+        public void onCallStarted(final boolean wasQueued) {
+            if (wasQueued) {
+                queuedCalls.decrementAndGet();
+            }
+            activeCalls.incrementAndGet();
+        }
+
+        public void release(final long latencyMillis, final boolean success) {
+            activeCalls.decrementAndGet();
+            if (semaphore != null) {
+                semaphore.release();
+            }
+
+            // Calls that exceeded the timeout count as failures, even if they eventually succeeded
+            final boolean isFailure = !success || latencyMillis > getTimeoutMillis();
+            synchronized (this) {
+                if (!isFailure) {
+                    latencies[nextLatency] = latencyMillis;
+                    nextLatency = (nextLatency + 1) % latencies.length;
+                    nbLatencies = Math.min(nbLatencies + 1, latencies.length);
+
+                    consecutiveFailures = 0;
+                    circuitState = CircuitState.CLOSED;
+                    return;
+                }
+
+                consecutiveFailures++;
+                final int failureThreshold = paymentConfig.getPaymentPluginCircuitBreakerFailureThreshold();
+                if (circuitState == CircuitState.HALF_OPEN || (failureThreshold > 0 && consecutiveFailures >= failureThreshold)) {
+                    if (circuitState != CircuitState.OPEN) {
+                        log.warn("Opening circuit breaker for payment plugin {} after {} consecutive failures", pluginName, consecutiveFailures);
+                    }
+                    circuitState = CircuitState.OPEN;
+                    openUntilMillis = clock.getUTCNow().getMillis() + paymentConfig.getPaymentPluginCircuitBreakerOpenTime().getMillis();
+                }
+            }
+        }
+
+        // Gives back the permit of a queued call which will never run
+        public void cancel() {
+            queuedCalls.decrementAndGet();
+            if (semaphore != null) {
+                semaphore.release();
+            }
+            synchronized (this) {
+                if (circuitState == CircuitState.HALF_OPEN) {
+                    // Let the next call be the trial one
+                    circuitState = CircuitState.OPEN;
+                }
+            }
+        }
+
+        public long getTimeoutMillis() {
+            final long maxTimeoutMillis = paymentConfig.getPaymentPluginTimeout().getMillis();
+            if (!paymentConfig.isPaymentPluginAdaptiveTimeout()) {
+                return maxTimeoutMillis;
+            }
+
+            final long[] samples;
+            synchronized (this) {
+                if (nbLatencies < MIN_LATENCY_SAMPLES) {
+                    return maxTimeoutMillis;
+                }
+                samples = Arrays.copyOf(latencies, nbLatencies);
+            }
+            Arrays.sort(samples);
+
+            final int percentile = Math.max(0, Math.min(100, paymentConfig.getPaymentPluginAdaptiveTimeoutPercentile()));
+            final int index = Math.max(0, (int) Math.ceil(percentile / 100.0 * samples.length) - 1);
+            final long adaptiveTimeoutMillis = samples[index] * paymentConfig.getPaymentPluginAdaptiveTimeoutMultiplier();
+            return Math.max(paymentConfig.getPaymentPluginAdaptiveTimeoutMin().getMillis(), Math.min(maxTimeoutMillis, adaptiveTimeoutMillis));
+        }
+
+        public synchronized boolean isCircuitOpen() {
+            return circuitState != CircuitState.CLOSED;
+        }
+
+        public int getQueuedCalls() {
+            return queuedCalls.get();
+        }
+
+        public int getActiveCalls() {
+            return activeCalls.get();
+        }
+
+        public int getAvailablePermits() {
+            return semaphore != null ? semaphore.availablePermits() : Integer.MAX_VALUE;
+        }
+    }
+}
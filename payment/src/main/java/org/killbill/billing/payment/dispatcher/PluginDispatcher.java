@@ -25,6 +25,9 @@ import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
 
+import javax.annotation.Nullable;
+
+import org.killbill.billing.payment.dispatcher.PluginBulkheads.Bulkhead;
 import org.killbill.commons.profiling.Profiling;
 import org.killbill.commons.profiling.ProfilingData;
 
@@ -34,10 +37,24 @@ public class PluginDispatcher<ReturnType> {
 
     private final long timeoutSeconds;
     private final ExecutorService executor;
+    private final PluginBulkheads bulkheads;
 
     public PluginDispatcher(final long timeoutSeconds, final ExecutorService executor) {
+        this(timeoutSeconds, executor, null);
+    }
+
+    public PluginDispatcher(final long timeoutSeconds, final ExecutorService executor, @Nullable final PluginBulkheads bulkheads) {
         this.timeoutSeconds = timeoutSeconds;
         this.executor = executor;
+        this.bulkheads = bulkheads;
+    }
+
+    // Returns null if the calls aren't isolated per plugin (or the plugin is unknown)
+    public Bulkhead getBulkhead(@Nullable final String pluginName) {
+        if (bulkheads == null || pluginName == null) {
+            return null;
+        }
+        return bulkheads.getBulkhead(pluginName);
     }
 
     // TODO Once we switch fully to automata, should this throw PaymentPluginApiException instead?
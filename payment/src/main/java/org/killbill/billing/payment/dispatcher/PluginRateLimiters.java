@@ -0,0 +1,58 @@
+/*
+ * Copyright 2014 The Billing Project, LLC
+ *
+ * The Billing Project licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.killbill.billing.payment.dispatcher;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import com.google.common.util.concurrent.RateLimiter;
+
+/**
+ * Per plugin rate limits, used by the background payment calls (janitor, retries) so that they don't overwhelm a
+ * gateway, e.g. one which just recovered from an outage.
+ */
+public class PluginRateLimiters {
+
+    private final double callsPerSecond;
+    private final ConcurrentMap<String, RateLimiter> rateLimiters = new ConcurrentHashMap<String, RateLimiter>();
+
+    /**
+     * @param callsPerSecond maximum number of calls per second to each plugin, 0 for no limit
+     */
+    public PluginRateLimiters(final double callsPerSecond) {
+        this.callsPerSecond = callsPerSecond;
+    }
+
+    /**
+     * Block until a call to that plugin is allowed.
+     *
+     * @param pluginName the plugin name
+     * @return the time spent waiting, in seconds
+     */
+    public double acquire(final String pluginName) {
+        if (callsPerSecond <= 0) {
+            return 0;
+        }
+
+        RateLimiter rateLimiter = rateLimiters.get(pluginName);
+        if (rateLimiter == null) {
+            rateLimiters.putIfAbsent(pluginName, RateLimiter.create(callsPerSecond));
+            rateLimiter = rateLimiters.get(pluginName);
+        }
+        return rateLimiter.acquire();
+    }
+}
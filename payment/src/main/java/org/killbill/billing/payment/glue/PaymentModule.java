@@ -47,6 +47,7 @@ import org.killbill.billing.payment.core.sm.PluginControlledPaymentAutomatonRunn
 import org.killbill.billing.payment.core.sm.RetryStateMachineHelper;
 import org.killbill.billing.payment.dao.DefaultPaymentDao;
 import org.killbill.billing.payment.dao.PaymentDao;
+import org.killbill.billing.payment.dispatcher.PluginBulkheads;
 import org.killbill.billing.payment.plugin.api.PaymentPluginApi;
 import org.killbill.billing.payment.retry.BaseRetryService.RetryServiceScheduler;
 import org.killbill.billing.payment.retry.DefaultRetryService;
@@ -152,6 +153,7 @@ public class PaymentModule extends KillBillModule {
                                                                                               }
                                                                                           });
         bind(ExecutorService.class).annotatedWith(Names.named(PLUGIN_EXECUTOR_NAMED)).toInstance(pluginExecutorService);
+        bind(PluginBulkheads.class).asEagerSingleton();
         bind(PaymentProcessor.class).asEagerSingleton();
         bind(PluginControlledPaymentProcessor.class).asEagerSingleton();
         bind(PaymentGatewayProcessor.class).asEagerSingleton();
@@ -20,16 +20,23 @@ package org.killbill.billing.payment.retry;
 
 import java.io.IOException;
 import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.joda.time.DateTime;
 import org.killbill.billing.ObjectType;
 import org.killbill.billing.callcontext.InternalCallContext;
+import org.killbill.billing.payment.dispatcher.PluginRateLimiters;
 import org.killbill.billing.payment.glue.DefaultPaymentService;
 import org.killbill.billing.util.callcontext.CallOrigin;
 import org.killbill.billing.util.callcontext.InternalCallContextFactory;
 import org.killbill.billing.util.callcontext.UserType;
+import org.killbill.billing.util.config.PaymentConfig;
 import org.killbill.billing.util.entity.dao.EntitySqlDao;
 import org.killbill.billing.util.entity.dao.EntitySqlDaoWrapperFactory;
+import org.killbill.clock.Clock;
 import org.killbill.notificationq.api.NotificationEvent;
 import org.killbill.notificationq.api.NotificationQueue;
 import org.killbill.notificationq.api.NotificationQueueService;
@@ -39,22 +46,50 @@ import org.killbill.notificationq.api.NotificationQueueService.NotificationQueue
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.MetricRegistry;
+import com.google.common.annotations.VisibleForTesting;
 import com.google.inject.Inject;
 
 public abstract class BaseRetryService implements RetryService {
 
     private static final Logger log = LoggerFactory.getLogger(BaseRetryService.class);
     private static final String PAYMENT_RETRY_SERVICE = "PaymentRetryService";
+    // Used for the metrics of the retries whose payment plugin cannot be determined
+    private static final String UNKNOWN_PAYMENT_PLUGIN = "unknown";
 
     private final NotificationQueueService notificationQueueService;
     private final InternalCallContextFactory internalCallContextFactory;
+    private final PluginRateLimiters pluginRateLimiters;
+    private final Clock clock;
+
+    // Per payment plugin, retries handed over by the notification queue and not completed yet (waiting for their plugin rate limit or running)
+    private final ConcurrentMap<String, AtomicInteger> pendingRetries = new ConcurrentHashMap<String, AtomicInteger>();
+    // Delay between the scheduled time of the last retry and the time it was started
+    private final AtomicLong retryLagMillis = new AtomicLong();
 
     private NotificationQueue retryQueue;
+    private MetricRegistry metricRegistry;
 
     public BaseRetryService(final NotificationQueueService notificationQueueService,
-                            final InternalCallContextFactory internalCallContextFactory) {
+                            final InternalCallContextFactory internalCallContextFactory,
+                            final PaymentConfig paymentConfig,
+                            final Clock clock) {
         this.notificationQueueService = notificationQueueService;
         this.internalCallContextFactory = internalCallContextFactory;
+        this.pluginRateLimiters = new PluginRateLimiters(paymentConfig.getPaymentRetryPluginCallsPerSecond());
+        this.clock = clock;
+    }
+
+    @Inject(optional = true)
+    public void setMetricRegistry(final MetricRegistry metricRegistry) {
+        this.metricRegistry = metricRegistry;
+        metricRegistry.register(MetricRegistry.name(BaseRetryService.class, getQueueName(), "retryLagMillis"), new Gauge<Long>() {
+            @Override
+            public Long getValue() {
+                return getRetryLagMillis();
+            }
+        });
     }
 
     @Override
@@ -70,12 +105,67 @@ public abstract class BaseRetryService implements RetryService {
                                                                               }
                                                                               final PaymentRetryNotificationKey key = (PaymentRetryNotificationKey) notificationKey;
                                                                               final InternalCallContext callContext = internalCallContextFactory.createInternalCallContext(tenantRecordId, accountRecordId, PAYMENT_RETRY_SERVICE, CallOrigin.INTERNAL, UserType.SYSTEM, userToken);
-                                                                              retryPaymentTransaction(key.getAttemptId(), key.getPluginName(), callContext);
+                                                                              retryPaymentTransactionWithRateLimit(key, eventDateTime, callContext);
                                                                           }
                                                                       }
                                                                      );
     }
 
+    // The notification is only acknowledged once the retry completed, so retries are never lost: the notification queue
+    // threads provide the concurrency, the plugin rate limits protect the gateways.
+    @VisibleForTesting
+    void retryPaymentTransactionWithRateLimit(final PaymentRetryNotificationKey key, final DateTime eventDateTime, final InternalCallContext callContext) {
+        // The notification key only has the payment control plugin: the gateway is the plugin of the payment method
+        final String paymentPluginName = getPaymentPluginName(key.getAttemptId(), callContext);
+        final AtomicInteger pluginPendingRetries = getPendingRetriesCounter(paymentPluginName == null ? UNKNOWN_PAYMENT_PLUGIN : paymentPluginName);
+        pluginPendingRetries.incrementAndGet();
+        try {
+            if (paymentPluginName != null) {
+                pluginRateLimiters.acquire(paymentPluginName);
+            }
+            retryLagMillis.set(Math.max(0, clock.getUTCNow().getMillis() - eventDateTime.getMillis()));
+            retryPaymentTransaction(key.getAttemptId(), key.getPluginName(), callContext);
+        } finally {
+            pluginPendingRetries.decrementAndGet();
+        }
+    }
+
+    private AtomicInteger getPendingRetriesCounter(final String paymentPluginName) {
+        AtomicInteger counter = pendingRetries.get(paymentPluginName);
+        if (counter == null) {
+            final AtomicInteger newCounter = new AtomicInteger();
+            counter = pendingRetries.putIfAbsent(paymentPluginName, newCounter);
+            if (counter == null) {
+                counter = newCounter;
+                if (metricRegistry != null) {
+                    metricRegistry.register(MetricRegistry.name(BaseRetryService.class, getQueueName(), paymentPluginName, "pendingRetries"), new Gauge<Integer>() {
+                        @Override
+                        public Integer getValue() {
+                            return getPendingRetries(paymentPluginName);
+                        }
+                    });
+                }
+            }
+        }
+        return counter;
+    }
+
+    public int getPendingRetries(final String paymentPluginName) {
+        final AtomicInteger counter = pendingRetries.get(paymentPluginName);
+        return counter == null ? 0 : counter.get();
+    }
+
+    public long getRetryLagMillis() {
+        return retryLagMillis.get();
+    }
+
+    /**
+     * @param attemptId the attempt to retry
+     * @param context   the call context
+     * @return the name of the payment plugin the retry will call, or null if it cannot be determined
+     */
+    protected abstract String getPaymentPluginName(final UUID attemptId, final InternalCallContext context);
+
     @Override
     public void start() {
         retryQueue.startQueue();
@@ -96,12 +186,15 @@ public abstract class BaseRetryService implements RetryService {
 
         private final NotificationQueueService notificationQueueService;
         private final InternalCallContextFactory internalCallContextFactory;
+        private final PaymentConfig paymentConfig;
 
         @Inject
         public RetryServiceScheduler(final NotificationQueueService notificationQueueService,
-                                     final InternalCallContextFactory internalCallContextFactory) {
+                                     final InternalCallContextFactory internalCallContextFactory,
+                                     final PaymentConfig paymentConfig) {
             this.notificationQueueService = notificationQueueService;
             this.internalCallContextFactory = internalCallContextFactory;
+            this.paymentConfig = paymentConfig;
         }
 
         public boolean scheduleRetry(final ObjectType objectType, final UUID objectId, final UUID attemptId, final String pluginName, final DateTime timeOfRetry) {
@@ -115,11 +208,12 @@ public abstract class BaseRetryService implements RetryService {
             try {
                 final NotificationQueue retryQueue = notificationQueueService.getNotificationQueue(DefaultPaymentService.SERVICE_NAME, getQueueName());
                 final NotificationEvent key = new PaymentRetryNotificationKey(attemptId, pluginName);
+                final DateTime effectiveTimeOfRetry = timeOfRetry.plus(computeJitterMillis(attemptId));
                 if (retryQueue != null) {
                     if (transactionalDao == null) {
-                        retryQueue.recordFutureNotification(timeOfRetry, key, context.getUserToken(), context.getAccountRecordId(), context.getTenantRecordId());
+                        retryQueue.recordFutureNotification(effectiveTimeOfRetry, key, context.getUserToken(), context.getAccountRecordId(), context.getTenantRecordId());
                     } else {
-                        retryQueue.recordFutureNotificationFromTransaction(transactionalDao.getSqlDao(), timeOfRetry, key, context.getUserToken(), context.getAccountRecordId(), context.getTenantRecordId());
+                        retryQueue.recordFutureNotificationFromTransaction(transactionalDao.getSqlDao(), effectiveTimeOfRetry, key, context.getUserToken(), context.getAccountRecordId(), context.getTenantRecordId());
                     }
                 }
             } catch (NoSuchNotificationQueue e) {
@@ -132,6 +226,17 @@ public abstract class BaseRetryService implements RetryService {
             return true;
         }
 
+        // Spread the retries scheduled for the same time (e.g. all payments which failed during a billing run) over the jitter window.
+        // The offset only depends on the attempt, so that rescheduling an attempt always gives the same time.
+        @VisibleForTesting
+        long computeJitterMillis(final UUID attemptId) {
+            final long jitterWindowMillis = paymentConfig.getPaymentRetryJitter().getMillis();
+            if (jitterWindowMillis <= 0) {
+                return 0;
+            }
+            return (attemptId.getLeastSignificantBits() & Long.MAX_VALUE) % jitterWindowMillis;
+        }
+
         protected InternalCallContext createCallContextFromPaymentId(final ObjectType objectType, final UUID objectId) {
             return internalCallContextFactory.createInternalCallContext(objectId, objectType, PAYMENT_RETRY_SERVICE, CallOrigin.INTERNAL, UserType.SYSTEM, null);
         }
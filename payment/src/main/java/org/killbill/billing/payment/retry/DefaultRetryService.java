@@ -22,6 +22,8 @@ import org.killbill.billing.callcontext.InternalCallContext;
 import org.killbill.billing.payment.api.PluginProperty;
 import org.killbill.billing.payment.core.PluginControlledPaymentProcessor;
 import org.killbill.billing.util.callcontext.InternalCallContextFactory;
+import org.killbill.billing.util.config.PaymentConfig;
+import org.killbill.clock.Clock;
 import org.killbill.notificationq.api.NotificationQueueService;
 
 import com.google.inject.Inject;
@@ -33,8 +35,9 @@ public class DefaultRetryService extends BaseRetryService implements RetryServic
     private final PluginControlledPaymentProcessor processor;
 
     @Inject
-    public DefaultRetryService(final NotificationQueueService notificationQueueService, final InternalCallContextFactory internalCallContextFactory, final PluginControlledPaymentProcessor processor) {
-        super(notificationQueueService, internalCallContextFactory);
+    public DefaultRetryService(final NotificationQueueService notificationQueueService, final InternalCallContextFactory internalCallContextFactory, final PluginControlledPaymentProcessor processor,
+                               final PaymentConfig paymentConfig, final Clock clock) {
+        super(notificationQueueService, internalCallContextFactory, paymentConfig, clock);
         this.processor = processor;
     }
 
@@ -49,11 +52,16 @@ public class DefaultRetryService extends BaseRetryService implements RetryServic
         processor.retryPaymentTransaction(attemptId, pluginName, context);
     }
 
+    @Override
+    protected String getPaymentPluginName(final UUID attemptId, final InternalCallContext context) {
+        return processor.getPaymentPluginName(attemptId, context);
+    }
+
     public static class DefaultRetryServiceScheduler extends RetryServiceScheduler {
 
         @Inject
-        public DefaultRetryServiceScheduler(final NotificationQueueService notificationQueueService, final InternalCallContextFactory internalCallContextFactory) {
-            super(notificationQueueService, internalCallContextFactory);
+        public DefaultRetryServiceScheduler(final NotificationQueueService notificationQueueService, final InternalCallContextFactory internalCallContextFactory, final PaymentConfig paymentConfig) {
+            super(notificationQueueService, internalCallContextFactory, paymentConfig);
         }
 
         @Override
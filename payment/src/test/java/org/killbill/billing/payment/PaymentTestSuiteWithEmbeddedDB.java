@@ -31,6 +31,7 @@ import org.killbill.billing.payment.glue.TestPaymentModuleWithEmbeddedDB;
 import org.killbill.billing.payment.plugin.api.PaymentPluginApi;
 import org.killbill.billing.payment.provider.MockPaymentProviderPlugin;
 import org.killbill.billing.platform.api.KillbillConfigSource;
+import org.killbill.billing.util.cache.CacheControllerDispatcher;
 import org.killbill.billing.util.config.PaymentConfig;
 import org.killbill.bus.api.PersistentBus;
 import org.killbill.commons.profiling.Profiling;
@@ -67,6 +68,8 @@ public abstract class PaymentTestSuiteWithEmbeddedDB extends GuicyKillbillTestSu
     protected PaymentDao paymentDao;
     @Inject
     protected TestPaymentHelper testHelper;
+    @Inject
+    protected CacheControllerDispatcher cacheControllerDispatcher;
 
     @Override
     protected KillbillConfigSource getConfigSource() {
@@ -84,6 +87,7 @@ public abstract class PaymentTestSuiteWithEmbeddedDB extends GuicyKillbillTestSu
     @BeforeMethod(groups = "slow")
     public void beforeMethod() throws Exception {
         super.beforeMethod();
+        cacheControllerDispatcher.clearAll();
         eventBus.start();
         Profiling.resetPerThreadProfilingData();
 
@@ -0,0 +1,132 @@
+/*
+ * Copyright 2014 The Billing Project, LLC
+ *
+ * The Billing Project licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.killbill.billing.payment.core.janitor;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+import org.joda.time.DateTime;
+import org.killbill.automaton.State;
+import org.killbill.billing.ObjectType;
+import org.killbill.billing.account.api.AccountInternalApi;
+import org.killbill.billing.callcontext.InternalTenantContext;
+import org.killbill.billing.catalog.api.Currency;
+import org.killbill.billing.osgi.api.OSGIServiceRegistration;
+import org.killbill.billing.payment.PaymentTestSuiteNoDB;
+import org.killbill.billing.payment.api.TransactionType;
+import org.killbill.billing.payment.core.sm.PaymentStateMachineHelper;
+import org.killbill.billing.payment.core.sm.PluginControlledPaymentAutomatonRunner;
+import org.killbill.billing.payment.core.sm.RetryStateMachineHelper;
+import org.killbill.billing.payment.dao.MockPaymentDao;
+import org.killbill.billing.payment.dao.PaymentAttemptModelDao;
+import org.killbill.billing.payment.plugin.api.PaymentPluginApi;
+import org.killbill.billing.util.cache.CacheControllerDispatcher;
+import org.killbill.billing.util.callcontext.InternalCallContextFactory;
+import org.killbill.billing.util.config.PaymentConfig;
+import org.killbill.billing.util.dao.NonEntityDao;
+import org.killbill.clock.ClockMock;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mockito;
+import org.skife.config.TimeSpan;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+public class TestAttemptCompletionTask extends PaymentTestSuiteNoDB {
+
+    private static final String INIT_STATE_NAME = "RETRY_INIT";
+
+    private static final int NB_ACCOUNTS = 9;
+    private static final int NB_ATTEMPTS = 750;
+    private static final int NB_SHARDS = 3;
+    // AttemptCompletionTask pages are 100 attempts
+    private static final int PAGE_SIZE = 100;
+
+    private final ClockMock clock = new ClockMock();
+
+    @Test(groups = "fast")
+    public void testShardedAttemptPages() throws Exception {
+        final MockPaymentDao paymentDao = Mockito.spy(new MockPaymentDao());
+        final List<PaymentAttemptModelDao> attempts = createIncompleteAttempts(paymentDao);
+
+        for (int shard = 0; shard < NB_SHARDS; shard++) {
+            createAttemptCompletionTask(paymentDao, shard).run();
+
+            // Without a successful transaction, the attempts of the shard are aborted, the other ones are left alone
+            final List<Long> shardRecordIds = new ArrayList<Long>();
+            for (final PaymentAttemptModelDao attempt : attempts) {
+                final boolean isInShard = attempt.getAccountRecordId() % NB_SHARDS == shard;
+                if (isInShard) {
+                    shardRecordIds.add(attempt.getRecordId());
+                    Assert.assertEquals(attempt.getStateName(), "ABORTED");
+                } else if (attempt.getAccountRecordId() % NB_SHARDS > shard) {
+                    Assert.assertEquals(attempt.getStateName(), INIT_STATE_NAME);
+                }
+            }
+
+            // The shard spans several pages, each one starting after the last record id of the previous one
+            Assert.assertEquals(shardRecordIds.size(), NB_ATTEMPTS / NB_SHARDS);
+            final ArgumentCaptor<Long> afterRecordIds = ArgumentCaptor.forClass(Long.class);
+            Mockito.verify(paymentDao, Mockito.times(3)).getPaymentAttemptsByState(Mockito.eq(INIT_STATE_NAME), Mockito.<DateTime>any(), afterRecordIds.capture(),
+                                                                                   Mockito.eq(NB_SHARDS), Mockito.eq(shard), Mockito.eq(PAGE_SIZE),
+                                                                                   Mockito.<InternalTenantContext>any());
+            Assert.assertEquals(afterRecordIds.getAllValues().get(0), (Long) 0L);
+            Assert.assertEquals(afterRecordIds.getAllValues().get(1), shardRecordIds.get(PAGE_SIZE - 1));
+            Assert.assertEquals(afterRecordIds.getAllValues().get(2), shardRecordIds.get(2 * PAGE_SIZE - 1));
+        }
+    }
+
+    private List<PaymentAttemptModelDao> createIncompleteAttempts(final MockPaymentDao paymentDao) {
+        final List<PaymentAttemptModelDao> attempts = new ArrayList<PaymentAttemptModelDao>();
+        final DateTime createdDate = clock.getUTCNow().minusDays(1);
+        for (int i = 0; i < NB_ATTEMPTS; i++) {
+            final PaymentAttemptModelDao attempt = new PaymentAttemptModelDao(UUID.randomUUID(), UUID.randomUUID(), createdDate, createdDate, "payment" + i,
+                                                                              UUID.randomUUID(), "transaction" + i, TransactionType.PURCHASE, INIT_STATE_NAME,
+                                                                              BigDecimal.TEN, Currency.USD, "plugin", null);
+            attempt.setAccountRecordId((long) (i % NB_ACCOUNTS + 1));
+            attempts.add(paymentDao.insertPaymentAttemptWithProperties(attempt, null));
+        }
+        return attempts;
+    }
+
+    private AttemptCompletionTask createAttemptCompletionTask(final MockPaymentDao paymentDao, final int shard) {
+        final PaymentConfig config = Mockito.mock(PaymentConfig.class);
+        Mockito.when(config.getJanitorPendingCleanupTime()).thenReturn(new TimeSpan("1h"));
+        Mockito.when(config.getJanitorNbShards()).thenReturn(NB_SHARDS);
+        Mockito.when(config.getJanitorShard()).thenReturn(shard);
+
+        // No worker executor: the attempts are processed serially
+        final Janitor janitor = Mockito.mock(Janitor.class);
+        Mockito.when(janitor.isStopped()).thenReturn(false);
+
+        final InternalCallContextFactory internalCallContextFactory = Mockito.mock(InternalCallContextFactory.class);
+        Mockito.when(internalCallContextFactory.createInternalTenantContext(Mockito.<UUID>any(), Mockito.<UUID>any(), Mockito.<ObjectType>any()))
+               .thenReturn(Mockito.mock(InternalTenantContext.class));
+
+        final State initialState = Mockito.mock(State.class);
+        Mockito.when(initialState.getName()).thenReturn(INIT_STATE_NAME);
+        final RetryStateMachineHelper retryStateMachineHelper = Mockito.mock(RetryStateMachineHelper.class);
+        Mockito.when(retryStateMachineHelper.getInitialState()).thenReturn(initialState);
+
+        @SuppressWarnings("unchecked")
+        final OSGIServiceRegistration<PaymentPluginApi> pluginRegistry = Mockito.mock(OSGIServiceRegistration.class);
+        return new AttemptCompletionTask(janitor, internalCallContextFactory, config, Mockito.mock(NonEntityDao.class), paymentDao, clock,
+                                         Mockito.mock(PaymentStateMachineHelper.class), retryStateMachineHelper, Mockito.mock(CacheControllerDispatcher.class),
+                                         Mockito.mock(AccountInternalApi.class), Mockito.mock(PluginControlledPaymentAutomatonRunner.class), pluginRegistry);
+    }
+}
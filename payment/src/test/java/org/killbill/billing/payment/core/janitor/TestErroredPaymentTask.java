@@ -0,0 +1,236 @@
+/*
+ * Copyright 2014 The Billing Project, LLC
+ *
+ * The Billing Project licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.killbill.billing.payment.core.janitor;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.joda.time.DateTime;
+import org.killbill.billing.ObjectType;
+import org.killbill.billing.account.api.AccountInternalApi;
+import org.killbill.billing.callcontext.InternalCallContext;
+import org.killbill.billing.callcontext.InternalTenantContext;
+import org.killbill.billing.catalog.api.Currency;
+import org.killbill.billing.osgi.api.OSGIServiceRegistration;
+import org.killbill.billing.payment.PaymentTestSuiteNoDB;
+import org.killbill.billing.payment.api.PluginProperty;
+import org.killbill.billing.payment.api.TransactionStatus;
+import org.killbill.billing.payment.api.TransactionType;
+import org.killbill.billing.payment.core.sm.PaymentStateMachineHelper;
+import org.killbill.billing.payment.core.sm.PluginControlledPaymentAutomatonRunner;
+import org.killbill.billing.payment.core.sm.RetryStateMachineHelper;
+import org.killbill.billing.payment.dao.PaymentDao;
+import org.killbill.billing.payment.dao.PaymentMethodModelDao;
+import org.killbill.billing.payment.dao.PaymentModelDao;
+import org.killbill.billing.payment.dao.PaymentTransactionModelDao;
+import org.killbill.billing.payment.plugin.api.PaymentPluginApi;
+import org.killbill.billing.payment.plugin.api.PaymentPluginStatus;
+import org.killbill.billing.payment.plugin.api.PaymentTransactionInfoPlugin;
+import org.killbill.billing.util.cache.CacheControllerDispatcher;
+import org.killbill.billing.util.callcontext.InternalCallContextFactory;
+import org.killbill.billing.util.callcontext.TenantContext;
+import org.killbill.billing.util.config.PaymentConfig;
+import org.killbill.billing.util.dao.NonEntityDao;
+import org.killbill.clock.ClockMock;
+import org.mockito.Mockito;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.skife.config.TimeSpan;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import com.google.common.collect.ImmutableList;
+
+public class TestErroredPaymentTask extends PaymentTestSuiteNoDB {
+
+    private static final String PLUGIN_NAME = "slow-gateway";
+    private static final String[] ERRORED_STATES = {"AUTH_ERRORED"};
+
+    private static final int NB_ACCOUNTS = 9;
+    private static final int NB_PAYMENTS = 450;
+    private static final int NB_SHARDS = 3;
+    private static final int NB_THREADS = 4;
+    private static final int PLUGIN_CALLS_PER_SECOND = 1000;
+
+    private final ClockMock clock = new ClockMock();
+
+    private List<PaymentModelDao> erroredPayments;
+    private Map<UUID, PaymentTransactionModelDao> unknownTransactions;
+    private Map<UUID, List<PaymentTransactionInfoPlugin>> pluginTransactions;
+    private Set<UUID> repairedPayments;
+    private Set<Thread> pluginCallers;
+
+    @Test(groups = "fast")
+    public void testShardedErroredPaymentLoop() throws Exception {
+        createErroredPayments();
+
+        final ExecutorService workerExecutor = Executors.newFixedThreadPool(NB_THREADS);
+        try {
+            final Set<UUID> allRepairedPayments = new HashSet<UUID>();
+            for (int shard = 0; shard < NB_SHARDS; shard++) {
+                repairedPayments = Collections.newSetFromMap(new ConcurrentHashMap<UUID, Boolean>());
+                pluginCallers = Collections.newSetFromMap(new ConcurrentHashMap<Thread, Boolean>());
+
+                final ErroredPaymentTask task = createErroredPaymentTask(workerExecutor, shard);
+                final long startTime = System.currentTimeMillis();
+                task.run();
+                final long elapsedTime = System.currentTimeMillis() - startTime;
+
+                // Each shard only repairs the payments of its own accounts, over several pages
+                final int nbPaymentsInShard = NB_PAYMENTS / NB_SHARDS;
+                Assert.assertEquals(repairedPayments.size(), nbPaymentsInShard);
+                for (final PaymentModelDao payment : erroredPayments) {
+                    Assert.assertEquals(repairedPayments.contains(payment.getId()), payment.getAccountRecordId() % NB_SHARDS == shard);
+                }
+
+                // The plugin calls are spread over the worker threads...
+                Assert.assertTrue(pluginCallers.size() > 1);
+                Assert.assertFalse(pluginCallers.contains(Thread.currentThread()));
+                // ... but still rate limited across them
+                Assert.assertTrue(elapsedTime >= (nbPaymentsInShard - 1) * 1000L / PLUGIN_CALLS_PER_SECOND, "Elapsed time " + elapsedTime + "ms");
+
+                allRepairedPayments.addAll(repairedPayments);
+            }
+
+            // Together, the shards cover all the errored payments
+            Assert.assertEquals(allRepairedPayments.size(), NB_PAYMENTS);
+        } finally {
+            workerExecutor.shutdownNow();
+        }
+    }
+
+    private void createErroredPayments() {
+        erroredPayments = new ArrayList<PaymentModelDao>();
+        unknownTransactions = new HashMap<UUID, PaymentTransactionModelDao>();
+        pluginTransactions = new HashMap<UUID, List<PaymentTransactionInfoPlugin>>();
+
+        final DateTime createdDate = clock.getUTCNow().minusHours(1);
+        for (int i = 0; i < NB_PAYMENTS; i++) {
+            final PaymentModelDao payment = new PaymentModelDao(createdDate, createdDate, UUID.randomUUID(), UUID.randomUUID(), "payment" + i);
+            payment.setRecordId((long) (i + 1));
+            payment.setAccountRecordId((long) (i % NB_ACCOUNTS + 1));
+            erroredPayments.add(payment);
+
+            final PaymentTransactionModelDao transaction = new PaymentTransactionModelDao(createdDate, createdDate, null, "transaction" + i, payment.getId(),
+                                                                                          TransactionType.AUTHORIZE, createdDate, TransactionStatus.UNKNOWN,
+                                                                                          BigDecimal.TEN, Currency.USD, null, null);
+            unknownTransactions.put(payment.getId(), transaction);
+
+            final PaymentTransactionInfoPlugin pluginTransaction = Mockito.mock(PaymentTransactionInfoPlugin.class);
+            Mockito.when(pluginTransaction.getKbTransactionPaymentId()).thenReturn(transaction.getId());
+            Mockito.when(pluginTransaction.getStatus()).thenReturn(PaymentPluginStatus.PROCESSED);
+            pluginTransactions.put(payment.getId(), ImmutableList.<PaymentTransactionInfoPlugin>of(pluginTransaction));
+        }
+    }
+
+    private ErroredPaymentTask createErroredPaymentTask(final ExecutorService workerExecutor, final int shard) throws Exception {
+        final PaymentConfig config = Mockito.mock(PaymentConfig.class);
+        Mockito.when(config.getPaymentPluginTimeout()).thenReturn(new TimeSpan("30s"));
+        Mockito.when(config.getJanitorNbShards()).thenReturn(NB_SHARDS);
+        Mockito.when(config.getJanitorShard()).thenReturn(shard);
+        Mockito.when(config.getJanitorPluginCallsPerSecond()).thenReturn((double) PLUGIN_CALLS_PER_SECOND);
+
+        final Janitor janitor = Mockito.mock(Janitor.class);
+        Mockito.when(janitor.isStopped()).thenReturn(false);
+        Mockito.when(janitor.getWorkerExecutor()).thenReturn(workerExecutor);
+
+        final InternalCallContextFactory internalCallContextFactory = Mockito.mock(InternalCallContextFactory.class);
+        Mockito.when(internalCallContextFactory.createInternalTenantContext(Mockito.<UUID>any(), Mockito.<UUID>any(), Mockito.<ObjectType>any()))
+               .thenReturn(Mockito.mock(InternalTenantContext.class));
+
+        final PaymentStateMachineHelper stateMachineHelper = Mockito.mock(PaymentStateMachineHelper.class);
+        Mockito.when(stateMachineHelper.getErroredStateNames()).thenReturn(ERRORED_STATES);
+        Mockito.when(stateMachineHelper.getSuccessfulStateForTransaction(TransactionType.AUTHORIZE)).thenReturn("AUTH_SUCCESS");
+        Mockito.when(stateMachineHelper.isSuccessState("AUTH_SUCCESS")).thenReturn(true);
+
+        final PaymentPluginApi pluginApi = Mockito.mock(PaymentPluginApi.class);
+        Mockito.when(pluginApi.getPaymentInfo(Mockito.<UUID>any(), Mockito.<UUID>any(), Mockito.<Iterable<PluginProperty>>any(), Mockito.<TenantContext>any()))
+               .thenAnswer(new Answer<List<PaymentTransactionInfoPlugin>>() {
+                   @Override
+                   public List<PaymentTransactionInfoPlugin> answer(final InvocationOnMock invocation) throws Throwable {
+                       pluginCallers.add(Thread.currentThread());
+                       return pluginTransactions.get((UUID) invocation.getArguments()[1]);
+                   }
+               });
+        @SuppressWarnings("unchecked")
+        final OSGIServiceRegistration<PaymentPluginApi> pluginRegistry = Mockito.mock(OSGIServiceRegistration.class);
+        Mockito.when(pluginRegistry.getServiceForName(PLUGIN_NAME)).thenReturn(pluginApi);
+
+        return new ErroredPaymentTask(janitor, internalCallContextFactory, config, Mockito.mock(NonEntityDao.class), createPaymentDao(), clock, stateMachineHelper,
+                                      Mockito.mock(RetryStateMachineHelper.class), Mockito.mock(CacheControllerDispatcher.class), Mockito.mock(AccountInternalApi.class),
+                                      Mockito.mock(PluginControlledPaymentAutomatonRunner.class), pluginRegistry);
+    }
+
+    private PaymentDao createPaymentDao() {
+        final PaymentDao dao = Mockito.mock(PaymentDao.class);
+
+        // Same semantics as the SQL query: keyset pagination on the record id, filtered by shard
+        Mockito.when(dao.getPaymentsByStates(Mockito.<String[]>any(), Mockito.<DateTime>any(), Mockito.<DateTime>any(), Mockito.anyLong(),
+                                             Mockito.anyInt(), Mockito.anyInt(), Mockito.anyInt(), Mockito.<InternalTenantContext>any()))
+               .thenAnswer(new Answer<List<PaymentModelDao>>() {
+                   @Override
+                   public List<PaymentModelDao> answer(final InvocationOnMock invocation) throws Throwable {
+                       final Object[] args = invocation.getArguments();
+                       final Long afterRecordId = (Long) args[3];
+                       final int nbShards = (Integer) args[4];
+                       final int shard = (Integer) args[5];
+                       final int limit = (Integer) args[6];
+
+                       final List<PaymentModelDao> result = new ArrayList<PaymentModelDao>();
+                       for (final PaymentModelDao payment : erroredPayments) {
+                           if (payment.getRecordId() > afterRecordId && payment.getAccountRecordId() % nbShards == shard && result.size() < limit) {
+                               result.add(payment);
+                           }
+                       }
+                       return result;
+                   }
+               });
+
+        Mockito.when(dao.getTransactionsForPayment(Mockito.<UUID>any(), Mockito.<InternalTenantContext>any()))
+               .thenAnswer(new Answer<List<PaymentTransactionModelDao>>() {
+                   @Override
+                   public List<PaymentTransactionModelDao> answer(final InvocationOnMock invocation) throws Throwable {
+                       return ImmutableList.<PaymentTransactionModelDao>of(unknownTransactions.get((UUID) invocation.getArguments()[0]));
+                   }
+               });
+
+        Mockito.when(dao.getPaymentMethod(Mockito.<UUID>any(), Mockito.<InternalTenantContext>any()))
+               .thenReturn(new PaymentMethodModelDao(UUID.randomUUID(), null, null, null, UUID.randomUUID(), PLUGIN_NAME, true));
+
+        Mockito.doAnswer(new Answer<Void>() {
+            @Override
+            public Void answer(final InvocationOnMock invocation) throws Throwable {
+                Assert.assertEquals(invocation.getArguments()[6], TransactionStatus.SUCCESS);
+                repairedPayments.add((UUID) invocation.getArguments()[1]);
+                return null;
+            }
+        }).when(dao).updatePaymentAndTransactionOnCompletion(Mockito.<UUID>any(), Mockito.<UUID>any(), Mockito.<TransactionType>any(), Mockito.<String>any(),
+                                                             Mockito.<String>any(), Mockito.<UUID>any(), Mockito.<TransactionStatus>any(), Mockito.<BigDecimal>any(),
+                                                             Mockito.<Currency>any(), Mockito.<String>any(), Mockito.<String>any(), Mockito.<InternalCallContext>any());
+        return dao;
+    }
+}
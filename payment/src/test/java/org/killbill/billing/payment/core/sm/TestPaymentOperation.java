@@ -30,17 +30,22 @@ import org.killbill.billing.catalog.api.Currency;
 import org.killbill.billing.payment.PaymentTestSuiteNoDB;
 import org.killbill.billing.payment.api.PaymentApiException;
 import org.killbill.billing.payment.api.PluginProperty;
+import org.killbill.billing.payment.api.TransactionStatus;
 import org.killbill.billing.payment.api.TransactionType;
 import org.killbill.billing.payment.dao.PaymentDao;
 import org.killbill.billing.payment.dao.PaymentMethodModelDao;
+import org.killbill.billing.payment.dao.PaymentTransactionModelDao;
+import org.killbill.billing.payment.dispatcher.PluginBulkheads;
 import org.killbill.billing.payment.dispatcher.PluginDispatcher;
 import org.killbill.billing.payment.plugin.api.PaymentPluginApiException;
 import org.killbill.billing.payment.plugin.api.PaymentPluginStatus;
 import org.killbill.billing.payment.plugin.api.PaymentTransactionInfoPlugin;
 import org.killbill.billing.payment.provider.MockPaymentProviderPlugin;
+import org.killbill.billing.util.config.PaymentConfig;
 import org.killbill.commons.locker.GlobalLocker;
 import org.killbill.commons.locker.memory.MemoryGlobalLocker;
 import org.mockito.Mockito;
+import org.skife.config.TimeSpan;
 import org.testng.Assert;
 import org.testng.annotations.Test;
 
@@ -100,9 +105,39 @@ public class TestPaymentOperation extends PaymentTestSuiteNoDB {
         Assert.assertNotNull(paymentStateContext.getPaymentInfoPlugin());
     }
 
+    @Test(groups = "fast")
+    public void testPluginUnavailable() throws Exception {
+        final PaymentConfig config = Mockito.mock(PaymentConfig.class);
+        Mockito.when(config.getPaymentPluginTimeout()).thenReturn(new TimeSpan("30s"));
+        Mockito.when(config.getPaymentPluginMaxConcurrentCalls()).thenReturn(1);
+        final PluginBulkheads bulkheads = new PluginBulkheads(config, clock);
+        setUp(PaymentPluginStatus.PROCESSED, bulkheads);
+        paymentStateContext.setPaymentTransactionModelDao(new PaymentTransactionModelDao(clock.getUTCNow(), clock.getUTCNow(), null, paymentStateContext.getPaymentTransactionExternalKey(),
+                                                                                         paymentStateContext.getPaymentId(), TransactionType.CAPTURE, clock.getUTCNow(),
+                                                                                         TransactionStatus.UNKNOWN, paymentStateContext.getAmount(), paymentStateContext.getCurrency(),
+                                                                                         null, null));
+
+        // Saturate the plugin
+        Assert.assertTrue(bulkheads.getBulkhead(MockPaymentProviderPlugin.PLUGIN_NAME).tryAcquire());
+
+        try {
+            paymentOperation.doOperationCallback();
+            Assert.fail();
+        } catch (final OperationException e) {
+            Assert.assertEquals(e.getOperationResult(), OperationResult.EXCEPTION);
+        }
+
+        // The plugin was never called, the transaction goes to UNKNOWN for the Janitor to fix it
+        Assert.assertEquals(paymentStateContext.getPaymentInfoPlugin().getStatus(), PaymentPluginStatus.UNDEFINED);
+    }
+
     private void setUp(final PaymentPluginStatus paymentPluginStatus) throws Exception {
+        setUp(paymentPluginStatus, null);
+    }
+
+    private void setUp(final PaymentPluginStatus paymentPluginStatus, @Nullable final PluginBulkheads bulkheads) throws Exception {
         final GlobalLocker locker = new MemoryGlobalLocker();
-        final PluginDispatcher<OperationResult> paymentPluginDispatcher = new PluginDispatcher<OperationResult>(1, Executors.newCachedThreadPool());
+        final PluginDispatcher<OperationResult> paymentPluginDispatcher = new PluginDispatcher<OperationResult>(1, Executors.newCachedThreadPool(), bulkheads);
         paymentStateContext = new PaymentStateContext(true,
                                                       UUID.randomUUID(),
                                                       null, null,
@@ -0,0 +1,54 @@
+/*
+ * Copyright 2014 The Billing Project, LLC
+ *
+ * The Billing Project licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.killbill.billing.payment.core.sm;
+
+import org.killbill.billing.payment.PaymentTestSuiteNoDB;
+import org.killbill.billing.payment.api.TransactionType;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+public class TestPaymentStateMachineHelper extends PaymentTestSuiteNoDB {
+
+    @Test(groups = "fast")
+    public void testCompiledTransitions() throws Exception {
+        Assert.assertEquals(paymentSMHelper.fetchNextState("PURCHASE_INIT", true).getName(), "PURCHASE_SUCCESS");
+        Assert.assertEquals(paymentSMHelper.fetchNextState("PURCHASE_INIT", false).getName(), "PURCHASE_FAILED");
+        Assert.assertEquals(paymentSMHelper.fetchNextState("AUTH_INIT", true).getName(), "AUTH_SUCCESS");
+
+        Assert.assertEquals(paymentSMHelper.getState("PURCHASE_INIT").getName(), "PURCHASE_INIT");
+        Assert.assertEquals(paymentSMHelper.getStateMachineForStateName("PURCHASE_INIT").getName(), "PURCHASE");
+        Assert.assertEquals(paymentSMHelper.getStateMachineForTransaction(TransactionType.PURCHASE).getName(), "PURCHASE");
+        Assert.assertEquals(paymentSMHelper.getOperationForTransaction(TransactionType.PURCHASE).getName(), "OP_PURCHASE");
+    }
+
+    @Test(groups = "fast")
+    public void testStateNamesForTransaction() throws Exception {
+        final TransactionType[] transactionTypes = {TransactionType.AUTHORIZE, TransactionType.CAPTURE, TransactionType.PURCHASE, TransactionType.REFUND,
+                                                    TransactionType.CREDIT, TransactionType.VOID, TransactionType.CHARGEBACK};
+        for (final TransactionType transactionType : transactionTypes) {
+            Assert.assertNotNull(paymentSMHelper.getState(paymentSMHelper.getSuccessfulStateForTransaction(transactionType)));
+            Assert.assertNotNull(paymentSMHelper.getState(paymentSMHelper.getFailureStateForTransaction(transactionType)));
+            Assert.assertNotNull(paymentSMHelper.getState(paymentSMHelper.getErroredStateForTransaction(transactionType)));
+        }
+        Assert.assertEquals(paymentSMHelper.getPendingStateForTransaction(TransactionType.AUTHORIZE), "AUTHORIZE_PENDING");
+        try {
+            paymentSMHelper.getPendingStateForTransaction(TransactionType.PURCHASE);
+            Assert.fail();
+        } catch (final IllegalStateException e) {
+        }
+    }
+}
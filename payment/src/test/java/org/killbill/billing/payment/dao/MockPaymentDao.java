@@ -18,12 +18,15 @@ package org.killbill.billing.payment.dao;
 
 import java.math.BigDecimal;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.joda.time.DateTime;
 import org.killbill.billing.callcontext.InternalCallContext;
@@ -42,6 +45,7 @@ public class MockPaymentDao implements PaymentDao {
     private final Map<UUID, PaymentModelDao> payments = new HashMap<UUID, PaymentModelDao>();
     private final Map<UUID, PaymentTransactionModelDao> transactions = new HashMap<UUID, PaymentTransactionModelDao>();
     private final Map<UUID, PaymentAttemptModelDao> attempts = new HashMap<UUID, PaymentAttemptModelDao>();
+    private final AtomicLong attemptRecordIds = new AtomicLong(0);
 
     public void reset() {
         synchronized (this) {
@@ -52,7 +56,7 @@ public class MockPaymentDao implements PaymentDao {
     }
 
     @Override
-    public int failOldPendingTransactions(final TransactionStatus newTransactionStatus, final DateTime createdBeforeDate, final InternalCallContext context) {
+    public int failOldPendingTransactions(final TransactionStatus newTransactionStatus, final DateTime createdBeforeDate, final int nbShards, final int shard, final InternalCallContext context) {
         int result = 0;
         synchronized (transactions) {
             for (PaymentTransactionModelDao cur : transactions.values()) {
@@ -66,6 +70,13 @@ public class MockPaymentDao implements PaymentDao {
     @Override
     public PaymentAttemptModelDao insertPaymentAttemptWithProperties(final PaymentAttemptModelDao attempt, final InternalCallContext context) {
         synchronized (this) {
+            // Set by the database otherwise, the janitor paginates and shards on them
+            if (attempt.getRecordId() == null) {
+                attempt.setRecordId(attemptRecordIds.incrementAndGet());
+            }
+            if (attempt.getAccountRecordId() == null && context != null) {
+                attempt.setAccountRecordId(context.getAccountRecordId());
+            }
             attempts.put(attempt.getId(), attempt);
             return attempt;
         }
@@ -90,8 +101,27 @@ public class MockPaymentDao implements PaymentDao {
     }
 
     @Override
-    public List<PaymentAttemptModelDao> getPaymentAttemptsByState(final String stateName, final DateTime createdBeforeDate, final InternalTenantContext context) {
-        return null;
+    public List<PaymentAttemptModelDao> getPaymentAttemptsByState(final String stateName, final DateTime createdBeforeDate, final Long afterRecordId,
+                                                                final int nbShards, final int shard, final int limit, final InternalTenantContext context) {
+        synchronized (this) {
+            // Same semantics as the SQL query: keyset pagination on the record id, filtered by shard
+            final List<PaymentAttemptModelDao> candidates = new ArrayList<PaymentAttemptModelDao>();
+            for (final PaymentAttemptModelDao cur : attempts.values()) {
+                if (cur.getStateName().equals(stateName) &&
+                    cur.getCreatedDate().isBefore(createdBeforeDate) &&
+                    (afterRecordId == null || cur.getRecordId() > afterRecordId) &&
+                    (cur.getAccountRecordId() == null ? 0 : cur.getAccountRecordId()) % nbShards == shard) {
+                    candidates.add(cur);
+                }
+            }
+            Collections.sort(candidates, new Comparator<PaymentAttemptModelDao>() {
+                @Override
+                public int compare(final PaymentAttemptModelDao o1, final PaymentAttemptModelDao o2) {
+                    return o1.getRecordId().compareTo(o2.getRecordId());
+                }
+            });
+            return new ArrayList<PaymentAttemptModelDao>(candidates.subList(0, Math.min(limit, candidates.size())));
+        }
     }
 
     @Override
@@ -220,7 +250,8 @@ public class MockPaymentDao implements PaymentDao {
     }
 
     @Override
-    public List<PaymentModelDao> getPaymentsByStates(final String[] states, final DateTime createdBeforeDate, final DateTime createdAfterDate, final int limit, final InternalTenantContext context) {
+    public List<PaymentModelDao> getPaymentsByStates(final String[] states, final DateTime createdBeforeDate, final DateTime createdAfterDate, final Long afterRecordId,
+                                                     final int nbShards, final int shard, final int limit, final InternalTenantContext context) {
         return null;
     }
 
@@ -92,6 +92,43 @@ public class TestPaymentDao extends PaymentTestSuiteWithEmbeddedDB {
         assertEquals(retrievedAttempts.get(0).getPluginName(), pluginName);
     }
 
+    @Test(groups = "slow")
+    public void testPaymentAttemptsByState() {
+        final String stateName = "INIT";
+        for (int i = 0; i < 3; i++) {
+            final PaymentAttemptModelDao attempt = new PaymentAttemptModelDao(UUID.randomUUID(), UUID.randomUUID(), clock.getUTCNow(), clock.getUTCNow(),
+                                                                              "payment" + i, UUID.randomUUID(), "transaction" + i, TransactionType.AUTHORIZE, stateName,
+                                                                              BigDecimal.TEN, Currency.USD, "pluginName", null);
+            paymentDao.insertPaymentAttemptWithProperties(attempt, internalCallContext);
+        }
+        final PaymentAttemptModelDao successfulAttempt = new PaymentAttemptModelDao(UUID.randomUUID(), UUID.randomUUID(), clock.getUTCNow(), clock.getUTCNow(),
+                                                                                    "payment3", UUID.randomUUID(), "transaction3", TransactionType.AUTHORIZE, "SUCCESS",
+                                                                                    BigDecimal.TEN, Currency.USD, "pluginName", null);
+        paymentDao.insertPaymentAttemptWithProperties(successfulAttempt, internalCallContext);
+
+        final DateTime createdBeforeDate = clock.getUTCNow().plusDays(1);
+        final List<PaymentAttemptModelDao> result = paymentDao.getPaymentAttemptsByState(stateName, createdBeforeDate, 0L, 1, 0, 10, internalCallContext);
+        assertEquals(result.size(), 3);
+
+        // Same results, one page at a time
+        final List<PaymentAttemptModelDao> firstPage = paymentDao.getPaymentAttemptsByState(stateName, createdBeforeDate, 0L, 1, 0, 2, internalCallContext);
+        assertEquals(firstPage.size(), 2);
+        assertEquals(firstPage.get(0).getId(), result.get(0).getId());
+        assertEquals(firstPage.get(1).getId(), result.get(1).getId());
+
+        final List<PaymentAttemptModelDao> secondPage = paymentDao.getPaymentAttemptsByState(stateName, createdBeforeDate, firstPage.get(1).getRecordId(), 1, 0, 2, internalCallContext);
+        assertEquals(secondPage.size(), 1);
+        assertEquals(secondPage.get(0).getId(), result.get(2).getId());
+
+        // Not old enough
+        assertEquals(paymentDao.getPaymentAttemptsByState(stateName, clock.getUTCNow().minusDays(1), 0L, 1, 0, 10, internalCallContext).size(), 0);
+
+        // All the attempts belong to the same account, hence to the same shard
+        final int shard = (int) (internalCallContext.getAccountRecordId() % 2);
+        assertEquals(paymentDao.getPaymentAttemptsByState(stateName, createdBeforeDate, 0L, 2, shard, 10, internalCallContext).size(), 3);
+        assertEquals(paymentDao.getPaymentAttemptsByState(stateName, createdBeforeDate, 0L, 2, 1 - shard, 10, internalCallContext).size(), 0);
+    }
+
     @Test(groups = "slow")
     public void testPaymentAndTransactions() {
 
@@ -235,6 +272,16 @@ public class TestPaymentDao extends PaymentTestSuiteWithEmbeddedDB {
         assertEquals(savedMethod.getPluginName(), pluginName);
         assertEquals(savedMethod.isActive(), isActive);
 
+        // Populate the cache
+        assertEquals(paymentDao.getPaymentMethod(paymentMethodId, internalCallContext).getId(), paymentMethodId);
+        assertEquals(paymentDao.getPaymentMethod(paymentMethodId, internalCallContext).getId(), paymentMethodId);
+
+        // The cached entry is still tenant specific
+        final InternalCallContext otherTenantContext = new InternalCallContext(internalCallContext.getTenantRecordId() + 1, internalCallContext.getAccountRecordId(), UUID.randomUUID(),
+                                                                               UUID.randomUUID().toString(), CallOrigin.TEST, UserType.TEST, "Testing", "This is a test",
+                                                                               clock.getUTCNow(), clock.getUTCNow());
+        assertNull(paymentDao.getPaymentMethod(paymentMethodId, otherTenantContext));
+
         paymentDao.deletedPaymentMethod(paymentMethodId, internalCallContext);
 
         PaymentMethodModelDao deletedPaymentMethod = paymentDao.getPaymentMethod(paymentMethodId, internalCallContext);
@@ -299,10 +346,18 @@ public class TestPaymentDao extends PaymentTestSuiteWithEmbeddedDB {
         final List<PaymentTransactionModelDao> result = getPendingTransactions(paymentModelDao.getId());
         Assert.assertEquals(result.size(), 3);
 
-        paymentDao.failOldPendingTransactions(TransactionStatus.PAYMENT_FAILURE, newTime, internalCallContext);
+        // The old pending transactions belong to the account of internalCallContext, hence to a single shard
+        final int shard = (int) (internalCallContext.getAccountRecordId() % 2);
+        Assert.assertEquals(paymentDao.failOldPendingTransactions(TransactionStatus.PAYMENT_FAILURE, newTime, 2, 1 - shard, internalCallContext), 0);
+        Assert.assertEquals(getPendingTransactions(paymentModelDao.getId()).size(), 3);
+
+        final int nbFailed = paymentDao.failOldPendingTransactions(TransactionStatus.PAYMENT_FAILURE, newTime, 2, shard, internalCallContext);
+        Assert.assertEquals(nbFailed, 2);
 
         final List<PaymentTransactionModelDao> result2 = getPendingTransactions(paymentModelDao.getId());
         Assert.assertEquals(result2.size(), 1);
+        Assert.assertEquals(paymentDao.getPaymentTransaction(transaction1.getId(), internalCallContext).getTransactionStatus(), TransactionStatus.PAYMENT_FAILURE);
+        Assert.assertEquals(paymentDao.getPaymentTransaction(transaction3.getId(), internalCallContext).getTransactionStatus(), TransactionStatus.SUCCESS);
 
         // Just to guarantee that next clock.getUTCNow() > newTime
         try {
@@ -311,7 +366,7 @@ public class TestPaymentDao extends PaymentTestSuiteWithEmbeddedDB {
         }
         ;
 
-        paymentDao.failOldPendingTransactions(TransactionStatus.PAYMENT_FAILURE, clock.getUTCNow(), internalCallContextWithNewTime);
+        paymentDao.failOldPendingTransactions(TransactionStatus.PAYMENT_FAILURE, clock.getUTCNow(), 1, 0, internalCallContextWithNewTime);
 
         final List<PaymentTransactionModelDao> result3 = getPendingTransactions(paymentModelDao.getId());
         Assert.assertEquals(result3.size(), 0);
@@ -452,8 +507,23 @@ public class TestPaymentDao extends PaymentTestSuiteWithEmbeddedDB {
         paymentDao.insertPaymentWithFirstTransaction(paymentModelDao5, transaction5, context5);
 
         final String[] errorStates = {"AUTH_ERRORED", "CAPTURE_ERRORED", "REFUND_ERRORED", "CREDIT_ERRORED"};
-        final List<PaymentModelDao> result = paymentDao.getPaymentsByStates(errorStates, createdBeforeDate, createdAfterDate, 10, internalCallContext);
+        final List<PaymentModelDao> result = paymentDao.getPaymentsByStates(errorStates, createdBeforeDate, createdAfterDate, 0L, 1, 0, 10, internalCallContext);
         assertEquals(result.size(), 2);
+
+        // Same results, one page at a time
+        final List<PaymentModelDao> firstPage = paymentDao.getPaymentsByStates(errorStates, createdBeforeDate, createdAfterDate, 0L, 1, 0, 1, internalCallContext);
+        assertEquals(firstPage.size(), 1);
+        assertEquals(firstPage.get(0).getId(), result.get(0).getId());
+        final List<PaymentModelDao> secondPage = paymentDao.getPaymentsByStates(errorStates, createdBeforeDate, createdAfterDate, firstPage.get(0).getRecordId(), 1, 0, 1, internalCallContext);
+        assertEquals(secondPage.size(), 1);
+        assertEquals(secondPage.get(0).getId(), result.get(1).getId());
+        assertEquals(paymentDao.getPaymentsByStates(errorStates, createdBeforeDate, createdAfterDate, secondPage.get(0).getRecordId(), 1, 0, 1, internalCallContext).size(), 0);
+
+        // All the payments belong to the same account, hence to the same shard
+        final int shard = (int) (internalCallContext.getAccountRecordId() % 2);
+        assertEquals(paymentDao.getPaymentsByStates(errorStates, createdBeforeDate, createdAfterDate, 0L, 2, shard, 10, internalCallContext).size(), 2);
+        assertEquals(paymentDao.getPaymentsByStates(errorStates, createdBeforeDate, createdAfterDate, 0L, 2, 1 - shard, 10, internalCallContext).size(), 0);
+
     }
 
     private List<PaymentTransactionModelDao> getPendingTransactions(final UUID paymentId) {
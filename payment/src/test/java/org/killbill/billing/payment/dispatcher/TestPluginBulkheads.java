@@ -0,0 +1,168 @@
+/*
+ * Copyright 2014 The Billing Project, LLC
+ *
+ * The Billing Project licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.killbill.billing.payment.dispatcher;
+
+import org.killbill.billing.payment.PaymentTestSuiteNoDB;
+import org.killbill.billing.payment.dispatcher.PluginBulkheads.Bulkhead;
+import org.killbill.billing.util.config.PaymentConfig;
+import org.killbill.clock.ClockMock;
+import org.mockito.Mockito;
+import org.skife.config.TimeSpan;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.MetricRegistry;
+
+public class TestPluginBulkheads extends PaymentTestSuiteNoDB {
+
+    @Test(groups = "fast")
+    public void testConcurrencyLimit() {
+        final PluginBulkheads bulkheads = new PluginBulkheads(createConfig(2, 0, false), new ClockMock());
+        final Bulkhead bulkhead = bulkheads.getBulkhead("slow-gateway");
+
+        Assert.assertTrue(bulkhead.tryAcquire());
+        Assert.assertTrue(bulkhead.tryAcquire());
+        Assert.assertFalse(bulkhead.tryAcquire());
+
+        // Other plugins are not impacted
+        Assert.assertTrue(bulkheads.getBulkhead("healthy-gateway").tryAcquire());
+
+        bulkhead.release(10, true);
+        Assert.assertTrue(bulkhead.tryAcquire());
+    }
+
+    @Test(groups = "fast")
+    public void testCircuitBreaker() {
+        final ClockMock clock = new ClockMock();
+        final PluginBulkheads bulkheads = new PluginBulkheads(createConfig(0, 3, false), clock);
+        final Bulkhead bulkhead = bulkheads.getBulkhead("flaky-gateway");
+
+        for (int i = 0; i < 3; i++) {
+            Assert.assertTrue(bulkhead.tryAcquire());
+            bulkhead.release(10, false);
+        }
+        Assert.assertTrue(bulkhead.isCircuitOpen());
+        Assert.assertFalse(bulkhead.tryAcquire());
+
+        // After the open time, a single trial call is let through
+        clock.addDeltaFromReality(31 * 1000);
+        Assert.assertTrue(bulkhead.tryAcquire());
+        Assert.assertFalse(bulkhead.tryAcquire());
+
+        // The trial call failed: fail fast again
+        bulkhead.release(10, false);
+        Assert.assertFalse(bulkhead.tryAcquire());
+
+        clock.addDeltaFromReality(31 * 1000);
+        Assert.assertTrue(bulkhead.tryAcquire());
+        bulkhead.release(10, true);
+        Assert.assertFalse(bulkhead.isCircuitOpen());
+        Assert.assertTrue(bulkhead.tryAcquire());
+    }
+
+    @Test(groups = "fast")
+    public void testCancel() {
+        final ClockMock clock = new ClockMock();
+        final PluginBulkheads bulkheads = new PluginBulkheads(createConfig(1, 1, false), clock);
+        final Bulkhead bulkhead = bulkheads.getBulkhead("busy-gateway");
+
+        // A call which never reached the plugin gives back its permit without impacting the circuit breaker
+        Assert.assertTrue(bulkhead.tryAcquire());
+        bulkhead.cancel();
+        Assert.assertFalse(bulkhead.isCircuitOpen());
+        Assert.assertTrue(bulkhead.tryAcquire());
+        bulkhead.release(10, false);
+        Assert.assertTrue(bulkhead.isCircuitOpen());
+
+        // A cancelled trial call lets the next one through
+        clock.addDeltaFromReality(31 * 1000);
+        Assert.assertTrue(bulkhead.tryAcquire());
+        bulkhead.cancel();
+        Assert.assertTrue(bulkhead.tryAcquire());
+    }
+
+    @Test(groups = "fast")
+    public void testAdaptiveTimeout() {
+        final PluginBulkheads bulkheads = new PluginBulkheads(createConfig(0, 0, true), new ClockMock());
+        final Bulkhead bulkhead = bulkheads.getBulkhead("fast-gateway");
+
+        // Not enough samples yet
+        Assert.assertEquals(bulkhead.getTimeoutMillis(), 30 * 1000);
+
+        for (int i = 0; i < 100; i++) {
+            Assert.assertTrue(bulkhead.tryAcquire());
+            bulkhead.release(500, true);
+        }
+        // p99 is 500ms, times 3
+        Assert.assertEquals(bulkhead.getTimeoutMillis(), 1500);
+
+        // Calls slower than the adaptive timeout are failures and don't push the timeout up
+        Assert.assertTrue(bulkhead.tryAcquire());
+        bulkhead.release(5000, true);
+        Assert.assertEquals(bulkhead.getTimeoutMillis(), 1500);
+    }
+
+    @Test(groups = "fast")
+    public void testCallGauges() {
+        final MetricRegistry metricRegistry = new MetricRegistry();
+        final PluginBulkheads bulkheads = new PluginBulkheads(createConfig(0, 0, false), new ClockMock());
+        bulkheads.setMetricRegistry(metricRegistry);
+        final Bulkhead bulkhead = bulkheads.getBulkhead("busy-gateway");
+
+        final Gauge queuedCalls = metricRegistry.getGauges().get(MetricRegistry.name(PluginBulkheads.class, "busy-gateway", "queuedCalls"));
+        final Gauge activeCalls = metricRegistry.getGauges().get(MetricRegistry.name(PluginBulkheads.class, "busy-gateway", "activeCalls"));
+
+        // Two calls handed over to the plugin executor, one of them picked up by a plugin thread
+        Assert.assertTrue(bulkhead.tryAcquire());
+        bulkhead.onCallQueued();
+        Assert.assertTrue(bulkhead.tryAcquire());
+        bulkhead.onCallQueued();
+        bulkhead.onCallStarted(true);
+        Assert.assertEquals(queuedCalls.getValue(), 1);
+        Assert.assertEquals(activeCalls.getValue(), 1);
+
+        // One call made on the calling thread
+        Assert.assertTrue(bulkhead.tryAcquire());
+        bulkhead.onCallStarted(false);
+        Assert.assertEquals(queuedCalls.getValue(), 1);
+        Assert.assertEquals(activeCalls.getValue(), 2);
+
+        bulkhead.release(10, true);
+        bulkhead.release(10, true);
+        bulkhead.cancel();
+        Assert.assertEquals(queuedCalls.getValue(), 0);
+        Assert.assertEquals(activeCalls.getValue(), 0);
+
+        // Gauges are per plugin
+        bulkheads.getBulkhead("other-gateway");
+        Assert.assertEquals(metricRegistry.getGauges().size(), 4);
+    }
+
+    private PaymentConfig createConfig(final int maxConcurrentCalls, final int failureThreshold, final boolean adaptiveTimeout) {
+        final PaymentConfig config = Mockito.mock(PaymentConfig.class);
+        Mockito.when(config.getPaymentPluginTimeout()).thenReturn(new TimeSpan("30s"));
+        Mockito.when(config.getPaymentPluginMaxConcurrentCalls()).thenReturn(maxConcurrentCalls);
+        Mockito.when(config.getPaymentPluginCircuitBreakerFailureThreshold()).thenReturn(failureThreshold);
+        Mockito.when(config.getPaymentPluginCircuitBreakerOpenTime()).thenReturn(new TimeSpan("30s"));
+        Mockito.when(config.isPaymentPluginAdaptiveTimeout()).thenReturn(adaptiveTimeout);
+        Mockito.when(config.getPaymentPluginAdaptiveTimeoutPercentile()).thenReturn(99);
+        Mockito.when(config.getPaymentPluginAdaptiveTimeoutMultiplier()).thenReturn(3);
+        Mockito.when(config.getPaymentPluginAdaptiveTimeoutMin()).thenReturn(new TimeSpan("1s"));
+        return config;
+    }
+}
@@ -0,0 +1,73 @@
+/*
+ * Copyright 2014 The Billing Project, LLC
+ *
+ * The Billing Project licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.killbill.billing.payment.retry;
+
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.killbill.billing.callcontext.InternalCallContext;
+import org.killbill.billing.callcontext.InternalTenantContext;
+import org.killbill.billing.payment.PaymentTestSuiteNoDB;
+import org.killbill.billing.payment.core.PluginControlledPaymentProcessor;
+import org.killbill.billing.util.config.PaymentConfig;
+import org.killbill.clock.ClockMock;
+import org.mockito.Mockito;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.MetricRegistry;
+
+public class TestDefaultRetryService extends PaymentTestSuiteNoDB {
+
+    @Test(groups = "fast")
+    public void testRetryMetrics() {
+        final ClockMock clock = new ClockMock();
+        final PluginControlledPaymentProcessor processor = Mockito.mock(PluginControlledPaymentProcessor.class);
+        final PaymentConfig config = Mockito.mock(PaymentConfig.class);
+        final DefaultRetryService retryService = new DefaultRetryService(null, null, processor, config, clock);
+        final MetricRegistry metricRegistry = new MetricRegistry();
+        retryService.setMetricRegistry(metricRegistry);
+
+        final UUID attemptId = UUID.randomUUID();
+        Mockito.when(processor.getPaymentPluginName(Mockito.eq(attemptId), Mockito.<InternalTenantContext>any())).thenReturn("gateway");
+
+        // Record the number of pending retries while the retry is running
+        final AtomicInteger pendingRetriesDuringRetry = new AtomicInteger(-1);
+        Mockito.doAnswer(new Answer<Void>() {
+            @Override
+            public Void answer(final InvocationOnMock invocation) throws Throwable {
+                pendingRetriesDuringRetry.set(retryService.getPendingRetries("gateway"));
+                return null;
+            }
+        }).when(processor).retryPaymentTransaction(Mockito.eq(attemptId), Mockito.eq("control-plugin"), Mockito.<InternalCallContext>any());
+
+        retryService.retryPaymentTransactionWithRateLimit(new PaymentRetryNotificationKey(attemptId, "control-plugin"), clock.getUTCNow().minusSeconds(30), internalCallContext);
+
+        Assert.assertEquals(pendingRetriesDuringRetry.get(), 1);
+        Assert.assertEquals(retryService.getPendingRetries("gateway"), 0);
+        // The clock keeps ticking
+        Assert.assertTrue(retryService.getRetryLagMillis() >= 30 * 1000L && retryService.getRetryLagMillis() < 40 * 1000L);
+
+        final Gauge pendingRetries = metricRegistry.getGauges().get(MetricRegistry.name(BaseRetryService.class, DefaultRetryService.QUEUE_NAME, "gateway", "pendingRetries"));
+        Assert.assertEquals(pendingRetries.getValue(), 0);
+        final Gauge retryLag = metricRegistry.getGauges().get(MetricRegistry.name(BaseRetryService.class, DefaultRetryService.QUEUE_NAME, "retryLagMillis"));
+        Assert.assertEquals(retryLag.getValue(), retryService.getRetryLagMillis());
+    }
+}
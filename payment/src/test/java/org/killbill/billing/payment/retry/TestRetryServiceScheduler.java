@@ -0,0 +1,60 @@
+/*
+ * Copyright 2014 The Billing Project, LLC
+ *
+ * The Billing Project licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.killbill.billing.payment.retry;
+
+import java.util.HashSet;
+import java.util.Set;
+import java.util.UUID;
+
+import org.killbill.billing.payment.PaymentTestSuiteNoDB;
+import org.killbill.billing.payment.retry.DefaultRetryService.DefaultRetryServiceScheduler;
+import org.killbill.billing.util.config.PaymentConfig;
+import org.mockito.Mockito;
+import org.skife.config.TimeSpan;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+public class TestRetryServiceScheduler extends PaymentTestSuiteNoDB {
+
+    @Test(groups = "fast")
+    public void testNoJitterByDefault() {
+        final DefaultRetryServiceScheduler scheduler = new DefaultRetryServiceScheduler(null, null, createConfig("0s"));
+        Assert.assertEquals(scheduler.computeJitterMillis(UUID.randomUUID()), 0L);
+    }
+
+    @Test(groups = "fast")
+    public void testJitterIsSpreadAndStable() {
+        final DefaultRetryServiceScheduler scheduler = new DefaultRetryServiceScheduler(null, null, createConfig("1h"));
+
+        final Set<Long> jitters = new HashSet<Long>();
+        for (int i = 0; i < 100; i++) {
+            final UUID attemptId = UUID.randomUUID();
+            final long jitterMillis = scheduler.computeJitterMillis(attemptId);
+            Assert.assertTrue(jitterMillis >= 0 && jitterMillis < 3600 * 1000L);
+            // Rescheduling the same attempt gives the same time
+            Assert.assertEquals(scheduler.computeJitterMillis(attemptId), jitterMillis);
+            jitters.add(jitterMillis);
+        }
+        Assert.assertTrue(jitters.size() > 90);
+    }
+
+    private PaymentConfig createConfig(final String jitter) {
+        final PaymentConfig paymentConfig = Mockito.mock(PaymentConfig.class);
+        Mockito.when(paymentConfig.getPaymentRetryJitter()).thenReturn(new TimeSpan(jitter));
+        return paymentConfig;
+    }
+}
@@ -28,6 +28,7 @@ import javax.annotation.Nullable;
 
 import org.killbill.billing.ObjectType;
 import org.killbill.billing.client.KillBillClientException;
+import org.killbill.billing.client.KillBillHttpClient;
 import org.killbill.billing.client.model.Account;
 import org.killbill.billing.client.model.Accounts;
 import org.killbill.billing.client.model.AuditLog;
@@ -36,6 +37,7 @@ import org.killbill.billing.client.model.InvoicePayments;
 import org.killbill.billing.client.model.PaymentMethod;
 import org.killbill.billing.client.model.PaymentMethodPluginDetail;
 import org.killbill.billing.client.model.Tag;
+import org.killbill.billing.jaxrs.resources.JaxrsResource;
 import org.killbill.billing.util.api.AuditLevel;
 import org.testng.Assert;
 import org.testng.annotations.Test;
@@ -80,6 +82,25 @@ public class TestAccount extends TestJaxrsBase {
         Assert.assertTrue(accountBalance.compareTo(BigDecimal.ZERO) > 0);
     }
 
+    @Test(groups = "slow", description = "Can retrieve the billing events trace of an account")
+    public void testBillingEventsTrace() throws Exception {
+        final Account accountJson = createAccountNoPMBundleAndSubscriptionAndWaitForFirstInvoice();
+
+        final String uri = JaxrsResource.ACCOUNTS_PATH + "/" + accountJson.getAccountId() + "/" + JaxrsResource.BILLING_EVENTS_TRACE;
+        final String[] traces = killBillHttpClient.doGet(uri, KillBillHttpClient.DEFAULT_EMPTY_QUERY, String[].class);
+
+        // Billing events before and after blocking, for each computation
+        assertTrue(traces.length >= 2);
+        assertTrue(traces[0].startsWith("Billing Events Raw for accountId " + accountJson.getAccountId()));
+        assertTrue(traces[0].contains("type=CREATE"));
+        assertTrue(traces[1].startsWith("Billing Events After Blocking for accountId " + accountJson.getAccountId()));
+
+        // Nothing traced for an account which was never invoiced
+        final Account otherAccountJson = createAccount();
+        final String otherUri = JaxrsResource.ACCOUNTS_PATH + "/" + otherAccountJson.getAccountId() + "/" + JaxrsResource.BILLING_EVENTS_TRACE;
+        assertEquals(killBillHttpClient.doGet(otherUri, KillBillHttpClient.DEFAULT_EMPTY_QUERY, String[].class).length, 0);
+    }
+
     @Test(groups = "slow", description = "Cannot update a non-existent account")
     public void testUpdateNonExistentAccount() throws Exception {
         final Account input = getAccount();
@@ -0,0 +1,182 @@
+/*
+ * Copyright 2014 The Billing Project, LLC
+ *
+ * The Billing Project licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.killbill.billing.jaxrs;
+
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.List;
+import java.util.UUID;
+
+import org.joda.time.LocalDate;
+import org.killbill.billing.catalog.api.BillingPeriod;
+import org.killbill.billing.catalog.api.ProductCategory;
+import org.killbill.billing.client.model.Account;
+import org.killbill.billing.client.model.Subscription;
+import org.killbill.billing.jaxrs.json.RolledUpUsageJson;
+import org.killbill.billing.jaxrs.json.SubscriptionUsageRecordJson;
+import org.killbill.billing.jaxrs.json.SubscriptionUsageRecordJson.UnitUsageRecordJson;
+import org.killbill.billing.jaxrs.json.SubscriptionUsageRecordJson.UsageRecordJson;
+import org.killbill.billing.jaxrs.resources.JaxrsResource;
+import org.killbill.billing.util.jackson.ObjectMapper;
+import org.testng.annotations.Test;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.google.common.base.Charsets;
+import com.google.common.collect.ImmutableList;
+import com.google.common.io.BaseEncoding;
+
+import static org.testng.Assert.assertEquals;
+
+public class TestUsage extends TestJaxrsBase {
+
+    private static final String APPLICATION_JSON = "application/json";
+    private static final String APPLICATION_NDJSON = "application/x-ndjson";
+
+    private final ObjectMapper mapper = new ObjectMapper();
+
+    @Test(groups = "slow", description = "Can record usage in bulk, as a JSON array")
+    public void testRecordUsagesInBulk() throws Exception {
+        final UUID subscriptionId1 = createSubscription();
+        final UUID subscriptionId2 = createSubscription();
+        final LocalDate today = new LocalDate(2013, 1, 1);
+
+        // Records for the same subscription are merged
+        final List<SubscriptionUsageRecordJson> records = ImmutableList.<SubscriptionUsageRecordJson>of(createUsageRecord(subscriptionId1, "bullets", today, 10L),
+                                                                                                          createUsageRecord(subscriptionId2, "bullets", today, 3L),
+                                                                                                          createUsageRecord(subscriptionId1, "bullets", today.plusDays(1), 5L));
+        final HttpURLConnection connection = doPost(JaxrsResource.USAGES_PATH + "/" + JaxrsResource.BULK, APPLICATION_JSON, mapper.writeValueAsString(records));
+        assertEquals(connection.getResponseCode(), 201);
+
+        final List<SubscriptionUsageRecordJson> recordedUsages = readRecordedUsages(connection);
+        assertEquals(recordedUsages.size(), 2);
+        assertEquals(recordedUsages.get(0).getSubscriptionId(), subscriptionId1.toString());
+        assertEquals(recordedUsages.get(0).getUnitUsageRecords().size(), 2);
+        assertEquals(recordedUsages.get(1).getSubscriptionId(), subscriptionId2.toString());
+        assertEquals(recordedUsages.get(1).getUnitUsageRecords().size(), 1);
+
+        assertEquals(getUsage(subscriptionId1, "bullets", today, today.plusMonths(1)), (Long) 15L);
+        assertEquals(getUsage(subscriptionId2, "bullets", today, today.plusMonths(1)), (Long) 3L);
+    }
+
+    @Test(groups = "slow", description = "Can record usage in bulk, as newline delimited JSON")
+    public void testRecordUsagesInBulkFromNDJson() throws Exception {
+        final UUID subscriptionId = createSubscription();
+        final LocalDate today = new LocalDate(2013, 1, 1);
+
+        final StringBuilder body = new StringBuilder();
+        body.append(mapper.writeValueAsString(createUsageRecord(subscriptionId, "bullets", today, 10L))).append('\n');
+        // Blank lines are ignored
+        body.append('\n');
+        body.append(mapper.writeValueAsString(createUsageRecord(subscriptionId, "shells", today, 7L))).append('\n');
+        final HttpURLConnection connection = doPost(JaxrsResource.USAGES_PATH + "/" + JaxrsResource.BULK, APPLICATION_NDJSON, body.toString());
+        assertEquals(connection.getResponseCode(), 201);
+
+        final List<SubscriptionUsageRecordJson> recordedUsages = readRecordedUsages(connection);
+        assertEquals(recordedUsages.size(), 1);
+        assertEquals(recordedUsages.get(0).getUnitUsageRecords().size(), 2);
+
+        assertEquals(getUsage(subscriptionId, "bullets", today, today.plusMonths(1)), (Long) 10L);
+        assertEquals(getUsage(subscriptionId, "shells", today, today.plusMonths(1)), (Long) 7L);
+    }
+
+    @Test(groups = "slow", description = "Nothing is recorded if one of the subscriptions doesn't exist")
+    public void testRecordUsagesInBulkWithUnknownSubscription() throws Exception {
+        final UUID subscriptionId = createSubscription();
+        final LocalDate today = new LocalDate(2013, 1, 1);
+
+        final List<SubscriptionUsageRecordJson> records = ImmutableList.<SubscriptionUsageRecordJson>of(createUsageRecord(subscriptionId, "bullets", today, 10L),
+                                                                                                          createUsageRecord(UUID.randomUUID(), "bullets", today, 3L));
+        final HttpURLConnection connection = doPost(JaxrsResource.USAGES_PATH + "/" + JaxrsResource.BULK, APPLICATION_JSON, mapper.writeValueAsString(records));
+        assertEquals(connection.getResponseCode() / 100, 4);
+
+        assertEquals(getUsage(subscriptionId, "bullets", today, today.plusMonths(1)), (Long) 0L);
+    }
+
+    private UUID createSubscription() throws Exception {
+        final Account accountJson = createAccount();
+        final Subscription subscriptionJson = createEntitlement(accountJson.getAccountId(), UUID.randomUUID().toString(), "Shotgun",
+                                                                ProductCategory.BASE, BillingPeriod.MONTHLY, true);
+        return subscriptionJson.getSubscriptionId();
+    }
+
+    private SubscriptionUsageRecordJson createUsageRecord(final UUID subscriptionId, final String unitType, final LocalDate date, final Long amount) {
+        final UnitUsageRecordJson unitUsageRecord = new UnitUsageRecordJson(unitType, ImmutableList.<UsageRecordJson>of(new UsageRecordJson(date, amount)));
+        return new SubscriptionUsageRecordJson(subscriptionId.toString(), ImmutableList.<UnitUsageRecordJson>of(unitUsageRecord));
+    }
+
+    private List<SubscriptionUsageRecordJson> readRecordedUsages(final HttpURLConnection connection) throws Exception {
+        final InputStream input = connection.getInputStream();
+        try {
+            return mapper.readValue(input, new TypeReference<List<SubscriptionUsageRecordJson>>() {});
+        } finally {
+            input.close();
+        }
+    }
+
+    private Long getUsage(final UUID subscriptionId, final String unitType, final LocalDate startDate, final LocalDate endDate) throws Exception {
+        final String uri = JaxrsResource.USAGES_PATH + "/" + subscriptionId + "/" + unitType +
+                           "?" + JaxrsResource.QUERY_START_DATE + "=" + startDate + "&" + JaxrsResource.QUERY_END_DATE + "=" + endDate;
+        final HttpURLConnection connection = openConnection("GET", uri);
+        assertEquals(connection.getResponseCode(), 200);
+
+        final InputStream input = connection.getInputStream();
+        final RolledUpUsageJson usage;
+        try {
+            usage = mapper.readValue(input, RolledUpUsageJson.class);
+        } finally {
+            input.close();
+        }
+
+        Long amount = 0L;
+        for (final RolledUpUsageJson.RolledUpUnitJson rolledUpUnit : usage.getRolledUpUnits()) {
+            if (unitType.equals(rolledUpUnit.getUnitType())) {
+                amount += rolledUpUnit.getAmount();
+            }
+        }
+        return amount;
+    }
+
+    // The client doesn't support the bulk endpoint (nor newline delimited JSON) yet
+    private HttpURLConnection doPost(final String uri, final String contentType, final String body) throws Exception {
+        final HttpURLConnection connection = openConnection("POST", uri);
+        connection.setDoOutput(true);
+        connection.setRequestProperty("Content-Type", contentType);
+        connection.setRequestProperty("Accept", APPLICATION_JSON);
+        connection.setRequestProperty(JaxrsResource.HDR_CREATED_BY, createdBy);
+        connection.setRequestProperty(JaxrsResource.HDR_REASON, reason);
+        connection.setRequestProperty(JaxrsResource.HDR_COMMENT, comment);
+
+        final OutputStream output = connection.getOutputStream();
+        try {
+            output.write(body.getBytes(Charsets.UTF_8));
+        } finally {
+            output.close();
+        }
+        return connection;
+    }
+
+    private HttpURLConnection openConnection(final String method, final String uri) throws Exception {
+        final HttpURLConnection connection = (HttpURLConnection) new URL(String.format("http://%s:%d%s", config.getServerHost(), config.getServerPort(), uri)).openConnection();
+        connection.setRequestMethod(method);
+        connection.setRequestProperty("Authorization", "Basic " + BaseEncoding.base64().encode((USERNAME + ":" + PASSWORD).getBytes(Charsets.UTF_8)));
+        connection.setRequestProperty(JaxrsResource.HDR_API_KEY, DEFAULT_API_KEY);
+        connection.setRequestProperty(JaxrsResource.HDR_API_SECRET, DEFAULT_API_SECRET);
+        return connection;
+    }
+}
@@ -24,6 +24,7 @@ import java.util.List;
 import java.util.UUID;
 
 import org.joda.time.DateTime;
+import org.killbill.billing.callcontext.InternalCallContext;
 
 import org.killbill.billing.catalog.api.CatalogService;
 import org.killbill.billing.catalog.api.ProductCategory;
@@ -76,11 +77,12 @@ public class DefaultSubscriptionBaseMigrationApi extends SubscriptionApiBase imp
     @Override
     public void migrate(final AccountMigration toBeMigrated, final CallContext context)
             throws SubscriptionBaseMigrationApiException {
-        final AccountMigrationData accountMigrationData = createAccountMigrationData(toBeMigrated, context);
-        dao.migrate(toBeMigrated.getAccountKey(), accountMigrationData, internalCallContextFactory.createInternalCallContext(toBeMigrated.getAccountKey(), context));
+        final InternalCallContext internalCallContext = internalCallContextFactory.createInternalCallContext(toBeMigrated.getAccountKey(), context);
+        final AccountMigrationData accountMigrationData = createAccountMigrationData(toBeMigrated, internalCallContext);
+        dao.migrate(toBeMigrated.getAccountKey(), accountMigrationData, internalCallContext);
     }
 
-    private AccountMigrationData createAccountMigrationData(final AccountMigration toBeMigrated, final CallContext context)
+    private AccountMigrationData createAccountMigrationData(final AccountMigration toBeMigrated, final InternalCallContext context)
             throws SubscriptionBaseMigrationApiException {
         final UUID accountId = toBeMigrated.getAccountKey();
         final DateTime now = clock.getUTCNow();
@@ -134,9 +136,9 @@ public class DefaultSubscriptionBaseMigrationApi extends SubscriptionApiBase imp
     }
 
     private SubscriptionMigrationData createInitialSubscription(final UUID bundleId, final ProductCategory productCategory,
-                                                                final SubscriptionMigrationCase[] input, final DateTime now, final DateTime ctd, final CallContext context)
+                                                                final SubscriptionMigrationCase[] input, final DateTime now, final DateTime ctd, final InternalCallContext context)
             throws SubscriptionBaseMigrationApiException {
-        final TimedMigration[] events = migrationAligner.getEventsMigration(input, now);
+        final TimedMigration[] events = migrationAligner.getEventsMigration(input, now, context);
         final DateTime migrationStartDate = events[0].getEventTime();
         final List<SubscriptionBaseEvent> emptyEvents = Collections.emptyList();
         final DefaultSubscriptionBase defaultSubscriptionBase = createSubscriptionForApiUse(new SubscriptionBuilder()
@@ -145,14 +147,15 @@ public class DefaultSubscriptionBaseMigrationApi extends SubscriptionApiBase imp
                                                                                       .setCategory(productCategory)
                                                                                       .setBundleStartDate(migrationStartDate)
                                                                                       .setAlignStartDate(migrationStartDate),
-                                                                              emptyEvents);
+                                                                              emptyEvents,
+                                                                              context);
         return new SubscriptionMigrationData(defaultSubscriptionBase, toEvents(defaultSubscriptionBase, now, ctd, events, context), ctd);
     }
 
     private SubscriptionMigrationData createSubscriptionMigrationDataWithBundleDate(final UUID bundleId, final ProductCategory productCategory,
-                                                                                    final SubscriptionMigrationCase[] input, final DateTime now, final DateTime bundleStartDate, final DateTime ctd, final CallContext context)
+                                                                                    final SubscriptionMigrationCase[] input, final DateTime now, final DateTime bundleStartDate, final DateTime ctd, final InternalCallContext context)
             throws SubscriptionBaseMigrationApiException {
-        final TimedMigration[] events = migrationAligner.getEventsMigration(input, now);
+        final TimedMigration[] events = migrationAligner.getEventsMigration(input, now, context);
         final DateTime migrationStartDate = events[0].getEventTime();
         final List<SubscriptionBaseEvent> emptyEvents = Collections.emptyList();
         final DefaultSubscriptionBase defaultSubscriptionBase = createSubscriptionForApiUse(new SubscriptionBuilder()
@@ -161,11 +164,12 @@ public class DefaultSubscriptionBaseMigrationApi extends SubscriptionApiBase imp
                                                                                       .setCategory(productCategory)
                                                                                       .setBundleStartDate(bundleStartDate)
                                                                                       .setAlignStartDate(migrationStartDate),
-                                                                              emptyEvents);
+                                                                              emptyEvents,
+                                                                              context);
         return new SubscriptionMigrationData(defaultSubscriptionBase, toEvents(defaultSubscriptionBase, now, ctd, events, context), ctd);
     }
 
-    private List<SubscriptionBaseEvent> toEvents(final DefaultSubscriptionBase defaultSubscriptionBase, final DateTime now, final DateTime ctd, final TimedMigration[] migrationEvents, final CallContext context) {
+    private List<SubscriptionBaseEvent> toEvents(final DefaultSubscriptionBase defaultSubscriptionBase, final DateTime now, final DateTime ctd, final TimedMigration[] migrationEvents, final InternalCallContext context) {
 
 
         if (ctd == null) {
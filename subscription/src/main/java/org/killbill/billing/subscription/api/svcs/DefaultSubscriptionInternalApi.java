@@ -32,6 +32,7 @@ import org.slf4j.LoggerFactory;
 
 import org.killbill.billing.ErrorCode;
 import org.killbill.billing.ObjectType;
+import org.killbill.billing.callcontext.AccountContextSnapshot;
 import org.killbill.billing.callcontext.InternalCallContext;
 import org.killbill.billing.callcontext.InternalTenantContext;
 import org.killbill.billing.catalog.api.Catalog;
@@ -48,6 +49,7 @@ import org.killbill.billing.entitlement.api.Entitlement.EntitlementState;
 import org.killbill.billing.entitlement.api.EntitlementAOStatusDryRun;
 import org.killbill.billing.entitlement.api.EntitlementAOStatusDryRun.DryRunChangeReason;
 import org.killbill.billing.events.EffectiveSubscriptionInternalEvent;
+import org.killbill.billing.subscription.api.AccountSubscriptions;
 import org.killbill.billing.subscription.api.SubscriptionApiBase;
 import org.killbill.billing.subscription.api.SubscriptionBase;
 import org.killbill.billing.subscription.api.SubscriptionBaseInternalApi;
@@ -109,7 +111,7 @@ public class DefaultSubscriptionInternalApi extends SubscriptionApiBase implemen
             }
             final DateTime effectiveDate = requestedDate;
 
-            final Catalog catalog = catalogService.getFullCatalog();
+            final Catalog catalog = catalogService.getFullCatalog(context);
             final Plan plan = catalog.findPlan(spec.getProductName(), spec.getBillingPeriod(), realPriceList, requestedDate);
 
             final PlanPhase phase = plan.getAllPhases()[0];
@@ -187,6 +189,10 @@ public class DefaultSubscriptionInternalApi extends SubscriptionApiBase implemen
 
     @Override
     public List<SubscriptionBaseBundle> getBundlesForAccount(final UUID accountId, final InternalTenantContext context) {
+        final AccountContextSnapshot snapshot = context.getAccountContextSnapshot();
+        if (snapshot != null && snapshot.getBundles() != null && snapshot.isForAccount(accountId)) {
+            return snapshot.getBundles();
+        }
         return dao.getSubscriptionBundleForAccount(accountId, context);
     }
 
@@ -270,6 +276,28 @@ public class DefaultSubscriptionInternalApi extends SubscriptionApiBase implemen
         return result;
     }
 
+    @Override
+    public AccountSubscriptions getAccountSubscriptions(final InternalTenantContext context) {
+        // The snapshot, if any, is for the account of the context: only the subscriptions need to be retrieved
+        final AccountContextSnapshot snapshot = context.getAccountContextSnapshot();
+        final List<SubscriptionBaseBundle> bundles;
+        final Map<UUID, List<SubscriptionBase>> internalSubscriptions;
+        if (snapshot != null && snapshot.getBundles() != null) {
+            bundles = snapshot.getBundles();
+            internalSubscriptions = dao.getSubscriptionsForAccount(context);
+        } else {
+            final AccountSubscriptions internalAccountSubscriptions = dao.getAccountSubscriptions(context);
+            bundles = internalAccountSubscriptions.getBundles();
+            internalSubscriptions = internalAccountSubscriptions.getSubscriptions();
+        }
+
+        final Map<UUID, List<SubscriptionBase>> subscriptions = new HashMap<UUID, List<SubscriptionBase>>();
+        for (final UUID bundleId : internalSubscriptions.keySet()) {
+            subscriptions.put(bundleId, createSubscriptionsForApiUse(internalSubscriptions.get(bundleId)));
+        }
+        return new AccountSubscriptions(bundles, subscriptions);
+    }
+
     @Override
     public SubscriptionBase getBaseSubscription(UUID bundleId,
                                                 InternalTenantContext context) throws SubscriptionBaseApiException {
@@ -369,9 +397,9 @@ public class DefaultSubscriptionInternalApi extends SubscriptionApiBase implemen
 
             final DryRunChangeReason reason;
             // If baseProductName is null, it's a cancellation dry-run. In this case, return all addons, so they are cancelled
-            if (baseProductName != null && addonUtils.isAddonIncludedFromProdName(baseProductName, requestedDate, cur.getCurrentPlan())) {
+            if (baseProductName != null && addonUtils.isAddonIncludedFromProdName(baseProductName, requestedDate, cur.getCurrentPlan(), context)) {
                 reason = DryRunChangeReason.AO_INCLUDED_IN_NEW_PLAN;
-            } else if (baseProductName != null && addonUtils.isAddonAvailableFromProdName(baseProductName, requestedDate, cur.getCurrentPlan())) {
+            } else if (baseProductName != null && addonUtils.isAddonAvailableFromProdName(baseProductName, requestedDate, cur.getCurrentPlan(), context)) {
                 reason = DryRunChangeReason.AO_AVAILABLE_IN_NEW_PLAN;
             } else {
                 reason = DryRunChangeReason.AO_NOT_AVAILABLE_IN_NEW_PLAN;
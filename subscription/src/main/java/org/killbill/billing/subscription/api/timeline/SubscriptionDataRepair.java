@@ -24,6 +24,7 @@ import org.joda.time.DateTime;
 
 import org.killbill.billing.ErrorCode;
 import org.killbill.billing.ObjectType;
+import org.killbill.billing.callcontext.InternalTenantContext;
 import org.killbill.billing.catalog.api.CatalogApiException;
 import org.killbill.billing.catalog.api.CatalogService;
 import org.killbill.billing.catalog.api.Plan;
@@ -184,7 +185,8 @@ public class SubscriptionDataRepair extends DefaultSubscriptionBase {
                                                                                 .setRequestedDate(now)
                                                                                 .setFromDisk(true));
                 repairDao.cancelSubscription(cur, cancelEvent, internalCallContextFactory.createInternalCallContext(cur.getId(), ObjectType.SUBSCRIPTION, context), 0);
-                cur.rebuildTransitions(repairDao.getEventsForSubscription(cur.getId(), internalCallContextFactory.createInternalTenantContext(context)), catalogService.getFullCatalog());
+                final InternalTenantContext internalTenantContext = internalCallContextFactory.createInternalTenantContext(context);
+                cur.rebuildTransitions(repairDao.getEventsForSubscription(cur.getId(), internalTenantContext), catalogService.getFullCatalog(internalTenantContext));
             }
         }
     }
@@ -530,6 +530,12 @@ public class DefaultSubscriptionBase extends EntityBase implements SubscriptionB
                 "Failed to find CurrentPhaseStart id = %s", getId().toString()));
     }
 
+    // Same as rebuildTransitions, when the transitions for these events have already been computed (see DefaultSubscriptionDao)
+    public void setTransitions(final List<SubscriptionBaseEvent> inputEvents, final List<SubscriptionBaseTransition> transitions) {
+        this.events = inputEvents;
+        this.transitions = new LinkedList<SubscriptionBaseTransition>(transitions);
+    }
+
     public void rebuildTransitions(final List<SubscriptionBaseEvent> inputEvents, final Catalog catalog) {
 
         if (inputEvents == null) {
@@ -0,0 +1,66 @@
+/*
+ * Copyright 2014 The Billing Project, LLC
+ *
+ * The Billing Project licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package org.killbill.billing.subscription.engine.dao;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.killbill.billing.catalog.api.Catalog;
+import org.killbill.billing.subscription.api.user.SubscriptionBaseTransition;
+
+/**
+ * Transitions of a subscription, as computed from its events by DefaultSubscriptionBase#rebuildTransitions.
+ * <p/>
+ * Entries are versioned by the record id and active version of each event (so that inserted, deactivated and reactivated
+ * events are all detected), the active version of the subscription and the catalog instance they were computed with (a
+ * new instance is loaded when a tenant uploads a catalog). The transitions themselves are immutable and can be shared
+ * across subscription objects.
+ */
+public class CachedSubscriptionTransitions {
+
+    private final long[] eventVersions;
+    private final long activeVersion;
+    // The transitions already reference plans and phases of that catalog
+    private final Catalog catalog;
+    private final List<SubscriptionBaseTransition> transitions;
+
+    public CachedSubscriptionTransitions(final long[] eventVersions, final long activeVersion, final Catalog catalog, final List<SubscriptionBaseTransition> transitions) {
+        this.eventVersions = eventVersions.clone();
+        this.activeVersion = activeVersion;
+        this.catalog = catalog;
+        this.transitions = Collections.unmodifiableList(new ArrayList<SubscriptionBaseTransition>(transitions));
+    }
+
+    public boolean isVersion(final long[] eventVersions, final long activeVersion, final Catalog catalog) {
+        return this.activeVersion == activeVersion && this.catalog == catalog && Arrays.equals(this.eventVersions, eventVersions);
+    }
+
+    public List<SubscriptionBaseTransition> getTransitions() {
+        return transitions;
+    }
+
+    @Override
+    public String toString() {
+        final StringBuilder sb = new StringBuilder("CachedSubscriptionTransitions{");
+        sb.append("events=").append(eventVersions.length / 2);
+        sb.append(", activeVersion=").append(activeVersion);
+        sb.append(", transitions=").append(transitions.size());
+        sb.append('}');
+        return sb.toString();
+    }
+}
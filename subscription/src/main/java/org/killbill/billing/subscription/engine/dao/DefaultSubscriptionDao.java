@@ -38,10 +38,12 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import org.killbill.billing.ErrorCode;
+import org.killbill.billing.ObjectType;
 import org.killbill.bus.api.PersistentBus;
 import org.killbill.bus.api.PersistentBus.EventBusException;
 import org.killbill.billing.callcontext.InternalCallContext;
 import org.killbill.billing.callcontext.InternalTenantContext;
+import org.killbill.billing.catalog.api.Catalog;
 import org.killbill.billing.catalog.api.CatalogService;
 import org.killbill.billing.catalog.api.Plan;
 import org.killbill.billing.catalog.api.ProductCategory;
@@ -54,6 +56,7 @@ import org.killbill.notificationq.api.NotificationEvent;
 import org.killbill.notificationq.api.NotificationQueue;
 import org.killbill.notificationq.api.NotificationQueueService;
 import org.killbill.notificationq.api.NotificationQueueService.NoSuchNotificationQueue;
+import org.killbill.billing.subscription.api.AccountSubscriptions;
 import org.killbill.billing.subscription.api.SubscriptionBase;
 import org.killbill.billing.subscription.api.migration.AccountMigrationData;
 import org.killbill.billing.subscription.api.migration.AccountMigrationData.BundleMigrationData;
@@ -84,7 +87,11 @@ import org.killbill.billing.subscription.events.user.ApiEventChange;
 import org.killbill.billing.subscription.events.user.ApiEventMigrateBilling;
 import org.killbill.billing.subscription.events.user.ApiEventType;
 import org.killbill.billing.subscription.exceptions.SubscriptionBaseError;
+import org.killbill.billing.util.cache.Cachable.CacheType;
+import org.killbill.billing.util.cache.CacheController;
 import org.killbill.billing.util.cache.CacheControllerDispatcher;
+import org.killbill.billing.util.cache.CacheLoaderArgument;
+import org.killbill.billing.util.cache.SubscriptionTransitionsCacheLoader;
 import org.killbill.billing.util.dao.NonEntityDao;
 import org.killbill.billing.util.entity.Pagination;
 import org.killbill.billing.util.entity.dao.DefaultPaginationSqlDaoHelper.PaginationIteratorBuilder;
@@ -98,7 +105,6 @@ import com.google.common.base.Function;
 import com.google.common.base.Predicate;
 import com.google.common.collect.ArrayListMultimap;
 import com.google.common.collect.Collections2;
-import com.google.common.collect.ImmutableList;
 import com.google.common.collect.Iterables;
 import com.google.common.collect.Multimap;
 
@@ -111,6 +117,7 @@ public class DefaultSubscriptionDao extends EntityDaoBase<SubscriptionBundleMode
     private final AddonUtils addonUtils;
     private final PersistentBus eventBus;
     private final CatalogService catalogService;
+    private final CacheControllerDispatcher cacheControllerDispatcher;
 
     @Inject
     public DefaultSubscriptionDao(final IDBI dbi, final Clock clock, final AddonUtils addonUtils,
@@ -122,6 +129,7 @@ public class DefaultSubscriptionDao extends EntityDaoBase<SubscriptionBundleMode
         this.addonUtils = addonUtils;
         this.eventBus = eventBus;
         this.catalogService = catalogService;
+        this.cacheControllerDispatcher = cacheControllerDispatcher;
     }
 
     @Override
@@ -326,58 +334,54 @@ public class DefaultSubscriptionDao extends EntityDaoBase<SubscriptionBundleMode
 
     @Override
     public Map<UUID, List<SubscriptionBase>> getSubscriptionsForAccount(final InternalTenantContext context) {
-        final Map<UUID, List<SubscriptionBase>> subscriptionsFromAccountId = getSubscriptionsFromAccountId(context);
-
-        final List<SubscriptionBaseEvent> eventsForAccount = getEventsForAccountId(context);
-
-        final Map<UUID, List<SubscriptionBase>> result = new HashMap<UUID, List<SubscriptionBase>>();
-        for (final UUID bundleId : subscriptionsFromAccountId.keySet()) {
-
-            final List<SubscriptionBase> subscriptionsForBundle = subscriptionsFromAccountId.get(bundleId);
-            final Collection<UUID> subscriptionIdsForBundle = Collections2.transform(subscriptionsForBundle, new Function<SubscriptionBase, UUID>() {
-                @Override
-                public UUID apply(final SubscriptionBase input) {
-                    return input.getId();
-                }
-            });
-            final Multimap<UUID, SubscriptionBaseEvent> eventsForSubscriptions = ArrayListMultimap.create();
-
-            for (final SubscriptionBase cur : subscriptionsForBundle) {
-                final Collection<SubscriptionBaseEvent> events = Collections2.filter(eventsForAccount, new Predicate<SubscriptionBaseEvent>() {
-                    @Override
-                    public boolean apply(final SubscriptionBaseEvent input) {
-                        return input.getSubscriptionId().equals(cur.getId());
-
-                    }
-                });
-                eventsForSubscriptions.putAll(cur.getId(), ImmutableList.copyOf(events));
+        return transactionalSqlDao.execute(new EntitySqlDaoTransactionWrapper<Map<UUID, List<SubscriptionBase>>>() {
+            @Override
+            public Map<UUID, List<SubscriptionBase>> inTransaction(final EntitySqlDaoWrapperFactory<EntitySqlDao> entitySqlDaoWrapperFactory) throws Exception {
+                final List<SubscriptionModelDao> subscriptionModels = entitySqlDaoWrapperFactory.become(SubscriptionSqlDao.class).getByAccountRecordId(context);
+                final List<SubscriptionEventModelDao> eventModels = entitySqlDaoWrapperFactory.become(SubscriptionEventSqlDao.class).getByAccountRecordId(context);
+                return buildSubscriptionsForAccount(subscriptionModels, eventModels, context);
             }
-
-            result.put(bundleId, buildBundleSubscriptions(subscriptionsForBundle, eventsForSubscriptions, context));
-        }
-        return result;
+        });
     }
 
-    private Map<UUID, List<SubscriptionBase>> getSubscriptionsFromAccountId(final InternalTenantContext context) {
-        final List<SubscriptionBase> allSubscriptions = transactionalSqlDao.execute(new EntitySqlDaoTransactionWrapper<List<SubscriptionBase>>() {
+    @Override
+    public AccountSubscriptions getAccountSubscriptions(final InternalTenantContext context) {
+        return transactionalSqlDao.execute(new EntitySqlDaoTransactionWrapper<AccountSubscriptions>() {
             @Override
-            public List<SubscriptionBase> inTransaction(final EntitySqlDaoWrapperFactory<EntitySqlDao> entitySqlDaoWrapperFactory) throws Exception {
-                final List<SubscriptionModelDao> models = entitySqlDaoWrapperFactory.become(SubscriptionSqlDao.class).getByAccountRecordId(context);
-                return new ArrayList<SubscriptionBase>(Collections2.transform(models, new Function<SubscriptionModelDao, SubscriptionBase>() {
-                    @Override
-                    public SubscriptionBase apply(final SubscriptionModelDao input) {
-                        return SubscriptionModelDao.toSubscription(input);
-                    }
-                }));
+            public AccountSubscriptions inTransaction(final EntitySqlDaoWrapperFactory<EntitySqlDao> entitySqlDaoWrapperFactory) throws Exception {
+                final List<SubscriptionBundleModelDao> bundleModels = entitySqlDaoWrapperFactory.become(BundleSqlDao.class).getByAccountRecordId(context);
+                final List<SubscriptionModelDao> subscriptionModels = entitySqlDaoWrapperFactory.become(SubscriptionSqlDao.class).getByAccountRecordId(context);
+                final List<SubscriptionEventModelDao> eventModels = entitySqlDaoWrapperFactory.become(SubscriptionEventSqlDao.class).getByAccountRecordId(context);
+
+                final List<SubscriptionBaseBundle> bundles = new ArrayList<SubscriptionBaseBundle>(bundleModels.size());
+                for (final SubscriptionBundleModelDao bundleModel : bundleModels) {
+                    bundles.add(SubscriptionBundleModelDao.toSubscriptionbundle(bundleModel));
+                }
+                return new AccountSubscriptions(bundles, buildSubscriptionsForAccount(subscriptionModels, eventModels, context));
             }
         });
+    }
 
-        final Map<UUID, List<SubscriptionBase>> result = new HashMap<UUID, List<SubscriptionBase>>();
-        for (final SubscriptionBase subscriptionBase : allSubscriptions) {
-            if (result.get(subscriptionBase.getBundleId()) == null) {
-                result.put(subscriptionBase.getBundleId(), new LinkedList<SubscriptionBase>());
+    // Stitch together the (active) subscriptions and events of an account, already fetched: no other query is issued
+    private Map<UUID, List<SubscriptionBase>> buildSubscriptionsForAccount(final List<SubscriptionModelDao> subscriptionModels, final List<SubscriptionEventModelDao> eventModels, final InternalTenantContext context) {
+        final Map<UUID, List<SubscriptionBase>> subscriptionsPerBundle = new HashMap<UUID, List<SubscriptionBase>>();
+        for (final SubscriptionModelDao subscriptionModel : subscriptionModels) {
+            final SubscriptionBase subscription = SubscriptionModelDao.toSubscription(subscriptionModel);
+            if (subscriptionsPerBundle.get(subscription.getBundleId()) == null) {
+                subscriptionsPerBundle.put(subscription.getBundleId(), new LinkedList<SubscriptionBase>());
             }
-            result.get(subscriptionBase.getBundleId()).add(subscriptionBase);
+            subscriptionsPerBundle.get(subscription.getBundleId()).add(subscription);
+        }
+
+        // Group the events of the account by subscription in a single pass (the order of the events is preserved)
+        final Multimap<UUID, SubscriptionBaseEvent> eventsForSubscriptions = ArrayListMultimap.create();
+        for (final SubscriptionBaseEvent event : filterSubscriptionBaseEvents(eventModels)) {
+            eventsForSubscriptions.put(event.getSubscriptionId(), event);
+        }
+
+        final Map<UUID, List<SubscriptionBase>> result = new HashMap<UUID, List<SubscriptionBase>>();
+        for (final UUID bundleId : subscriptionsPerBundle.keySet()) {
+            result.put(bundleId, buildBundleSubscriptions(subscriptionsPerBundle.get(bundleId), eventsForSubscriptions, context));
         }
         return result;
     }
@@ -419,6 +423,7 @@ public class DefaultSubscriptionDao extends EntityDaoBase<SubscriptionBundleMode
                 return null;
             }
         });
+        invalidateTransitionsCache(subscription.getId());
     }
 
     @Override
@@ -536,6 +541,7 @@ public class DefaultSubscriptionDao extends EntityDaoBase<SubscriptionBundleMode
                 return null;
             }
         });
+        invalidateTransitionsCache(subscription.getId());
     }
 
     @Override
@@ -552,6 +558,9 @@ public class DefaultSubscriptionDao extends EntityDaoBase<SubscriptionBundleMode
                 return null;
             }
         });
+        for (final DefaultSubscriptionBase subscription : subscriptions) {
+            invalidateTransitionsCache(subscription.getId());
+        }
     }
 
     @Override
@@ -563,6 +572,7 @@ public class DefaultSubscriptionDao extends EntityDaoBase<SubscriptionBundleMode
                 return null;
             }
         });
+        invalidateTransitionsCache(subscription.getId());
     }
 
     @Override
@@ -604,6 +614,7 @@ public class DefaultSubscriptionDao extends EntityDaoBase<SubscriptionBundleMode
                 return null;
             }
         });
+        invalidateTransitionsCache(subscription.getId());
     }
 
     @Override
@@ -637,6 +648,7 @@ public class DefaultSubscriptionDao extends EntityDaoBase<SubscriptionBundleMode
                 return null;
             }
         });
+        invalidateTransitionsCache(subscription.getId());
     }
 
     //
@@ -743,16 +755,6 @@ public class DefaultSubscriptionDao extends EntityDaoBase<SubscriptionBundleMode
         }));
     }
 
-    private List<SubscriptionBaseEvent> getEventsForAccountId(final InternalTenantContext context) {
-        return transactionalSqlDao.execute(new EntitySqlDaoTransactionWrapper<List<SubscriptionBaseEvent>>() {
-            @Override
-            public List<SubscriptionBaseEvent> inTransaction(final EntitySqlDaoWrapperFactory<EntitySqlDao> entitySqlDaoWrapperFactory) throws Exception {
-                final List<SubscriptionEventModelDao> models = entitySqlDaoWrapperFactory.become(SubscriptionEventSqlDao.class).getByAccountRecordId(context);
-                return filterSubscriptionBaseEvents(models);
-            }
-        });
-    }
-
     private void cancelSubscriptionFromTransaction(final DefaultSubscriptionBase subscription, final SubscriptionBaseEvent cancelEvent, final EntitySqlDaoWrapperFactory<EntitySqlDao> entitySqlDaoWrapperFactory, final InternalCallContext context, final int seqId)
             throws EntityPersistenceException {
         final UUID subscriptionId = subscription.getId();
@@ -867,7 +869,7 @@ public class DefaultSubscriptionDao extends EntityDaoBase<SubscriptionBundleMode
                                                        (List<SubscriptionBaseEvent>) eventsForSubscription.get(cur.getId()) :
                                                        getEventsForSubscription(cur.getId(), context);
 
-            SubscriptionBase reloaded = createSubscriptionForInternalUse(cur, events);
+            SubscriptionBase reloaded = createSubscriptionForInternalUse(cur, events, context);
 
             switch (cur.getCategory()) {
                 case BASE:
@@ -888,8 +890,8 @@ public class DefaultSubscriptionDao extends EntityDaoBase<SubscriptionBundleMode
 
                     final boolean createCancelEvent = (futureBaseEvent != null && targetAddOnPlan != null) &&
                                                       ((futureBaseEvent instanceof ApiEventCancel) ||
-                                                       ((!addonUtils.isAddonAvailableFromPlanName(baseProductName, futureBaseEvent.getEffectiveDate(), targetAddOnPlan)) ||
-                                                        (addonUtils.isAddonIncludedFromPlanName(baseProductName, futureBaseEvent.getEffectiveDate(), targetAddOnPlan))));
+                                                       ((!addonUtils.isAddonAvailableFromPlanName(baseProductName, futureBaseEvent.getEffectiveDate(), targetAddOnPlan, context)) ||
+                                                        (addonUtils.isAddonIncludedFromPlanName(baseProductName, futureBaseEvent.getEffectiveDate(), targetAddOnPlan, context))));
 
                     if (createCancelEvent && reloaded.getFutureEndDate() == null) {
                         final DateTime now = clock.getUTCNow();
@@ -906,7 +908,7 @@ public class DefaultSubscriptionDao extends EntityDaoBase<SubscriptionBundleMode
 
                         events.add(addOnCancelEvent);
                         // Finally reload subscription with full set of events
-                        reloaded = createSubscriptionForInternalUse(cur, events);
+                        reloaded = createSubscriptionForInternalUse(cur, events, context);
                     }
                     break;
                 default:
@@ -970,6 +972,9 @@ public class DefaultSubscriptionDao extends EntityDaoBase<SubscriptionBundleMode
                 return null;
             }
         });
+        for (final SubscriptionDataRepair cur : inRepair) {
+            invalidateTransitionsCache(cur.getId());
+        }
     }
 
     @Override
@@ -990,6 +995,9 @@ public class DefaultSubscriptionDao extends EntityDaoBase<SubscriptionBundleMode
                 return null;
             }
         });
+        for (final TransferCancelData cancel : transferCancelData) {
+            invalidateTransitionsCache(cancel.getSubscription().getId());
+        }
     }
 
     @Override
@@ -1005,14 +1013,67 @@ public class DefaultSubscriptionDao extends EntityDaoBase<SubscriptionBundleMode
         });
     }
 
-    private DefaultSubscriptionBase createSubscriptionForInternalUse(final SubscriptionBase shellSubscription, final List<SubscriptionBaseEvent> events) {
+    private DefaultSubscriptionBase createSubscriptionForInternalUse(final SubscriptionBase shellSubscription, final List<SubscriptionBaseEvent> events, final InternalTenantContext context) {
         final DefaultSubscriptionBase result = new DefaultSubscriptionBase(new SubscriptionBuilder(((DefaultSubscriptionBase) shellSubscription)), null, clock);
         if (events.size() > 0) {
-            result.rebuildTransitions(events, catalogService.getFullCatalog());
+            rebuildTransitions(result, events, context);
         }
         return result;
     }
 
+    // Transitions depend on the events, the active version of the subscription and the catalog: reuse the ones already computed
+    // from the same inputs. Entries computed from other inputs (e.g. before an event was inserted or deactivated on another node,
+    // or before a tenant catalog upload) are recomputed, but a node may serve transitions computed from events it read before a
+    // concurrent write until it reads them again
+    private void rebuildTransitions(final DefaultSubscriptionBase subscription, final List<SubscriptionBaseEvent> events, final InternalTenantContext context) {
+        final CacheController<Object, Object> cache = cacheControllerDispatcher.getCacheController(CacheType.SUBSCRIPTION_TRANSITIONS);
+        final Catalog catalog = catalogService.getFullCatalog(context);
+        final long[] eventVersions = getEventVersions(events);
+        if (cache == null || eventVersions == null) {
+            subscription.rebuildTransitions(events, catalog);
+            return;
+        }
+
+        final CacheLoaderArgument cacheLoaderArgument = new CacheLoaderArgument(ObjectType.SUBSCRIPTION,
+                                                                                new Object[]{new SubscriptionTransitionsCacheLoader.LoaderCallback() {
+                                                                                    @Override
+                                                                                    public Object loadTransitions(final UUID subscriptionId, final InternalTenantContext context) {
+                                                                                        subscription.rebuildTransitions(events, catalog);
+                                                                                        return new CachedSubscriptionTransitions(eventVersions, subscription.getActiveVersion(), catalog, subscription.getAllTransitions());
+                                                                                    }
+                                                                                }},
+                                                                                context);
+        CachedSubscriptionTransitions transitions = (CachedSubscriptionTransitions) cache.get(subscription.getId(), cacheLoaderArgument);
+        if (transitions == null || !transitions.isVersion(eventVersions, subscription.getActiveVersion(), catalog)) {
+            cache.remove(subscription.getId());
+            transitions = (CachedSubscriptionTransitions) cache.get(subscription.getId(), cacheLoaderArgument);
+        }
+        subscription.setTransitions(events, transitions.getTransitions());
+    }
+
+    // Record id and active version of each event, or null if some of them are not on disk (record id not set)
+    private long[] getEventVersions(final List<SubscriptionBaseEvent> events) {
+        final long[] eventVersions = new long[2 * events.size()];
+        int i = 0;
+        for (final SubscriptionBaseEvent event : events) {
+            if (event.getTotalOrdering() <= 0) {
+                return null;
+            }
+            eventVersions[i++] = event.getTotalOrdering();
+            eventVersions[i++] = event.getActiveVersion();
+        }
+        return eventVersions;
+    }
+
+    // Called once the transaction has been committed: the cache controller drops transitions computed concurrently from the
+    // previous events, but other nodes keep theirs until the TTL expires or their versions stop matching (see rebuildTransitions)
+    private void invalidateTransitionsCache(final UUID subscriptionId) {
+        final CacheController<Object, Object> cache = cacheControllerDispatcher.getCacheController(CacheType.SUBSCRIPTION_TRANSITIONS);
+        if (cache != null) {
+            cache.remove(subscriptionId);
+        }
+    }
+
     private SubscriptionBase getBaseSubscription(final UUID bundleId, final boolean rebuildSubscription, final InternalTenantContext context) {
         final List<SubscriptionBase> subscriptions = getSubscriptionFromBundleId(bundleId, context);
         for (final SubscriptionBase cur : subscriptions) {
@@ -1046,7 +1107,7 @@ public class DefaultSubscriptionDao extends EntityDaoBase<SubscriptionBundleMode
     private void notifyBusOfEffectiveImmediateChange(final EntitySqlDaoWrapperFactory<EntitySqlDao> entitySqlDaoWrapperFactory, final DefaultSubscriptionBase subscription,
                                                      final SubscriptionBaseEvent immediateEvent, final int seqId, final InternalCallContext context) {
         try {
-            final DefaultSubscriptionBase upToDateSubscription = createSubscriptionWithNewEvent(subscription, immediateEvent);
+            final DefaultSubscriptionBase upToDateSubscription = createSubscriptionWithNewEvent(subscription, immediateEvent, context);
 
             final SubscriptionBaseTransitionData transition = upToDateSubscription.getTransitionFromEvent(immediateEvent, seqId);
             final EffectiveSubscriptionInternalEvent busEvent = new DefaultEffectiveSubscriptionEvent(transition, upToDateSubscription.getAlignStartDate(),
@@ -1117,7 +1178,7 @@ public class DefaultSubscriptionDao extends EntityDaoBase<SubscriptionBundleMode
     //
     // Creates a copy of the existing subscriptions whose 'transitions' will reflect the new event
     //
-    private DefaultSubscriptionBase createSubscriptionWithNewEvent(final DefaultSubscriptionBase subscription, SubscriptionBaseEvent newEvent) {
+    private DefaultSubscriptionBase createSubscriptionWithNewEvent(final DefaultSubscriptionBase subscription, SubscriptionBaseEvent newEvent, final InternalTenantContext context) {
 
         final DefaultSubscriptionBase subscriptionWithNewEvent = new DefaultSubscriptionBase(subscription, null, clock);
         final List<SubscriptionBaseEvent> allEvents = new LinkedList<SubscriptionBaseEvent>();
@@ -1125,7 +1186,7 @@ public class DefaultSubscriptionDao extends EntityDaoBase<SubscriptionBundleMode
             allEvents.addAll(subscriptionWithNewEvent.getEvents());
         }
         allEvents.add(newEvent);
-        subscriptionWithNewEvent.rebuildTransitions(allEvents, catalogService.getFullCatalog());
+        subscriptionWithNewEvent.rebuildTransitions(allEvents, catalogService.getFullCatalog(context));
         return subscriptionWithNewEvent;
     }
 
@@ -31,8 +31,11 @@ import org.killbill.billing.catalog.api.PriceListSet;
 import org.killbill.billing.catalog.api.ProductCategory;
 import org.killbill.billing.subscription.SubscriptionTestSuiteWithEmbeddedDB;
 import org.killbill.billing.subscription.api.SubscriptionBillingApiException;
+import org.killbill.billing.util.cache.Cachable.CacheType;
+import org.killbill.billing.util.cache.CacheController;
 
 import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNotNull;
 import static org.testng.Assert.assertNull;
 import static org.testng.Assert.assertTrue;
 
@@ -233,4 +236,41 @@ public class TestUserApiCancel extends SubscriptionTestSuiteWithEmbeddedDB {
 
         assertListenerStatus();
     }
+
+    @Test(groups = "slow")
+    public void testCachedTransitionsAfterCancelAndUncancel() throws SubscriptionBillingApiException, SubscriptionBaseApiException {
+        final CacheController<Object, Object> cache = cacheControllerDispatcher.getCacheController(CacheType.SUBSCRIPTION_TRANSITIONS);
+
+        // CREATE
+        DefaultSubscriptionBase subscription = testUtil.createSubscription(bundle, "Shotgun", BillingPeriod.MONTHLY, PriceListSet.DEFAULT_PRICELIST_NAME);
+        final DateTime expectedPhaseTrialChange = TestSubscriptionHelper.addDuration(subscription.getStartDate(), subscription.getCurrentPhase().getDuration());
+
+        // MOVE TO NEXT PHASE
+        testListener.pushExpectedEvent(NextEvent.PHASE);
+        final Interval it = new Interval(clock.getUTCNow(), clock.getUTCNow().plusDays(31));
+        clock.addDeltaFromReality(it.toDurationMillis());
+        assertListenerStatus();
+
+        // SET CTD + RE READ SUBSCRIPTION
+        final DateTime newChargedThroughDate = TestSubscriptionHelper.addDuration(expectedPhaseTrialChange, testUtil.getDurationMonth(1));
+        subscriptionInternalApi.setChargedThroughDate(subscription.getId(), newChargedThroughDate, internalCallContext);
+        subscription = (DefaultSubscriptionBase) subscriptionInternalApi.getSubscriptionFromId(subscription.getId(), internalCallContext);
+
+        // Same events: the transitions are not rebuilt
+        final long hitCount = cache.getHitCount();
+        final DefaultSubscriptionBase reloaded = (DefaultSubscriptionBase) subscriptionInternalApi.getSubscriptionFromId(subscription.getId(), internalCallContext);
+        assertTrue(cache.getHitCount() > hitCount);
+        assertEquals(reloaded.getAllTransitions().size(), subscription.getAllTransitions().size());
+        assertEquals(reloaded.getCurrentPhase().getPhaseType(), PhaseType.EVERGREEN);
+
+        // CANCEL EOT
+        subscription.cancel(callContext);
+        assertNotNull(((DefaultSubscriptionBase) subscriptionInternalApi.getSubscriptionFromId(subscription.getId(), internalCallContext)).getFutureEndDate());
+
+        // UNCANCEL (the cancellation event is deactivated)
+        subscription.uncancel(callContext);
+        assertNull(((DefaultSubscriptionBase) subscriptionInternalApi.getSubscriptionFromId(subscription.getId(), internalCallContext)).getFutureEndDate());
+
+        assertListenerStatus();
+    }
 }
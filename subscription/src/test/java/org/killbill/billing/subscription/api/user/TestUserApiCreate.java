@@ -17,6 +17,7 @@
 package org.killbill.billing.subscription.api.user;
 
 import java.util.List;
+import java.util.UUID;
 
 import org.joda.time.DateTime;
 import org.joda.time.Interval;
@@ -33,6 +34,8 @@ import org.killbill.billing.catalog.api.PriceListSet;
 import org.killbill.billing.catalog.api.ProductCategory;
 import org.killbill.billing.subscription.DefaultSubscriptionTestInitializer;
 import org.killbill.billing.subscription.SubscriptionTestSuiteWithEmbeddedDB;
+import org.killbill.billing.subscription.api.AccountSubscriptions;
+import org.killbill.billing.subscription.api.SubscriptionBase;
 import org.killbill.billing.subscription.events.SubscriptionBaseEvent;
 import org.killbill.billing.subscription.events.phase.PhaseEvent;
 
@@ -78,6 +81,35 @@ public class TestUserApiCreate extends SubscriptionTestSuiteWithEmbeddedDB {
         assertNotNull(newSubscription);
     }
 
+    @Test(groups = "slow")
+    public void testGetAccountSubscriptions() throws SubscriptionBaseApiException {
+        final String productName = "Shotgun";
+        final BillingPeriod term = BillingPeriod.MONTHLY;
+        final String planSetName = PriceListSet.DEFAULT_PRICELIST_NAME;
+
+        testListener.pushExpectedEvents(NextEvent.CREATE, NextEvent.PHASE);
+        final SubscriptionBase subscription = subscriptionInternalApi.createSubscription(bundle.getId(),
+                                                                                         testUtil.getProductSpecifier(productName, planSetName, term, null), clock.getUTCNow().minusYears(1), internalCallContext);
+        assertListenerStatus();
+
+        // Second bundle, without any subscription
+        final SubscriptionBaseBundle emptyBundle = subscriptionInternalApi.createBundleForAccount(bundle.getAccountId(), UUID.randomUUID().toString(), internalCallContext);
+
+        final AccountSubscriptions accountSubscriptions = subscriptionInternalApi.getAccountSubscriptions(internalCallContext);
+        assertEquals(accountSubscriptions.getBundles().size(), 2);
+        assertEquals(accountSubscriptions.getBundles().get(0).getId(), bundle.getId());
+        assertEquals(accountSubscriptions.getBundles().get(1).getId(), emptyBundle.getId());
+        assertEquals(accountSubscriptions.getSubscriptions().size(), 1);
+        assertTrue(accountSubscriptions.getSubscriptionsForBundle(emptyBundle.getId()).isEmpty());
+
+        final List<SubscriptionBase> subscriptionsForBundle = accountSubscriptions.getSubscriptionsForBundle(bundle.getId());
+        assertEquals(subscriptionsForBundle.size(), 1);
+        assertEquals(subscriptionsForBundle.get(0).getId(), subscription.getId());
+        // Same view as the one built per subscription
+        assertEquals(subscriptionsForBundle.get(0).getCurrentPhase().getName(), subscription.getCurrentPhase().getName());
+        assertEquals(subscriptionsForBundle.get(0).getAllTransitions().size(), subscription.getAllTransitions().size());
+    }
+
     @Test(groups = "slow")
     public void testCreateWithRequestedDate() throws SubscriptionBaseApiException {
         final DateTime init = clock.getUTCNow();
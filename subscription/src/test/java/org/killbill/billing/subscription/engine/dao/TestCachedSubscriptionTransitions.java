@@ -0,0 +1,48 @@
+/*
+ * Copyright 2014 The Billing Project, LLC
+ *
+ * The Billing Project licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.killbill.billing.subscription.engine.dao;
+
+import org.mockito.Mockito;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import org.killbill.billing.catalog.api.Catalog;
+import org.killbill.billing.subscription.SubscriptionTestSuiteNoDB;
+import org.killbill.billing.subscription.api.user.SubscriptionBaseTransition;
+
+import com.google.common.collect.ImmutableList;
+
+public class TestCachedSubscriptionTransitions extends SubscriptionTestSuiteNoDB {
+
+    @Test(groups = "fast")
+    public void testIsVersion() throws Exception {
+        final Catalog catalog = Mockito.mock(Catalog.class);
+        // (record id, active version) of events 1, 2 and 3
+        final long[] eventVersions = new long[]{1L, 1L, 2L, 1L, 3L, 1L};
+        final CachedSubscriptionTransitions transitions = new CachedSubscriptionTransitions(eventVersions, 1L, catalog, ImmutableList.<SubscriptionBaseTransition>of());
+
+        Assert.assertTrue(transitions.isVersion(new long[]{1L, 1L, 2L, 1L, 3L, 1L}, 1L, catalog));
+        // Event 2 deactivated (e.g. on another node): the last record id is unchanged
+        Assert.assertFalse(transitions.isVersion(new long[]{1L, 1L, 3L, 1L}, 1L, catalog));
+        // Event 3 moved to another version
+        Assert.assertFalse(transitions.isVersion(new long[]{1L, 1L, 2L, 1L, 3L, 2L}, 1L, catalog));
+        // Subscription moved to another version
+        Assert.assertFalse(transitions.isVersion(eventVersions, 2L, catalog));
+        // New catalog uploaded by the tenant
+        Assert.assertFalse(transitions.isVersion(eventVersions, 1L, Mockito.mock(Catalog.class)));
+    }
+}
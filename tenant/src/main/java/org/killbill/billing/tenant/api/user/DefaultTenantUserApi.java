@@ -20,30 +20,47 @@ import java.util.List;
 import java.util.UUID;
 
 import org.killbill.billing.ErrorCode;
+import org.killbill.billing.catalog.api.CatalogService;
+import org.killbill.billing.platform.api.KillbillService.ServiceException;
 import org.killbill.billing.tenant.api.DefaultTenant;
 import org.killbill.billing.tenant.api.Tenant;
 import org.killbill.billing.tenant.api.TenantApiException;
 import org.killbill.billing.tenant.api.TenantData;
+import org.killbill.billing.tenant.api.TenantInternalApi;
 import org.killbill.billing.tenant.api.TenantUserApi;
 import org.killbill.billing.tenant.dao.TenantDao;
 import org.killbill.billing.tenant.dao.TenantModelDao;
+import org.killbill.billing.util.cache.Cachable.CacheType;
+import org.killbill.billing.util.cache.CacheController;
+import org.killbill.billing.util.cache.CacheControllerDispatcher;
 import org.killbill.billing.util.callcontext.CallContext;
 import org.killbill.billing.callcontext.InternalCallContext;
 import org.killbill.billing.util.callcontext.InternalCallContextFactory;
 import org.killbill.billing.callcontext.InternalTenantContext;
 import org.killbill.billing.util.callcontext.TenantContext;
 
+import com.google.common.collect.ImmutableList;
 import com.google.inject.Inject;
 
 public class DefaultTenantUserApi implements TenantUserApi {
 
     private final TenantDao tenantDao;
     private final InternalCallContextFactory internalCallContextFactory;
+    private final CacheControllerDispatcher cacheControllerDispatcher;
+
+    // Only available when the catalog module is installed: without it, catalog uploads are stored as is
+    private CatalogService catalogService;
 
     @Inject
-    public DefaultTenantUserApi(final TenantDao tenantDao, final InternalCallContextFactory internalCallContextFactory) {
+    public DefaultTenantUserApi(final TenantDao tenantDao, final InternalCallContextFactory internalCallContextFactory, final CacheControllerDispatcher cacheControllerDispatcher) {
         this.tenantDao = tenantDao;
         this.internalCallContextFactory = internalCallContextFactory;
+        this.cacheControllerDispatcher = cacheControllerDispatcher;
+    }
+
+    @Inject(optional = true)
+    public void setCatalogService(final CatalogService catalogService) {
+        this.catalogService = catalogService;
     }
 
     @Override
@@ -97,7 +114,9 @@ public class DefaultTenantUserApi implements TenantUserApi {
             throw new TenantApiException(ErrorCode.TENANT_DOES_NOT_EXIST_FOR_ID, tenantId);
         }
         */
+        validateTenantCatalogs(key, value, internalContext);
         tenantDao.addTenantKeyValue(key, value, internalContext);
+        invalidateTenantCaches(key, internalContext);
     }
 
     @Override
@@ -111,5 +130,32 @@ public class DefaultTenantUserApi implements TenantUserApi {
         */
         final InternalCallContext internalContext = internalCallContextFactory.createInternalCallContext(context);
         tenantDao.deleteTenantKey(key, internalContext);
+        invalidateTenantCaches(key, internalContext);
+    }
+
+    // A catalog which doesn't load would fail every lookup for the tenant (failed loads are not cached): reject it upfront
+    private void validateTenantCatalogs(final String key, final String value, final InternalTenantContext context) throws TenantApiException {
+        if (catalogService == null || !TenantInternalApi.TENANT_CATALOG_KEY.equals(key)) {
+            return;
+        }
+
+        final List<String> catalogXMLs = ImmutableList.<String>builder().addAll(tenantDao.getTenantValueForKey(key, context)).add(value).build();
+        try {
+            catalogService.validateTenantCatalogs(catalogXMLs);
+        } catch (final ServiceException e) {
+            throw new TenantApiException(e, ErrorCode.TENANT_UPDATE_FAILED);
+        }
+    }
+
+    // The next lookup will reload the entry from the tenant KV store (other nodes pick up the change when their entry expires)
+    private void invalidateTenantCaches(final String key, final InternalTenantContext context) {
+        if (!TenantInternalApi.TENANT_CATALOG_KEY.equals(key)) {
+            return;
+        }
+
+        final CacheController<Object, Object> tenantCatalogCache = cacheControllerDispatcher.getCacheController(CacheType.TENANT_CATALOG);
+        if (tenantCatalogCache != null) {
+            tenantCatalogCache.remove(context.getTenantRecordId());
+        }
     }
 }
@@ -19,7 +19,9 @@
 package org.killbill.billing.tenant.glue;
 
 import org.killbill.billing.platform.api.KillbillConfigSource;
+import org.killbill.billing.tenant.api.DefaultTenantInternalApi;
 import org.killbill.billing.tenant.api.DefaultTenantService;
+import org.killbill.billing.tenant.api.TenantInternalApi;
 import org.killbill.billing.tenant.api.TenantService;
 import org.killbill.billing.tenant.api.TenantUserApi;
 import org.killbill.billing.tenant.api.user.DefaultTenantUserApi;
@@ -44,6 +46,10 @@ public class TenantModule extends KillBillModule {
         bind(TenantUserApi.class).to(DefaultTenantUserApi.class).asEagerSingleton();
     }
 
+    protected void installTenantInternalApi() {
+        bind(TenantInternalApi.class).to(DefaultTenantInternalApi.class).asEagerSingleton();
+    }
+
     private void installTenantService() {
         bind(TenantService.class).to(DefaultTenantService.class).asEagerSingleton();
     }
@@ -54,5 +60,6 @@ public class TenantModule extends KillBillModule {
         installTenantDao();
         installTenantService();
         installTenantUserApi();
+        installTenantInternalApi();
     }
 }
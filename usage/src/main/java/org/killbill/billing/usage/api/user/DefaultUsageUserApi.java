@@ -18,6 +18,7 @@ package org.killbill.billing.usage.api.user;
 
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.UUID;
@@ -40,6 +41,8 @@ import org.killbill.billing.util.callcontext.CallContext;
 import org.killbill.billing.util.callcontext.InternalCallContextFactory;
 import org.killbill.billing.util.callcontext.TenantContext;
 
+import com.google.common.collect.ImmutableList;
+
 public class DefaultUsageUserApi implements UsageUserApi {
 
     private final RolledUpUsageDao rolledUpUsageDao;
@@ -55,11 +58,29 @@ public class DefaultUsageUserApi implements UsageUserApi {
     @Override
     public void recordRolledUpUsage(final SubscriptionUsageRecord record, final CallContext callContext) {
         final InternalCallContext internalCallContext = internalCallContextFactory.createInternalCallContext(record.getSubscriptionId(), ObjectType.SUBSCRIPTION, callContext);
-        for (UnitUsageRecord unitUsageRecord : record.getUnitUsageRecord()) {
-            for (UsageRecord usageRecord : unitUsageRecord.getDailyAmount()) {
-                rolledUpUsageDao.record(record.getSubscriptionId(), unitUsageRecord.getUnitType(), usageRecord.getDate(), usageRecord.getAmount(), internalCallContext);
+
+        // Aggregate the amounts per unit type and day, and insert them all at once
+        final Map<String, Map<LocalDate, Long>> amountsPerUnitTypeAndDay = new LinkedHashMap<String, Map<LocalDate, Long>>();
+        for (final UnitUsageRecord unitUsageRecord : record.getUnitUsageRecord()) {
+            Map<LocalDate, Long> amountsPerDay = amountsPerUnitTypeAndDay.get(unitUsageRecord.getUnitType());
+            if (amountsPerDay == null) {
+                amountsPerDay = new LinkedHashMap<LocalDate, Long>();
+                amountsPerUnitTypeAndDay.put(unitUsageRecord.getUnitType(), amountsPerDay);
+            }
+            for (final UsageRecord usageRecord : unitUsageRecord.getDailyAmount()) {
+                final Long currentAmount = amountsPerDay.get(usageRecord.getDate());
+                amountsPerDay.put(usageRecord.getDate(), currentAmount != null ? currentAmount + usageRecord.getAmount() : usageRecord.getAmount());
             }
         }
+
+        final List<RolledUpUsageModelDao> usages = new ArrayList<RolledUpUsageModelDao>();
+        for (final String unitType : amountsPerUnitTypeAndDay.keySet()) {
+            final Map<LocalDate, Long> amountsPerDay = amountsPerUnitTypeAndDay.get(unitType);
+            for (final LocalDate date : amountsPerDay.keySet()) {
+                usages.add(new RolledUpUsageModelDao(record.getSubscriptionId(), unitType, date, amountsPerDay.get(date)));
+            }
+        }
+        rolledUpUsageDao.record(usages, internalCallContext);
     }
 
     @Override
@@ -71,13 +92,28 @@ public class DefaultUsageUserApi implements UsageUserApi {
 
     @Override
     public List<RolledUpUsage> getAllUsageForSubscription(final UUID subscriptionId, final List<LocalDate> transitionTimes, final TenantContext tenantContext) {
+        final List<RolledUpUsage> result = new ArrayList<RolledUpUsage>();
+        if (transitionTimes.size() < 2) {
+            return result;
+        }
+
+        // Retrieve the daily usage covering all intervals in a single query, and split it per interval
+        LocalDate minDate = transitionTimes.get(0);
+        LocalDate maxDate = transitionTimes.get(0);
+        for (final LocalDate curDate : transitionTimes) {
+            minDate = curDate.isBefore(minDate) ? curDate : minDate;
+            maxDate = curDate.isAfter(maxDate) ? curDate : maxDate;
+        }
         final InternalTenantContext internalCallContext = internalCallContextFactory.createInternalTenantContext(subscriptionId, ObjectType.SUBSCRIPTION, tenantContext);
-        List<RolledUpUsage> result = new ArrayList<RolledUpUsage>();
+        final List<RolledUpUsageModelDao> dailyUsage = rolledUpUsageDao.getDailyUsageForSubscription(subscriptionId, minDate, maxDate, internalCallContext);
+
         LocalDate prevDate = null;
-        for (LocalDate curDate : transitionTimes) {
+        for (final LocalDate curDate : transitionTimes) {
             if (prevDate != null) {
-                final List<RolledUpUsageModelDao> usageForSubscription = rolledUpUsageDao.getAllUsageForSubscription(subscriptionId, prevDate, curDate, internalCallContext);
-                final List<RolledUpUnit> rolledUpAmount = getRolledUpUnits(usageForSubscription);
+                final int fromIndex = indexOfFirstUsageOnOrAfter(dailyUsage, prevDate);
+                final int toIndex = indexOfFirstUsageOnOrAfter(dailyUsage, curDate);
+                final List<RolledUpUsageModelDao> usageForInterval = toIndex > fromIndex ? dailyUsage.subList(fromIndex, toIndex) : ImmutableList.<RolledUpUsageModelDao>of();
+                final List<RolledUpUnit> rolledUpAmount = getRolledUpUnits(usageForInterval);
                 result.add(new DefaultRolledUpUsage(subscriptionId, prevDate, curDate, rolledUpAmount));
             }
             prevDate = curDate;
@@ -85,6 +121,21 @@ public class DefaultUsageUserApi implements UsageUserApi {
         return result;
     }
 
+    // Binary search in the usage (ordered by day) for the first entry on or after that date
+    private int indexOfFirstUsageOnOrAfter(final List<RolledUpUsageModelDao> dailyUsage, final LocalDate date) {
+        int low = 0;
+        int high = dailyUsage.size();
+        while (low < high) {
+            final int mid = (low + high) >>> 1;
+            if (dailyUsage.get(mid).getRecordDate().isBefore(date)) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
     private List<RolledUpUnit> getRolledUpUnits(final List<RolledUpUsageModelDao> usageForSubscription) {
         final Map<String, Long> tmp = new HashMap<String, Long>();
         for (RolledUpUsageModelDao cur : usageForSubscription) {
@@ -16,7 +16,6 @@
 
 package org.killbill.billing.usage.dao;
 
-import java.math.BigDecimal;
 import java.util.List;
 import java.util.UUID;
 
@@ -42,6 +41,14 @@ public class DefaultRolledUpUsageDao implements RolledUpUsageDao {
         rolledUpUsageSqlDao.create(rolledUpUsageModelDao, context);
     }
 
+    @Override
+    public void record(final Iterable<RolledUpUsageModelDao> usages, final InternalCallContext context) {
+        if (!usages.iterator().hasNext()) {
+            return;
+        }
+        rolledUpUsageSqlDao.batchCreate(usages, context);
+    }
+
     @Override
     public List<RolledUpUsageModelDao> getUsageForSubscription(final UUID subscriptionId, final LocalDate startDate, final LocalDate endDate, final String unitType, final InternalTenantContext context) {
         return rolledUpUsageSqlDao.getUsageForSubscription(subscriptionId, startDate.toDate(), endDate.toDate(), unitType, context);
@@ -51,4 +58,9 @@ public class DefaultRolledUpUsageDao implements RolledUpUsageDao {
     public List<RolledUpUsageModelDao> getAllUsageForSubscription(final UUID subscriptionId, final LocalDate startDate, final LocalDate endDate, final InternalTenantContext context) {
         return rolledUpUsageSqlDao.getAllUsageForSubscription(subscriptionId, startDate.toDate(), endDate.toDate(), context);
     }
+
+    @Override
+    public List<RolledUpUsageModelDao> getDailyUsageForSubscription(final UUID subscriptionId, final LocalDate startDate, final LocalDate endDate, final InternalTenantContext context) {
+        return rolledUpUsageSqlDao.getDailyUsageForSubscription(subscriptionId, startDate.toDate(), endDate.toDate(), context);
+    }
 }
@@ -28,7 +28,13 @@ public interface RolledUpUsageDao {
     void record(UUID subscriptionId, String unitType, LocalDate date,
                 Long amount, InternalCallContext context);
 
+    // Inserts all rows in a single JDBC batch (and transaction)
+    void record(Iterable<RolledUpUsageModelDao> usages, InternalCallContext context);
+
     List<RolledUpUsageModelDao> getUsageForSubscription(UUID subscriptionId, LocalDate startDate, LocalDate endDate, String unitType, InternalTenantContext context);
 
     List<RolledUpUsageModelDao> getAllUsageForSubscription(UUID subscriptionId, LocalDate startDate, LocalDate endDate, InternalTenantContext context);
+
+    // Amounts summed per unit type and day (only unitType, recordDate and amount are populated), ordered by day
+    List<RolledUpUsageModelDao> getDailyUsageForSubscription(UUID subscriptionId, LocalDate startDate, LocalDate endDate, InternalTenantContext context);
 }
@@ -0,0 +1,98 @@
+/*
+ * Copyright 2014 The Billing Project, LLC
+ *
+ * The Billing Project licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.killbill.billing.usage.api.user;
+
+import java.util.List;
+import java.util.UUID;
+
+import org.joda.time.LocalDate;
+import org.killbill.billing.ObjectType;
+import org.killbill.billing.callcontext.InternalCallContext;
+import org.killbill.billing.usage.UsageTestSuiteNoDB;
+import org.killbill.billing.usage.api.SubscriptionUsageRecord;
+import org.killbill.billing.usage.api.UnitUsageRecord;
+import org.killbill.billing.usage.api.UsageRecord;
+import org.killbill.billing.usage.dao.RolledUpUsageDao;
+import org.killbill.billing.usage.dao.RolledUpUsageModelDao;
+import org.killbill.billing.util.callcontext.CallContext;
+import org.killbill.billing.util.callcontext.InternalCallContextFactory;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mockito;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import com.google.common.collect.ImmutableList;
+
+import static org.testng.Assert.assertEquals;
+
+public class TestDefaultUsageUserApi extends UsageTestSuiteNoDB {
+
+    private RolledUpUsageDao rolledUpUsageDao;
+    private DefaultUsageUserApi usageUserApi;
+
+    @BeforeMethod(groups = "fast")
+    public void setUp() throws Exception {
+        rolledUpUsageDao = Mockito.mock(RolledUpUsageDao.class);
+        final InternalCallContextFactory internalCallContextFactory = Mockito.mock(InternalCallContextFactory.class);
+        Mockito.when(internalCallContextFactory.createInternalCallContext(Mockito.<UUID>any(), Mockito.eq(ObjectType.SUBSCRIPTION), Mockito.<CallContext>any())).thenReturn(internalCallContext);
+        usageUserApi = new DefaultUsageUserApi(rolledUpUsageDao, internalCallContextFactory);
+    }
+
+    @Test(groups = "fast")
+    public void testRecordRolledUpUsage() {
+        final UUID subscriptionId = UUID.randomUUID();
+        final LocalDate today = new LocalDate(2013, 1, 1);
+        final LocalDate tomorrow = today.plusDays(1);
+
+        // Amounts for the same unit type and day are summed, even across unit usage records
+        final SubscriptionUsageRecord record = new SubscriptionUsageRecord(subscriptionId,
+                                                                           ImmutableList.<UnitUsageRecord>of(new UnitUsageRecord("foo", ImmutableList.<UsageRecord>of(new UsageRecord(today, 10L),
+                                                                                                                                                                     new UsageRecord(today, 5L),
+                                                                                                                                                                     new UsageRecord(tomorrow, 13L))),
+                                                                                                             new UnitUsageRecord("bar", ImmutableList.<UsageRecord>of(new UsageRecord(today, 7L))),
+                                                                                                             new UnitUsageRecord("foo", ImmutableList.<UsageRecord>of(new UsageRecord(tomorrow, 2L)))));
+        usageUserApi.recordRolledUpUsage(record, callContext);
+
+        final List<RolledUpUsageModelDao> usages = captureRecordedUsages();
+        assertEquals(usages.size(), 3);
+        verifyUsage(usages.get(0), subscriptionId, "foo", today, 15L);
+        verifyUsage(usages.get(1), subscriptionId, "foo", tomorrow, 15L);
+        verifyUsage(usages.get(2), subscriptionId, "bar", today, 7L);
+    }
+
+    @Test(groups = "fast")
+    public void testRecordRolledUpUsageWithoutUsageRecords() {
+        final SubscriptionUsageRecord record = new SubscriptionUsageRecord(UUID.randomUUID(), ImmutableList.<UnitUsageRecord>of(new UnitUsageRecord("foo", ImmutableList.<UsageRecord>of())));
+        usageUserApi.recordRolledUpUsage(record, callContext);
+
+        assertEquals(captureRecordedUsages().size(), 0);
+    }
+
+    @SuppressWarnings("unchecked")
+    private List<RolledUpUsageModelDao> captureRecordedUsages() {
+        final ArgumentCaptor<Iterable> usagesCaptor = ArgumentCaptor.forClass(Iterable.class);
+        Mockito.verify(rolledUpUsageDao, Mockito.times(1)).record(usagesCaptor.capture(), Mockito.<InternalCallContext>any());
+        return ImmutableList.<RolledUpUsageModelDao>copyOf((Iterable<RolledUpUsageModelDao>) usagesCaptor.getValue());
+    }
+
+    private void verifyUsage(final RolledUpUsageModelDao usage, final UUID subscriptionId, final String unitType, final LocalDate date, final Long amount) {
+        assertEquals(usage.getSubscriptionId(), subscriptionId);
+        assertEquals(usage.getUnitType(), unitType);
+        assertEquals(usage.getRecordDate().compareTo(date), 0);
+        assertEquals(usage.getAmount().compareTo(amount), 0);
+    }
+}
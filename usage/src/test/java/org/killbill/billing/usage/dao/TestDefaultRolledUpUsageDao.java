@@ -24,6 +24,8 @@ import org.killbill.billing.usage.UsageTestSuiteWithEmbeddedDB;
 import org.testng.annotations.BeforeMethod;
 import org.testng.annotations.Test;
 
+import com.google.common.collect.ImmutableList;
+
 import static org.testng.Assert.assertEquals;
 
 public class TestDefaultRolledUpUsageDao extends UsageTestSuiteWithEmbeddedDB {
@@ -91,6 +93,59 @@ public class TestDefaultRolledUpUsageDao extends UsageTestSuiteWithEmbeddedDB {
 
 
 
+    @Test(groups = "slow")
+    public void testBatchRecord() {
+        final UUID subscriptionId = UUID.randomUUID();
+        final String unitType1 = "foo";
+        final String unitType2 = "bar";
+        final LocalDate startDate = new LocalDate(2013, 1, 1);
+        final LocalDate endDate = new LocalDate(2013, 2, 1);
+
+        final List<RolledUpUsageModelDao> usages = ImmutableList.<RolledUpUsageModelDao>of(new RolledUpUsageModelDao(subscriptionId, unitType1, startDate, 10L),
+                                                                                         new RolledUpUsageModelDao(subscriptionId, unitType1, startDate.plusDays(1), 5L),
+                                                                                         new RolledUpUsageModelDao(subscriptionId, unitType2, endDate.minusDays(1), 13L));
+        rolledUpUsageDao.record(usages, internalCallContext);
+        rolledUpUsageDao.record(ImmutableList.<RolledUpUsageModelDao>of(), internalCallContext);
+
+        final List<RolledUpUsageModelDao> result = rolledUpUsageDao.getAllUsageForSubscription(subscriptionId, startDate, endDate, internalCallContext);
+        assertEquals(result.size(), 3);
+        for (int i = 0; i < 3; i++) {
+            assertEquals(result.get(i).getId(), usages.get(i).getId());
+            assertEquals(result.get(i).getSubscriptionId(), subscriptionId);
+            assertEquals(result.get(i).getUnitType(), usages.get(i).getUnitType());
+            assertEquals(result.get(i).getRecordDate().compareTo(usages.get(i).getRecordDate()), 0);
+            assertEquals(result.get(i).getAmount().compareTo(usages.get(i).getAmount()), 0);
+        }
+    }
+
+    @Test(groups = "slow")
+    public void testDailyUsage() {
+        final UUID subscriptionId = UUID.randomUUID();
+        final String unitType1 = "foo";
+        final String unitType2 = "bar";
+        final LocalDate startDate = new LocalDate(2013, 1, 1);
+        final LocalDate endDate = new LocalDate(2013, 2, 1);
+
+        rolledUpUsageDao.record(subscriptionId, unitType1, startDate, 10L, internalCallContext);
+        rolledUpUsageDao.record(subscriptionId, unitType1, startDate, 5L, internalCallContext);
+        rolledUpUsageDao.record(subscriptionId, unitType2, startDate, 7L, internalCallContext);
+        rolledUpUsageDao.record(subscriptionId, unitType1, startDate.plusDays(1), 13L, internalCallContext);
+        // Outside of the range
+        rolledUpUsageDao.record(subscriptionId, unitType1, endDate, 9L, internalCallContext);
+
+        final List<RolledUpUsageModelDao> result = rolledUpUsageDao.getDailyUsageForSubscription(subscriptionId, startDate, endDate, internalCallContext);
+        assertEquals(result.size(), 3);
+        assertEquals(result.get(0).getRecordDate().compareTo(startDate), 0);
+        assertEquals(result.get(0).getUnitType(), unitType2);
+        assertEquals(result.get(0).getAmount().compareTo(7L), 0);
+        assertEquals(result.get(1).getRecordDate().compareTo(startDate), 0);
+        assertEquals(result.get(1).getUnitType(), unitType1);
+        assertEquals(result.get(1).getAmount().compareTo(15L), 0);
+        assertEquals(result.get(2).getRecordDate().compareTo(startDate.plusDays(1)), 0);
+        assertEquals(result.get(2).getUnitType(), unitType1);
+        assertEquals(result.get(2).getAmount().compareTo(13L), 0);
+    }
+
     @Test(groups = "slow")
     public void testNoEntries() {
         final UUID subscriptionId = UUID.randomUUID();
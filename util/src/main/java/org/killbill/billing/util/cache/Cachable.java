@@ -31,6 +31,11 @@ public @interface Cachable {
     public final String OBJECT_ID_CACHE_NAME = "object-id";
     public final String AUDIT_LOG_CACHE_NAME = "audit-log";
     public final String AUDIT_LOG_VIA_HISTORY_CACHE_NAME = "audit-log-via-history";
+    public final String TENANT_CATALOG_CACHE_NAME = "tenant-catalog";
+    public final String PAYMENT_METHOD_CACHE_NAME = "payment-method";
+    public final String PAYMENT_METHOD_PLUGIN_INFO_CACHE_NAME = "payment-method-plugin-info";
+    public final String ACCOUNT_CACHE_NAME = "account";
+    public final String SUBSCRIPTION_TRANSITIONS_CACHE_NAME = "subscription-transitions";
 
     public CacheType value();
 
@@ -51,7 +56,22 @@ public @interface Cachable {
         AUDIT_LOG(AUDIT_LOG_CACHE_NAME, true),
 
         /* Mapping from object 'tableName::historyTableName::targetRecordId' -> matching objects 'Iterable<AuditLog>' */
-        AUDIT_LOG_VIA_HISTORY(AUDIT_LOG_VIA_HISTORY_CACHE_NAME, true);
+        AUDIT_LOG_VIA_HISTORY(AUDIT_LOG_VIA_HISTORY_CACHE_NAME, true),
+
+        /* Mapping from tenant 'tenantRecordId (Long)' -> matching 'VersionedCatalog' */
+        TENANT_CATALOG(TENANT_CATALOG_CACHE_NAME, false),
+
+        /* Mapping from payment method 'id (UUID)' -> matching 'PaymentMethodModelDao' (including deleted ones) */
+        PAYMENT_METHOD(PAYMENT_METHOD_CACHE_NAME, false),
+
+        /* Mapping from payment method 'id (UUID)' -> matching plugin 'PaymentMethodPlugin' */
+        PAYMENT_METHOD_PLUGIN_INFO(PAYMENT_METHOD_PLUGIN_INFO_CACHE_NAME, false),
+
+        /* Mapping from account 'id (UUID)' -> matching 'AccountModelDao' */
+        ACCOUNT(ACCOUNT_CACHE_NAME, false),
+
+        /* Mapping from subscription 'id (UUID)' -> transitions computed from its events, versioned by the events 'recordId (Long)' and the catalog */
+        SUBSCRIPTION_TRANSITIONS(SUBSCRIPTION_TRANSITIONS_CACHE_NAME, false);
 
         private final String cacheName;
         private final boolean isKeyPrefixedWithTableName;
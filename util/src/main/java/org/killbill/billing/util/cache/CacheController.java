@@ -31,4 +31,10 @@ public interface CacheController<K, V> {
     void removeAll();
 
     CacheType getCacheType();
+
+    // Number of lookups served from the cache (loader not invoked)
+    long getHitCount();
+
+    // Number of lookups which had to go to the loader
+    long getMissCount();
 }
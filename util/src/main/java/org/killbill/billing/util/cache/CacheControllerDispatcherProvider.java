@@ -20,13 +20,16 @@ import java.util.Collection;
 import java.util.LinkedHashMap;
 import java.util.Map;
 
-import javax.inject.Inject;
 import javax.inject.Provider;
 
 import org.killbill.billing.util.cache.Cachable.CacheType;
 
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.RatioGauge;
 import com.google.common.base.Function;
 import com.google.common.collect.Collections2;
+import com.google.inject.Inject;
 import net.sf.ehcache.Cache;
 import net.sf.ehcache.CacheManager;
 import net.sf.ehcache.Element;
@@ -37,11 +40,19 @@ public class CacheControllerDispatcherProvider implements Provider<CacheControll
 
     private final CacheManager cacheManager;
 
+    private MetricRegistry metricRegistry;
+
     @Inject
     public CacheControllerDispatcherProvider(final CacheManager cacheManager) {
         this.cacheManager = cacheManager;
     }
 
+    // Bound by the server: hit and miss counts are only exposed when available
+    @Inject(optional = true)
+    public void setMetricRegistry(final MetricRegistry metricRegistry) {
+        this.metricRegistry = metricRegistry;
+    }
+
     @Override
     public CacheControllerDispatcher get() {
         final Map<CacheType, CacheController<Object, Object>> cacheControllers = new LinkedHashMap<CacheType, CacheController<Object, Object>>();
@@ -53,18 +64,44 @@ public class CacheControllerDispatcherProvider implements Provider<CacheControll
             if (cacheControllersForCacheName.size() > 0) {
                 final EhCacheBasedCacheController<Object, Object> ehCacheBasedCacheController = cacheControllersForCacheName.iterator().next();
                 cacheControllers.put(cacheType, ehCacheBasedCacheController);
+                registerGauges(cacheName, ehCacheBasedCacheController);
             }
         }
         return new CacheControllerDispatcher(cacheControllers);
     }
 
+    private void registerGauges(final String cacheName, final CacheController<Object, Object> cacheController) {
+        if (metricRegistry == null) {
+            return;
+        }
+        metricRegistry.register(MetricRegistry.name(CacheControllerDispatcher.class, cacheName, "hitCount"), new Gauge<Long>() {
+            @Override
+            public Long getValue() {
+                return cacheController.getHitCount();
+            }
+        });
+        metricRegistry.register(MetricRegistry.name(CacheControllerDispatcher.class, cacheName, "missCount"), new Gauge<Long>() {
+            @Override
+            public Long getValue() {
+                return cacheController.getMissCount();
+            }
+        });
+        metricRegistry.register(MetricRegistry.name(CacheControllerDispatcher.class, cacheName, "hitRatio"), new RatioGauge() {
+            @Override
+            protected Ratio getRatio() {
+                final long hitCount = cacheController.getHitCount();
+                return Ratio.of(hitCount, hitCount + cacheController.getMissCount());
+            }
+        });
+    }
+
     private Collection<EhCacheBasedCacheController<Object, Object>> getCacheControllersForCacheName(final String name, final CacheType cacheType) {
         final Cache cache = cacheManager.getCache(name);
         // The CacheLoaders were registered in EhCacheCacheManagerProvider
         return Collections2.transform(cache.getRegisteredCacheLoaders(), new Function<CacheLoader, EhCacheBasedCacheController<Object, Object>>() {
             @Override
             public EhCacheBasedCacheController<Object, Object> apply(final CacheLoader input) {
-                return new EhCacheBasedCacheController<Object, Object>(cache, cacheType);
+                return new EhCacheBasedCacheController<Object, Object>(cache, cacheType, input);
             }
         });
     }
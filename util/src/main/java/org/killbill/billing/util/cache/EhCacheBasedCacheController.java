@@ -16,19 +16,28 @@
 
 package org.killbill.billing.util.cache;
 
+import java.util.concurrent.atomic.AtomicLongArray;
+
 import org.killbill.billing.util.cache.Cachable.CacheType;
 
 import net.sf.ehcache.Cache;
 import net.sf.ehcache.Element;
+import net.sf.ehcache.loader.CacheLoader;
 
 public class EhCacheBasedCacheController<K, V> implements CacheController<K, V> {
 
+    private static final int NB_GENERATION_STRIPES = 1024;
+
     private final Cache cache;
     private final CacheType cacheType;
+    private final CacheLoader cacheLoader;
+    // Bumped on remove, per stripe of keys: a value loaded before a remove must not be cached after it
+    private final AtomicLongArray generations = new AtomicLongArray(NB_GENERATION_STRIPES);
 
-    public EhCacheBasedCacheController(final Cache cache, final CacheType cacheType) {
+    public EhCacheBasedCacheController(final Cache cache, final CacheType cacheType, final CacheLoader cacheLoader) {
         this.cache = cache;
         this.cacheType = cacheType;
+        this.cacheLoader = cacheLoader;
     }
 
     @Override
@@ -38,15 +47,35 @@ public class EhCacheBasedCacheController<K, V> implements CacheController<K, V>
 
     @Override
     public V get(final K key, final CacheLoaderArgument cacheLoaderArgument) {
-        final Element element = cache.getWithLoader(key, null, cacheLoaderArgument);
-        if (element == null) {
-            return null;
+        final Element element = cache.get(key);
+        if (element != null) {
+            return (V) element.getObjectValue();
+        }
+
+        // Not using getWithLoader: a loader which read the database before a write was committed would put the previous
+        // value back after the writer removed it, so the loaded value is only kept if the key wasn't removed in the meantime
+        final int stripe = getStripe(key);
+        final long generation = generations.get(stripe);
+        final Object value = cacheLoader.load(key, cacheLoaderArgument);
+        if (value == null || generations.get(stripe) != generation) {
+            return (V) value;
         }
-        return (V) element.getObjectValue();
+
+        final Element loadedElement = new Element(key, value);
+        final Element existingElement = cache.putIfAbsent(loadedElement);
+        if (existingElement != null) {
+            return (V) existingElement.getObjectValue();
+        }
+        if (generations.get(stripe) != generation) {
+            // Removed between the check and the put
+            cache.removeElement(loadedElement);
+        }
+        return (V) value;
     }
 
     @Override
     public boolean remove(final K key) {
+        generations.incrementAndGet(getStripe(key));
         return cache.remove(key);
     }
 
@@ -57,6 +86,9 @@ public class EhCacheBasedCacheController<K, V> implements CacheController<K, V>
 
     @Override
     public void removeAll() {
+        for (int i = 0; i < NB_GENERATION_STRIPES; i++) {
+            generations.incrementAndGet(i);
+        }
         cache.removeAll();
     }
 
@@ -64,4 +96,19 @@ public class EhCacheBasedCacheController<K, V> implements CacheController<K, V>
     public CacheType getCacheType() {
         return cacheType;
     }
+
+    @Override
+    public long getHitCount() {
+        // Requires statistics="true" in ehcache.xml
+        return cache.getStatistics().getCacheHits();
+    }
+
+    @Override
+    public long getMissCount() {
+        return cache.getStatistics().getCacheMisses();
+    }
+
+    private int getStripe(final K key) {
+        return (key.hashCode() & Integer.MAX_VALUE) % NB_GENERATION_STRIPES;
+    }
 }
@@ -45,7 +45,12 @@ public class EhCacheCacheManagerProvider implements Provider<CacheManager> {
                                        final TenantRecordIdCacheLoader tenantRecordIdCacheLoader,
                                        final ObjectIdCacheLoader objectIdCacheLoader,
                                        final AuditLogCacheLoader auditLogCacheLoader,
-                                       final AuditLogViaHistoryCacheLoader auditLogViaHistoryCacheLoader) {
+                                       final AuditLogViaHistoryCacheLoader auditLogViaHistoryCacheLoader,
+                                       final TenantCatalogCacheLoader tenantCatalogCacheLoader,
+                                       final PaymentMethodCacheLoader paymentMethodCacheLoader,
+                                       final PaymentMethodPluginInfoCacheLoader paymentMethodPluginInfoCacheLoader,
+                                       final AccountCacheLoader accountCacheLoader,
+                                       final SubscriptionTransitionsCacheLoader subscriptionTransitionsCacheLoader) {
         this.cacheConfig = cacheConfig;
         cacheLoaders.add(recordIdCacheLoader);
         cacheLoaders.add(accountRecordIdCacheLoader);
@@ -53,6 +58,11 @@ public class EhCacheCacheManagerProvider implements Provider<CacheManager> {
         cacheLoaders.add(objectIdCacheLoader);
         cacheLoaders.add(auditLogCacheLoader);
         cacheLoaders.add(auditLogViaHistoryCacheLoader);
+        cacheLoaders.add(tenantCatalogCacheLoader);
+        cacheLoaders.add(paymentMethodCacheLoader);
+        cacheLoaders.add(paymentMethodPluginInfoCacheLoader);
+        cacheLoaders.add(accountCacheLoader);
+        cacheLoaders.add(subscriptionTransitionsCacheLoader);
     }
 
     @Override
@@ -19,6 +19,7 @@ package org.killbill.billing.util.config;
 import org.skife.config.Config;
 import org.skife.config.Default;
 import org.skife.config.Description;
+import org.skife.config.TimeSpan;
 
 public interface InvoiceConfig extends KillbillConfig {
 
@@ -37,4 +38,20 @@ public interface InvoiceConfig extends KillbillConfig {
     @Description("Whether to insert usage items with a zero amount")
     public boolean isInsertZeroUsageItems();
 
+    @Config("org.killbill.invoice.incremental.enabled")
+    @Default("false")
+    @Description("Whether to only consider invoice items and billing events past the account billed-through watermark when generating invoices")
+    public boolean isIncrementalInvoicingEnabled();
+
+    @Config("org.killbill.invoice.batch.threads.nb")
+    @Default("0")
+    @Description("Maximum number of accounts invoiced concurrently for next billing date notifications grouped by account (0 to process each notification on its own). " +
+                 "Notifications are only grouped when org.killbill.notificationq.main.notification.nbThreads is greater than 1")
+    public int getBatchThreadNb();
+
+    @Config("org.killbill.invoice.batch.report.rate")
+    @Default("1m")
+    @Description("Rate at which throughput and latency of the next billing date batch runs are logged")
+    public TimeSpan getBatchReportRate();
+
 }
@@ -0,0 +1,39 @@
+/*
+ * Copyright 2014 The Billing Project, LLC
+ *
+ * The Billing Project licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.killbill.billing.util.config;
+
+import org.skife.config.Config;
+import org.skife.config.Default;
+import org.skife.config.Description;
+
+public interface JunctionConfig extends KillbillConfig {
+
+    @Config("org.killbill.junction.trace.enabled")
+    @Default("false")
+    @Description("Whether to keep the last billing events computed for each account, for troubleshooting")
+    public boolean isBillingEventsTraceEnabled();
+
+    @Config("org.killbill.junction.trace.maxAccounts")
+    @Default("1000")
+    @Description("Maximum number of accounts for which billing events are traced (least recently computed accounts are evicted first)")
+    public int getBillingEventsTraceMaxAccounts();
+
+    @Config("org.killbill.junction.trace.maxEntriesPerAccount")
+    @Default("10")
+    @Description("Maximum number of billing events computations traced per account (oldest entries are evicted first)")
+    public int getBillingEventsTraceMaxEntriesPerAccount();
+}
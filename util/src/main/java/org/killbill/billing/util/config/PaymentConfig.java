@@ -55,6 +55,16 @@ public interface PaymentConfig extends KillbillConfig {
     @Description("Maximum number of retries for failed payments")
     public int getPluginFailureRetryMaxAttempts();
 
+    @Config("org.killbill.payment.retry.jitter")
+    @Default("0s")
+    @Description("Window after their scheduled time over which payment retries are spread, so that they don't all hit the gateways at once")
+    public TimeSpan getPaymentRetryJitter();
+
+    @Config("org.killbill.payment.retry.plugin.rate")
+    @Default("0")
+    @Description("Maximum number of payment retries per second to each payment plugin, 0 for no limit")
+    public double getPaymentRetryPluginCallsPerSecond();
+
     @Config("org.killbill.payment.plugin.timeout")
     @Default("30s")
     @Description("Timeout for each payment attempt")
@@ -65,6 +75,46 @@ public interface PaymentConfig extends KillbillConfig {
     @Description("Number of threads for plugin executor dispatcher")
     public int getPaymentPluginThreadNb();
 
+    @Config("org.killbill.payment.plugin.bulkhead.maxConcurrentCalls")
+    @Default("0")
+    @Description("Maximum number of concurrent calls to each payment plugin, 0 for no limit")
+    public int getPaymentPluginMaxConcurrentCalls();
+
+    @Config("org.killbill.payment.plugin.circuitBreaker.failureThreshold")
+    @Default("0")
+    @Description("Number of consecutive failed or timed out calls after which calls to a payment plugin fail fast, 0 to disable")
+    public int getPaymentPluginCircuitBreakerFailureThreshold();
+
+    @Config("org.killbill.payment.plugin.circuitBreaker.openTime")
+    @Default("30s")
+    @Description("Delay during which calls to a payment plugin fail fast before a trial call is let through")
+    public TimeSpan getPaymentPluginCircuitBreakerOpenTime();
+
+    @Config("org.killbill.payment.plugin.timeout.adaptive")
+    @Default("false")
+    @Description("Whether the timeout for each payment plugin should be computed from its observed latency")
+    public boolean isPaymentPluginAdaptiveTimeout();
+
+    @Config("org.killbill.payment.plugin.timeout.adaptive.percentile")
+    @Default("99")
+    @Description("Latency percentile used to compute the adaptive timeout")
+    public int getPaymentPluginAdaptiveTimeoutPercentile();
+
+    @Config("org.killbill.payment.plugin.timeout.adaptive.multiplier")
+    @Default("3")
+    @Description("Multiplier applied to the latency percentile to compute the adaptive timeout")
+    public int getPaymentPluginAdaptiveTimeoutMultiplier();
+
+    @Config("org.killbill.payment.plugin.timeout.adaptive.min")
+    @Default("1s")
+    @Description("Minimum adaptive timeout (the maximum is org.killbill.payment.plugin.timeout)")
+    public TimeSpan getPaymentPluginAdaptiveTimeoutMin();
+
+    @Config("org.killbill.payment.method.pluginInfo.cache")
+    @Default("false")
+    @Description("Whether to cache the payment method details returned by the plugins (see the payment-method-plugin-info cache for the TTL)")
+    public boolean isPaymentMethodPluginInfoCacheEnabled();
+
     @Config("org.killbill.payment.janitor.pending")
     @Default("12h")
     @Description("Delay after which pending transactions should be marked as failed")
@@ -80,6 +130,26 @@ public interface PaymentConfig extends KillbillConfig {
     @Description("Rate at which janitor tasks are scheduled")
     public TimeSpan getJanitorRunningRate();
 
+    @Config("org.killbill.payment.janitor.threads.nb")
+    @Default("1")
+    @Description("Number of threads used by the janitor to process the incomplete payments")
+    public int getJanitorThreadNb();
+
+    @Config("org.killbill.payment.janitor.shards.nb")
+    @Default("1")
+    @Description("Number of nodes sharing the janitor work (each node only processes the accounts of its shard)")
+    public int getJanitorNbShards();
+
+    @Config("org.killbill.payment.janitor.shard")
+    @Default("0")
+    @Description("Janitor shard of this node, between 0 and org.killbill.payment.janitor.shards.nb - 1")
+    public int getJanitorShard();
+
+    @Config("org.killbill.payment.janitor.plugin.rate")
+    @Default("0")
+    @Description("Maximum number of janitor calls per second to each payment plugin, 0 for no limit")
+    public double getJanitorPluginCallsPerSecond();
+
     @Config("org.killbill.payment.off")
     @Default("false")
     @Description("Whether the payment subsystem is off")
@@ -0,0 +1,252 @@
+/*
+ * Copyright 2014 The Billing Project, LLC
+ *
+ * The Billing Project licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.killbill.billing.util.entity.dao;
+
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Method;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.killbill.billing.ObjectType;
+import org.killbill.billing.callcontext.InternalTenantContext;
+import org.killbill.billing.util.audit.ChangeType;
+import org.killbill.billing.util.cache.Cachable;
+import org.killbill.billing.util.cache.Cachable.CacheType;
+import org.killbill.billing.util.cache.CachableKey;
+import org.killbill.billing.util.cache.CacheControllerDispatcher;
+import org.killbill.billing.util.tag.dao.UUIDCollectionBinder;
+import org.skife.jdbi.v2.sqlobject.Bind;
+
+/**
+ * Everything EntitySqlDaoWrapperInvocationHandler needs to know about a (SqlDao class, Method) pair: audit or
+ * caching decision, position of the cache key pieces and of the context, object type, profiling names.
+ * <p/>
+ * Plans are computed once, the first time a method is invoked, so that the proxy doesn't have to go through
+ * reflection on each Sql query.
+ */
+final class EntitySqlDaoInvocationPlan {
+
+    private static final ConcurrentMap<Class<?>, ConcurrentMap<Method, EntitySqlDaoInvocationPlan>> PLANS = new ConcurrentHashMap<Class<?>, ConcurrentMap<Method, EntitySqlDaoInvocationPlan>>();
+
+    private final ChangeType auditedChangeType;
+    private final CacheType cacheType;
+    // Argument indexes of the @CachableKey pieces, ordered by key position
+    private final int[] cacheKeyArgIndexes;
+    // Index of the first InternalTenantContext argument, -1 if none
+    private final int contextArgIndex;
+    private final ObjectType objectType;
+    // Arguments annotated with @Bind("id") and @UUIDCollectionBinder, used to retrieve the ids of audited entities
+    private final boolean[] idArgs;
+    private final boolean[] uuidCollectionArgs;
+    private final boolean isGetById;
+
+    private final String profilingName;
+    private final String rawProfilingName;
+    private final String auditRawProfilingName;
+    private final String historyAndAuditProfilingName;
+
+    public static EntitySqlDaoInvocationPlan get(final Class<?> sqlDaoClass, final Method method) throws InstantiationException, IllegalAccessException, ClassNotFoundException {
+        ConcurrentMap<Method, EntitySqlDaoInvocationPlan> plansForSqlDao = PLANS.get(sqlDaoClass);
+        if (plansForSqlDao == null) {
+            final ConcurrentMap<Method, EntitySqlDaoInvocationPlan> newPlansForSqlDao = new ConcurrentHashMap<Method, EntitySqlDaoInvocationPlan>();
+            plansForSqlDao = PLANS.putIfAbsent(sqlDaoClass, newPlansForSqlDao);
+            if (plansForSqlDao == null) {
+                plansForSqlDao = newPlansForSqlDao;
+            }
+        }
+
+        final EntitySqlDaoInvocationPlan plan = plansForSqlDao.get(method);
+        if (plan != null) {
+            return plan;
+        }
+
+        // Concurrent builds for the same method are harmless, the first one wins
+        final EntitySqlDaoInvocationPlan newPlan = build(sqlDaoClass, method);
+        final EntitySqlDaoInvocationPlan existingPlan = plansForSqlDao.putIfAbsent(method, newPlan);
+        return existingPlan != null ? existingPlan : newPlan;
+    }
+
+    // Visible for benchmarks: this is the reflection work saved on each call
+    static EntitySqlDaoInvocationPlan build(final Class<?> sqlDaoClass, final Method method) throws InstantiationException, IllegalAccessException, ClassNotFoundException {
+        return new EntitySqlDaoInvocationPlan(sqlDaoClass, method);
+    }
+
+    private EntitySqlDaoInvocationPlan(final Class<?> sqlDaoClass, final Method method) throws InstantiationException, IllegalAccessException, ClassNotFoundException {
+        final Audited auditedAnnotation = method.getAnnotation(Audited.class);
+        final Cachable cachableAnnotation = method.getAnnotation(Cachable.class);
+        this.auditedChangeType = auditedAnnotation != null ? auditedAnnotation.value() : null;
+        // This can't be AUDIT'ed and CACHABLE'd at the same time as we only cache 'get'
+        this.cacheType = auditedAnnotation == null && cachableAnnotation != null ? cachableAnnotation.value() : null;
+
+        final Class<?>[] parameterTypes = method.getParameterTypes();
+        final Annotation[][] parameterAnnotations = method.getParameterAnnotations();
+        final Map<Integer, Integer> keyPieces = new TreeMap<Integer, Integer>();
+        this.idArgs = new boolean[parameterTypes.length];
+        this.uuidCollectionArgs = new boolean[parameterTypes.length];
+        int contextIndex = -1;
+        for (int i = 0; i < parameterTypes.length; i++) {
+            if (contextIndex < 0 && InternalTenantContext.class.isAssignableFrom(parameterTypes[i])) {
+                contextIndex = i;
+            }
+            for (final Annotation annotation : parameterAnnotations[i]) {
+                if (CachableKey.class.equals(annotation.annotationType())) {
+                    // CachableKey position starts at 1
+                    keyPieces.put(((CachableKey) annotation).value() - 1, i);
+                } else if (Bind.class.equals(annotation.annotationType()) && ("id").equals(((Bind) annotation).value())) {
+                    idArgs[i] = true;
+                } else if (UUIDCollectionBinder.class.equals(annotation.annotationType())) {
+                    uuidCollectionArgs[i] = true;
+                }
+            }
+        }
+        this.contextArgIndex = contextIndex;
+        this.cacheKeyArgIndexes = new int[keyPieces.size()];
+        int j = 0;
+        for (final Integer argIndex : keyPieces.values()) {
+            cacheKeyArgIndexes[j++] = argIndex;
+        }
+
+        this.objectType = cacheType != null ? retrieveObjectType(sqlDaoClass) : null;
+        this.isGetById = "getById".equals(method.getName());
+
+        this.profilingName = sqlDaoClass.getSimpleName() + ":" + method.getName();
+        this.rawProfilingName = sqlDaoClass.getSimpleName() + " (raw):" + method.getName();
+        this.auditRawProfilingName = sqlDaoClass.getSimpleName() + " (raw) :";
+        this.historyAndAuditProfilingName = sqlDaoClass.getSimpleName() + " (history/audit) :";
+    }
+
+    public boolean isAudited() {
+        return auditedChangeType != null;
+    }
+
+    public ChangeType getAuditedChangeType() {
+        return auditedChangeType;
+    }
+
+    public boolean isCachable() {
+        return cacheType != null;
+    }
+
+    public CacheType getCacheType() {
+        return cacheType;
+    }
+
+    public ObjectType getObjectType() {
+        return objectType;
+    }
+
+    public boolean isGetById() {
+        return isGetById;
+    }
+
+    public boolean isIdArg(final int argIndex) {
+        return idArgs[argIndex];
+    }
+
+    public boolean isUUIDCollectionArg(final int argIndex) {
+        return uuidCollectionArgs[argIndex];
+    }
+
+    public String getProfilingName() {
+        return profilingName;
+    }
+
+    public String getRawProfilingName() {
+        return rawProfilingName;
+    }
+
+    public String getAuditRawProfilingName() {
+        return auditRawProfilingName;
+    }
+
+    public String getHistoryAndAuditProfilingName() {
+        return historyAndAuditProfilingName;
+    }
+
+    public InternalTenantContext getContext(final Object[] args) {
+        if (contextArgIndex < 0 || !(args[contextArgIndex] instanceof InternalTenantContext)) {
+            return null;
+        }
+        return (InternalTenantContext) args[contextArgIndex];
+    }
+
+    public String buildCacheKey(final Object[] args) {
+        final StringBuilder cacheKey = new StringBuilder();
+        for (int i = 0; i < cacheKeyArgIndexes.length; i++) {
+            // To normalize the arguments and avoid casing issues, we make all pieces of the key uppercase.
+            // Since the database engine may be case insensitive and we use arguments of the SQL method call
+            // to build the key, the key has to be case insensitive as well.
+            cacheKey.append(String.valueOf(args[cacheKeyArgIndexes[i]]).toUpperCase());
+            if (i < cacheKeyArgIndexes.length - 1) {
+                cacheKey.append(CacheControllerDispatcher.CACHE_KEY_SEPARATOR);
+            }
+        }
+        return cacheKey.toString();
+    }
+
+    /**
+     * Extract object from sqlDaoClass by looking at first parameter type (EntityModelDao) and
+     * constructing an empty object so we can call the getObjectType method on it.
+     *
+     * @return the objectType associated to that sqlDaoClass
+     * @throws InstantiationException
+     * @throws IllegalAccessException
+     * @throws ClassNotFoundException
+     */
+    private static ObjectType retrieveObjectType(final Class<?> sqlDaoClass) throws InstantiationException, IllegalAccessException, ClassNotFoundException {
+        int foundIndexForEntitySqlDao = -1;
+        // If the sqlDaoClass implements multiple interfaces, first figure out which one is the EntitySqlDao
+        for (int i = 0; i < sqlDaoClass.getGenericInterfaces().length; i++) {
+            final Type type = sqlDaoClass.getGenericInterfaces()[0];
+            if (!(type instanceof ParameterizedType)) {
+                // AuditSqlDao for example won't extend EntitySqlDao
+                return null;
+            }
+
+            if (EntitySqlDao.class.getName().equals(((Class) ((ParameterizedType) type).getRawType()).getName())) {
+                foundIndexForEntitySqlDao = i;
+                break;
+            }
+        }
+        // Find out from the parameters of the EntitySqlDao which one is the EntityModelDao, and extract his (sub)type to finally return the ObjectType
+        if (foundIndexForEntitySqlDao >= 0) {
+            final Type[] types = ((ParameterizedType) sqlDaoClass.getGenericInterfaces()[foundIndexForEntitySqlDao]).getActualTypeArguments();
+            int foundIndexForEntityModelDao = -1;
+            for (int i = 0; i < types.length; i++) {
+                final Class clz = ((Class) types[i]);
+                if (EntityModelDao.class.getName().equals(((Class) ((ParameterizedType) clz.getGenericInterfaces()[0]).getRawType()).getName())) {
+                    foundIndexForEntityModelDao = i;
+                    break;
+                }
+            }
+
+            if (foundIndexForEntityModelDao >= 0) {
+                final String modelClassName = ((Class) types[foundIndexForEntityModelDao]).getName();
+
+                final Class<? extends EntityModelDao<?>> clz = (Class<? extends EntityModelDao<?>>) Class.forName(modelClassName);
+
+                final EntityModelDao<?> modelDao = (EntityModelDao<?>) clz.newInstance();
+                return modelDao.getTableName().getObjectType();
+            }
+        }
+        return null;
+    }
+}
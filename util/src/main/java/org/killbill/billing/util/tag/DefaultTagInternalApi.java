@@ -22,6 +22,7 @@ import java.util.UUID;
 import javax.inject.Inject;
 
 import org.killbill.billing.ObjectType;
+import org.killbill.billing.callcontext.AccountContextSnapshot;
 import org.killbill.billing.callcontext.InternalCallContext;
 import org.killbill.billing.callcontext.InternalTenantContext;
 import org.killbill.billing.tag.TagInternalApi;
@@ -61,15 +62,21 @@ public class DefaultTagInternalApi implements TagInternalApi {
 
     @Override
     public List<Tag> getTags(final UUID objectId, final ObjectType objectType, final InternalTenantContext context) {
-        return ImmutableList.<Tag>copyOf(Collections2.transform(tagDao.getTagsForObject(objectId, objectType, false, context),
-                                                                new Function<TagModelDao, Tag>() {
-                                                                    @Override
-                                                                    public Tag apply(final TagModelDao input) {
-                                                                        return TagModelDaoHelper.isControlTag(input.getTagDefinitionId()) ?
-                                                                               new DefaultControlTag(ControlTagType.getTypeFromId(input.getTagDefinitionId()), objectType, objectId, input.getCreatedDate()) :
-                                                                               new DescriptiveTag(input.getTagDefinitionId(), objectType, objectId, input.getCreatedDate());
-                                                                    }
-                                                                }));
+        // Objects of other accounts wouldn't be in the snapshot, so only the account itself is looked up there
+        final AccountContextSnapshot snapshot = context.getAccountContextSnapshot();
+        if (snapshot != null && snapshot.getTags() != null && objectType == ObjectType.ACCOUNT && snapshot.isForAccount(objectId)) {
+            return snapshot.getTags(objectId, objectType);
+        }
+        return toTags(tagDao.getTagsForObject(objectId, objectType, false, context));
+    }
+
+    @Override
+    public List<Tag> getTagsForAccount(final boolean includedDeleted, final InternalTenantContext context) {
+        final AccountContextSnapshot snapshot = context.getAccountContextSnapshot();
+        if (!includedDeleted && snapshot != null && snapshot.getTags() != null) {
+            return snapshot.getTags();
+        }
+        return toTags(tagDao.getTagsForAccount(includedDeleted, context));
     }
 
     @Override
@@ -85,4 +92,16 @@ public class DefaultTagInternalApi implements TagInternalApi {
             throws TagApiException {
         tagDao.deleteTag(objectId, objectType, tagDefinitionId, context);
     }
+
+    private List<Tag> toTags(final List<TagModelDao> tags) {
+        return ImmutableList.<Tag>copyOf(Collections2.transform(tags,
+                                                                new Function<TagModelDao, Tag>() {
+                                                                    @Override
+                                                                    public Tag apply(final TagModelDao input) {
+                                                                        return TagModelDaoHelper.isControlTag(input.getTagDefinitionId()) ?
+                                                                               new DefaultControlTag(ControlTagType.getTypeFromId(input.getTagDefinitionId()), input.getObjectType(), input.getObjectId(), input.getCreatedDate()) :
+                                                                               new DescriptiveTag(input.getTagDefinitionId(), input.getObjectType(), input.getObjectId(), input.getCreatedDate());
+                                                                    }
+                                                                }));
+    }
 }
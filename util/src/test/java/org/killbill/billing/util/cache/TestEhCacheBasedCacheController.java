@@ -0,0 +1,111 @@
+/*
+ * Copyright 2014 The Billing Project, LLC
+ *
+ * The Billing Project licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.killbill.billing.util.cache;
+
+import java.util.UUID;
+
+import org.killbill.billing.ObjectType;
+import org.killbill.billing.util.UtilTestSuiteNoDB;
+import org.killbill.billing.util.cache.Cachable.CacheType;
+import org.mockito.Mockito;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import com.codahale.metrics.MetricRegistry;
+import com.google.common.collect.ImmutableList;
+import net.sf.ehcache.Cache;
+import net.sf.ehcache.CacheManager;
+import net.sf.ehcache.Element;
+import net.sf.ehcache.loader.CacheLoader;
+
+public class TestEhCacheBasedCacheController extends UtilTestSuiteNoDB {
+
+    private final CacheLoaderArgument cacheLoaderArgument = new CacheLoaderArgument(ObjectType.ACCOUNT);
+
+    @Test(groups = "fast")
+    public void testLoadedValueIsCached() throws Exception {
+        final UUID key = UUID.randomUUID();
+        final Cache cache = Mockito.mock(Cache.class);
+        final CacheLoader cacheLoader = Mockito.mock(CacheLoader.class);
+        Mockito.when(cacheLoader.load(key, cacheLoaderArgument)).thenReturn("current");
+        final EhCacheBasedCacheController<Object, Object> cacheController = new EhCacheBasedCacheController<Object, Object>(cache, CacheType.ACCOUNT, cacheLoader);
+
+        Assert.assertEquals(cacheController.get(key, cacheLoaderArgument), "current");
+        Mockito.verify(cache).putIfAbsent(Mockito.<Element>any());
+        Mockito.verify(cache, Mockito.never()).removeElement(Mockito.<Element>any());
+    }
+
+    @Test(groups = "fast")
+    public void testValueLoadedBeforeARemoveIsNotCached() throws Exception {
+        final UUID key = UUID.randomUUID();
+        final Cache cache = Mockito.mock(Cache.class);
+        final CacheLoader cacheLoader = Mockito.mock(CacheLoader.class);
+        final EhCacheBasedCacheController<Object, Object> cacheController = new EhCacheBasedCacheController<Object, Object>(cache, CacheType.ACCOUNT, cacheLoader);
+        // The writer commits and invalidates the key while the loader is still returning what it read before
+        Mockito.when(cacheLoader.load(key, cacheLoaderArgument)).thenAnswer(new Answer<Object>() {
+            @Override
+            public Object answer(final InvocationOnMock invocation) throws Throwable {
+                cacheController.remove(key);
+                return "previous";
+            }
+        });
+
+        Assert.assertEquals(cacheController.get(key, cacheLoaderArgument), "previous");
+        Mockito.verify(cache).remove(key);
+        Mockito.verify(cache, Mockito.never()).putIfAbsent(Mockito.<Element>any());
+    }
+
+    @Test(groups = "fast")
+    public void testValuePutAfterARemoveIsRemoved() throws Exception {
+        final UUID key = UUID.randomUUID();
+        final Cache cache = Mockito.mock(Cache.class);
+        final CacheLoader cacheLoader = Mockito.mock(CacheLoader.class);
+        Mockito.when(cacheLoader.load(key, cacheLoaderArgument)).thenReturn("previous");
+        final EhCacheBasedCacheController<Object, Object> cacheController = new EhCacheBasedCacheController<Object, Object>(cache, CacheType.ACCOUNT, cacheLoader);
+        // The writer invalidates the key between the generation check and the put
+        Mockito.when(cache.putIfAbsent(Mockito.<Element>any())).thenAnswer(new Answer<Element>() {
+            @Override
+            public Element answer(final InvocationOnMock invocation) throws Throwable {
+                cacheController.remove(key);
+                return null;
+            }
+        });
+
+        Assert.assertEquals(cacheController.get(key, cacheLoaderArgument), "previous");
+        Mockito.verify(cache).removeElement(Mockito.<Element>any());
+    }
+
+    @Test(groups = "fast")
+    public void testHitAndMissGauges() throws Exception {
+        final Cache cache = Mockito.mock(Cache.class);
+        Mockito.when(cache.getRegisteredCacheLoaders()).thenReturn(ImmutableList.<CacheLoader>of(Mockito.mock(CacheLoader.class)));
+        final CacheManager cacheManager = Mockito.mock(CacheManager.class);
+        Mockito.when(cacheManager.getCacheNames()).thenReturn(new String[]{CacheType.ACCOUNT.getCacheName()});
+        Mockito.when(cacheManager.getCache(CacheType.ACCOUNT.getCacheName())).thenReturn(cache);
+
+        final MetricRegistry metricRegistry = new MetricRegistry();
+        final CacheControllerDispatcherProvider provider = new CacheControllerDispatcherProvider(cacheManager);
+        provider.setMetricRegistry(metricRegistry);
+        Assert.assertNotNull(provider.get().getCacheController(CacheType.ACCOUNT));
+
+        for (final String gauge : new String[]{"hitCount", "missCount", "hitRatio"}) {
+            Assert.assertTrue(metricRegistry.getGauges().containsKey(MetricRegistry.name(CacheControllerDispatcher.class, CacheType.ACCOUNT.getCacheName(), gauge)), gauge);
+        }
+    }
+}